@@ -14,7 +14,10 @@ import org.vanilladb.core.storage.metadata.statistics.StatMgr;
 import org.vanilladb.core.storage.tx.Transaction;
 import org.vanilladb.core.util.CoreProperties;
 import org.vanilladb.core.sql.distfn.DistanceFn;
-import org.vanilladb.core.storage.index.IVF_FLATIndex;
+import org.vanilladb.core.sql.predicate.Predicate;
+import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.record.RecordPage;
+import org.vanilladb.core.util.RidBitmap;
 
 public class IVPlan implements Plan {
     private TablePlan child;
@@ -22,6 +25,11 @@ public class IVPlan implements Plan {
     private DistanceFn distFn;
     private Transaction tx;
     private double radius;//有點問題
+    private boolean isRangeSearch;
+    private int k, nprobe;
+    // at most one of them is set, see the constructor
+    private Plan preFilter;
+    private Predicate postFilter;
     public static final int NUM_CLUSTERS;
 
     static {
@@ -30,6 +38,12 @@ public class IVPlan implements Plan {
     }
 
     public IVPlan(TablePlan childPlan, IndexInfo indexInfo, DistanceFn distFn, Transaction tx ) {
+        this(childPlan, indexInfo, distFn, -1, -1, tx);
+    }
+
+    public IVPlan(TablePlan childPlan, IndexInfo indexInfo, DistanceFn distFn, int k, int nprobe, Transaction tx) {
+        this.k = k;
+        this.nprobe = nprobe;
         this.child = childPlan;
         this.indexInfo = indexInfo;
         this.distFn = distFn;
@@ -38,6 +52,25 @@ public class IVPlan implements Plan {
         //System.out.println("NUM_CLUSTERS: " + NUM_CLUSTERS);
     }
 
+    /*  restricts the search to the records satisfying a predicate: either
+        preFilter, a plan (e.g., an index select) over the records satisfying
+        it, whose record ids are collected into a bitmap before the search, or
+        postFilter, the predicate itself, which is then checked on candidates */
+    public IVPlan(TablePlan childPlan, IndexInfo indexInfo, DistanceFn distFn, int k, int nprobe,
+            Plan preFilter, Predicate postFilter, Transaction tx) {
+        this(childPlan, indexInfo, distFn, k, nprobe, tx);
+        this.preFilter = preFilter;
+        this.postFilter = postFilter;
+    }
+
+    /*  returns every record within the radius of the query instead of the
+        k nearest ones */
+    public IVPlan(TablePlan childPlan, IndexInfo indexInfo, DistanceFn distFn, double radius, Transaction tx) {
+        this(childPlan, indexInfo, distFn, -1, -1, tx);
+        this.radius = radius;
+        this.isRangeSearch = true;
+    }
+
     @Override
     // public Scan open() {
     //     System.out.println("IVPlan open");
@@ -60,20 +93,38 @@ public class IVPlan implements Plan {
         //System.out.println("Number of clusters for IVF: " + (int) (0.1 * NUM_CLUSTERS));
 
         // 開啟 IVF Index 並打印相關資訊
-        IVF_FLATIndex index = (IVF_FLATIndex)indexInfo.open(tx);
+        Index index = indexInfo.open(tx);
         //System.out.println("IVF Index opened successfully: " + index);
 
         // 打印距離函數
         //System.out.println("Distance function used: " + distFn);
 
         // 返回新的 IVScan 並打印相關資訊
-        IVScan ivScan = new IVScan(ts, index, distFn);
+        if (isRangeSearch)
+            return new IVRangeScan(ts, index, distFn, radius);
+        IVScan ivScan;
+        if (preFilter != null)
+            ivScan = new IVScan(ts, index, distFn, k, nprobe, preFilterBitmap());
+        else if (postFilter != null)
+            ivScan = new IVScan(ts, index, distFn, k, nprobe, postFilter);
+        else
+            ivScan = new IVScan(ts, index, distFn, k, nprobe);
         //System.out.println("IVScan created successfully: " + ivScan);
 
         return ivScan;
     }
 
 
+    private RidBitmap preFilterBitmap() {
+        RidBitmap bitmap = new RidBitmap(Buffer.BUFFER_SIZE / RecordPage.slotSize(child.schema()));
+        UpdateScan s = (UpdateScan) preFilter.open();
+        s.beforeFirst();
+        while (s.next())
+            bitmap.add(s.getRecordId());
+        s.close();
+        return bitmap;
+    }
+
     @Override
     public long blocksAccessed() {
         //System.out.println("IVPlan blocksAccessed");
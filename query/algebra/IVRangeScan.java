@@ -0,0 +1,59 @@
+package org.vanilladb.core.query.algebra;
+
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.record.RecordId;
+
+/*  returns every record whose vector lies within the radius of the query,
+    moving the table scan to each match as soon as the index finds it */
+public class IVRangeScan implements Scan {
+    private TableScan ts;
+    private Index idx;
+    private DistanceFn distFn;
+    private double radius;
+    private RecordId current;
+
+    public IVRangeScan(TableScan ts, Index idx, DistanceFn distFn, double radius) {
+        this.ts = ts;
+        this.idx = idx;
+        this.distFn = distFn;
+        this.radius = radius;
+        beforeFirst();
+    }
+
+    @Override
+    public void beforeFirst() {
+        idx.beforeFirst(distFn, radius);
+        current = null;
+    }
+
+    @Override
+    public boolean next() {
+        if (!idx.next()) {
+            current = null;
+            return false;
+        }
+        current = idx.getDataRecordId();
+        ts.moveToRecordId(current);
+        return true;
+    }
+
+    @Override
+    public Constant getVal(String fldName) {
+        if (current == null)
+            return null;
+        return ts.getVal(fldName);
+    }
+
+    @Override
+    public void close() {
+        idx.close();
+        ts.close();
+    }
+
+    @Override
+    public boolean hasField(String fldName) {
+        return ts.hasField(fldName);
+    }
+}
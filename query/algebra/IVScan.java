@@ -1,112 +1,109 @@
 package org.vanilladb.core.query.algebra;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.PriorityQueue;
-
 import org.vanilladb.core.sql.Constant;
-import org.vanilladb.core.sql.VecRecPair;
-import org.vanilladb.core.sql.VecRecPairComp;
-import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.predicate.Predicate;
+import org.vanilladb.core.storage.file.BlockId;
 import org.vanilladb.core.storage.index.Index;
-import org.vanilladb.core.storage.index.IVF_FLATIndex;
-
-import org.vanilladb.core.storage.metadata.index.IndexInfo;
-import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.util.RidFilter;
+import org.vanilladb.core.util.TopKHeap;
 import org.vanilladb.core.sql.distfn.DistanceFn;
 
 public class IVScan implements Scan {
+    public static final int DEFAULT_K = 20;
 
     private TableScan ts;
-    private IVF_FLATIndex idx;
+    private Index idx;
     private DistanceFn distFn;
+    private int k, nprobe;
     // private double radius;
 
-    private PriorityQueue<VecRecPairComp> pq;
-    private boolean started = false;
+    private RidFilter filter;
+    private TopKHeap heap;
+    private int cursor;
+    private RecordId current;
 
-    public IVScan(TableScan ts, IVF_FLATIndex idx, DistanceFn distFn) {
+    public IVScan(TableScan ts, Index idx, DistanceFn distFn) {
+        this(ts, idx, distFn, -1, -1);
+    }
+
+    /*  keeps the k nearest records (DEFAULT_K if k is -1) and lets the index
+        probe nprobe clusters (the index default if nprobe is -1) */
+    public IVScan(TableScan ts, Index idx, DistanceFn distFn, int k, int nprobe) {
+        this.k = k > 0 ? k : DEFAULT_K;
+        this.nprobe = nprobe;
         this.ts = ts;
         this.idx = idx;
         this.distFn = distFn;
         // this.radius = radius;
+        this.heap = new TopKHeap(this.k);
         beforeFirst();
     }
 
-    public void beforeFirst() {
-        // System.out.println("IVScan beforeFirst: Initializing scan");
-
-        // 開啟索引掃描
-        idx.beforeFirst(distFn);
-        // System.out.println("Distance function set: " + distFn);
-        // System.out.println("Index scan started");
-
-        // 初始化 max heap
-        PriorityQueue<VecRecPairComp> maxPQ = new PriorityQueue<>(20, (a, b) -> b.compareTo(a));
-        // System.out.println("Max PriorityQueue initialized with capacity: 20");
-
-        // System.out.println("index :" + idx.getClass().getName());
-
-        int indexCount = 0; // 計算索引記錄數量
-        while (idx.next()) {
-            //System.out.println("Index record " + indexCount + " scanned");
-            VecRecPair vr = idx.getDataVecRecPair();
-            VecRecPairComp vrc = new VecRecPairComp(vr, distFn);
-
-            if (maxPQ.size() == 20) {
-                // 比較當前元素與堆頂距離大小
-                if (vrc.compareTo(maxPQ.peek()) < 0) {
-                    VecRecPairComp removed = maxPQ.poll();
-                    //System.out.println("Removed farther VecRecPair: " + removed);
-                    maxPQ.add(vrc);
-                    //System.out.println("Added closer VecRecPair: " + vrc);
-                }
-            } else {
-                maxPQ.add(vrc);
-                //System.out.println("Added VecRecPair: " + vrc);
-            }
-
-            indexCount++;
-        }
+    /*  keeps only the records accepted by a pre-computed filter (e.g., a
+        bitmap of the records satisfying the where clause) */
+    public IVScan(TableScan ts, Index idx, DistanceFn distFn, int k, int nprobe, RidFilter filter) {
+        this.k = k > 0 ? k : DEFAULT_K;
+        this.nprobe = nprobe;
+        this.ts = ts;
+        this.idx = idx;
+        this.distFn = distFn;
+        this.filter = filter;
+        this.heap = new TopKHeap(this.k);
+        beforeFirst();
+    }
 
-        // System.out.println("Index scan completed. Total records processed: " + indexCount);
+    /*  keeps only the records satisfying the predicate, which is checked on
+        the data record of every candidate that gets close enough */
+    public IVScan(TableScan ts, Index idx, DistanceFn distFn, int k, int nprobe, Predicate pred) {
+        this(ts, idx, distFn, k, nprobe, (RidFilter) rid -> {
+            ts.moveToRecordId(new RecordId(new BlockId(idx.dataFileName(), TopKHeap.blockNum(rid)),
+                    TopKHeap.id(rid)));
+            return pred.isSatisfied(ts);
+        });
+    }
 
-        // 把 max heap 轉成 min heap
-        pq = new PriorityQueue<>(maxPQ);
-        // System.out.println("Converted Max PriorityQueue to Min PriorityQueue");
-        // System.out.println("Total elements in PriorityQueue: " + pq.size());
-        
-        // 打印最終的 PriorityQueue 大小
-        // System.out.println("Final PriorityQueue size: " + pq.size());
+    public void beforeFirst() {
+        // 收集前 k 近的候選 (距離與壓縮的 record id)
+        heap.clear();
+        idx.collectNearest(distFn, nprobe, heap, filter);
+        heap.sortAscending();
 
         // Reset the state
-        started = false;
-        idx.close();
-        // System.out.println("Index scan closed");
+        cursor = -1;
+        current = null;
     }
 
-
-
     @Override
     public boolean next() {
-        // System.out.println("IVScan next");
-        if (!started) {
-            started = true;
-            return !pq.isEmpty();
+        if (++cursor >= heap.size()) {
+            current = null;
+            return false;
         }
-        pq.poll();
-        return !pq.isEmpty();
+        // 只有最後留下的 k 筆才建立 RecordId
+        long rid = heap.rid(cursor);
+        current = new RecordId(new BlockId(idx.dataFileName(), TopKHeap.blockNum(rid)), TopKHeap.id(rid));
+        ts.moveToRecordId(current);
+        return true;
+    }
+
+    /*  returns the packed record ids of the candidates, nearest first */
+    public long[] candidates() {
+        long[] rids = new long[heap.size()];
+        for (int i = 0; i < rids.length; ++i)
+            rids[i] = heap.rid(i);
+        return rids;
+    }
+
+    /*  moves to the data record of a candidate, which getVal then reads */
+    public void moveToCandidate(long rid) {
+        current = new RecordId(new BlockId(idx.dataFileName(), TopKHeap.blockNum(rid)), TopKHeap.id(rid));
+        ts.moveToRecordId(current);
     }
 
     @Override
     public Constant getVal(String fldName) {
-        // System.out.println("IVScan getVal");
-        VecRecPairComp vrc = pq.peek();
-        if (vrc == null)
+        if (current == null)
             return null;
-
-        ts.moveToRecordId(vrc.getRecordId());
-        // System.out.println("Moved to record ID: " + vrc.getRecordId());
-        
         return ts.getVal(fldName);
     }
 
@@ -59,6 +59,15 @@ public class TablePlan implements Plan {
 		return new TableScan(ti, tx);
 	}
 
+	/**
+	 * Returns the name of the table.
+	 * 
+	 * @return the name of the table
+	 */
+	public String tableName() {
+		return ti.tableName();
+	}
+
 	/**
 	 * Estimates the number of block accesses for the table, which is obtainable
 	 * from the statistics manager.
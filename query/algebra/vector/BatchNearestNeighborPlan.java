@@ -0,0 +1,90 @@
+package org.vanilladb.core.query.algebra.vector;
+
+import java.util.List;
+
+import org.vanilladb.core.query.algebra.IVScan;
+import org.vanilladb.core.query.algebra.Plan;
+import org.vanilladb.core.query.algebra.Scan;
+import org.vanilladb.core.query.algebra.TablePlan;
+import org.vanilladb.core.query.algebra.TableScan;
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.storage.index.IndexType;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.metadata.statistics.Histogram;
+import org.vanilladb.core.storage.tx.Transaction;
+
+/**
+ * Searches the k nearest records of a whole batch of query vectors through
+ * the vector index of a field. The index gets all the queries at once, so a
+ * partitioned index scans every partition once for the batch instead of once
+ * per query. The output holds the fields of the table plus the index of the
+ * query ({@link #QUERY_ID}) and the distance ({@link #DISTANCE}) of every
+ * neighbor, ordered by query and then by distance.
+ */
+public class BatchNearestNeighborPlan implements Plan {
+    public static final String QUERY_ID = "query_id", DISTANCE = "distance";
+
+    private TablePlan child;
+    private IndexInfo ii;
+    private List<DistanceFn> distFns;
+    private int k, nprobe;
+    private Transaction tx;
+    private Schema schema;
+
+    public BatchNearestNeighborPlan(String tblName, String fldName, List<DistanceFn> distFns,
+            int k, int nprobe, Transaction tx) {
+        this.child = new TablePlan(tblName, tx);
+        this.ii = vectorIndex(tblName, fldName, tx);
+        this.distFns = distFns;
+        this.k = k > 0 ? k : IVScan.DEFAULT_K;
+        this.nprobe = nprobe;
+        this.tx = tx;
+
+        schema = new Schema();
+        schema.addAll(child.schema());
+        schema.addField(QUERY_ID, Type.INTEGER);
+        schema.addField(DISTANCE, Type.DOUBLE);
+    }
+
+    /*  returns the vector index on the field; the nearest neighbor and
+        range search plans find their index the same way */
+    static IndexInfo vectorIndex(String tblName, String fldName, Transaction tx) {
+        for (IndexInfo ii : VanillaDb.catalogMgr().getIndexInfo(tblName, fldName, tx)) {
+            IndexType type = ii.indexType();
+            if (type == IndexType.IVF || type == IndexType.IVF_PQ || type == IndexType.HNSW
+                    || type == IndexType.LSH)
+                return ii;
+        }
+        throw new IllegalArgumentException("field '" + fldName + "' of table '" + tblName
+                + "' has no vector index");
+    }
+
+    @Override
+    public Scan open() {
+        TableScan ts = (TableScan) child.open();
+        return new BatchNearestNeighborScan(ts, ii.open(tx), distFns, k, nprobe);
+    }
+
+    @Override
+    public long blocksAccessed() {
+        return child.blocksAccessed();
+    }
+
+    @Override
+    public Schema schema() {
+        return schema;
+    }
+
+    @Override
+    public Histogram histogram() {
+        return child.histogram();
+    }
+
+    @Override
+    public long recordsOutput() {
+        return (long) distFns.size() * k;
+    }
+}
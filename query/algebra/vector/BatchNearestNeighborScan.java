@@ -0,0 +1,85 @@
+package org.vanilladb.core.query.algebra.vector;
+
+import java.util.List;
+
+import org.vanilladb.core.query.algebra.Scan;
+import org.vanilladb.core.query.algebra.TableScan;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.DoubleConstant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.util.TopKHeap;
+
+/**
+ * The scan of {@link BatchNearestNeighborPlan}. The neighbors of all the
+ * queries are collected when the scan is opened; iterating only moves the
+ * table scan to them.
+ */
+public class BatchNearestNeighborScan implements Scan {
+    private TableScan ts;
+    private Index idx;
+    private List<DistanceFn> distFns;
+    private int k, nprobe;
+
+    private TopKHeap[] heaps;
+    private int query, rank;
+
+    public BatchNearestNeighborScan(TableScan ts, Index idx, List<DistanceFn> distFns, int k, int nprobe) {
+        this.ts = ts;
+        this.idx = idx;
+        this.distFns = distFns;
+        this.k = k;
+        this.nprobe = nprobe;
+        beforeFirst();
+    }
+
+    @Override
+    public void beforeFirst() {
+        if (heaps == null) {
+            heaps = idx.collectNearest(distFns, nprobe, k);
+            for (TopKHeap heap : heaps)
+                heap.sortAscending();
+        }
+        query = 0;
+        rank = -1;
+    }
+
+    @Override
+    public boolean next() {
+        while (query < heaps.length) {
+            if (++rank < heaps[query].size()) {
+                long rid = heaps[query].rid(rank);
+                ts.moveToRecordId(new RecordId(new BlockId(idx.dataFileName(), TopKHeap.blockNum(rid)),
+                        TopKHeap.id(rid)));
+                return true;
+            }
+            query++;
+            rank = -1;
+        }
+        return false;
+    }
+
+    @Override
+    public Constant getVal(String fldName) {
+        if (fldName.equals(BatchNearestNeighborPlan.QUERY_ID))
+            return new IntegerConstant(query);
+        if (fldName.equals(BatchNearestNeighborPlan.DISTANCE))
+            return new DoubleConstant(heaps[query].dist(rank));
+        return ts.getVal(fldName);
+    }
+
+    @Override
+    public void close() {
+        // the index is closed once the neighbors are collected
+        ts.close();
+    }
+
+    @Override
+    public boolean hasField(String fldName) {
+        return fldName.equals(BatchNearestNeighborPlan.QUERY_ID)
+                || fldName.equals(BatchNearestNeighborPlan.DISTANCE) || ts.hasField(fldName);
+    }
+}
@@ -1,25 +1,66 @@
 package org.vanilladb.core.query.algebra.vector;
 
 import org.vanilladb.core.query.algebra.IVPlan;
+import org.vanilladb.core.query.algebra.IVScan;
 // import org.vanilladb.core.query.algebra.IVPlan;
 import org.vanilladb.core.query.algebra.Plan;
 import org.vanilladb.core.query.algebra.materialize.SortPlan;
-import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.query.algebra.Scan;
 import org.vanilladb.core.query.algebra.TablePlan;
 import org.vanilladb.core.sql.distfn.DistanceFn;
 import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.predicate.Predicate;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
 import org.vanilladb.core.storage.metadata.statistics.Histogram;
 import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.util.CoreProperties;
 
 public class NearestNeighborPlan implements Plan {
+    /*  filters estimated to keep at most this fraction of the table are
+        evaluated before the search, through an index, if there is one */
+    public static final double PREFILTER_SELECTIVITY;
+
+    static {
+        PREFILTER_SELECTIVITY = CoreProperties.getLoader().getPropertyAsDouble(
+                NearestNeighborPlan.class.getName() + ".PREFILTER_SELECTIVITY", 0.05);
+    }
+
     private Plan child;
 
     public NearestNeighborPlan(Plan p, DistanceFn distFn, Transaction tx) {
+        this(p, distFn, -1, -1, tx);
+    }
+
+    /*  k is the number of nearest records to keep and nprobe the number
+        of clusters to probe; -1 leaves the choice to the index plan */
+    public NearestNeighborPlan(Plan p, DistanceFn distFn, int k, int nprobe, Transaction tx) {
         // this.child = new SortPlan(p, distFn, tx);
-        var iis = VanillaDb.catalogMgr().getIndexInfo("sift", "i_emb", tx);
-        System.out.println("IVF_Flat index plan created...");
-        this.child = new IVPlan((TablePlan) p, iis.get(0),distFn, tx);
+        TablePlan tp = (TablePlan) p;
+        IndexInfo ii = BatchNearestNeighborPlan.vectorIndex(tp.tableName(), distFn.fieldName(), tx);
+        this.child = refined(new IVPlan(tp, ii, distFn, fetched(k), nprobe, tx), distFn, k);
+    }
+
+    /*  searches only the records satisfying the predicate; see IVPlan for
+        the meaning of preFilter and postFilter */
+    public NearestNeighborPlan(TablePlan p, DistanceFn distFn, int k, int nprobe, Plan preFilter,
+            Predicate postFilter, Transaction tx) {
+        IndexInfo ii = BatchNearestNeighborPlan.vectorIndex(p.tableName(), distFn.fieldName(), tx);
+        this.child = refined(new IVPlan(p, ii, distFn, fetched(k), nprobe, preFilter, postFilter, tx),
+                distFn, k);
+    }
+
+    /*  the number of candidates the index plan fetches for the refine step */
+    private static int fetched(int k) {
+        if (RefinePlan.REFINE_FACTOR <= 1)
+            return k;
+        return (k > 0 ? k : IVScan.DEFAULT_K) * RefinePlan.REFINE_FACTOR;
+    }
+
+    /*  re-ranks the candidates by their exact distances if they are more than k */
+    private static Plan refined(IVPlan p, DistanceFn distFn, int k) {
+        if (RefinePlan.REFINE_FACTOR <= 1)
+            return p;
+        return new RefinePlan(p, distFn, k > 0 ? k : IVScan.DEFAULT_K);
     }
 
     @Override
@@ -0,0 +1,48 @@
+package org.vanilladb.core.query.algebra.vector;
+
+import org.vanilladb.core.query.algebra.IVPlan;
+import org.vanilladb.core.query.algebra.Plan;
+import org.vanilladb.core.query.algebra.Scan;
+import org.vanilladb.core.query.algebra.TablePlan;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.metadata.statistics.Histogram;
+import org.vanilladb.core.storage.tx.Transaction;
+
+public class RangeSearchPlan implements Plan {
+    private Plan child;
+
+    /*  returns every record within the radius of the query vector, in the
+        unit of the distance function (a squared distance for euc); the
+        records stream out in the order the clusters are probed, not sorted */
+    public RangeSearchPlan(TablePlan p, DistanceFn distFn, double radius, Transaction tx) {
+        IndexInfo ii = BatchNearestNeighborPlan.vectorIndex(p.tableName(), distFn.fieldName(), tx);
+        this.child = new IVPlan(p, ii, distFn, radius, tx);
+    }
+
+    @Override
+    public Scan open() {
+        return child.open();
+    }
+
+    @Override
+    public long blocksAccessed() {
+        return child.blocksAccessed();
+    }
+
+    @Override
+    public Schema schema() {
+        return child.schema();
+    }
+
+    @Override
+    public Histogram histogram() {
+        return child.histogram();
+    }
+
+    @Override
+    public long recordsOutput() {
+        return child.recordsOutput();
+    }
+}
@@ -0,0 +1,74 @@
+package org.vanilladb.core.query.algebra.vector;
+
+import org.vanilladb.core.query.algebra.IVPlan;
+import org.vanilladb.core.query.algebra.IVScan;
+import org.vanilladb.core.query.algebra.Plan;
+import org.vanilladb.core.query.algebra.Scan;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.storage.metadata.statistics.Histogram;
+import org.vanilladb.core.util.CoreProperties;
+
+/**
+ * Re-ranks the candidates of an approximate search by their exact distances.
+ * The child plan is expected to fetch k &times; {@link #REFINE_FACTOR}
+ * candidates; this plan reads the vectors of the candidates from the base
+ * table, scores them with the full-precision distance function, and keeps the
+ * k nearest.
+ */
+public class RefinePlan implements Plan {
+    /*  the number of candidates fetched per kept record; 1 disables the
+        re-ranking */
+    public static final int REFINE_FACTOR;
+
+    static {
+        REFINE_FACTOR = CoreProperties.getLoader().getPropertyAsInteger(
+                RefinePlan.class.getName() + ".REFINE_FACTOR", 1);
+    }
+
+    private IVPlan child;
+    private DistanceFn distFn;
+    private int k;
+
+    /**
+     * Creates a plan keeping the k nearest candidates of the child plan.
+     *
+     * @param child
+     *            the plan of the approximate search, fetching more than k
+     *            candidates
+     * @param distFn
+     *            the distance function holding the query vector
+     * @param k
+     *            the number of records to keep
+     */
+    public RefinePlan(IVPlan child, DistanceFn distFn, int k) {
+        this.child = child;
+        this.distFn = distFn;
+        this.k = k;
+    }
+
+    @Override
+    public Scan open() {
+        return new RefineScan((IVScan) child.open(), distFn, k);
+    }
+
+    @Override
+    public long blocksAccessed() {
+        return child.blocksAccessed();
+    }
+
+    @Override
+    public Schema schema() {
+        return child.schema();
+    }
+
+    @Override
+    public Histogram histogram() {
+        return child.histogram();
+    }
+
+    @Override
+    public long recordsOutput() {
+        return Math.min(k, child.recordsOutput());
+    }
+}
@@ -0,0 +1,65 @@
+package org.vanilladb.core.query.algebra.vector;
+
+import java.util.Arrays;
+
+import org.vanilladb.core.query.algebra.IVScan;
+import org.vanilladb.core.query.algebra.Scan;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.util.TopKHeap;
+
+public class RefineScan implements Scan {
+    private IVScan s;
+    private DistanceFn distFn;
+    private TopKHeap heap;
+    private int cursor;
+
+    public RefineScan(IVScan s, DistanceFn distFn, int k) {
+        this.s = s;
+        this.distFn = distFn;
+        this.heap = new TopKHeap(k);
+        beforeFirst();
+    }
+
+    @Override
+    public void beforeFirst() {
+        /*  a packed record id starts with the block number, so in the order
+            of the ids every block of the table is pinned only once */
+        long[] rids = s.candidates();
+        Arrays.sort(rids);
+
+        heap.clear();
+        for (long rid : rids) {
+            s.moveToCandidate(rid);
+            double dist = distFn.distance((VectorConstant) s.getVal(distFn.fieldName()));
+            if (dist < heap.threshold())
+                heap.offer((float) dist, rid);
+        }
+        heap.sortAscending();
+        cursor = -1;
+    }
+
+    @Override
+    public boolean next() {
+        if (++cursor >= heap.size())
+            return false;
+        s.moveToCandidate(heap.rid(cursor));
+        return true;
+    }
+
+    @Override
+    public void close() {
+        s.close();
+    }
+
+    @Override
+    public boolean hasField(String fldName) {
+        return s.hasField(fldName);
+    }
+
+    @Override
+    public Constant getVal(String fldName) {
+        return cursor >= 0 && cursor < heap.size() ? s.getVal(fldName) : null;
+    }
+}
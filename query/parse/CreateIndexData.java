@@ -15,8 +15,11 @@
  *******************************************************************************/
 package org.vanilladb.core.query.parse;
 
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
+import org.vanilladb.core.storage.index.IndexOption;
 import org.vanilladb.core.storage.index.IndexType;
 
 /**
@@ -26,6 +29,7 @@ public class CreateIndexData {
 	private String idxName, tblName;
 	private List<String> fldNames;
 	private IndexType idxType;
+	private Set<IndexOption> options;
 
 	/**
 	 * Saves the index type, table and field names of the specified index.
@@ -40,10 +44,31 @@ public class CreateIndexData {
 	 *            the type of the index.
 	 */
 	public CreateIndexData(String idxName, String tblName, List<String> fldNames, IndexType idxType) {
+		this(idxName, tblName, fldNames, idxType, EnumSet.noneOf(IndexOption.class));
+	}
+
+	/**
+	 * Saves the index type, options, table and field names of the specified
+	 * index.
+	 * 
+	 * @param idxName
+	 *            the name of the index.
+	 * @param tblName
+	 *            the name of the indexed table.
+	 * @param fldNames
+	 *            the list of the indexed fields.
+	 * @param idxType
+	 *            the type of the index.
+	 * @param options
+	 *            the options of the index.
+	 */
+	public CreateIndexData(String idxName, String tblName, List<String> fldNames, IndexType idxType,
+			Set<IndexOption> options) {
 		this.idxName = idxName;
 		this.tblName = tblName;
 		this.fldNames = fldNames;
 		this.idxType = idxType;
+		this.options = options;
 	}
 
 	/**
@@ -81,4 +106,13 @@ public class CreateIndexData {
 	public IndexType indexType() {
 		return idxType;
 	}
+
+	/**
+	 * Returns the options of the index.
+	 * 
+	 * @return the options of the index
+	 */
+	public Set<IndexOption> options() {
+		return options;
+	}
 }
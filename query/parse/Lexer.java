@@ -211,9 +211,9 @@ public class Lexer {
 	private void initKeywords() {
 		keywords = Arrays.asList("select", "from", "where", "and", "insert",
 				"into", "values", "delete", "drop", "update", "set", "create", "table",
-				"int", "double", "vector", "varchar", "view", "as", "index", "on",
-				"long", "order", "by", "asc", "desc", "limit", "sum", "count", "avg",
+				"int", "double", "vector", "qvector", "vector16", "varchar", "view", "as", "index", "on",
+				"long", "order", "by", "asc", "desc", "limit", "nprobe", "within", "sum", "count", "avg",
 				"min", "max", "distinct", "group", "add", "sub", "mul", "div",
-				"explain", "using", "hash", "btree", "lsh", "cos", "euc", "ivf");
+				"explain", "using", "with", "hash", "btree", "lsh", "cos", "euc", "dot", "ivf", "ivf_pq", "hnsw");
 	}
 }
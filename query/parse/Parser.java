@@ -21,6 +21,8 @@ import static org.vanilladb.core.sql.Type.BIGINT;
 import static org.vanilladb.core.sql.Type.DOUBLE;
 import static org.vanilladb.core.sql.Type.INTEGER;
 import static org.vanilladb.core.sql.Type.VARCHAR;
+import static org.vanilladb.core.sql.Type.QVECTOR;
+import static org.vanilladb.core.sql.Type.VECTOR16;
 import static org.vanilladb.core.sql.Type.VECTOR;
 import static org.vanilladb.core.sql.predicate.BinaryArithmeticExpression.OP_ADD;
 import static org.vanilladb.core.sql.predicate.BinaryArithmeticExpression.OP_DIV;
@@ -33,6 +35,7 @@ import static org.vanilladb.core.sql.predicate.Term.OP_LT;
 import static org.vanilladb.core.sql.predicate.Term.OP_LTE;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -54,12 +57,14 @@ import org.vanilladb.core.sql.aggfn.SumFn;
 import org.vanilladb.core.sql.distfn.CosineFn;
 import org.vanilladb.core.sql.distfn.DistanceFn;
 import org.vanilladb.core.sql.distfn.EuclideanFn;
+import org.vanilladb.core.sql.distfn.InnerProductFn;
 import org.vanilladb.core.sql.predicate.BinaryArithmeticExpression;
 import org.vanilladb.core.sql.predicate.ConstantExpression;
 import org.vanilladb.core.sql.predicate.Expression;
 import org.vanilladb.core.sql.predicate.FieldNameExpression;
 import org.vanilladb.core.sql.predicate.Predicate;
 import org.vanilladb.core.sql.predicate.Term;
+import org.vanilladb.core.storage.index.IndexOption;
 import org.vanilladb.core.storage.index.IndexType;
 import org.vanilladb.core.util.CoreProperties;
 
@@ -292,9 +297,23 @@ public class Parser {
 			lex.eatKeyword("limit");
 			limit = (int) lex.eatNumericConstant();
 		}
+
+		// the number of clusters probed by a nearest neighbor search
+		int nprobe = -1;
+		if (lex.matchKeyword("nprobe")) {
+			lex.eatKeyword("nprobe");
+			nprobe = (int) lex.eatNumericConstant();
+		}
+
+		// the radius of a range search, which replaces the nearest neighbor search
+		double radius = -1;
+		if (lex.matchKeyword("within")) {
+			lex.eatKeyword("within");
+			radius = lex.eatNumericConstant();
+		}
 		
 		return new QueryData(isExplain, projs.asStringSet(), tables, pred,
-				groupFields, projs.aggregationFns(), sortFields, sortDirs, embFields, limit);
+				groupFields, projs.aggregationFns(), sortFields, sortDirs, embFields, limit, nprobe, radius);
 	}
 
 	/*
@@ -419,6 +438,9 @@ public class Parser {
 					} else if (lex.matchKeyword("euc")) {
 						lex.eatKeyword("euc");
 						distFn = new EuclideanFn(fld);
+					} else if (lex.matchKeyword("dot")) {
+						lex.eatKeyword("dot");
+						distFn = new InnerProductFn(fld);
 					} else {
 						throw new UnsupportedOperationException("Invalid distance function");
 					}
@@ -614,6 +636,18 @@ public class Parser {
 			double arg = lex.eatNumericConstant();
 			lex.eatDelim(')');
 			schema.addField(fldName, VECTOR((int) arg));
+		} else if (lex.matchKeyword("qvector")) {
+			lex.eatKeyword("qvector");
+			lex.eatDelim('(');
+			double arg = lex.eatNumericConstant();
+			lex.eatDelim(')');
+			schema.addField(fldName, QVECTOR((int) arg));
+		} else if (lex.matchKeyword("vector16")) {
+			lex.eatKeyword("vector16");
+			lex.eatDelim('(');
+			double arg = lex.eatNumericConstant();
+			lex.eatDelim(')');
+			schema.addField(fldName, VECTOR16((int) arg));
 		} else {
 			lex.eatKeyword("varchar");
 			lex.eatDelim('(');
@@ -658,11 +692,30 @@ public class Parser {
 			} else if (lex.matchKeyword("ivf")) {
 				lex.eatKeyword("ivf");
 				idxType = IndexType.IVF;
+			} else if (lex.matchKeyword("ivf_pq")) {
+				lex.eatKeyword("ivf_pq");
+				idxType = IndexType.IVF_PQ;
+			} else if (lex.matchKeyword("hnsw")) {
+				lex.eatKeyword("hnsw");
+				idxType = IndexType.HNSW;
 			} else
 				throw new UnsupportedOperationException();
 		}
 		
-		return new CreateIndexData(idxName, tblName, fldNames, idxType);
+		// Index options
+		Set<IndexOption> options = EnumSet.noneOf(IndexOption.class);
+		if (lex.matchKeyword("with")) {
+			lex.eatKeyword("with");
+			for (String option : idList()) {
+				try {
+					options.add(IndexOption.valueOf(option.toUpperCase()));
+				} catch (IllegalArgumentException e) {
+					throw new BadSyntaxException();
+				}
+			}
+		}
+		
+		return new CreateIndexData(idxName, tblName, fldNames, idxType, options);
 	}
 
 	/*
@@ -40,6 +40,8 @@ public class QueryData {
 	private List<DistanceFn> embFields;
 	private boolean isExplain;
 	private int limit;
+	private int nprobe;
+	private double radius;
 
 	/**
 	 * Saves the information of a SQL query.
@@ -63,6 +65,24 @@ public class QueryData {
 	 */
 	public QueryData(boolean isExplain, Set<String> projFields, Set<String> tables, Predicate pred,
 			Set<String> groupFields, Set<AggregationFn> aggFn, List<String> sortFields, List<Integer> sortDirs, List<DistanceFn> embFields, int limit) {
+		this(isExplain, projFields, tables, pred, groupFields, aggFn, sortFields, sortDirs, embFields, limit, -1,
+				-1);
+	}
+
+	/**
+	 * Saves the information of a SQL query, including the number of clusters
+	 * probed by its nearest neighbor search and the radius of its range
+	 * search.
+	 * 
+	 * @param nprobe
+	 *            the number of clusters to probe, or -1 for the index default
+	 * @param radius
+	 *            the largest distance of a returned record, or -1 for a
+	 *            nearest neighbor search
+	 */
+	public QueryData(boolean isExplain, Set<String> projFields, Set<String> tables, Predicate pred,
+			Set<String> groupFields, Set<AggregationFn> aggFn, List<String> sortFields, List<Integer> sortDirs,
+			List<DistanceFn> embFields, int limit, int nprobe, double radius) {
 		this.isExplain = isExplain;
 		this.projFields = projFields;
 		this.tables = tables;
@@ -73,6 +93,8 @@ public class QueryData {
 		this.sortDirs = sortDirs;
 		this.embFields = embFields;
 		this.limit = limit;
+		this.nprobe = nprobe;
+		this.radius = radius;
 	}
 
 	/**
@@ -147,6 +169,14 @@ public class QueryData {
 	public int limit() {
 		return limit;
 	}
+
+	public int nprobe() {
+		return nprobe;
+	}
+
+	public double radius() {
+		return radius;
+	}
 	
 	/**
 	 * Returns true if the query is an explain statement.
@@ -196,6 +226,14 @@ public class QueryData {
 			result.append(" limit " + limit);
 		}
 
+		if (nprobe != -1) {
+			result.append(" nprobe " + nprobe);
+		}
+
+		if (radius >= 0) {
+			result.append(" within " + radius);
+		}
+
 		return result.toString();
 	}
 }
@@ -37,6 +37,7 @@ import org.vanilladb.core.sql.Type;
 import org.vanilladb.core.sql.VarcharConstant;
 import org.vanilladb.core.sql.VectorConstant;
 import org.vanilladb.core.sql.aggfn.AggregationFn;
+import org.vanilladb.core.storage.index.IndexOption;
 import org.vanilladb.core.storage.metadata.TableInfo;
 import org.vanilladb.core.storage.metadata.TableMgr;
 import org.vanilladb.core.storage.tx.Transaction;
@@ -234,6 +235,12 @@ public class Verifier {
 		if (VanillaDb.catalogMgr().getIndexInfoByName(data.indexName(), tx) != null)
 			throw new BadSemanticException("index " + data.indexName()
 					+ " has already existed");
+		
+		// every index type only takes the options it implements
+		for (IndexOption option : data.options())
+			if (!option.appliesTo(data.indexType()))
+				throw new BadSemanticException("index type " + data.indexType()
+						+ " takes no option " + option);
 	}
 
 	public static void verifyDropIndexData(DropIndexData data, Transaction tx) {
@@ -104,10 +104,10 @@ public class IndexUpdatePlanner implements UpdatePlanner {
 		
 		for (IndexInfo ii : indexes) {
 			if (benchingState) {
-				IVF_FLATIndex ivfIdx = (IVF_FLATIndex)ii.open(tx); 
+				Index vecIdx = ii.open(tx); 
 				//System.out.println("NUM_CLUSTERS"+ NUM_CLUSTERS);
-				ivfIdx.insert((VectorConstant) fldValMap.get("i_emb"), rid);
-				ivfIdx.close();
+				vecIdx.insert((VectorConstant) fldValMap.get(ii.fieldNames().get(0)), rid);
+				vecIdx.close();
 			} else {
 				Index idx = ii.open(tx);
 				idx.insert(new SearchKey(ii.fieldNames(), fldValMap), rid, true);
@@ -290,7 +290,7 @@ public class IndexUpdatePlanner implements UpdatePlanner {
 	@Override
 	public int executeCreateIndex(CreateIndexData data, Transaction tx) {
 		VanillaDb.catalogMgr().createIndex(data.indexName(), data.tableName(),
-				data.fieldNames(), data.indexType(), tx);
+				data.fieldNames(), data.indexType(), data.options(), tx);
 		return 0;
 	}
 
@@ -51,7 +51,8 @@ public class HeuristicQueryPlanner implements QueryPlanner {
 			if (viewdef != null)
 				views.add(VanillaDb.newPlanner().createQueryPlan(viewdef, tx));
 			else {
-				TablePlanner tp = new TablePlanner(tbl, data.pred(), data.embeddingFields(), tx, id);
+				TablePlanner tp = new TablePlanner(tbl, data.pred(), data.embeddingFields(),
+						data.limit(), data.nprobe(), data.radius(), tx, id);
 				tablePlanners.add(tp);
 			}
 			id += 1;
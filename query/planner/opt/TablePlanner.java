@@ -27,6 +27,7 @@ import org.vanilladb.core.query.algebra.TablePlan;
 import org.vanilladb.core.query.algebra.index.IndexJoinPlan;
 import org.vanilladb.core.query.algebra.multibuffer.MultiBufferProductPlan;
 import org.vanilladb.core.query.algebra.vector.NearestNeighborPlan;
+import org.vanilladb.core.query.algebra.vector.RangeSearchPlan;
 import org.vanilladb.core.query.planner.index.IndexSelector;
 import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.sql.Schema;
@@ -48,6 +49,8 @@ class TablePlanner {
 	private int hashCode;
 
 	private DistanceFn embField;
+	private int k = -1, nprobe = -1;
+	private double radius = -1;
 
 	/**
 	 * Creates a new table planner. The specified predicate applies to the
@@ -89,6 +92,20 @@ class TablePlanner {
 			}
 		}
 	}
+
+	/**
+	 * Creates a new table planner whose vector search returns every record
+	 * within the radius of the query if the radius is not negative, or else
+	 * the k nearest records, probing nprobe clusters of the index. A value of
+	 * -1 for k or nprobe leaves the corresponding default to the plan.
+	 */
+	public TablePlanner(String tblName, Predicate pred, List<DistanceFn> embFields, int k, int nprobe,
+			double radius, Transaction tx, int id) {
+		this(tblName, pred, embFields, tx, id);
+		this.k = k;
+		this.nprobe = nprobe;
+		this.radius = radius;
+	}
 	
 	/**
 	 * An unique number to this planner.
@@ -114,15 +131,42 @@ class TablePlanner {
 	 * @return a select plan for the table.
 	 */
 	public Plan makeSelectPlan() {
+		if (embField != null)
+			return makeNearestNeighborPlan();
 		Plan p = makeIndexSelectPlan();
 		if (p == null)
 			p = tp;
-		p =  addSelectPredicate(p);
-		if (embField != null) {
-			System.out.println("Using NearestNeighborPlan for " + tblName + " with embedding field: " + embField.fieldName());
-			p = new NearestNeighborPlan(p, embField, tx);
+		return addSelectPredicate(p);
+	}
+
+	/**
+	 * Constructs a nearest neighbor plan over the records satisfying the
+	 * select predicate of the table. If the histograms estimate that the
+	 * predicate keeps few records and an index can find them, the records are
+	 * collected before the search (pre-filtering); otherwise the predicate is
+	 * checked on the candidates of the search, which probes more clusters
+	 * until k of them qualify (post-filtering).
+	 * 
+	 * @return a nearest neighbor plan for the table
+	 */
+	private Plan makeNearestNeighborPlan() {
+		Predicate selectPred = pred.selectPredicate(sch);
+		if (radius >= 0) {
+			// matches stream out of the range search, so they are simply filtered
+			Plan p = new RangeSearchPlan(tp, embField, radius, tx);
+			return selectPred == null ? p : new SelectPlan(p, selectPred);
 		}
-		return p;
+		if (selectPred == null)
+			return new NearestNeighborPlan(tp, embField, k, nprobe, tx);
+
+		Plan ip = makeIndexSelectPlan();
+		if (ip != null) {
+			Plan filtered = new SelectPlan(ip, selectPred);
+			double selectivity = (double) filtered.recordsOutput() / Math.max(1, tp.recordsOutput());
+			if (selectivity <= NearestNeighborPlan.PREFILTER_SELECTIVITY)
+				return new NearestNeighborPlan(tp, embField, k, nprobe, filtered, null, tx);
+		}
+		return new NearestNeighborPlan(tp, embField, k, nprobe, null, selectPred, tx);
 	}
 
 	/**
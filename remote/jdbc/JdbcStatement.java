@@ -46,4 +46,34 @@ public class JdbcStatement extends StatementAdapter {
 		}
 	}
 
+	/**
+	 * Searches the k nearest records of a batch of query vectors in Euclidean
+	 * distance. The result set holds the fields of the table plus "query_id"
+	 * and "distance", ordered by query and then by distance.
+	 * 
+	 * @param tblName
+	 *            the name of the table
+	 * @param fldName
+	 *            the name of the indexed vector field
+	 * @param queries
+	 *            the query vectors
+	 * @param k
+	 *            the number of neighbors per query
+	 * @param nprobe
+	 *            the number of clusters to probe per query, or -1 for the
+	 *            index default
+	 * @return the neighbors of all the queries
+	 * @throws SQLException
+	 */
+	public ResultSet executeBatchNearest(String tblName, String fldName,
+			float[][] queries, int k, int nprobe) throws SQLException {
+		try {
+			RemoteResultSet rrs = rstmt.executeBatchNearest(tblName, fldName,
+					queries, k, nprobe);
+			return new JdbcResultSet(rrs);
+		} catch (Exception e) {
+			throw new SQLException(e);
+		}
+	}
+
 }
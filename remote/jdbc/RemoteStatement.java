@@ -28,4 +28,7 @@ public interface RemoteStatement extends Remote {
 	RemoteResultSet executeQuery(String qry) throws RemoteException;
 
 	int executeUpdate(String cmd) throws RemoteException;
+
+	RemoteResultSet executeBatchNearest(String tblName, String fldName,
+			float[][] queries, int k, int nprobe) throws RemoteException;
 }
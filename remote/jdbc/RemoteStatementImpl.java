@@ -17,9 +17,15 @@ package org.vanilladb.core.remote.jdbc;
 
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.vanilladb.core.query.algebra.Plan;
+import org.vanilladb.core.query.algebra.vector.BatchNearestNeighborPlan;
 import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.sql.distfn.EuclideanFn;
 import org.vanilladb.core.storage.tx.Transaction;
 
 /**
@@ -77,4 +83,33 @@ class RemoteStatementImpl extends UnicastRemoteObject implements
 			throw e;
 		}
 	}
+
+	/**
+	 * Searches the k nearest records of every query vector in Euclidean
+	 * distance, in one pass over the vector index of the specified field. The
+	 * result set holds the fields of the table plus "query_id" and
+	 * "distance", ordered by query and then by distance.
+	 * 
+	 * @see RemoteStatement#executeBatchNearest(String, String, float[][], int,
+	 *      int)
+	 */
+	@Override
+	public RemoteResultSet executeBatchNearest(String tblName, String fldName,
+			float[][] queries, int k, int nprobe) throws RemoteException {
+		try {
+			Transaction tx = rconn.getTransaction();
+			List<DistanceFn> distFns = new ArrayList<DistanceFn>(queries.length);
+			for (float[] query : queries) {
+				DistanceFn distFn = new EuclideanFn(fldName);
+				distFn.setQueryVector(new VectorConstant(query));
+				distFns.add(distFn);
+			}
+			Plan pln = new BatchNearestNeighborPlan(tblName, fldName, distFns,
+					k, nprobe, tx);
+			return new RemoteResultSetImpl(pln, rconn);
+		} catch (RuntimeException e) {
+			rconn.rollback();
+			throw e;
+		}
+	}
 }
@@ -30,9 +30,13 @@ import org.vanilladb.core.query.planner.index.IndexUpdatePlanner;
 import org.vanilladb.core.query.planner.opt.HeuristicQueryPlanner;
 import org.vanilladb.core.query.planner.opt.TrueKNNQueryPlanner;
 import org.vanilladb.core.server.task.TaskMgr;
+import org.vanilladb.core.sql.storedprocedure.CoreStoredProcedureFactory;
 import org.vanilladb.core.sql.storedprocedure.SampleStoredProcedureFactory;
 import org.vanilladb.core.sql.storedprocedure.StoredProcedureFactory;
 import org.vanilladb.core.storage.file.FileMgr;
+import org.vanilladb.core.storage.index.IVFCompactionTask;
+import org.vanilladb.core.storage.index.IVFMaintenanceTask;
+import org.vanilladb.core.storage.index.IVFSnapshotTask;
 import org.vanilladb.core.storage.log.LogMgr;
 import org.vanilladb.core.storage.metadata.CatalogMgr;
 import org.vanilladb.core.storage.metadata.statistics.StatMgr;
@@ -101,8 +105,8 @@ public class VanillaDb {
 			return;
 		}
 
-		// Set the stored procedure factory
-		spFactory = factory;
+		// Set the stored procedure factory, serving the built-in procedures
+		spFactory = new CoreStoredProcedureFactory(factory);
 
 		/*
 		 * Note: We read properties file here before, but we moved it to a utility
@@ -156,6 +160,24 @@ public class VanillaDb {
 		if (doCheckpointing)
 			initCheckpointingTask();
 
+		// initializing IVF maintenance task
+		boolean doIvfMaintenance = CoreProperties.getLoader()
+				.getPropertyAsBoolean(VanillaDb.class.getName() + ".DO_IVF_MAINTENANCE", false);
+		if (doIvfMaintenance)
+			initIvfMaintenanceTask();
+
+		// initializing IVF compaction task
+		boolean doIvfCompaction = CoreProperties.getLoader()
+				.getPropertyAsBoolean(VanillaDb.class.getName() + ".DO_IVF_COMPACTION", false);
+		if (doIvfCompaction)
+			initIvfCompactionTask();
+
+		// loading the IVF snapshots and warming up the IVF indexes
+		boolean doIvfSnapshot = CoreProperties.getLoader()
+				.getPropertyAsBoolean(VanillaDb.class.getName() + ".DO_IVF_SNAPSHOT", false);
+		if (doIvfSnapshot)
+			initIvfSnapshotTask();
+
 		// finish initialization
 		inited = true;
 	}
@@ -235,6 +257,30 @@ public class VanillaDb {
 		taskMgr.runTask(new CheckpointTask());
 	}
 
+	/**
+	 * Initialize a background task maintaining the clusters of IVF indexes.
+	 */
+	public static void initIvfMaintenanceTask() {
+		taskMgr.runTask(new IVFMaintenanceTask());
+	}
+
+	/**
+	 * Initialize a background task purging the deleted entries of IVF indexes.
+	 */
+	public static void initIvfCompactionTask() {
+		taskMgr.runTask(new IVFCompactionTask());
+	}
+
+	/**
+	 * Maps the snapshots of IVF indexes and initialize a background task
+	 * warming up the indexes and keeping the snapshots fresh.
+	 */
+	public static void initIvfSnapshotTask() {
+		IVFSnapshotTask task = new IVFSnapshotTask();
+		task.loadSnapshots();
+		taskMgr.runTask(task);
+	}
+
 	public static FileMgr fileMgr() {
 		return fileMgr;
 	}
@@ -37,13 +37,15 @@ public class Cluster {
 
     public void reComputeCentroid(){
         if (data.size() == 0) return;
-        VectorConstant newCentroid = data.get(0).getVec();
-        for (int i=1; i < data.size(); i++) {
-            VectorConstant vec = data.get(i).getVec();
-            newCentroid = (VectorConstant)newCentroid.add(vec);
+        float[] sum = new float[centroid.dimension()];
+        for (VecRecPair p : data) {
+            float[] vec = p.getVec().asJavaVal();
+            for (int d = 0; d < sum.length; d++)
+                sum[d] += vec[d];
         }
-        
+        for (int d = 0; d < sum.length; d++)
+            sum[d] /= data.size();
 
-        newCentroid = (VectorConstant) newCentroid.div(new IntegerConstant(data.size()));
+        centroid = new VectorConstant(sum);
     }
 }
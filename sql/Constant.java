@@ -55,6 +55,10 @@ public abstract class Constant implements Comparable<Constant> {
 			return new VarcharConstant(val, type);
 		case (ARRAY):
 			return new VectorConstant(val);
+		case (Type.QVECTOR_SQL_TYPE):
+			return new QuantizedVectorConstant(val, (QuantizedVectorType) type);
+		case (Type.VECTOR16_SQL_TYPE):
+			return new HalfVectorConstant(val);
 		}
 		throw new UnsupportedOperationException("Unspported SQL type: " + type.getSqlType());
 	}
@@ -80,6 +84,10 @@ public abstract class Constant implements Comparable<Constant> {
 			return defaultVarchar;
 		case (ARRAY):
 			return defaultVector;
+		case (Type.QVECTOR_SQL_TYPE):
+			return new QuantizedVectorConstant(new byte[type.getArgument()], (QuantizedVectorType) type);
+		case (Type.VECTOR16_SQL_TYPE):
+			return new HalfVectorConstant(new short[type.getArgument()]);
 		}
 		throw new UnsupportedOperationException("Unspported SQL type: " + type.getSqlType());
 	}
@@ -0,0 +1,108 @@
+package org.vanilladb.core.sql;
+
+import static java.sql.Types.ARRAY;
+
+/**
+ * A vector constant stored as one bfloat16 per dimension. The 16-bit values
+ * are what gets written to pages; the float view inherited from
+ * {@link VectorConstant} is widened from them.
+ */
+public class HalfVectorConstant extends VectorConstant {
+    private static final long serialVersionUID = 1L;
+
+    private short[] bits;
+
+    public HalfVectorConstant(short[] bits) {
+        super(widen(bits), new HalfVectorType(bits.length));
+        this.bits = bits;
+    }
+
+    public HalfVectorConstant(float[] vector) {
+        this(narrow(vector));
+    }
+
+    /**
+     * Reconstructs a vector from the bytes written to a page.
+     */
+    public HalfVectorConstant(byte[] bytes) {
+        this(fromBytes(bytes));
+    }
+
+    /**
+     * Rounds a float to the nearest bfloat16, ties to even.
+     */
+    public static short toBFloat16(float f) {
+        int b = Float.floatToRawIntBits(f);
+        if (Float.isNaN(f))
+            return (short) ((b >>> 16) | 0x40);
+        b += 0x7FFF + ((b >>> 16) & 1);
+        return (short) (b >>> 16);
+    }
+
+    public static float toFloat(short bf16) {
+        return Float.intBitsToFloat(bf16 << 16);
+    }
+
+    private static short[] narrow(float[] vec) {
+        short[] bits = new short[vec.length];
+        for (int i = 0; i < vec.length; i++)
+            bits[i] = toBFloat16(vec[i]);
+        return bits;
+    }
+
+    private static float[] widen(short[] bits) {
+        float[] vec = new float[bits.length];
+        for (int i = 0; i < bits.length; i++)
+            vec[i] = toFloat(bits[i]);
+        return vec;
+    }
+
+    private static short[] fromBytes(byte[] bytes) {
+        short[] bits = new short[bytes.length / Short.BYTES];
+        for (int i = 0; i < bits.length; i++)
+            bits[i] = (short) ((bytes[2 * i] << 8) | (bytes[2 * i + 1] & 0xFF));
+        return bits;
+    }
+
+    /**
+     * Return the bfloat16 values of the vector
+     */
+    public short[] bits() {
+        return bits;
+    }
+
+    @Override
+    public HalfVectorType getType() {
+        return (HalfVectorType) super.getType();
+    }
+
+    @Override
+    public byte[] asBytes() {
+        byte[] bytes = new byte[bits.length * Short.BYTES];
+        for (int i = 0; i < bits.length; i++) {
+            bytes[2 * i] = (byte) (bits[i] >>> 8);
+            bytes[2 * i + 1] = (byte) bits[i];
+        }
+        return bytes;
+    }
+
+    @Override
+    public int size() {
+        return bits.length * Short.BYTES;
+    }
+
+    @Override
+    public Constant castTo(Type type) {
+        if (getType().equals(type))
+            return this;
+        switch (type.getSqlType()) {
+            case ARRAY:
+                return new VectorConstant(asJavaVal());
+            case Type.QVECTOR_SQL_TYPE:
+                return new QuantizedVectorConstant(asJavaVal(), (QuantizedVectorType) type);
+            case Type.VECTOR16_SQL_TYPE:
+                return new HalfVectorConstant(asJavaVal());
+        }
+        return super.castTo(type);
+    }
+}
@@ -0,0 +1,65 @@
+package org.vanilladb.core.sql;
+
+/**
+ * The type of a half-precision vector constant. Each dimension is stored as
+ * a bfloat16, the upper 16 bits of a float32, so it keeps the range of a
+ * float with an 8-bit mantissa and widens back to a float with a shift.
+ */
+public class HalfVectorType extends Type {
+    private int size;
+
+    HalfVectorType(int size) {
+        this.size = size;
+    }
+
+    @Override
+    public int getSqlType() {
+        return VECTOR16_SQL_TYPE;
+    }
+
+    @Override
+    public int getArgument() {
+        return size;
+    }
+
+    @Override
+    public boolean isFixedSize() {
+        return true;
+    }
+
+    @Override
+    public boolean isNumeric() {
+        return false;
+    }
+
+    @Override
+    public int maxSize() {
+        return size * Short.BYTES;
+    }
+
+    @Override
+    public Constant maxValue() {
+        throw new UnsupportedOperationException("HalfVectorType does not support maxValue()");
+    }
+
+    @Override
+    public Constant minValue() {
+        throw new UnsupportedOperationException("HalfVectorType does not support minValue()");
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this)
+            return true;
+        if (obj == null || !(obj instanceof HalfVectorType))
+            return false;
+        HalfVectorType t = (HalfVectorType) obj;
+        return getSqlType() == t.getSqlType()
+                && getArgument() == t.getArgument();
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * size + getSqlType();
+    }
+}
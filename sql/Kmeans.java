@@ -1,130 +1,495 @@
 package org.vanilladb.core.sql;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
+import org.vanilladb.core.util.CoreProperties;
+
+import jdk.incubator.vector.*;
+
+/**
+ * Lloyd's k-means over float32 vectors. The centroids live in one row-major
+ * float buffer, the points are assigned in parallel on a fork/join pool, and
+ * every worker accumulates the sums of its points into a primitive buffer of
+ * its own with Vector API kernels.
+ *
+ * <p>
+ * If {@link #BATCH_SIZE} is positive and smaller than the data, every
+ * iteration only assigns a random mini-batch of the points and moves the
+ * centroids towards the batch means with per-centroid learning rates.
+ * Training stops early once the centroids move less than
+ * {@link #TOLERANCE} relative to their magnitude.
+ * </p>
+ *
+ * <p>
+ * If {@link #BALANCE_FACTOR} is positive (or a capacity is given with
+ * {@link #withCapacity(int)}), no cluster ends up with more than that many
+ * times the average number of points: the points of an overfull cluster
+ * that are cheapest to move spill to their nearest centroid with room left,
+ * and the centroids are then recomputed from the balanced clusters.
+ * </p>
+ */
 public class Kmeans {
-    private int k;
-    private List<Cluster> clusters;
+    public static final int THREADS;
+    public static final int BATCH_SIZE;
+    public static final double TOLERANCE;
+    public static final double BALANCE_FACTOR;
+
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final int MIN_CHUNK = 1024;
+
+    static {
+        THREADS = CoreProperties.getLoader().getPropertyAsInteger(
+                Kmeans.class.getName() + ".THREADS", Runtime.getRuntime().availableProcessors());
+        BATCH_SIZE = CoreProperties.getLoader().getPropertyAsInteger(
+                Kmeans.class.getName() + ".BATCH_SIZE", 0);
+        TOLERANCE = CoreProperties.getLoader().getPropertyAsDouble(
+                Kmeans.class.getName() + ".TOLERANCE", 1e-4);
+        BALANCE_FACTOR = CoreProperties.getLoader().getPropertyAsDouble(
+                Kmeans.class.getName() + ".BALANCE_FACTOR", 0.0);
+    }
+
+    private static ForkJoinPool pool;
+
+    private int k, dim;
+    private float[][] points;
     private List<VecRecPair> data;
+    private float[] centroids;
+    private int[] assignment;
+    private List<Cluster> clusters;
+    private Random random = new Random();
+    private int capacity;
 
     public Kmeans(int k, List<VecRecPair> data) {
+        this(k, toArrays(data));
+        this.data = data;
+    }
 
-        System.out.println("Kmeans initialized with k = " + k + ", data size = " + data.size());
+    public Kmeans(int k, float[][] points) {
+        if (points.length == 0)
+            throw new IllegalArgumentException("cannot run k-means on no data");
 
-        this.k = k;
-        this.data = data;
+        this.k = Math.min(k, points.length);
+        this.dim = points[0].length;
+        this.points = points;
+        this.assignment = new int[points.length];
         this.clusters = new ArrayList<>();
+        this.capacity = BALANCE_FACTOR > 0 ? capacityOf(BALANCE_FACTOR) : Integer.MAX_VALUE;
     }
 
+    private int capacityOf(double factor) {
+        // at least the average size, so that every point finds a place
+        return (int) Math.ceil(Math.max(1.0, factor) * points.length / k);
+    }
+
+    private static float[][] toArrays(List<VecRecPair> data) {
+        float[][] points = new float[data.size()][];
+        for (int i = 0; i < points.length; i++)
+            points[i] = data.get(i).getVec().asJavaVal();
+        return points;
+    }
+
+    /**
+     * Makes the initial centroids and the mini-batches reproducible.
+     */
+    public Kmeans withSeed(long seed) {
+        this.random = new Random(seed);
+        return this;
+    }
+
+    /**
+     * Caps the number of points of every cluster, overriding
+     * {@link #BALANCE_FACTOR}. The cap is raised to the average cluster size
+     * if it is smaller.
+     *
+     * @param maxSize
+     *            the maximum number of points of a cluster
+     */
+    public Kmeans withCapacity(int maxSize) {
+        this.capacity = Math.max(maxSize, capacityOf(1.0));
+        return this;
+    }
+
+    /**
+     * Trains the centroids and groups the data pairs into clusters.
+     *
+     * @param maxIter
+     *            the maximum number of iterations
+     * @return the clusters, each holding its centroid and the pairs assigned to it
+     */
     public List<Cluster> KMeansPlusPlus(int maxIter){
-        
+        train(maxIter);
+
+        clusters.clear();
+        for (int c = 0; c < k; c++)
+            clusters.add(new Cluster(new VectorConstant(centroid(c))));
+        if (data != null)
+            for (int i = 0; i < assignment.length; i++)
+                clusters.get(assignment[i]).addData(data.get(i));
+
+        return clusters;
+    }
+
+    /**
+     * Trains the centroids.
+     *
+     * @param maxIter
+     *            the maximum number of iterations
+     * @return the centroids
+     */
+    public float[][] train(int maxIter) {
         initializeRandomCentroids();
 
+        boolean miniBatch = BATCH_SIZE > 0 && BATCH_SIZE < points.length;
+        long[] seen = new long[k];
         for (int i = 0; i < maxIter; i++) {
+            // the steps return the squared shift, so both sides are compared as lengths
+            double shift = Math.sqrt(miniBatch ? miniBatchStep(seen) : lloydStep());
+            if (shift <= TOLERANCE * Math.sqrt(squaredNorm(centroids)))
+                break;
+        }
 
-            System.out.println("Iteration " + (i + 1) + " of KMeans++...");
+        // the last step leaves the assignment of the full data
+        // out of date: mini-batches skip points, Lloyd's step moves centroids
+        pool().invoke(new Step(null, 0, points.length, false));
+        if (capacity < points.length)
+            rebalance();
 
-            for (Cluster c: clusters) c.clearData();
+        float[][] result = new float[k][];
+        for (int c = 0; c < k; c++)
+            result[c] = centroid(c);
+        return result;
+    }
 
-            // step 1: assign each point to the closest centroid
-            for (VecRecPair p : data) {
-                Cluster c = assignCluster(p);
-                c.addData(p);
-            }
+    /**
+     * Returns the index of the nearest centroid of every point, as of the end
+     * of training.
+     */
+    public int[] assignments() {
+        return assignment;
+    }
 
-            // step 2: update the centroids
-            for (Cluster c : clusters) {
-                
-                c.reComputeCentroid();  
-            }
+    /**
+     * Returns the number of points assigned to every cluster, as of the end
+     * of training.
+     */
+    public int[] clusterSizes() {
+        int[] sizes = new int[k];
+        for (int c : assignment)
+            sizes[c]++;
+        return sizes;
+    }
 
-        }
+    public SizeStats sizeStats() {
+        return new SizeStats(clusterSizes());
+    }
 
+    public List<Cluster> getClusters() {
         return clusters;
     }
 
+    // for k-means intialization (not k-means++)
+    private void initializeRandomCentroids() {
+        // a partial Fisher-Yates shuffle picks k distinct points
+        int[] order = new int[points.length];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        centroids = new float[k * dim];
+        for (int c = 0; c < k; c++) {
+            int j = c + random.nextInt(order.length - c);
+            int tmp = order[c];
+            order[c] = order[j];
+            order[j] = tmp;
+            System.arraycopy(points[order[c]], 0, centroids, c * dim, dim);
+        }
+    }
 
-    // for k-menas++
-    private void intializeCentroids(){
+    /*  assigns all points, moves every centroid to the mean of its points
+        and returns the squared distance the centroids moved */
+    private double lloydStep() {
+        Partial p = pool().invoke(new Step(null, 0, points.length, true));
 
-        System.out.println("Initializing centroids using KMeans++...");
+        double shift = 0;
+        for (int c = 0; c < k; c++) {
+            // empty clusters keep their previous position
+            if (p.counts[c] == 0)
+                continue;
+            float inv = 1.0f / p.counts[c];
+            for (int d = 0; d < dim; d++) {
+                float next = p.sums[c * dim + d] * inv;
+                float diff = next - centroids[c * dim + d];
+                shift += diff * diff;
+                centroids[c * dim + d] = next;
+            }
+        }
+        return shift;
+    }
 
-        Random random = new Random();
+    /*  assigns a random batch and moves every touched centroid towards the
+        batch mean, weighted by the number of points it has seen so far */
+    private double miniBatchStep(long[] seen) {
+        int[] batch = new int[BATCH_SIZE];
+        for (int i = 0; i < batch.length; i++)
+            batch[i] = random.nextInt(points.length);
+        Partial p = pool().invoke(new Step(batch, 0, batch.length, true));
 
-        clusters.clear();
-        
-        // step 1: choose a random point as the first centroid
+        double shift = 0;
+        for (int c = 0; c < k; c++) {
+            if (p.counts[c] == 0)
+                continue;
+            seen[c] += p.counts[c];
+            float eta = (float) p.counts[c] / seen[c];
+            float inv = 1.0f / p.counts[c];
+            for (int d = 0; d < dim; d++) {
+                float diff = eta * (p.sums[c * dim + d] * inv - centroids[c * dim + d]);
+                shift += diff * diff;
+                centroids[c * dim + d] += diff;
+            }
+        }
+        return shift;
+    }
 
-        VecRecPair first = data.get(random.nextInt(data.size()));
-        clusters.add(new Cluster(first.getVec()));
+    /*  spills points out of the clusters above the capacity, cheapest moves
+        first, and moves the centroids to the means of the balanced clusters */
+    private void rebalance() {
+        int[] sizes = clusterSizes();
 
-        // step 2: choose the next k-1 centroids by distance
+        // group the points by cluster
+        int[] start = new int[k + 1];
+        for (int c = 0; c < k; c++)
+            start[c + 1] = start[c] + sizes[c];
+        int[] members = new int[points.length];
+        int[] fill = Arrays.copyOf(start, k);
+        for (int i = 0; i < points.length; i++)
+            members[fill[assignment[i]]++] = i;
 
-        while(clusters.size() < k) {
-            
-            if (clusters.size() % 10 == 0) {
-                System.out.println("Already chose " + clusters.size() + "th centroid\n");
+        for (int c = 0; c < k; c++) {
+            if (sizes[c] <= capacity)
+                continue;
+            int m = start[c + 1] - start[c];
+            int[] target = new int[m];
+            long[] order = new long[m];
+            for (int j = 0; j < m; j++) {
+                float[] p = points[members[start[c] + j]];
+                target[j] = nearestWithRoom(p, c, sizes);
+                float penalty = squaredDistance(p, centroids, target[j] * dim, dim)
+                        - squaredDistance(p, centroids, c * dim, dim);
+                // a non-negative float sorts like its bits
+                order[j] = ((long) Float.floatToIntBits(Math.max(0f, penalty)) << 32) | j;
             }
+            Arrays.sort(order);
 
-            
+            for (int o = 0; o < m && sizes[c] > capacity; o++) {
+                int j = (int) order[o];
+                int i = members[start[c] + j];
+                int t = target[j];
+                // the planned target may have filled up in the meantime
+                if (sizes[t] >= capacity)
+                    t = nearestWithRoom(points[i], c, sizes);
+                assignment[i] = t;
+                sizes[t]++;
+                sizes[c]--;
+            }
+        }
 
-            List<Double> distances = new ArrayList<>();
-            double sum = 0;
+        float[] sums = new float[k * dim];
+        for (int i = 0; i < points.length; i++)
+            accumulate(sums, assignment[i] * dim, points[i]);
+        for (int c = 0; c < k; c++)
+            if (sizes[c] > 0)
+                for (int d = 0; d < dim; d++)
+                    centroids[c * dim + d] = sums[c * dim + d] / sizes[c];
+    }
 
-            for (VecRecPair p : data) {
-                double minDistance = Double.MAX_VALUE;
-                for (Cluster c : clusters) {
-                   double d = p.getVec().distance(c.getCentroid());
-                   minDistance = Math.min(minDistance, d);
-                }
-                double w = Math.pow(minDistance, 2);
-                distances.add(w);
-                sum += w;
+    private int nearestWithRoom(float[] point, int except, int[] sizes) {
+        int best = -1;
+        float min = Float.MAX_VALUE;
+        for (int c = 0; c < k; c++) {
+            if (c == except || sizes[c] >= capacity)
+                continue;
+            float d = squaredDistance(point, centroids, c * dim, dim);
+            if (d < min) {
+                min = d;
+                best = c;
             }
+        }
+        return best;
+    }
+
+    private float[] centroid(int c) {
+        float[] vec = new float[dim];
+        System.arraycopy(centroids, c * dim, vec, 0, dim);
+        return vec;
+    }
 
-            double r = random.nextDouble() * sum;
-            double total = 0;
-            for (int i = 0; i < distances.size(); i++) {
-                total += distances.get(i);
-                if (total >= r) {
-                    clusters.add(new Cluster(data.get(i).getVec()));
-                    break;
-                }
+    private int nearest(float[] point) {
+        int best = 0;
+        float min = Float.MAX_VALUE;
+        for (int c = 0; c < k; c++) {
+            float d = squaredDistance(point, centroids, c * dim, dim);
+            if (d < min) {
+                min = d;
+                best = c;
             }
         }
+        return best;
+    }
 
+    private static float squaredDistance(float[] a, float[] b, int bOffset, int dim) {
+        int i = 0;
+        FloatVector acc = FloatVector.zero(SPECIES);
+        for (; i < SPECIES.loopBound(dim); i += SPECIES.length()) {
+            FloatVector diff = FloatVector.fromArray(SPECIES, a, i)
+                    .sub(FloatVector.fromArray(SPECIES, b, bOffset + i));
+            acc = diff.fma(diff, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < dim; i++) {
+            float diff = a[i] - b[bOffset + i];
+            sum += diff * diff;
+        }
+        return sum;
     }
-    
-    // for k-means intialization (not k-means++)
-    private void initializeRandomCentroids() {
-        System.out.println("Initializing centroids randomly...");
 
-        Random random = new Random();
-        clusters.clear();
+    private static void accumulate(float[] sums, int offset, float[] point) {
+        int i = 0;
+        for (; i < SPECIES.loopBound(point.length); i += SPECIES.length())
+            FloatVector.fromArray(SPECIES, sums, offset + i)
+                    .add(FloatVector.fromArray(SPECIES, point, i))
+                    .intoArray(sums, offset + i);
+        for (; i < point.length; i++)
+            sums[offset + i] += point[i];
+    }
 
-        for (int i = 0; i < k; i++) {
-            VecRecPair randomPair = data.get(random.nextInt(data.size()));
-            clusters.add(new Cluster(randomPair.getVec()));
-        }
+    private static double squaredNorm(float[] vec) {
+        double sum = 0;
+        for (float f : vec)
+            sum += f * f;
+        return sum;
     }
 
-    private Cluster assignCluster(VecRecPair p){
-        Cluster closest = null;
-        double minDistance = Double.MAX_VALUE;
+    private static synchronized ForkJoinPool pool() {
+        if (pool == null)
+            pool = new ForkJoinPool(THREADS);
+        return pool;
+    }
+
+    /**
+     * Summarizes the cluster sizes of a trained model. The imbalance is the
+     * ratio of the largest size to the mean, which bounds how many more
+     * entries the worst probe scans than the average one.
+     */
+    public static class SizeStats {
+        private final int min, max;
+        private final double mean, stddev;
 
-        for (Cluster c : clusters) {
-            double d = p.getVec().distance(c.getCentroid());
-            if (d < minDistance) {
-                minDistance = d;
-                closest = c;
+        SizeStats(int[] sizes) {
+            int min = Integer.MAX_VALUE, max = 0;
+            long sum = 0;
+            for (int s : sizes) {
+                min = Math.min(min, s);
+                max = Math.max(max, s);
+                sum += s;
             }
+            double mean = (double) sum / sizes.length, var = 0;
+            for (int s : sizes)
+                var += (s - mean) * (s - mean);
+            this.min = min;
+            this.max = max;
+            this.mean = mean;
+            this.stddev = Math.sqrt(var / sizes.length);
+        }
+
+        public int min() {
+            return min;
+        }
+
+        public int max() {
+            return max;
+        }
+
+        public double mean() {
+            return mean;
         }
 
-        return closest;
+        public double stddev() {
+            return stddev;
+        }
+
+        public double imbalance() {
+            return mean == 0 ? 0 : max / mean;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("min = %d, max = %d, mean = %.1f, stddev = %.1f, imbalance = %.2f",
+                    min, max, mean, stddev, imbalance());
+        }
     }
-    
-    public List<Cluster> getClusters() {
-        return clusters;
+
+    /*  the per-centroid sums and counts of a range of points */
+    private static class Partial {
+        final float[] sums;
+        final int[] counts;
+
+        Partial(int k, int dim, boolean accumulate) {
+            this.sums = accumulate ? new float[k * dim] : null;
+            this.counts = new int[k];
+        }
+
+        Partial merge(Partial other) {
+            if (sums != null)
+                for (int i = 0; i < sums.length; i++)
+                    sums[i] += other.sums[i];
+            for (int c = 0; c < counts.length; c++)
+                counts[c] += other.counts[c];
+            return this;
+        }
+    }
+
+    /*  assigns the points [lo, hi) of the batch (or of all the points if the
+        batch is null) to their nearest centroids */
+    private class Step extends RecursiveTask<Partial> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] batch;
+        private final int lo, hi;
+        private final boolean accumulate;
+
+        Step(int[] batch, int lo, int hi, boolean accumulate) {
+            this.batch = batch;
+            this.lo = lo;
+            this.hi = hi;
+            this.accumulate = accumulate;
+        }
+
+        @Override
+        protected Partial compute() {
+            // a few chunks per worker, so that the partial sums stay few
+            int total = batch == null ? points.length : batch.length;
+            int chunk = Math.max(MIN_CHUNK, total / (4 * THREADS));
+            if (hi - lo > chunk) {
+                int mid = (lo + hi) >>> 1;
+                Step left = new Step(batch, lo, mid, accumulate);
+                left.fork();
+                Partial right = new Step(batch, mid, hi, accumulate).compute();
+                return left.join().merge(right);
+            }
+
+            Partial p = new Partial(k, dim, accumulate);
+            for (int i = lo; i < hi; i++) {
+                int idx = batch == null ? i : batch[i];
+                int c = nearest(points[idx]);
+                if (batch == null)
+                    assignment[idx] = c;
+                p.counts[c]++;
+                if (accumulate)
+                    accumulate(p.sums, c * dim, points[idx]);
+            }
+            return p;
+        }
     }
 }
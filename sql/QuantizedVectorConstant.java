@@ -0,0 +1,60 @@
+package org.vanilladb.core.sql;
+
+import static java.sql.Types.ARRAY;
+
+/**
+ * A vector constant stored as one signed byte code per dimension. The codes
+ * are what gets written to pages; the float view inherited from
+ * {@link VectorConstant} is decoded with the calibration of the type.
+ */
+public class QuantizedVectorConstant extends VectorConstant {
+    private static final long serialVersionUID = 1L;
+
+    private byte[] codes;
+
+    public QuantizedVectorConstant(byte[] codes, QuantizedVectorType type) {
+        super(type.dequantize(codes), type);
+        this.codes = codes;
+    }
+
+    public QuantizedVectorConstant(float[] vector, QuantizedVectorType type) {
+        this(type.quantize(vector), type);
+    }
+
+    /**
+     * Return the quantized codes of the vector
+     */
+    public byte[] codes() {
+        return codes;
+    }
+
+    @Override
+    public QuantizedVectorType getType() {
+        return (QuantizedVectorType) super.getType();
+    }
+
+    @Override
+    public byte[] asBytes() {
+        return codes.clone();
+    }
+
+    @Override
+    public int size() {
+        return codes.length;
+    }
+
+    @Override
+    public Constant castTo(Type type) {
+        if (getType().equals(type))
+            return this;
+        switch (type.getSqlType()) {
+            case ARRAY:
+                return new VectorConstant(asJavaVal());
+            case Type.QVECTOR_SQL_TYPE:
+                return new QuantizedVectorConstant(asJavaVal(), (QuantizedVectorType) type);
+            case Type.VECTOR16_SQL_TYPE:
+                return new HalfVectorConstant(asJavaVal());
+        }
+        return super.castTo(type);
+    }
+}
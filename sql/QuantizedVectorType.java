@@ -0,0 +1,164 @@
+package org.vanilladb.core.sql;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The type of a scalar-quantized vector constant. Each dimension is stored in
+ * one byte, linearly mapping the calibrated range [min, max] of the dimension
+ * onto 256 levels. The calibration is kept in the catalog along with the
+ * field; the default range [0, 255] stores byte-valued vectors (e.g. SIFT)
+ * losslessly.
+ */
+public class QuantizedVectorType extends Type {
+    private static final int LEVELS = 255;
+    // the signed code of the lowest level, so codes fill a whole byte
+    private static final int CODE_BIAS = 128;
+
+    private int size;
+    private float[] min, scale, offset;
+
+    QuantizedVectorType(int size) {
+        this.size = size;
+        float[] min = new float[size], max = new float[size];
+        Arrays.fill(max, LEVELS);
+        setCalibration(min, max);
+    }
+
+    public QuantizedVectorType(float[] min, float[] max) {
+        if (min.length != max.length)
+            throw new IllegalArgumentException("calibration bounds have different dimensions");
+        this.size = min.length;
+        setCalibration(min, max);
+    }
+
+    /**
+     * Returns a type calibrated to the per-dimension range of the sample.
+     *
+     * @param sample
+     *            the vectors to calibrate on
+     * @return the calibrated type
+     */
+    public static QuantizedVectorType calibrate(List<float[]> sample) {
+        int dim = sample.get(0).length;
+        float[] min = new float[dim], max = new float[dim];
+        Arrays.fill(min, Float.MAX_VALUE);
+        Arrays.fill(max, -Float.MAX_VALUE);
+        for (float[] vec : sample)
+            for (int i = 0; i < dim; i++) {
+                min[i] = Math.min(min[i], vec[i]);
+                max[i] = Math.max(max[i], vec[i]);
+            }
+        return new QuantizedVectorType(min, max);
+    }
+
+    private void setCalibration(float[] min, float[] max) {
+        this.min = min.clone();
+        this.scale = new float[size];
+        this.offset = new float[size];
+        for (int i = 0; i < size; i++) {
+            // a constant dimension still needs a non-zero step
+            scale[i] = max[i] > min[i] ? (max[i] - min[i]) / LEVELS : 1;
+            offset[i] = min[i] + CODE_BIAS * scale[i];
+        }
+    }
+
+    /**
+     * Quantizes a vector into signed byte codes, clamping values outside the
+     * calibrated range.
+     */
+    public byte[] quantize(float[] vec) {
+        if (vec.length != size)
+            throw new IllegalArgumentException("Vector length does not match");
+        byte[] codes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            int level = Math.round((vec[i] - min[i]) / scale[i]);
+            codes[i] = (byte) (Math.max(0, Math.min(LEVELS, level)) - CODE_BIAS);
+        }
+        return codes;
+    }
+
+    public float[] dequantize(byte[] codes) {
+        float[] vec = new float[size];
+        for (int i = 0; i < size; i++)
+            vec[i] = offset[i] + scale[i] * codes[i];
+        return vec;
+    }
+
+    public float[] min() {
+        return min;
+    }
+
+    public float[] max() {
+        float[] max = new float[size];
+        for (int i = 0; i < size; i++)
+            max[i] = min[i] + LEVELS * scale[i];
+        return max;
+    }
+
+    /**
+     * Returns the per-dimension step between two adjacent codes.
+     */
+    public float[] scale() {
+        return scale;
+    }
+
+    /**
+     * Returns the per-dimension value of code 0, i.e. value = offset + scale * code.
+     */
+    public float[] offset() {
+        return offset;
+    }
+
+    @Override
+    public int getSqlType() {
+        return QVECTOR_SQL_TYPE;
+    }
+
+    @Override
+    public int getArgument() {
+        return size;
+    }
+
+    @Override
+    public boolean isFixedSize() {
+        return true;
+    }
+
+    @Override
+    public boolean isNumeric() {
+        return false;
+    }
+
+    @Override
+    public int maxSize() {
+        return size * Byte.BYTES;
+    }
+
+    @Override
+    public Constant maxValue() {
+        throw new UnsupportedOperationException("QuantizedVectorType does not support maxValue()");
+    }
+
+    @Override
+    public Constant minValue() {
+        throw new UnsupportedOperationException("QuantizedVectorType does not support minValue()");
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this)
+            return true;
+        if (obj == null || !(obj instanceof QuantizedVectorType))
+            return false;
+        QuantizedVectorType t = (QuantizedVectorType) obj;
+        return getSqlType() == t.getSqlType()
+                && getArgument() == t.getArgument()
+                && Arrays.equals(min, t.min) && Arrays.equals(scale, t.scale);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * size + Arrays.hashCode(min);
+    }
+}
@@ -24,6 +24,14 @@ public abstract class Type {
 	public static final Type DOUBLE = new DoubleType();
 	public static final Type VARCHAR = new VarcharType();
 
+	/**
+	 * The SQL type codes of QVECTOR and VECTOR16. {@link java.sql.Types} has
+	 * no counterpart for them, so they take codes of their own outside the
+	 * range of those codes; VECTOR is encoded as
+	 * {@link java.sql.Types#ARRAY}.
+	 */
+	public static final int QVECTOR_SQL_TYPE = 5001, VECTOR16_SQL_TYPE = 5002;
+
     public static Type VARCHAR(int arg) {
 		return new VarcharType(arg);
 	};
@@ -32,6 +40,14 @@ public abstract class Type {
 		return new VectorType(size);
 	}
 
+	public static Type QVECTOR(int size) {
+		return new QuantizedVectorType(size);
+	}
+
+	public static Type VECTOR16(int size) {
+		return new HalfVectorType(size);
+	}
+
 	/**
 	 * Constructs a new instance corresponding to the specified SQL type and
 	 * argument.
@@ -55,6 +71,10 @@ public abstract class Type {
 			return VARCHAR(arg);
 		case (java.sql.Types.ARRAY):
 			return VECTOR(arg);
+		case (QVECTOR_SQL_TYPE):
+			return QVECTOR(arg);
+		case (VECTOR16_SQL_TYPE):
+			return VECTOR16(arg);
 		}
 		throw new UnsupportedOperationException("Unspported SQL type: "
 				+ sqlType);
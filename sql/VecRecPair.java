@@ -4,12 +4,20 @@ import org.vanilladb.core.storage.record.RecordId;
 public class VecRecPair {
     private VectorConstant vec;
     private RecordId rid;
+    private double dist = -1;
 
     public VecRecPair(VectorConstant vec, RecordId rid) {
         this.vec = vec;
         this.rid = rid;
     }
 
+    /*  for indexes that already know the distance to the query
+        (e.g. from ADC lookup tables), so it needs not be recomputed */
+    public VecRecPair(VectorConstant vec, RecordId rid, double dist) {
+        this(vec, rid);
+        this.dist = dist;
+    }
+
     public VectorConstant getVec() {
         return vec;
     }
@@ -17,4 +25,11 @@ public class VecRecPair {
     public RecordId getRid() {
         return rid;
     }
+
+    /**
+     * Returns the precomputed distance to the query, or -1 if unknown.
+     */
+    public double getDist() {
+        return dist;
+    }
 }
@@ -12,6 +12,7 @@ public class VecRecPairComp implements Comparable<VecRecPairComp> {
     public VecRecPairComp(VecRecPair vr, DistanceFn distFn) {
         this.vr = vr;
         this.distFn = distFn;
+        this.distToTarget = vr.getDist();
     }
 
     public VectorConstant getVec() {
@@ -1,13 +1,13 @@
 package org.vanilladb.core.sql;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import static java.sql.Types.VARCHAR;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
 import org.vanilladb.core.sql.distfn.EuclideanFn;
-import org.vanilladb.core.util.ByteHelper;
 
 /**
  * Vector constant stores multiple float32 values as a constant
@@ -56,6 +56,21 @@ public class VectorConstant extends Constant implements Serializable {
         }
     }
 
+    /**
+     * Returns a vector constant backed by the given array, without copying
+     * it. The caller must not modify the array afterwards.
+     */
+    public static VectorConstant wrap(float[] vector) {
+        return new VectorConstant(vector, new VectorType(vector.length));
+    }
+
+    /*  wraps the given array without copying it, for subclasses
+        that decode their values from another representation */
+    protected VectorConstant(float[] vector, Type type) {
+        this.vec = vector;
+        this.type = type;
+    }
+
     public VectorConstant(List<Float> vector) {
         int length = vector.size();
         
@@ -94,14 +109,9 @@ public class VectorConstant extends Constant implements Serializable {
     public VectorConstant(byte[] bytes) {
         int length = bytes.length / Float.BYTES;
         type = new VectorType(length);
-        // vec = new ArrayList<>(length);
         vec = new float[length];
-        for (int i = 0; i < length; i++) {
-            byte[] floatAsBytes = new byte[Float.BYTES];
-            int offset = i * Float.BYTES;
-            System.arraycopy(bytes, offset, floatAsBytes, 0, Float.BYTES);
-            vec[i] = ByteHelper.toFloat(floatAsBytes);
-        }
+        // big-endian, like the other constants
+        ByteBuffer.wrap(bytes).asFloatBuffer().get(vec);
     }
 
     /**
@@ -134,15 +144,9 @@ public class VectorConstant extends Constant implements Serializable {
     */
     @Override
     public byte[] asBytes() {
-        int bufferSize = this.size();
-        byte[] buf = new byte[bufferSize];
-
-        for (int i = 0; i < vec.length; i++) {
-            byte[] floatAsBytes = ByteHelper.toBytes(vec[i]);
-            int offset = i * Float.BYTES;
-            System.arraycopy(floatAsBytes, 0, buf, offset, Float.BYTES);
-        }
-        return buf;
+        ByteBuffer buf = ByteBuffer.allocate(Float.BYTES * vec.length);
+        buf.asFloatBuffer().put(vec);
+        return buf.array();
     }
 
     /**
@@ -168,6 +172,10 @@ public class VectorConstant extends Constant implements Serializable {
         switch (type.getSqlType()) {
             case VARCHAR:
                 return new VarcharConstant(toString(), type);
+            case Type.QVECTOR_SQL_TYPE:
+                return new QuantizedVectorConstant(vec, (QuantizedVectorType) type);
+            case Type.VECTOR16_SQL_TYPE:
+                return new HalfVectorConstant(vec);
             }
         throw new IllegalArgumentException("Cannot cast vector to " + type);
     }
@@ -267,7 +275,7 @@ public class VectorConstant extends Constant implements Serializable {
     }
     public double distance(VectorConstant other) {
         
-        EuclideanFn distFn = new EuclideanFn("i_emb");
+        EuclideanFn distFn = new EuclideanFn("");
         distFn.setQueryVector(other);
         return distFn.distance(this);
     }
@@ -0,0 +1,82 @@
+package org.vanilladb.core.sql.distfn;
+
+import jdk.incubator.vector.*;
+
+/**
+ * Vector API kernels over the bfloat16 values of half-precision vectors. A
+ * bfloat16 is the upper half of a float32, so every 128-bit load of eight
+ * values is widened in registers by sign-extending the lanes to 32 bits and
+ * shifting them left by 16, without a conversion table or a float16 unit.
+ */
+final class BFloat16Kernels {
+    private static final VectorSpecies<Short> S128 = ShortVector.SPECIES_128;
+    private static final VectorSpecies<Integer> I256 = IntVector.SPECIES_256;
+    private static final VectorSpecies<Float> F256 = FloatVector.SPECIES_256;
+
+    private BFloat16Kernels() {
+    }
+
+    private static FloatVector widen(short[] bits, int i) {
+        return ((IntVector) ShortVector.fromArray(S128, bits, i)
+                .convertShape(VectorOperators.S2I, I256, 0))
+                .lanewise(VectorOperators.LSHL, 16)
+                .reinterpretAsFloats();
+    }
+
+    /**
+     * Returns the squared Euclidean distance between a float query and a
+     * half-precision vector.
+     */
+    static double squaredEuclidean(float[] query, short[] bits) {
+        int i = 0;
+        FloatVector acc = FloatVector.zero(F256);
+
+        for (; i < S128.loopBound(bits.length); i += S128.length()) {
+            FloatVector diff = FloatVector.fromArray(F256, query, i).sub(widen(bits, i));
+            acc = diff.fma(diff, acc);
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+
+        for (; i < bits.length; i++) {
+            float diff = query[i] - Float.intBitsToFloat(bits[i] << 16);
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the dot product of a float query and a half-precision vector.
+     */
+    static double dot(float[] query, short[] bits) {
+        int i = 0;
+        FloatVector acc = FloatVector.zero(F256);
+
+        for (; i < S128.loopBound(bits.length); i += S128.length())
+            acc = FloatVector.fromArray(F256, query, i).fma(widen(bits, i), acc);
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+
+        for (; i < bits.length; i++)
+            sum += query[i] * Float.intBitsToFloat(bits[i] << 16);
+        return sum;
+    }
+
+    /**
+     * Returns the squared norm of a half-precision vector.
+     */
+    static double squaredNorm(short[] bits) {
+        int i = 0;
+        FloatVector acc = FloatVector.zero(F256);
+
+        for (; i < S128.loopBound(bits.length); i += S128.length()) {
+            FloatVector v = widen(bits, i);
+            acc = v.fma(v, acc);
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+
+        for (; i < bits.length; i++) {
+            float v = Float.intBitsToFloat(bits[i] << 16);
+            sum += v * v;
+        }
+        return sum;
+    }
+}
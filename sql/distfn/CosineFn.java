@@ -1,25 +1,74 @@
 package org.vanilladb.core.sql.distfn;
 
+import org.vanilladb.core.sql.HalfVectorConstant;
+import org.vanilladb.core.sql.QuantizedVectorConstant;
+import org.vanilladb.core.sql.QuantizedVectorType;
 import org.vanilladb.core.sql.VectorConstant;
 
+/**
+ * The cosine distance, one minus the cosine of the angle between the query
+ * and a vector, so that nearer vectors have smaller distances. The norm of
+ * the query is computed once when the query is set.
+ */
 public class CosineFn extends DistanceFn {
+    private double queryNorm;
+    // the vectors are known to be unit vectors, so only their dot product with the query is needed
+    private boolean isUnitVectors;
 
     public CosineFn(String fld) {
         super(fld);
     }
 
+    /**
+     * Returns a copy of this function for vectors normalized to unit length
+     * (e.g., by an index normalizing them on insert), which only computes
+     * their dot product with the query. The distances are the same as those
+     * of this function on such vectors.
+     */
+    public CosineFn forUnitVectors() {
+        CosineFn fn = new CosineFn(fieldName());
+        fn.isUnitVectors = true;
+        fn.setQueryVector(query);
+        return fn;
+    }
+
+    @Override
+    public void setQueryVector(VectorConstant query) {
+        super.setQueryVector(query);
+        float[] q = query.getVec();
+        queryNorm = Math.sqrt(FloatKernels.dot(q, 0, q, 0, q.length));
+    }
+
     @Override
     protected double calculateDistance(VectorConstant vec) {
+        double dot, vecNorm;
+        if (vec instanceof QuantizedVectorConstant) {
+            QuantizedVectorConstant qvec = (QuantizedVectorConstant) vec;
+            QuantizedVectorType type = qvec.getType();
+            dot = Int8Kernels.dot(query.getVec(), qvec.codes(), type.offset(), type.scale());
+            vecNorm = isUnitVectors ? 1
+                    : Math.sqrt(Int8Kernels.dot(qvec.getVec(), qvec.codes(), type.offset(), type.scale()));
+        } else if (vec instanceof HalfVectorConstant) {
+            short[] bits = ((HalfVectorConstant) vec).bits();
+            dot = BFloat16Kernels.dot(query.getVec(), bits);
+            vecNorm = isUnitVectors ? 1 : Math.sqrt(BFloat16Kernels.squaredNorm(bits));
+        } else {
+            float[] v = vec.getVec();
+            dot = FloatKernels.dot(query.getVec(), 0, v, 0, v.length);
+            vecNorm = isUnitVectors ? 1 : Math.sqrt(FloatKernels.dot(v, 0, v, 0, v.length));
+        }
+        return FloatKernels.cosineDistance(dot, queryNorm, vecNorm);
+    }
 
-        double sum = 0;
-        double querySum = 0;
-        double vecSum = 0;
-        // WARNING: Don't use vec.size() here, it will return the number of bytes
-        for (int i = 0; i < vec.dimension(); i++) { 
-            sum += query.get(i) * vec.get(i);
-            querySum += query.get(i) * query.get(i);
-            vecSum += vec.get(i) * vec.get(i);
+    @Override
+    public void distances(float[] matrix, int dim, int from, int count, float[] out) {
+        checkDimension(dim);
+        if (!isUnitVectors) {
+            FloatKernels.cosine(query.getVec(), queryNorm, matrix, dim, from, count, out);
+            return;
         }
-        return sum / (Math.sqrt(querySum) * Math.sqrt(vecSum));
+        FloatKernels.dot(query.getVec(), matrix, dim, from, count, out);
+        for (int i = 0; i < count; i++)
+            out[i] = (float) FloatKernels.cosineDistance(out[i], queryNorm, 1);
     }
 }
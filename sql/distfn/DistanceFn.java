@@ -1,5 +1,7 @@
 package org.vanilladb.core.sql.distfn;
 
+import java.util.Arrays;
+
 import org.vanilladb.core.sql.VectorConstant;
 
 public abstract class DistanceFn {
@@ -14,6 +16,10 @@ public abstract class DistanceFn {
     public void setQueryVector(VectorConstant query) {
         this.query = query;
     }
+
+    public VectorConstant queryVector() {
+        return query;
+    }
     
     public double distance(VectorConstant vec) {
         // check vector dimension
@@ -23,6 +29,37 @@ public abstract class DistanceFn {
         return calculateDistance(vec);
     }
 
+    /**
+     * Scores the query against the rows [from, from + count) of a row-major
+     * matrix in a single pass, writing the distance to the i-th of them to
+     * out[i]. The default implementation wraps every row into a constant;
+     * subclasses override it with a kernel over the raw matrix.
+     *
+     * @param matrix
+     *            the vectors, back to back
+     * @param dim
+     *            the dimension of the vectors
+     * @param from
+     *            the first row to score
+     * @param count
+     *            the number of rows to score
+     * @param out
+     *            the array receiving the distances
+     */
+    public void distances(float[] matrix, int dim, int from, int count, float[] out) {
+        checkDimension(dim);
+        for (int i = 0; i < count; i++) {
+            int base = (from + i) * dim;
+            out[i] = (float) calculateDistance(new VectorConstant(Arrays.copyOfRange(matrix, base, base + dim)));
+        }
+    }
+
+    protected void checkDimension(int dim) {
+        if (query.dimension() != dim) {
+            throw new IllegalArgumentException("Vector length does not match");
+        }
+    }
+
     protected abstract double calculateDistance(VectorConstant vec);
 
     public String fieldName() {
@@ -1,5 +1,8 @@
 package org.vanilladb.core.sql.distfn;
 
+import org.vanilladb.core.sql.HalfVectorConstant;
+import org.vanilladb.core.sql.QuantizedVectorConstant;
+import org.vanilladb.core.sql.QuantizedVectorType;
 import org.vanilladb.core.sql.VectorConstant;
 
 import jdk.incubator.vector.*;
@@ -19,6 +22,19 @@ public class EuclideanFn extends DistanceFn {
         }
         return Math.sqrt(sum);*/
 
+        if (vec instanceof QuantizedVectorConstant) {
+            QuantizedVectorConstant qvec = (QuantizedVectorConstant) vec;
+            QuantizedVectorType type = qvec.getType();
+            // both sides share the calibration: compare the codes directly
+            if (query instanceof QuantizedVectorConstant && type.equals(query.getType()))
+                return Int8Kernels.squaredEuclidean(
+                        ((QuantizedVectorConstant) query).codes(), qvec.codes(), type.scale());
+            return Int8Kernels.squaredEuclidean(query.getVec(), qvec.codes(), type.offset(), type.scale());
+        }
+
+        if (vec instanceof HalfVectorConstant)
+            return BFloat16Kernels.squaredEuclidean(query.getVec(), ((HalfVectorConstant) vec).bits());
+
         VectorSpecies<Float> species = FloatVector.SPECIES_PREFERRED;
         
         int i = 0;
@@ -43,5 +59,21 @@ public class EuclideanFn extends DistanceFn {
 
         return sum;
     }
+
+    /**
+     * Writes the squared Euclidean distance between the q-th of a block of
+     * queries and the v-th of a block of vectors to out[q * numVecs + v].
+     * Both blocks are packed back to back in row-major matrices.
+     */
+    public static void distances(float[] queries, int numQueries, float[] vecs, int numVecs, int dim,
+            float[] out) {
+        FloatKernels.squaredEuclidean(queries, numQueries, vecs, numVecs, dim, out);
+    }
+
+    @Override
+    public void distances(float[] matrix, int dim, int from, int count, float[] out) {
+        checkDimension(dim);
+        FloatKernels.squaredEuclidean(query.getVec(), matrix, dim, from, count, out);
+    }
     
 }
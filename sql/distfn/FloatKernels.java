@@ -0,0 +1,183 @@
+package org.vanilladb.core.sql.distfn;
+
+import jdk.incubator.vector.*;
+
+/**
+ * Vector API kernels scoring one float query against a block of vectors
+ * packed back to back in a row-major matrix, or a block of queries against a
+ * block of vectors. The Euclidean and dot product kernels work on four rows
+ * at a time, so every lane of the query is loaded once per four rows instead
+ * of once per row.
+ */
+final class FloatKernels {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private FloatKernels() {
+    }
+
+    /**
+     * Writes the squared Euclidean distance between the query and the rows
+     * [from, from + count) of the matrix to out[0..count).
+     */
+    static void squaredEuclidean(float[] query, float[] matrix, int dim, int from, int count, float[] out) {
+        squaredEuclidean(query, 0, matrix, dim, from, count, out, 0, 1);
+    }
+
+    /**
+     * Writes the squared Euclidean distance between every pair of a block of
+     * queries and a block of vectors, the distance between the q-th query and
+     * the v-th vector to out[q * numVecs + v]. Every lane of a vector is
+     * loaded once for four queries.
+     */
+    static void squaredEuclidean(float[] queries, int numQueries, float[] vecs, int numVecs, int dim,
+            float[] out) {
+        for (int v = 0; v < numVecs; v++)
+            squaredEuclidean(vecs, v * dim, queries, dim, 0, numQueries, out, v, numVecs);
+    }
+
+    /*  scores the vector at x[xOffset] against count rows of the matrix,
+        writing the r-th distance to out[outOffset + r * outStride] */
+    private static void squaredEuclidean(float[] x, int xOffset, float[] matrix, int dim, int from, int count,
+            float[] out, int outOffset, int outStride) {
+        int bound = SPECIES.loopBound(dim);
+        int r = 0;
+
+        for (; r + 4 <= count; r += 4) {
+            int b0 = (from + r) * dim, b1 = b0 + dim, b2 = b1 + dim, b3 = b2 + dim;
+            FloatVector a0 = FloatVector.zero(SPECIES), a1 = a0, a2 = a0, a3 = a0;
+            int d = 0;
+            for (; d < bound; d += SPECIES.length()) {
+                FloatVector q = FloatVector.fromArray(SPECIES, x, xOffset + d);
+                FloatVector x0 = q.sub(FloatVector.fromArray(SPECIES, matrix, b0 + d));
+                FloatVector x1 = q.sub(FloatVector.fromArray(SPECIES, matrix, b1 + d));
+                FloatVector x2 = q.sub(FloatVector.fromArray(SPECIES, matrix, b2 + d));
+                FloatVector x3 = q.sub(FloatVector.fromArray(SPECIES, matrix, b3 + d));
+                a0 = x0.fma(x0, a0);
+                a1 = x1.fma(x1, a1);
+                a2 = x2.fma(x2, a2);
+                a3 = x3.fma(x3, a3);
+            }
+            float s0 = a0.reduceLanes(VectorOperators.ADD), s1 = a1.reduceLanes(VectorOperators.ADD),
+                    s2 = a2.reduceLanes(VectorOperators.ADD), s3 = a3.reduceLanes(VectorOperators.ADD);
+            for (; d < dim; d++) {
+                float q = x[xOffset + d];
+                float x0 = q - matrix[b0 + d], x1 = q - matrix[b1 + d],
+                        x2 = q - matrix[b2 + d], x3 = q - matrix[b3 + d];
+                s0 += x0 * x0;
+                s1 += x1 * x1;
+                s2 += x2 * x2;
+                s3 += x3 * x3;
+            }
+            out[outOffset + r * outStride] = s0;
+            out[outOffset + (r + 1) * outStride] = s1;
+            out[outOffset + (r + 2) * outStride] = s2;
+            out[outOffset + (r + 3) * outStride] = s3;
+        }
+
+        for (; r < count; r++) {
+            int base = (from + r) * dim, d = 0;
+            FloatVector acc = FloatVector.zero(SPECIES);
+            for (; d < bound; d += SPECIES.length()) {
+                FloatVector diff = FloatVector.fromArray(SPECIES, x, xOffset + d)
+                        .sub(FloatVector.fromArray(SPECIES, matrix, base + d));
+                acc = diff.fma(diff, acc);
+            }
+            float sum = acc.reduceLanes(VectorOperators.ADD);
+            for (; d < dim; d++) {
+                float diff = x[xOffset + d] - matrix[base + d];
+                sum += diff * diff;
+            }
+            out[outOffset + r * outStride] = sum;
+        }
+    }
+
+    /**
+     * Writes the dot product of the query and the rows [from, from + count)
+     * of the matrix to out[0..count).
+     */
+    static void dot(float[] query, float[] matrix, int dim, int from, int count, float[] out) {
+        int bound = SPECIES.loopBound(dim);
+        int r = 0;
+
+        for (; r + 4 <= count; r += 4) {
+            int b0 = (from + r) * dim, b1 = b0 + dim, b2 = b1 + dim, b3 = b2 + dim;
+            FloatVector a0 = FloatVector.zero(SPECIES), a1 = a0, a2 = a0, a3 = a0;
+            int d = 0;
+            for (; d < bound; d += SPECIES.length()) {
+                FloatVector q = FloatVector.fromArray(SPECIES, query, d);
+                a0 = q.fma(FloatVector.fromArray(SPECIES, matrix, b0 + d), a0);
+                a1 = q.fma(FloatVector.fromArray(SPECIES, matrix, b1 + d), a1);
+                a2 = q.fma(FloatVector.fromArray(SPECIES, matrix, b2 + d), a2);
+                a3 = q.fma(FloatVector.fromArray(SPECIES, matrix, b3 + d), a3);
+            }
+            float s0 = a0.reduceLanes(VectorOperators.ADD), s1 = a1.reduceLanes(VectorOperators.ADD),
+                    s2 = a2.reduceLanes(VectorOperators.ADD), s3 = a3.reduceLanes(VectorOperators.ADD);
+            for (; d < dim; d++) {
+                float q = query[d];
+                s0 += q * matrix[b0 + d];
+                s1 += q * matrix[b1 + d];
+                s2 += q * matrix[b2 + d];
+                s3 += q * matrix[b3 + d];
+            }
+            out[r] = s0;
+            out[r + 1] = s1;
+            out[r + 2] = s2;
+            out[r + 3] = s3;
+        }
+
+        for (; r < count; r++)
+            out[r] = dot(query, 0, matrix, (from + r) * dim, dim);
+    }
+
+    /**
+     * Writes the cosine distance (one minus the cosine of the angle) between
+     * the query, whose norm is given, and the rows [from, from + count) of
+     * the matrix to out[0..count).
+     */
+    static void cosine(float[] query, double queryNorm, float[] matrix, int dim, int from, int count,
+            float[] out) {
+        int bound = SPECIES.loopBound(dim);
+
+        for (int r = 0; r < count; r++) {
+            int base = (from + r) * dim, d = 0;
+            FloatVector dot = FloatVector.zero(SPECIES), norm = dot;
+            for (; d < bound; d += SPECIES.length()) {
+                FloatVector v = FloatVector.fromArray(SPECIES, matrix, base + d);
+                dot = FloatVector.fromArray(SPECIES, query, d).fma(v, dot);
+                norm = v.fma(v, norm);
+            }
+            float sum = dot.reduceLanes(VectorOperators.ADD), vecSum = norm.reduceLanes(VectorOperators.ADD);
+            for (; d < dim; d++) {
+                sum += query[d] * matrix[base + d];
+                vecSum += matrix[base + d] * matrix[base + d];
+            }
+            out[r] = (float) cosineDistance(sum, queryNorm, Math.sqrt(vecSum));
+        }
+    }
+
+    /**
+     * Returns one minus the cosine of the angle between two vectors of the
+     * specified dot product and norms, or 1 if either vector is zero.
+     */
+    static double cosineDistance(double dot, double norm1, double norm2) {
+        if (norm1 == 0 || norm2 == 0)
+            return 1;
+        return 1 - dot / (norm1 * norm2);
+    }
+
+    /**
+     * Returns the dot product of a[aOffset..aOffset + dim) and
+     * b[bOffset..bOffset + dim).
+     */
+    static float dot(float[] a, int aOffset, float[] b, int bOffset, int dim) {
+        int d = 0;
+        FloatVector acc = FloatVector.zero(SPECIES);
+        for (; d < SPECIES.loopBound(dim); d += SPECIES.length())
+            acc = FloatVector.fromArray(SPECIES, a, aOffset + d)
+                    .fma(FloatVector.fromArray(SPECIES, b, bOffset + d), acc);
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; d < dim; d++)
+            sum += a[aOffset + d] * b[bOffset + d];
+        return sum;
+    }
+}
@@ -0,0 +1,38 @@
+package org.vanilladb.core.sql.distfn;
+
+import org.vanilladb.core.sql.HalfVectorConstant;
+import org.vanilladb.core.sql.QuantizedVectorConstant;
+import org.vanilladb.core.sql.QuantizedVectorType;
+import org.vanilladb.core.sql.VectorConstant;
+
+/**
+ * The negated inner product of the query and a vector, so that the vectors
+ * of the largest inner products, as wanted by a maximum inner product
+ * search, have the smallest distances.
+ */
+public class InnerProductFn extends DistanceFn {
+
+    public InnerProductFn(String fld) {
+        super(fld);
+    }
+
+    @Override
+    protected double calculateDistance(VectorConstant vec) {
+        if (vec instanceof QuantizedVectorConstant) {
+            QuantizedVectorConstant qvec = (QuantizedVectorConstant) vec;
+            QuantizedVectorType type = qvec.getType();
+            return -Int8Kernels.dot(query.getVec(), qvec.codes(), type.offset(), type.scale());
+        }
+        if (vec instanceof HalfVectorConstant)
+            return -BFloat16Kernels.dot(query.getVec(), ((HalfVectorConstant) vec).bits());
+        return -FloatKernels.dot(query.getVec(), 0, vec.getVec(), 0, vec.dimension());
+    }
+
+    @Override
+    public void distances(float[] matrix, int dim, int from, int count, float[] out) {
+        checkDimension(dim);
+        FloatKernels.dot(query.getVec(), matrix, dim, from, count, out);
+        for (int i = 0; i < count; i++)
+            out[i] = -out[i];
+    }
+}
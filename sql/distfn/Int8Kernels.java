@@ -0,0 +1,98 @@
+package org.vanilladb.core.sql.distfn;
+
+import jdk.incubator.vector.*;
+
+/**
+ * Vector API kernels over the signed byte codes of quantized vectors. A code
+ * c of dimension i stands for the value offset[i] + scale[i] * c. Every
+ * instruction loads 8 or 16 dimensions from a single 64/128-bit register,
+ * a quarter of the bytes the float kernels read.
+ */
+final class Int8Kernels {
+    private static final VectorSpecies<Byte> B64 = ByteVector.SPECIES_64;
+    private static final VectorSpecies<Byte> B128 = ByteVector.SPECIES_128;
+    private static final VectorSpecies<Short> S256 = ShortVector.SPECIES_256;
+    private static final VectorSpecies<Float> F256 = FloatVector.SPECIES_256;
+
+    private Int8Kernels() {
+    }
+
+    /**
+     * Returns the squared Euclidean distance between two vectors quantized
+     * with the same calibration. The code differences are taken exactly in
+     * 16-bit lanes and weighted by the squared per-dimension scale.
+     */
+    static double squaredEuclidean(byte[] a, byte[] b, float[] scale) {
+        int i = 0;
+        FloatVector acc = FloatVector.zero(F256);
+
+        for (; i < B128.loopBound(a.length); i += B128.length()) {
+            ShortVector va = (ShortVector) ByteVector.fromArray(B128, a, i)
+                    .convertShape(VectorOperators.B2S, S256, 0);
+            ShortVector vb = (ShortVector) ByteVector.fromArray(B128, b, i)
+                    .convertShape(VectorOperators.B2S, S256, 0);
+            ShortVector diff = va.sub(vb);
+
+            for (int part = 0; part < 2; part++) {
+                FloatVector d = (FloatVector) diff.convertShape(VectorOperators.S2F, F256, part);
+                FloatVector s = FloatVector.fromArray(F256, scale, i + part * F256.length());
+                FloatVector ds = d.mul(s);
+                acc = ds.fma(ds, acc);
+            }
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+
+        for (; i < a.length; i++) {
+            float diff = scale[i] * (a[i] - b[i]);
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the squared Euclidean distance between a float query and a
+     * quantized vector, decoding the codes on the fly.
+     */
+    static double squaredEuclidean(float[] query, byte[] codes, float[] offset, float[] scale) {
+        int i = 0;
+        FloatVector acc = FloatVector.zero(F256);
+
+        for (; i < B64.loopBound(codes.length); i += B64.length()) {
+            FloatVector c = (FloatVector) ByteVector.fromArray(B64, codes, i)
+                    .convertShape(VectorOperators.B2F, F256, 0);
+            FloatVector v = c.fma(FloatVector.fromArray(F256, scale, i),
+                    FloatVector.fromArray(F256, offset, i));
+            FloatVector diff = FloatVector.fromArray(F256, query, i).sub(v);
+            acc = diff.fma(diff, acc);
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+
+        for (; i < codes.length; i++) {
+            float diff = query[i] - (offset[i] + scale[i] * codes[i]);
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the dot product of a float query and a quantized vector,
+     * decoding the codes on the fly.
+     */
+    static double dot(float[] query, byte[] codes, float[] offset, float[] scale) {
+        int i = 0;
+        FloatVector acc = FloatVector.zero(F256);
+
+        for (; i < B64.loopBound(codes.length); i += B64.length()) {
+            FloatVector c = (FloatVector) ByteVector.fromArray(B64, codes, i)
+                    .convertShape(VectorOperators.B2F, F256, 0);
+            FloatVector v = c.fma(FloatVector.fromArray(F256, scale, i),
+                    FloatVector.fromArray(F256, offset, i));
+            acc = FloatVector.fromArray(F256, query, i).fma(v, acc);
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+
+        for (; i < codes.length; i++)
+            sum += query[i] * (offset[i] + scale[i] * codes[i]);
+        return sum;
+    }
+}
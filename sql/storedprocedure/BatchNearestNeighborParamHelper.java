@@ -0,0 +1,99 @@
+package org.vanilladb.core.sql.storedprocedure;
+
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.DoubleConstant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.Type;
+
+/**
+ * Unpacks the parameters of {@link BatchNearestNeighborProcedure} and packs
+ * its results. The parameters are, in order:
+ * 
+ * <pre>
+ * table name, vector field name, returned field name, k, nprobe, query vectors (float[])...
+ * </pre>
+ * 
+ * The result record holds the number of queries in "num_queries" and, for the
+ * r-th neighbor of the q-th query, the value of the returned field in
+ * "q&lt;q&gt;_&lt;r&gt;" and its distance in "q&lt;q&gt;_&lt;r&gt;_dist". The
+ * number of neighbors found for the q-th query is in "q&lt;q&gt;_count".
+ */
+public class BatchNearestNeighborParamHelper implements StoredProcedureHelper {
+	private String tblName, fldName, retFldName;
+	private int k, nprobe;
+	private float[][] queries;
+
+	private Schema resultSchema = new Schema();
+	private SpResultRecord result = new SpResultRecord();
+
+	@Override
+	public void prepareParameters(Object... pars) {
+		if (pars.length < 5)
+			throw new IllegalArgumentException("expected a table, a field, a returned field, k and nprobe");
+
+		tblName = (String) pars[0];
+		fldName = (String) pars[1];
+		retFldName = (String) pars[2];
+		k = (Integer) pars[3];
+		nprobe = (Integer) pars[4];
+		queries = new float[pars.length - 5][];
+		for (int i = 0; i < queries.length; i++)
+			queries[i] = (float[]) pars[5 + i];
+
+		setResult("num_queries", new IntegerConstant(queries.length));
+	}
+
+	public String tableName() {
+		return tblName;
+	}
+
+	public String fieldName() {
+		return fldName;
+	}
+
+	public String returnedFieldName() {
+		return retFldName;
+	}
+
+	public int k() {
+		return k;
+	}
+
+	public int nprobe() {
+		return nprobe;
+	}
+
+	public float[][] queries() {
+		return queries;
+	}
+
+	public void setNeighborCount(int query, int count) {
+		setResult("q" + query + "_count", new IntegerConstant(count));
+	}
+
+	public void setNeighbor(int query, int rank, Constant val, double dist) {
+		setResult("q" + query + "_" + rank, val);
+		setResult("q" + query + "_" + rank + "_dist", new DoubleConstant(dist));
+	}
+
+	private void setResult(String fld, Constant val) {
+		resultSchema.addField(fld, val.getType());
+		result.setVal(fld, val);
+	}
+
+	@Override
+	public Schema getResultSetSchema() {
+		return resultSchema;
+	}
+
+	@Override
+	public SpResultRecord newResultSetRecord() {
+		return result;
+	}
+
+	@Override
+	public boolean isReadOnly() {
+		return true;
+	}
+}
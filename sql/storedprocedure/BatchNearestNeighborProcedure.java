@@ -0,0 +1,55 @@
+package org.vanilladb.core.sql.storedprocedure;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.vanilladb.core.query.algebra.Plan;
+import org.vanilladb.core.query.algebra.Scan;
+import org.vanilladb.core.query.algebra.vector.BatchNearestNeighborPlan;
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.sql.distfn.EuclideanFn;
+
+/**
+ * A built-in procedure searching the k nearest records of a batch of query
+ * vectors in Euclidean distance, through a single
+ * {@link BatchNearestNeighborPlan}. See
+ * {@link BatchNearestNeighborParamHelper} for its parameters and results.
+ */
+public class BatchNearestNeighborProcedure extends StoredProcedure<BatchNearestNeighborParamHelper> {
+	/**
+	 * The procedure id of this procedure. Negative ids are reserved for
+	 * built-in procedures; see {@link CoreStoredProcedureFactory}.
+	 */
+	public static final int PID = CoreStoredProcedureFactory.BATCH_NEAREST_NEIGHBOR_PID;
+
+	public BatchNearestNeighborProcedure() {
+		super(new BatchNearestNeighborParamHelper());
+	}
+
+	@Override
+	protected void executeSql() {
+		BatchNearestNeighborParamHelper helper = getHelper();
+		List<DistanceFn> distFns = new ArrayList<DistanceFn>();
+		for (float[] query : helper.queries()) {
+			DistanceFn distFn = new EuclideanFn(helper.fieldName());
+			distFn.setQueryVector(new VectorConstant(query));
+			distFns.add(distFn);
+		}
+
+		Plan p = new BatchNearestNeighborPlan(helper.tableName(), helper.fieldName(), distFns,
+				helper.k(), helper.nprobe(), getTransaction());
+		Scan s = p.open();
+		s.beforeFirst();
+		int[] counts = new int[distFns.size()];
+		while (s.next()) {
+			int query = (Integer) s.getVal(BatchNearestNeighborPlan.QUERY_ID).asJavaVal();
+			double dist = (Double) s.getVal(BatchNearestNeighborPlan.DISTANCE).asJavaVal();
+			helper.setNeighbor(query, counts[query]++, s.getVal(helper.returnedFieldName()), dist);
+		}
+		s.close();
+
+		for (int q = 0; q < counts.length; q++)
+			helper.setNeighborCount(q, counts[q]);
+	}
+}
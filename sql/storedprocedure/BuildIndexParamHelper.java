@@ -0,0 +1,50 @@
+package org.vanilladb.core.sql.storedprocedure;
+
+import org.vanilladb.core.sql.BigIntConstant;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.Type;
+
+/**
+ * Unpacks the parameters of {@link BuildIndexProcedure} and packs its
+ * results. The only parameter is the name of the index to build. The result
+ * record holds the number of indexed records in "num_records".
+ */
+public class BuildIndexParamHelper implements StoredProcedureHelper {
+	private String idxName;
+	private long numRecords;
+
+	@Override
+	public void prepareParameters(Object... pars) {
+		if (pars.length != 1)
+			throw new IllegalArgumentException("expected the name of an index");
+
+		idxName = (String) pars[0];
+	}
+
+	public String indexName() {
+		return idxName;
+	}
+
+	public void setNumRecords(long numRecords) {
+		this.numRecords = numRecords;
+	}
+
+	@Override
+	public Schema getResultSetSchema() {
+		Schema sch = new Schema();
+		sch.addField("num_records", Type.BIGINT);
+		return sch;
+	}
+
+	@Override
+	public SpResultRecord newResultSetRecord() {
+		SpResultRecord rec = new SpResultRecord();
+		rec.setVal("num_records", new BigIntConstant(numRecords));
+		return rec;
+	}
+
+	@Override
+	public boolean isReadOnly() {
+		return false;
+	}
+}
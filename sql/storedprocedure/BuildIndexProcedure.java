@@ -0,0 +1,43 @@
+package org.vanilladb.core.sql.storedprocedure;
+
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.storage.index.IVF_FLATIndex;
+import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.index.IndexType;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
+
+/**
+ * A built-in procedure building an IVF index over the records already loaded
+ * into its table, through {@link IVF_FLATIndex#bulkBuild()}. Loading the
+ * table first and building the index once is much faster than maintaining
+ * the index on every insert. See {@link BuildIndexParamHelper} for its
+ * parameters and results.
+ */
+public class BuildIndexProcedure extends StoredProcedure<BuildIndexParamHelper> {
+	/**
+	 * The procedure id of this procedure. Negative ids are reserved for
+	 * built-in procedures; see {@link CoreStoredProcedureFactory}.
+	 */
+	public static final int PID = CoreStoredProcedureFactory.BUILD_INDEX_PID;
+
+	public BuildIndexProcedure() {
+		super(new BuildIndexParamHelper());
+	}
+
+	@Override
+	protected void executeSql() {
+		BuildIndexParamHelper helper = getHelper();
+		IndexInfo ii = VanillaDb.catalogMgr().getIndexInfoByName(helper.indexName(), getTransaction());
+		if (ii == null)
+			abort("index '" + helper.indexName() + "' does not exist");
+		if (ii.indexType() != IndexType.IVF)
+			abort("index '" + helper.indexName() + "' is not an IVF index");
+
+		Index idx = ii.open(getTransaction());
+		try {
+			helper.setNumRecords(((IVF_FLATIndex) idx).bulkBuild());
+		} finally {
+			idx.close();
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright 2016, 2017 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.sql.storedprocedure;
+
+/**
+ * The stored procedure factory used by the server. It serves the built-in
+ * procedures of the core, which own the reserved negative procedure ids, and
+ * delegates every other id to the factory given by the application.
+ */
+public class CoreStoredProcedureFactory implements StoredProcedureFactory {
+	/**
+	 * The procedure id of {@link BatchNearestNeighborProcedure}.
+	 */
+	public static final int BATCH_NEAREST_NEIGHBOR_PID = -1;
+
+	/**
+	 * The procedure id of {@link BuildIndexProcedure}.
+	 */
+	public static final int BUILD_INDEX_PID = -2;
+
+	private StoredProcedureFactory userFactory;
+
+	/**
+	 * Creates a factory that serves the built-in procedures and delegates the
+	 * rest to the specified factory.
+	 * 
+	 * @param userFactory
+	 *            the factory of the application's stored procedures
+	 */
+	public CoreStoredProcedureFactory(StoredProcedureFactory userFactory) {
+		this.userFactory = userFactory;
+	}
+
+	@Override
+	public StoredProcedure<?> getStoredProcedure(int pid) {
+		switch (pid) {
+		case BATCH_NEAREST_NEIGHBOR_PID:
+			return new BatchNearestNeighborProcedure();
+		case BUILD_INDEX_PID:
+			return new BuildIndexProcedure();
+		default:
+			return userFactory.getStoredProcedure(pid);
+		}
+	}
+}
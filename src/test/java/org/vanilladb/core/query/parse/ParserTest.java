@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright 2016, 2017 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.query.parse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.vanilladb.core.sql.distfn.EuclideanFn;
+
+public class ParserTest {
+
+	@Test
+	public void testLimitAndNprobe() {
+		QueryData data = new Parser(
+				"select id from t order by emb <euc> [1, 2, 3] limit 10 nprobe 4").queryCommand();
+		assertEquals(10, data.limit());
+		assertEquals(4, data.nprobe());
+		assertEquals(1, data.embeddingFields().size());
+		assertTrue(data.embeddingFields().get(0) instanceof EuclideanFn);
+	}
+
+	@Test
+	public void testDefaultLimitAndNprobe() {
+		QueryData data = new Parser("select id from t order by emb <euc> [1, 2, 3]").queryCommand();
+		assertEquals(-1, data.limit());
+		assertEquals(-1, data.nprobe());
+	}
+
+	@Test
+	public void testLimitWithoutNprobe() {
+		QueryData data = new Parser("select id from t order by emb <euc> [1, 2, 3] limit 5").queryCommand();
+		assertEquals(5, data.limit());
+		assertEquals(-1, data.nprobe());
+	}
+
+	@Test
+	public void testWithin() {
+		QueryData data = new Parser(
+				"select id from t order by emb <euc> [1, 2, 3] nprobe 8 within 2.5").queryCommand();
+		assertEquals(8, data.nprobe());
+		assertEquals(2.5, data.radius(), 0);
+		assertEquals(-1, data.limit());
+	}
+
+	@Test
+	public void testDefaultRadius() {
+		QueryData data = new Parser("select id from t order by emb <euc> [1, 2, 3] limit 5").queryCommand();
+		assertTrue(data.radius() < 0);
+	}
+
+	@Test(expected = BadSyntaxException.class)
+	public void testNprobeNeedsANumber() {
+		new Parser("select id from t order by emb <euc> [1, 2, 3] limit 5 nprobe x").queryCommand();
+	}
+}
@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright 2016, 2017 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.server;
+
+import java.io.File;
+
+import org.vanilladb.core.storage.file.FileMgr;
+
+/**
+ * Initializes the database shared by the tests run in the same JVM. The
+ * files of a previous run are deleted first, so every run starts from an
+ * empty database; the tests keep apart by naming their tables and indexes
+ * after themselves.
+ */
+public class ServerInit {
+	public static final String DB_NAME = "vanilladb_testdb";
+
+	public static synchronized void init() {
+		if (VanillaDb.isInited())
+			return;
+		deleteDirectory(new File(FileMgr.DB_FILES_DIR, DB_NAME));
+		deleteDirectory(new File(FileMgr.LOG_FILES_DIR, DB_NAME));
+		VanillaDb.init(DB_NAME);
+	}
+
+	private static void deleteDirectory(File dir) {
+		File[] files = dir.listFiles();
+		if (files != null)
+			for (File f : files)
+				deleteDirectory(f);
+		dir.delete();
+	}
+}
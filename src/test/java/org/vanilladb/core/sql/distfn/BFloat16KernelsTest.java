@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright 2016, 2017 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.sql.distfn;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.vanilladb.core.sql.HalfVectorConstant;
+
+public class BFloat16KernelsTest {
+	// covers both the eight-lane loop and the scalar tail
+	private static final int DIM = 131;
+
+	private Random random = new Random(18);
+
+	@Test
+	public void testSquaredEuclidean() {
+		float[] query = randomFloats();
+		short[] bits = randomBits();
+		double expected = 0;
+		for (int i = 0; i < DIM; i++) {
+			double diff = query[i] - HalfVectorConstant.toFloat(bits[i]);
+			expected += diff * diff;
+		}
+		assertEquals(expected, BFloat16Kernels.squaredEuclidean(query, bits), expected * 1e-5);
+	}
+
+	@Test
+	public void testDot() {
+		float[] query = randomFloats();
+		short[] bits = randomBits();
+		double expected = 0;
+		for (int i = 0; i < DIM; i++)
+			expected += (double) query[i] * HalfVectorConstant.toFloat(bits[i]);
+		assertEquals(expected, BFloat16Kernels.dot(query, bits), 1e-4);
+	}
+
+	@Test
+	public void testSquaredNorm() {
+		short[] bits = randomBits();
+		double expected = 0;
+		for (int i = 0; i < DIM; i++) {
+			double v = HalfVectorConstant.toFloat(bits[i]);
+			expected += v * v;
+		}
+		assertEquals(expected, BFloat16Kernels.squaredNorm(bits), expected * 1e-5);
+	}
+
+	@Test
+	public void testNegativeValuesWiden() {
+		// sign extension of the lanes must not leak into the low half
+		short[] bits = new short[DIM];
+		float[] zero = new float[DIM];
+		for (int i = 0; i < DIM; i++)
+			bits[i] = HalfVectorConstant.toBFloat16(-1.5f);
+		assertEquals(-1.5f, HalfVectorConstant.toFloat(bits[0]), 0);
+		assertEquals(DIM * 2.25, BFloat16Kernels.squaredEuclidean(zero, bits), 1e-9);
+		assertEquals(DIM * 2.25, BFloat16Kernels.squaredNorm(bits), 1e-9);
+	}
+
+	private float[] randomFloats() {
+		float[] vec = new float[DIM];
+		for (int i = 0; i < DIM; i++)
+			vec[i] = random.nextFloat() * 2 - 1;
+		return vec;
+	}
+
+	private short[] randomBits() {
+		short[] bits = new short[DIM];
+		for (int i = 0; i < DIM; i++)
+			bits[i] = HalfVectorConstant.toBFloat16(random.nextFloat() * 2 - 1);
+		return bits;
+	}
+}
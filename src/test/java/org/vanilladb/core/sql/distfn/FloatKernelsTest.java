@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright 2016, 2017 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.sql.distfn;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class FloatKernelsTest {
+	// covers both the vector loop and the scalar tail
+	private static final int DIM = 131;
+	// covers both the four-row blocks and the remaining rows
+	private static final int ROWS = 11;
+
+	private Random random = new Random(12);
+
+	@Test
+	public void testSquaredEuclidean() {
+		float[] query = randomFloats(DIM), matrix = randomFloats(ROWS * DIM);
+		float[] out = new float[ROWS - 2];
+		FloatKernels.squaredEuclidean(query, matrix, DIM, 2, ROWS - 2, out);
+
+		for (int r = 0; r < out.length; r++) {
+			double expected = squaredEuclidean(query, 0, matrix, (r + 2) * DIM);
+			assertEquals(expected, out[r], expected * 1e-5);
+		}
+	}
+
+	@Test
+	public void testSquaredEuclideanOfQueryBlock() {
+		int numQueries = 6;
+		float[] queries = randomFloats(numQueries * DIM), vecs = randomFloats(ROWS * DIM);
+		float[] out = new float[numQueries * ROWS];
+		FloatKernels.squaredEuclidean(queries, numQueries, vecs, ROWS, DIM, out);
+
+		for (int q = 0; q < numQueries; q++)
+			for (int v = 0; v < ROWS; v++) {
+				double expected = squaredEuclidean(queries, q * DIM, vecs, v * DIM);
+				assertEquals(expected, out[q * ROWS + v], expected * 1e-5);
+			}
+	}
+
+	@Test
+	public void testDot() {
+		float[] query = randomFloats(DIM), matrix = randomFloats(ROWS * DIM);
+		float[] out = new float[ROWS - 1];
+		FloatKernels.dot(query, matrix, DIM, 1, ROWS - 1, out);
+
+		for (int r = 0; r < out.length; r++) {
+			double expected = dot(query, 0, matrix, (r + 1) * DIM);
+			assertEquals(expected, out[r], 1e-4);
+			assertEquals(expected, FloatKernels.dot(query, 0, matrix, (r + 1) * DIM, DIM), 1e-4);
+		}
+	}
+
+	@Test
+	public void testCosine() {
+		float[] query = randomFloats(DIM), matrix = randomFloats(ROWS * DIM);
+		// a zero row must be at the maximum distance rather than NaN
+		for (int d = 0; d < DIM; d++)
+			matrix[3 * DIM + d] = 0;
+		double queryNorm = Math.sqrt(dot(query, 0, query, 0));
+		float[] out = new float[ROWS];
+		FloatKernels.cosine(query, queryNorm, matrix, DIM, 0, ROWS, out);
+
+		for (int r = 0; r < ROWS; r++) {
+			double rowNorm = Math.sqrt(dot(matrix, r * DIM, matrix, r * DIM));
+			double expected = rowNorm == 0 ? 1 : 1 - dot(query, 0, matrix, r * DIM) / (queryNorm * rowNorm);
+			assertEquals(expected, out[r], 1e-5);
+		}
+		assertEquals(1, out[3], 0);
+	}
+
+	@Test
+	public void testCosineDistanceOfZeroNorm() {
+		assertEquals(1, FloatKernels.cosineDistance(0, 0, 3), 0);
+		assertEquals(1, FloatKernels.cosineDistance(0, 3, 0), 0);
+		assertEquals(0, FloatKernels.cosineDistance(6, 2, 3), 1e-12);
+		assertEquals(2, FloatKernels.cosineDistance(-6, 2, 3), 1e-12);
+	}
+
+	private static double dot(float[] a, int aOffset, float[] b, int bOffset) {
+		double sum = 0;
+		for (int d = 0; d < DIM; d++)
+			sum += (double) a[aOffset + d] * b[bOffset + d];
+		return sum;
+	}
+
+	private static double squaredEuclidean(float[] a, int aOffset, float[] b, int bOffset) {
+		double sum = 0;
+		for (int d = 0; d < DIM; d++) {
+			double diff = a[aOffset + d] - b[bOffset + d];
+			sum += diff * diff;
+		}
+		return sum;
+	}
+
+	private float[] randomFloats(int length) {
+		float[] vec = new float[length];
+		for (int i = 0; i < length; i++)
+			vec[i] = random.nextFloat() * 2 - 1;
+		return vec;
+	}
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright 2016, 2017 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.sql.distfn;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class Int8KernelsTest {
+	// covers both the vector loop and the scalar tail
+	private static final int DIM = 131;
+
+	private Random random = new Random(4);
+
+	@Test
+	public void testSquaredEuclideanOfCodes() {
+		byte[] a = randomCodes(), b = randomCodes();
+		float[] scale = randomFloats(0.5f);
+
+		double expected = 0;
+		for (int i = 0; i < DIM; i++) {
+			double diff = scale[i] * (a[i] - b[i]);
+			expected += diff * diff;
+		}
+		assertEquals(expected, Int8Kernels.squaredEuclidean(a, b, scale), expected * 1e-5);
+	}
+
+	@Test
+	public void testSquaredEuclideanOfQueryAndCodes() {
+		float[] query = randomFloats(100), offset = randomFloats(10), scale = randomFloats(0.5f);
+		byte[] codes = randomCodes();
+
+		double expected = 0;
+		for (int i = 0; i < DIM; i++) {
+			double diff = query[i] - (offset[i] + scale[i] * codes[i]);
+			expected += diff * diff;
+		}
+		assertEquals(expected, Int8Kernels.squaredEuclidean(query, codes, offset, scale), expected * 1e-5);
+	}
+
+	@Test
+	public void testDotOfQueryAndCodes() {
+		float[] query = randomFloats(100), offset = randomFloats(10), scale = randomFloats(0.5f);
+		byte[] codes = randomCodes();
+
+		double expected = 0;
+		for (int i = 0; i < DIM; i++)
+			expected += query[i] * (offset[i] + scale[i] * codes[i]);
+		assertEquals(expected, Int8Kernels.dot(query, codes, offset, scale), Math.abs(expected) * 1e-5);
+	}
+
+	private byte[] randomCodes() {
+		byte[] codes = new byte[DIM];
+		random.nextBytes(codes);
+		return codes;
+	}
+
+	private float[] randomFloats(float bound) {
+		float[] vec = new float[DIM];
+		for (int i = 0; i < DIM; i++)
+			vec[i] = random.nextFloat() * bound;
+		return vec;
+	}
+}
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright 2016, 2017 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.file;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.sql.HalfVectorConstant;
+import org.vanilladb.core.sql.QuantizedVectorConstant;
+import org.vanilladb.core.sql.QuantizedVectorType;
+import org.vanilladb.core.sql.Type;
+
+public class VectorPageTest {
+	private static final int DIM = 77;
+	private static final String FILE_NAME = "_tempvectorpagetest";
+
+	private Random random = new Random(7);
+
+	@BeforeClass
+	public static void init() {
+		ServerInit.init();
+	}
+
+	@Test
+	public void testQuantizedVectorRoundTrip() {
+		float[][] sample = { randomVector(), randomVector() };
+		QuantizedVectorType type = QuantizedVectorType.calibrate(Arrays.asList(sample));
+		QuantizedVectorConstant vec = new QuantizedVectorConstant(randomVector(), type);
+
+		int offset = 13;
+		Page page = new Page();
+		page.setVal(offset, vec);
+		BlockId blk = page.append(FILE_NAME);
+
+		Page read = new Page();
+		read.read(blk);
+		QuantizedVectorConstant readVec = (QuantizedVectorConstant) read.getVal(offset, type);
+		assertEquals(Type.QVECTOR_SQL_TYPE, readVec.getType().getSqlType());
+		assertArrayEquals(vec.codes(), readVec.codes());
+		assertArrayEquals(vec.asJavaVal(), readVec.asJavaVal(), 0);
+		assertEquals(DIM, Page.size(vec));
+	}
+
+	@Test
+	public void testHalfVectorRoundTrip() {
+		HalfVectorConstant vec = new HalfVectorConstant(randomVector());
+
+		int offset = 21;
+		Page page = new Page();
+		page.setVal(offset, vec);
+		BlockId blk = page.append(FILE_NAME);
+
+		Page read = new Page();
+		read.read(blk);
+		HalfVectorConstant readVec = (HalfVectorConstant) read.getVal(offset, Type.VECTOR16(DIM));
+		assertEquals(Type.VECTOR16_SQL_TYPE, readVec.getType().getSqlType());
+		assertArrayEquals(vec.bits(), readVec.bits());
+		assertArrayEquals(vec.asJavaVal(), readVec.asJavaVal(), 0);
+		assertEquals(DIM * 2, Page.size(vec));
+	}
+
+	private float[] randomVector() {
+		float[] vec = new float[DIM];
+		for (int i = 0; i < DIM; i++)
+			vec[i] = random.nextFloat() * 2 - 1;
+		return vec;
+	}
+}
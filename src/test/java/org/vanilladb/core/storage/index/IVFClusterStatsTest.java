@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright 2016, 2017 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IVFClusterStatsTest {
+	private static final CentroidMatrix CENTROIDS = new CentroidMatrix(new float[] { 0, 1 }, new int[] { 3, 5 }, 1,
+			0);
+
+	private File mark;
+
+	@Before
+	public void createMarkFile() throws IOException {
+		mark = File.createTempFile("ivfstats", ".stale");
+		mark.delete();
+	}
+
+	@After
+	public void deleteMarkFile() {
+		mark.delete();
+	}
+
+	@Test
+	public void testUnknownRadiusIsInfinite() {
+		IVFClusterStats stats = new IVFClusterStats(mark);
+		assertEquals(Float.POSITIVE_INFINITY, stats.radii(CENTROIDS)[0], 0);
+
+		stats.loadRadii(Collections.singletonMap(3, 1f), false);
+		float[] radii = stats.radii(CENTROIDS);
+		assertEquals(1, radii[0], 0);
+		assertEquals(Float.POSITIVE_INFINITY, radii[1], 0);
+	}
+
+	@Test
+	public void testOnlyRaisesMarkStale() {
+		IVFClusterStats stats = new IVFClusterStats(mark);
+		stats.loadRadii(Collections.singletonMap(3, 1f), false);
+
+		stats.add(3, 0.5f, 0.25, 1);
+		assertFalse(mark.exists());
+		assertEquals(1, stats.radii(CENTROIDS)[0], 0);
+
+		stats.add(3, 2f, 4, 1);
+		assertTrue(mark.exists());
+		assertEquals(2, stats.radii(CENTROIDS)[0], 0);
+
+		double[] pending = stats.pending().get(3);
+		assertEquals(4.25, pending[0], 0);
+		assertEquals(2, pending[1], 0);
+		assertEquals(2, pending[2], 0);
+	}
+
+	@Test
+	public void testFlushKeepsLaterChanges() {
+		IVFClusterStats stats = new IVFClusterStats(mark);
+		stats.loadRadii(Collections.singletonMap(3, 1f), false);
+		stats.add(3, 2f, 4, 1);
+
+		Map<Integer, double[]> flushed = stats.pending();
+		stats.add(3, 3f, 9, 1);
+		stats.flushed(flushed);
+		assertTrue(mark.exists());
+		double[] pending = stats.pending().get(3);
+		assertEquals(9, pending[0], 0);
+		assertEquals(1, pending[1], 0);
+		assertEquals(3, pending[2], 0);
+
+		stats.flushed(stats.pending());
+		assertFalse(mark.exists());
+		assertTrue(stats.pending().isEmpty());
+	}
+
+	@Test
+	public void testStaleIndexIsMeasured() throws IOException {
+		mark.createNewFile();
+		IVFClusterStats stats = new IVFClusterStats(mark);
+		assertTrue(stats.isStale());
+
+		stats.loadRadii(Collections.singletonMap(3, 4f), true);
+		assertFalse(stats.isStale());
+		assertEquals(4, stats.pending().get(3)[2], 0);
+
+		stats.flushed(stats.pending());
+		assertFalse(mark.exists());
+	}
+}
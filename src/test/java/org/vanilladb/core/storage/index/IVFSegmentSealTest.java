@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright 2016, 2017 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.index;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.query.algebra.TablePlan;
+import org.vanilladb.core.query.algebra.TableScan;
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.sql.distfn.EuclideanFn;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.tx.Transaction;
+
+public class IVFSegmentSealTest {
+	private static final int NUM_RECORDS = 50;
+
+	private static Set<RecordId> rids = new HashSet<RecordId>();
+
+	@BeforeClass
+	public static void init() {
+		ServerInit.init();
+
+		Transaction tx = newTransaction();
+		executeUpdate("create table ivf_seal_t (id int, v vector(4))", tx);
+		for (int i = 0; i < NUM_RECORDS; i++)
+			executeUpdate("insert into ivf_seal_t (id, v) values (" + i + ", [" + i + ", " + i + ", " + i + ", "
+					+ i + "])", tx);
+		executeUpdate("create index ivf_seal on ivf_seal_t (v) using ivf", tx);
+		tx.commit();
+
+		tx = newTransaction();
+		IVF_FLATIndex idx = openIndex(tx);
+		idx.bulkBuild();
+		idx.close();
+		TableScan s = (TableScan) new TablePlan("ivf_seal_t", tx).open();
+		s.beforeFirst();
+		while (s.next())
+			rids.add(s.getRecordId());
+		s.close();
+		tx.commit();
+	}
+
+	@Test
+	public void testSealAfterRollback() {
+		// the segments written by the rolled back seal are left on the disk
+		Transaction tx = newTransaction();
+		seal(tx);
+		assertEntriesOnce(tx);
+		tx.rollback();
+
+		tx = newTransaction();
+		assertEntriesOnce(tx);
+		tx.commit();
+
+		// and replaced by the next seal
+		tx = newTransaction();
+		seal(tx);
+		tx.commit();
+
+		tx = newTransaction();
+		assertEntriesOnce(tx);
+		tx.commit();
+	}
+
+	@Test
+	public void testReseal() {
+		Transaction tx = newTransaction();
+		seal(tx);
+		tx.commit();
+
+		tx = newTransaction();
+		seal(tx);
+		seal(tx);
+		assertEntriesOnce(tx);
+		tx.commit();
+
+		tx = newTransaction();
+		assertEntriesOnce(tx);
+		tx.commit();
+	}
+
+	private static void seal(Transaction tx) {
+		IVF_FLATIndex idx = openIndex(tx);
+		idx.sealClusters();
+		idx.close();
+	}
+
+	/*
+	 * Asserts that a search over every cluster finds each entry of the index
+	 * exactly once.
+	 */
+	private static void assertEntriesOnce(Transaction tx) {
+		DistanceFn distFn = new EuclideanFn("v");
+		distFn.setQueryVector(new VectorConstant(new float[] { 0, 0, 0, 0 }));
+		IVF_FLATIndex idx = openIndex(tx);
+		idx.beforeFirst(distFn, 2 * NUM_RECORDS, IVF_FLATIndex.NUM_CLUSTERS);
+		List<RecordId> found = new ArrayList<RecordId>();
+		while (idx.next())
+			found.add(idx.getDataRecordId());
+		idx.close();
+		assertEquals(NUM_RECORDS, found.size());
+		assertEquals(rids, new HashSet<RecordId>(found));
+	}
+
+	private static IVF_FLATIndex openIndex(Transaction tx) {
+		return (IVF_FLATIndex) VanillaDb.catalogMgr().getIndexInfoByName("ivf_seal", tx).open(tx);
+	}
+
+	private static Transaction newTransaction() {
+		return VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+	}
+
+	private static void executeUpdate(String cmd, Transaction tx) {
+		VanillaDb.newPlanner().executeUpdate(cmd, tx);
+	}
+}
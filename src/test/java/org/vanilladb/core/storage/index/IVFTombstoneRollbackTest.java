@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright 2016, 2017 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.index;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.query.algebra.TablePlan;
+import org.vanilladb.core.query.algebra.TableScan;
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.sql.distfn.EuclideanFn;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.tx.Transaction;
+
+public class IVFTombstoneRollbackTest {
+	private static final int NUM_RECORDS = 50, NUM_CLUSTERS = 4;
+
+	private static Map<Integer, RecordId> rids = new HashMap<Integer, RecordId>();
+
+	@BeforeClass
+	public static void init() {
+		System.setProperty(IVF_FLATIndex.class.getName() + ".NUM_CLUSTERS", "" + NUM_CLUSTERS);
+		ServerInit.init();
+
+		Transaction tx = newTransaction();
+		executeUpdate("create table ivf_tomb_t (id int, v vector(4))", tx);
+		for (int i = 0; i < NUM_RECORDS; i++)
+			executeUpdate("insert into ivf_tomb_t (id, v) values (" + i + ", " + vector(i) + ")", tx);
+		executeUpdate("create index ivf_tomb on ivf_tomb_t (v) using ivf", tx);
+		tx.commit();
+
+		tx = newTransaction();
+		IVF_FLATIndex idx = openIndex(tx);
+		idx.bulkBuild();
+		idx.close();
+		TableScan s = (TableScan) new TablePlan("ivf_tomb_t", tx).open();
+		s.beforeFirst();
+		while (s.next())
+			rids.put((Integer) s.getVal("id").asJavaVal(), s.getRecordId());
+		s.close();
+		tx.commit();
+	}
+
+	@Test
+	public void testDeleteRollback() {
+		Transaction tx = newTransaction();
+		delete(3, tx);
+		assertFalse(search(tx).contains(rids.get(3)));
+		tx.rollback();
+
+		tx = newTransaction();
+		assertTrue(search(tx).contains(rids.get(3)));
+		tx.commit();
+	}
+
+	@Test
+	public void testReviveRollback() {
+		Transaction tx = newTransaction();
+		delete(7, tx);
+		tx.commit();
+
+		// reinserting the deleted entry revives it
+		tx = newTransaction();
+		insert(7, tx);
+		assertTrue(search(tx).contains(rids.get(7)));
+		tx.rollback();
+
+		// the tombstone is back once the revival rolls back
+		tx = newTransaction();
+		assertFalse(search(tx).contains(rids.get(7)));
+		insert(7, tx);
+		tx.commit();
+
+		tx = newTransaction();
+		assertTrue(search(tx).contains(rids.get(7)));
+		tx.commit();
+	}
+
+	@Test
+	public void testDeleteAndReinsertRollback() {
+		Transaction tx = newTransaction();
+		delete(11, tx);
+		insert(11, tx);
+		assertTrue(search(tx).contains(rids.get(11)));
+		tx.rollback();
+
+		tx = newTransaction();
+		assertTrue(search(tx).contains(rids.get(11)));
+		tx.commit();
+	}
+
+	private static void delete(int id, Transaction tx) {
+		IVF_FLATIndex idx = openIndex(tx);
+		idx.delete(new SearchKey(key(id)), rids.get(id), true);
+		idx.close();
+	}
+
+	private static void insert(int id, Transaction tx) {
+		IVF_FLATIndex idx = openIndex(tx);
+		idx.insert(key(id), rids.get(id));
+		idx.close();
+	}
+
+	private static Set<RecordId> search(Transaction tx) {
+		DistanceFn distFn = new EuclideanFn("v");
+		distFn.setQueryVector(key(0));
+		IVF_FLATIndex idx = openIndex(tx);
+		// the property only applies if no test loaded the index class before
+		idx.beforeFirst(distFn, NUM_RECORDS, IVF_FLATIndex.NUM_CLUSTERS);
+		Set<RecordId> result = new HashSet<RecordId>();
+		while (idx.next())
+			result.add(idx.getDataRecordId());
+		idx.close();
+		return result;
+	}
+
+	private static IVF_FLATIndex openIndex(Transaction tx) {
+		return (IVF_FLATIndex) VanillaDb.catalogMgr().getIndexInfoByName("ivf_tomb", tx).open(tx);
+	}
+
+	private static Transaction newTransaction() {
+		return VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+	}
+
+	private static void executeUpdate(String cmd, Transaction tx) {
+		VanillaDb.newPlanner().executeUpdate(cmd, tx);
+	}
+
+	private static String vector(int i) {
+		return "[" + i + ", " + i + ", " + i + ", " + i + "]";
+	}
+
+	private static VectorConstant key(int i) {
+		return new VectorConstant(new float[] { i, i, i, i });
+	}
+}
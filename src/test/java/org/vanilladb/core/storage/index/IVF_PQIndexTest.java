@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Copyright 2016, 2017 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.index;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.query.algebra.TablePlan;
+import org.vanilladb.core.query.algebra.TableScan;
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.BigIntConstant;
+import org.vanilladb.core.sql.DoubleConstant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.VecRecPair;
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.sql.distfn.EuclideanFn;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.record.RecordFile;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.tx.Transaction;
+
+public class IVF_PQIndexTest {
+	private static final int NUM_RECORDS = 300, NUM_CLUSTERS = 4, K = 10, NUM_QUERIES = 20;
+	// two dimensions per subspace
+	private static final int DIM = 2 * IVF_PQIndex.NUM_SUBSPACES;
+
+	private static float[][] vecs = new float[NUM_RECORDS][];
+	private static Map<RecordId, Integer> ids = new HashMap<RecordId, Integer>();
+	private static Random random = new Random(1);
+
+	@BeforeClass
+	public static void init() {
+		ServerInit.init();
+
+		// the codebook is trained on the records in the table once the index is first used
+		Transaction tx = newTransaction();
+		executeUpdate("create table pq_t (id int, v vector(" + DIM + "))", tx);
+		for (int i = 0; i < NUM_RECORDS; i++) {
+			vecs[i] = randomVector();
+			executeUpdate("insert into pq_t (id, v) values (" + i + ", " + literal(vecs[i]) + ")", tx);
+		}
+		executeUpdate("create index pq_idx on pq_t (v) using ivf_pq", tx);
+		tx.commit();
+
+		tx = newTransaction();
+		writeCentroids(tx);
+		Index idx = openIndex(tx);
+		TableScan s = (TableScan) new TablePlan("pq_t", tx).open();
+		s.beforeFirst();
+		while (s.next()) {
+			int id = (Integer) s.getVal("id").asJavaVal();
+			ids.put(s.getRecordId(), id);
+			idx.insert(new VectorConstant(vecs[id]), s.getRecordId());
+		}
+		s.close();
+		idx.close();
+		tx.commit();
+	}
+
+	@Test
+	public void testEncodeDecodeRoundTrip() {
+		Transaction tx = newTransaction();
+		Map<RecordId, float[]> decoded = decodeAll(tx);
+		assertEquals(NUM_RECORDS, decoded.size());
+
+		// the codes lose little of the vectors
+		double error = 0;
+		for (Map.Entry<RecordId, float[]> e : decoded.entrySet())
+			error += squaredDistance(vecs[ids.get(e.getKey())], e.getValue());
+		assertTrue(error / (NUM_RECORDS * DIM) < 10);
+
+		// a decoded vector is encoded to the same codes
+		RecordId fake = new RecordId(new BlockId("pq_t.tbl", 1000), 0);
+		float[] recon = decoded.values().iterator().next();
+		Index idx = openIndex(tx);
+		idx.insert(new VectorConstant(recon), fake);
+		idx.close();
+		assertArrayEquals(recon, decodeAll(tx).get(fake), 0);
+		tx.rollback();
+	}
+
+	@Test
+	public void testAdcDistance() {
+		float[] query = randomVector();
+		DistanceFn distFn = new EuclideanFn("v");
+		distFn.setQueryVector(new VectorConstant(query));
+		Transaction tx = newTransaction();
+		Index idx = openIndex(tx);
+		idx.beforeFirst(distFn, K, NUM_CLUSTERS);
+		int count = 0;
+		while (idx.next()) {
+			VecRecPair p = idx.getDataVecRecPair();
+			double expected = squaredDistance(query, p.getVec().asJavaVal());
+			assertEquals(expected, p.getDist(), 1e-3 * expected);
+			count++;
+		}
+		idx.close();
+		tx.commit();
+		assertEquals(NUM_RECORDS, count);
+	}
+
+	@Test
+	public void testRecall() {
+		Transaction tx = newTransaction();
+		int hits = 0;
+		for (int q = 0; q < NUM_QUERIES; q++) {
+			float[] query = randomVector();
+			double[] dists = new double[NUM_RECORDS];
+			for (int i = 0; i < NUM_RECORDS; i++)
+				dists[i] = squaredDistance(query, vecs[i]);
+			double[] sorted = dists.clone();
+			Arrays.sort(sorted);
+
+			// rank the entries of all clusters by their ADC distances
+			DistanceFn distFn = new EuclideanFn("v");
+			distFn.setQueryVector(new VectorConstant(query));
+			Index idx = openIndex(tx);
+			idx.beforeFirst(distFn, K, NUM_CLUSTERS);
+			List<VecRecPair> found = new ArrayList<VecRecPair>();
+			while (idx.next())
+				found.add(idx.getDataVecRecPair());
+			idx.close();
+			found.sort((a, b) -> Double.compare(a.getDist(), b.getDist()));
+			for (VecRecPair p : found.subList(0, K))
+				if (dists[ids.get(p.getRid())] <= sorted[K - 1])
+					hits++;
+		}
+		tx.commit();
+		assertTrue((double) hits / (NUM_QUERIES * K) >= 0.9);
+	}
+
+	/*
+	 * Writes the coarse quantizer of the index: NUM_CLUSTERS random records
+	 * as centroids.
+	 */
+	private static void writeCentroids(Transaction tx) {
+		IndexInfo ii = VanillaDb.catalogMgr().getIndexInfoByName("pq_idx", tx);
+		TableInfo ti = new TableInfo(IVF_FLATIndex.centroidTableName(ii), IVF_FLATIndex.centroidsSchema(DIM));
+		RecordFile.formatFileHeader(ti.fileName(), tx);
+		RecordFile rf = ti.open(tx, true);
+		for (int c = 0; c < NUM_CLUSTERS; c++) {
+			rf.insert();
+			rf.setVal(IVF_FLATIndex.SCHEMA_KEY, new VectorConstant(vecs[random.nextInt(NUM_RECORDS)]));
+			rf.setVal(IVF_FLATIndex.SCHEMA_CENTROID_NUM, new IntegerConstant(c));
+			rf.setVal(IVF_FLATIndex.SCHEMA_RADIUS, new DoubleConstant(0));
+			rf.setVal(IVF_FLATIndex.SCHEMA_ERROR, new DoubleConstant(0));
+			rf.setVal(IVF_FLATIndex.SCHEMA_SIZE, new BigIntConstant(0));
+			rf.setVal(IVF_FLATIndex.SCHEMA_FIT_ERROR, new DoubleConstant(0));
+		}
+		rf.close();
+	}
+
+	private static Map<RecordId, float[]> decodeAll(Transaction tx) {
+		DistanceFn distFn = new EuclideanFn("v");
+		distFn.setQueryVector(new VectorConstant(vecs[0]));
+		Index idx = openIndex(tx);
+		idx.beforeFirst(distFn, K, NUM_CLUSTERS);
+		Map<RecordId, float[]> decoded = new HashMap<RecordId, float[]>();
+		while (idx.next()) {
+			VecRecPair p = idx.getDataVecRecPair();
+			decoded.put(p.getRid(), p.getVec().asJavaVal());
+		}
+		idx.close();
+		return decoded;
+	}
+
+	private static double squaredDistance(float[] a, float[] b) {
+		double sum = 0;
+		for (int d = 0; d < a.length; d++)
+			sum += (a[d] - b[d]) * (a[d] - b[d]);
+		return sum;
+	}
+
+	private static Index openIndex(Transaction tx) {
+		return VanillaDb.catalogMgr().getIndexInfoByName("pq_idx", tx).open(tx);
+	}
+
+	private static Transaction newTransaction() {
+		return VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+	}
+
+	private static void executeUpdate(String cmd, Transaction tx) {
+		VanillaDb.newPlanner().executeUpdate(cmd, tx);
+	}
+
+	private static float[] randomVector() {
+		float[] vec = new float[DIM];
+		for (int i = 0; i < DIM; i++)
+			vec[i] = random.nextInt(100);
+		return vec;
+	}
+
+	private static String literal(float[] vec) {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < vec.length; i++)
+			sb.append(i == 0 ? "" : ", ").append((int) vec[i]);
+		return sb.append("]").toString();
+	}
+}
@@ -0,0 +1,248 @@
+/*******************************************************************************
+ * Copyright 2016, 2017 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.index.hnsw;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.query.algebra.TablePlan;
+import org.vanilladb.core.query.algebra.TableScan;
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.distfn.CosineFn;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.sql.distfn.EuclideanFn;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.index.SearchKey;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.tx.Transaction;
+
+public class HNSWIndexTest {
+	private static final int NUM_RECORDS = 300, DIM = 8, K = 10, NUM_QUERIES = 20;
+
+	private static float[][] vecs = new float[NUM_RECORDS][];
+	private static Map<Integer, RecordId> rids = new HashMap<Integer, RecordId>();
+	private static Random random = new Random(1);
+
+	@BeforeClass
+	public static void init() {
+		ServerInit.init();
+
+		Transaction tx = newTransaction();
+		executeUpdate("create table hnsw_t (id int, v vector(" + DIM + "))", tx);
+		executeUpdate("create index hnsw_euc on hnsw_t (v) using hnsw", tx);
+		executeUpdate("create index hnsw_cos on hnsw_t (v) using hnsw with normalize", tx);
+		executeUpdate("create table hnsw_e (id int, v vector(" + DIM + "))", tx);
+		executeUpdate("create index hnsw_empty on hnsw_e (v) using hnsw", tx);
+		// the inserts of the rollback test would crowd the cosine neighbors of the random vectors
+		executeUpdate("create table hnsw_r (id int, v vector(" + DIM + "))", tx);
+		executeUpdate("create index hnsw_rb on hnsw_r (v) using hnsw", tx);
+		for (int i = 0; i < NUM_RECORDS; i++) {
+			vecs[i] = randomVector();
+			executeUpdate("insert into hnsw_t (id, v) values (" + i + ", " + literal(vecs[i]) + ")", tx);
+		}
+		tx.commit();
+
+		tx = newTransaction();
+		TableScan s = (TableScan) new TablePlan("hnsw_t", tx).open();
+		s.beforeFirst();
+		while (s.next())
+			rids.put((Integer) s.getVal("id").asJavaVal(), s.getRecordId());
+		s.close();
+		tx.commit();
+	}
+
+	@Test
+	public void testEuclideanRecall() {
+		assertTrue(recall("hnsw_euc", new EuclideanFn("v")) >= 0.9);
+	}
+
+	@Test
+	public void testCosineRecall() {
+		assertTrue(recall("hnsw_cos", new CosineFn("v")) >= 0.9);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testOtherMetricIsRejected() {
+		Transaction tx = newTransaction();
+		try {
+			search("hnsw_euc", new CosineFn("v"), vecs[0], K, tx);
+		} finally {
+			tx.rollback();
+		}
+	}
+
+	@Test
+	public void testBeamIsResetPerSearch() {
+		Transaction tx = newTransaction();
+		assertEquals(200, search("hnsw_euc", new EuclideanFn("v"), vecs[0], 200, tx).size());
+		Index idx = openIndex("hnsw_euc", tx);
+		DistanceFn distFn = new EuclideanFn("v");
+		distFn.setQueryVector(new VectorConstant(vecs[0]));
+		idx.beforeFirst(distFn, 200, -1);
+		idx.beforeFirst(distFn);
+		int count = 0;
+		while (idx.next())
+			count++;
+		idx.close();
+		assertEquals(HNSWIndex.EF_SEARCH, count);
+		tx.commit();
+	}
+
+	@Test
+	public void testDeleteRollback() {
+		Transaction tx = newTransaction();
+		Index idx = openIndex("hnsw_euc", tx);
+		idx.delete(new SearchKey(new VectorConstant(vecs[5])), rids.get(5), true);
+		idx.close();
+		assertFalse(search("hnsw_euc", new EuclideanFn("v"), vecs[5], K, tx).contains(rids.get(5)));
+		tx.rollback();
+
+		tx = newTransaction();
+		assertTrue(search("hnsw_euc", new EuclideanFn("v"), vecs[5], K, tx).contains(rids.get(5)));
+		tx.commit();
+	}
+
+	@Test
+	public void testDeleteFromEmptyIndex() {
+		Transaction tx = newTransaction();
+		Index idx = openIndex("hnsw_empty", tx);
+		idx.delete(new SearchKey(new VectorConstant(vecs[0])), new RecordId(new BlockId("hnsw_e.tbl", 1), 0), true);
+		idx.close();
+		tx.commit();
+	}
+
+	@Test
+	public void testInsertRollback() {
+		// enough nodes that some of them reach the cached upper layers
+		int numNodes = 100;
+		Transaction tx = newTransaction();
+		for (int i = 0; i < numNodes; i++)
+			executeUpdate("insert into hnsw_r (id, v) values (" + i + ", " + literal(filled(5000 + i)) + ")", tx);
+		assertEquals(1, search("hnsw_rb", new EuclideanFn("v"), filled(5000), 1, tx).size());
+		tx.rollback();
+
+		// the slots of the undone nodes are reused by the next inserts
+		tx = newTransaction();
+		for (int i = 0; i < numNodes; i++)
+			executeUpdate("insert into hnsw_r (id, v) values (" + i + ", " + literal(filled(7000 + i)) + ")", tx);
+		tx.commit();
+
+		tx = newTransaction();
+		assertArrayEquals(filled(7000), nearest("hnsw_rb", filled(5000), tx), 0);
+		for (int i = 0; i < numNodes; i += 10)
+			assertArrayEquals(filled(7000 + i), nearest("hnsw_rb", filled(7000 + i), tx), 0);
+		tx.commit();
+	}
+
+	/*
+	 * Returns the fraction of the true k nearest neighbors found by the
+	 * index, counting ties at the k-th distance as found.
+	 */
+	private static double recall(String idxName, DistanceFn distFn) {
+		Transaction tx = newTransaction();
+		int hits = 0;
+		for (int q = 0; q < NUM_QUERIES; q++) {
+			float[] query = randomVector();
+			distFn.setQueryVector(new VectorConstant(query));
+			double[] dists = new double[NUM_RECORDS];
+			for (int i = 0; i < NUM_RECORDS; i++)
+				dists[i] = distFn.distance(new VectorConstant(vecs[i]));
+			double[] sorted = dists.clone();
+			Arrays.sort(sorted);
+
+			Map<RecordId, Integer> ids = new HashMap<RecordId, Integer>();
+			for (Map.Entry<Integer, RecordId> e : rids.entrySet())
+				ids.put(e.getValue(), e.getKey());
+			for (RecordId rid : search(idxName, distFn, query, K, tx)) {
+				Integer id = ids.get(rid);
+				if (id != null && dists[id] <= sorted[K - 1])
+					hits++;
+			}
+		}
+		tx.commit();
+		return (double) hits / (NUM_QUERIES * K);
+	}
+
+	private static List<RecordId> search(String idxName, DistanceFn distFn, float[] query, int k,
+			Transaction tx) {
+		distFn.setQueryVector(new VectorConstant(query));
+		Index idx = openIndex(idxName, tx);
+		idx.beforeFirst(distFn, k, -1);
+		List<RecordId> result = new ArrayList<RecordId>();
+		while (result.size() < k && idx.next())
+			result.add(idx.getDataRecordId());
+		idx.close();
+		return result;
+	}
+
+	private static float[] nearest(String idxName, float[] query, Transaction tx) {
+		Index idx = openIndex(idxName, tx);
+		DistanceFn distFn = new EuclideanFn("v");
+		distFn.setQueryVector(new VectorConstant(query));
+		idx.beforeFirst(distFn, 1, -1);
+		assertTrue(idx.next());
+		float[] vec = idx.getDataVecRecPair().getVec().asJavaVal();
+		idx.close();
+		return vec;
+	}
+
+	private static Index openIndex(String idxName, Transaction tx) {
+		return VanillaDb.catalogMgr().getIndexInfoByName(idxName, tx).open(tx);
+	}
+
+	private static Transaction newTransaction() {
+		return VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+	}
+
+	private static void executeUpdate(String cmd, Transaction tx) {
+		VanillaDb.newPlanner().executeUpdate(cmd, tx);
+	}
+
+	private static float[] randomVector() {
+		float[] vec = new float[DIM];
+		for (int i = 0; i < DIM; i++)
+			vec[i] = random.nextInt(1000);
+		return vec;
+	}
+
+	private static float[] filled(int val) {
+		float[] vec = new float[DIM];
+		Arrays.fill(vec, val);
+		return vec;
+	}
+
+	private static String literal(float[] vec) {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < vec.length; i++)
+			sb.append(i == 0 ? "" : ", ").append((int) vec[i]);
+		return sb.append("]").toString();
+	}
+}
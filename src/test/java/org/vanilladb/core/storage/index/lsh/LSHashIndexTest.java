@@ -0,0 +1,241 @@
+/*******************************************************************************
+ * Copyright 2016, 2017 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.index.lsh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.query.algebra.TablePlan;
+import org.vanilladb.core.query.algebra.TableScan;
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.VecRecPair;
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.distfn.CosineFn;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.sql.distfn.EuclideanFn;
+import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.index.IndexOption;
+import org.vanilladb.core.storage.index.SearchKey;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.tx.Transaction;
+
+public class LSHashIndexTest {
+	private static final int NUM_RECORDS = 300, DIM = 8, K = 10, NUM_QUERIES = 20;
+
+	private static float[][] vecs = new float[NUM_RECORDS][];
+	private static Map<Integer, RecordId> rids = new HashMap<Integer, RecordId>();
+	private static Random random = new Random(1);
+
+	@BeforeClass
+	public static void init() {
+		ServerInit.init();
+
+		Transaction tx = newTransaction();
+		executeUpdate("create table lsh_t (id int, v vector(" + DIM + "))", tx);
+		executeUpdate("create index lsh_euc on lsh_t (v) using lsh", tx);
+		executeUpdate("create index lsh_cos on lsh_t (v) using lsh with cosine", tx);
+		for (int i = 0; i < NUM_RECORDS; i++) {
+			vecs[i] = randomVector();
+			executeUpdate("insert into lsh_t (id, v) values (" + i + ", " + literal(vecs[i]) + ")", tx);
+		}
+		tx.commit();
+
+		tx = newTransaction();
+		TableScan s = (TableScan) new TablePlan("lsh_t", tx).open();
+		s.beforeFirst();
+		while (s.next())
+			rids.put((Integer) s.getVal("id").asJavaVal(), s.getRecordId());
+		s.close();
+		tx.commit();
+	}
+
+	@Test
+	public void testFamilyIsKeptInCatalog() {
+		Transaction tx = newTransaction();
+		assertFalse(VanillaDb.catalogMgr().getIndexInfoByName("lsh_euc", tx).hasOption(IndexOption.COSINE));
+		assertTrue(VanillaDb.catalogMgr().getIndexInfoByName("lsh_cos", tx).hasOption(IndexOption.COSINE));
+		tx.commit();
+	}
+
+	@Test
+	public void testEntryIsInItsBuckets() {
+		Transaction tx = newTransaction();
+		for (int i = 0; i < NUM_RECORDS; i++) {
+			assertTrue(candidates("lsh_euc", new EuclideanFn("v"), vecs[i], tx).contains(rids.get(i)));
+			assertTrue(candidates("lsh_cos", new CosineFn("v"), vecs[i], tx).contains(rids.get(i)));
+		}
+		tx.commit();
+	}
+
+	@Test
+	public void testCosineBucketsIgnoreNorm() {
+		Transaction tx = newTransaction();
+		for (int i = 0; i < NUM_RECORDS; i += 10) {
+			float[] scaled = vecs[i].clone();
+			for (int d = 0; d < DIM; d++)
+				scaled[d] *= 3;
+			assertEquals(new HashSet<RecordId>(candidates("lsh_cos", new CosineFn("v"), vecs[i], tx)),
+					new HashSet<RecordId>(candidates("lsh_cos", new CosineFn("v"), scaled, tx)));
+		}
+		tx.commit();
+	}
+
+	@Test
+	public void testEuclideanBucketsSeparateFarVectors() {
+		float[] far = new float[DIM];
+		Arrays.fill(far, 100000);
+		Transaction tx = newTransaction();
+		assertTrue(candidates("lsh_euc", new EuclideanFn("v"), far, tx).isEmpty());
+		tx.commit();
+	}
+
+	@Test
+	public void testEuclideanRecall() {
+		assertTrue(recall("lsh_euc", new EuclideanFn("v")) >= 0.9);
+	}
+
+	@Test
+	public void testCosineRecall() {
+		assertTrue(recall("lsh_cos", new CosineFn("v")) >= 0.9);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testCosineQueryOnEuclideanIndexIsRejected() {
+		Transaction tx = newTransaction();
+		try {
+			candidates("lsh_euc", new CosineFn("v"), vecs[0], tx);
+		} finally {
+			tx.rollback();
+		}
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testEuclideanQueryOnCosineIndexIsRejected() {
+		Transaction tx = newTransaction();
+		try {
+			candidates("lsh_cos", new EuclideanFn("v"), vecs[0], tx);
+		} finally {
+			tx.rollback();
+		}
+	}
+
+	@Test
+	public void testDeleteRollback() {
+		Transaction tx = newTransaction();
+		Index idx = openIndex("lsh_euc", tx);
+		idx.delete(new SearchKey(new VectorConstant(vecs[7])), rids.get(7), true);
+		idx.close();
+		assertFalse(candidates("lsh_euc", new EuclideanFn("v"), vecs[7], tx).contains(rids.get(7)));
+		tx.rollback();
+
+		tx = newTransaction();
+		assertTrue(candidates("lsh_euc", new EuclideanFn("v"), vecs[7], tx).contains(rids.get(7)));
+		tx.commit();
+	}
+
+	/*
+	 * Returns the fraction of the true k nearest neighbors among the k
+	 * candidates of the index nearest to the query, counting ties at the k-th
+	 * distance as found.
+	 */
+	private static double recall(String idxName, final DistanceFn distFn) {
+		Map<RecordId, Integer> ids = new HashMap<RecordId, Integer>();
+		for (Map.Entry<Integer, RecordId> e : rids.entrySet())
+			ids.put(e.getValue(), e.getKey());
+
+		Transaction tx = newTransaction();
+		int hits = 0;
+		for (int q = 0; q < NUM_QUERIES; q++) {
+			float[] query = randomVector();
+			distFn.setQueryVector(new VectorConstant(query));
+			final double[] dists = new double[NUM_RECORDS];
+			for (int i = 0; i < NUM_RECORDS; i++)
+				dists[i] = distFn.distance(new VectorConstant(vecs[i]));
+			double[] sorted = dists.clone();
+			Arrays.sort(sorted);
+
+			List<Integer> found = new ArrayList<Integer>();
+			for (RecordId rid : candidates(idxName, distFn, query, tx))
+				found.add(ids.get(rid));
+			found.sort(new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					return Double.compare(dists[a], dists[b]);
+				}
+			});
+			for (int id : found.subList(0, Math.min(K, found.size())))
+				if (dists[id] <= sorted[K - 1])
+					hits++;
+		}
+		tx.commit();
+		return (double) hits / (NUM_QUERIES * K);
+	}
+
+	private static List<RecordId> candidates(String idxName, DistanceFn distFn, float[] query,
+			Transaction tx) {
+		distFn.setQueryVector(new VectorConstant(query));
+		Index idx = openIndex(idxName, tx);
+		idx.beforeFirst(distFn);
+		List<RecordId> result = new ArrayList<RecordId>();
+		while (idx.next()) {
+			VecRecPair pair = idx.getDataVecRecPair();
+			result.add(pair.getRid());
+		}
+		idx.close();
+		return result;
+	}
+
+	private static Index openIndex(String idxName, Transaction tx) {
+		return VanillaDb.catalogMgr().getIndexInfoByName(idxName, tx).open(tx);
+	}
+
+	private static Transaction newTransaction() {
+		return VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+	}
+
+	private static void executeUpdate(String cmd, Transaction tx) {
+		VanillaDb.newPlanner().executeUpdate(cmd, tx);
+	}
+
+	// near neighbors lie well within BUCKET_WIDTH of each other, so they share buckets
+	private static float[] randomVector() {
+		float[] vec = new float[DIM];
+		for (int i = 0; i < DIM; i++)
+			vec[i] = random.nextInt(50);
+		return vec;
+	}
+
+	private static String literal(float[] vec) {
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < vec.length; i++)
+			sb.append(i == 0 ? "" : ", ").append((int) vec[i]);
+		return sb.append("]").toString();
+	}
+}
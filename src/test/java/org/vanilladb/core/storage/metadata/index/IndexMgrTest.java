@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright 2016, 2017 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.metadata.index;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.vanilladb.core.server.ServerInit;
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.storage.tx.Transaction;
+
+public class IndexMgrTest {
+
+	@BeforeClass
+	public static void init() {
+		ServerInit.init();
+
+		Transaction tx = newTransaction();
+		VanillaDb.newPlanner().executeUpdate("create table idxmgr_t (id int, v vector(4))", tx);
+		VanillaDb.newPlanner().executeUpdate("create index idxmgr_ivf on idxmgr_t (v) using ivf", tx);
+		tx.commit();
+	}
+
+	@Test
+	public void testClusterIdsOnlyGrow() {
+		Transaction tx = newTransaction();
+		assertEquals(8, VanillaDb.catalogMgr().nextClusterId("idxmgr_ivf", 8, tx));
+		tx.commit();
+
+		tx = newTransaction();
+		assertEquals(9, VanillaDb.catalogMgr().nextClusterId("idxmgr_ivf", 8, tx));
+		// the floor drops once the clusters with the largest ids are merged away
+		assertEquals(10, VanillaDb.catalogMgr().nextClusterId("idxmgr_ivf", 3, tx));
+		tx.commit();
+
+		tx = newTransaction();
+		assertEquals(20, VanillaDb.catalogMgr().nextClusterId("idxmgr_ivf", 20, tx));
+		tx.rollback();
+
+		tx = newTransaction();
+		assertEquals(11, VanillaDb.catalogMgr().nextClusterId("idxmgr_ivf", 0, tx));
+		tx.commit();
+	}
+
+	private static Transaction newTransaction() {
+		return VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+	}
+}
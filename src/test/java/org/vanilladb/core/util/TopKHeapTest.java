@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright 2016, 2017 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TopKHeapTest {
+
+	@Test
+	public void testKeepsTheKSmallestInAscendingOrder() {
+		Random random = new Random(8);
+		float[] dists = new float[1000];
+		TopKHeap heap = new TopKHeap(10);
+		for (int i = 0; i < dists.length; i++) {
+			dists[i] = random.nextFloat();
+			heap.offer(dists[i], i);
+		}
+		heap.sortAscending();
+
+		float[] sorted = dists.clone();
+		Arrays.sort(sorted);
+		assertEquals(10, heap.size());
+		for (int i = 0; i < heap.size(); i++) {
+			assertEquals(sorted[i], heap.dist(i), 0);
+			assertEquals(sorted[i], dists[(int) heap.rid(i)], 0);
+		}
+	}
+
+	@Test
+	public void testThreshold() {
+		TopKHeap heap = new TopKHeap(2);
+		assertEquals(Float.POSITIVE_INFINITY, heap.threshold(), 0);
+		heap.offer(3, 1);
+		heap.offer(1, 2);
+		assertEquals(3, heap.threshold(), 0);
+		assertFalse(heap.offer(4, 3));
+		assertTrue(heap.offer(2, 4));
+		assertEquals(2, heap.threshold(), 0);
+	}
+
+	@Test
+	public void testMerge() {
+		TopKHeap a = new TopKHeap(3), b = new TopKHeap(3);
+		a.offer(5, 1);
+		a.offer(1, 2);
+		b.offer(2, 3);
+		b.offer(4, 4);
+		b.offer(0, 5);
+		a.merge(b);
+		a.sortAscending();
+
+		assertEquals(3, a.size());
+		assertEquals(5, a.rid(0));
+		assertEquals(2, a.rid(1));
+		assertEquals(3, a.rid(2));
+	}
+
+	@Test
+	public void testPackRid() {
+		long packed = TopKHeap.packRid(123456789L, 321);
+		assertEquals(123456789L, TopKHeap.blockNum(packed));
+		assertEquals(321, TopKHeap.id(packed));
+	}
+}
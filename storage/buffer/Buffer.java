@@ -97,6 +97,31 @@ public class Buffer {
 		}
 	}
 	
+	/**
+	 * Decodes the float vector at the specified offset of this buffer's page
+	 * into the specified array.
+	 * 
+	 * @param offset
+	 *            the byte offset of the page
+	 * @param dst
+	 *            the array receiving the vector
+	 * @param dstOffset
+	 *            the index of dst receiving the first dimension
+	 * @param dim
+	 *            the dimension of the vector
+	 */
+	public void getFloats(int offset, float[] dst, int dstOffset, int dim) {
+		contentLock.readLock().lock();
+		try {
+			if (offset < 0 || offset >= BUFFER_SIZE)
+				throw new IndexOutOfBoundsException("" + offset);
+
+			contents.getFloats(DATA_START_OFFSET + offset, dst, dstOffset, dim);
+		} finally {
+			contentLock.readLock().unlock();
+		}
+	}
+
 	void setVal(int offset, Constant val) {
 		contentLock.writeLock().lock();
 		try {
@@ -267,6 +267,29 @@ public class BufferMgr implements TransactionLifecycleListener {
 		}
 	}
 
+	/**
+	 * Reads the specified block into the buffer pool without keeping it
+	 * pinned, so that a later pin finds it there. Nothing is read if no buffer
+	 * is available. Only the shared buffer pool is used, not the pins of the
+	 * transaction, so a block may be prefetched on any thread.
+	 * 
+	 * @param blk
+	 *            a block ID
+	 * @return true if the block is in the buffer pool
+	 */
+	public boolean prefetch(BlockId blk) {
+		Buffer buff = bufferPool.pin(blk);
+		if (buff == null)
+			return false;
+		bufferPool.unpin(buff);
+		if (hasWaitingTx.get()) {
+			synchronized (bufferPool) {
+				bufferPool.notifyAll();
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Flushes all dirty buffers.
 	 */
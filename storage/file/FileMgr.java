@@ -261,6 +261,19 @@ public class FileMgr {
 		return isNew;
 	}
 
+	/**
+	 * Returns the file of the specified name in the database directory. This
+	 * is meant for files that are not accessed block by block through this
+	 * manager, such as memory-mapped index segments.
+	 * 
+	 * @param fileName
+	 *            the specified filename
+	 * @return the file in the database directory
+	 */
+	public File dbFile(String fileName) {
+		return new File(dbDirectory, fileName);
+	}
+
 	/**
 	 * Returns the file channel for the specified filename. The file channel is
 	 * stored in a map keyed on the filename. If the file is not open, then it
@@ -20,6 +20,7 @@ import java.nio.BufferOverflowException;
 import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.sql.Constant;
 import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.sql.VectorConstant;
 import org.vanilladb.core.storage.file.io.IoAllocator;
 import org.vanilladb.core.storage.file.io.IoBuffer;
 import org.vanilladb.core.util.ByteHelper;
@@ -161,12 +162,37 @@ public class Page {
 			offset += ByteHelper.INT_SIZE;
 		}
 
+		// A float vector is decoded in bulk, without the bytes in between
+		if (type.getSqlType() == java.sql.Types.ARRAY) {
+			float[] vec = new float[size / Float.BYTES];
+			contents.getFloats(offset, vec, 0, vec.length);
+			return VectorConstant.wrap(vec);
+		}
+
 		// Get bytes and translate it to Constant
 		byteVal = new byte[size];
 		contents.get(offset, byteVal);
 		return Constant.newInstance(type, byteVal);
 	}
 
+	/**
+	 * Decodes the float vector at the specified offset of this page straight
+	 * into the specified array, so a scan can reuse one array for all its
+	 * records.
+	 * 
+	 * @param offset
+	 *            the byte offset within the page
+	 * @param dst
+	 *            the array receiving the vector
+	 * @param dstOffset
+	 *            the index of dst receiving the first dimension
+	 * @param dim
+	 *            the dimension of the vector
+	 */
+	public synchronized void getFloats(int offset, float[] dst, int dstOffset, int dim) {
+		contents.getFloats(offset, dst, dstOffset, dim);
+	}
+
 	/**
 	 * Writes a constant value to the specified offset on the page.
 	 * 
@@ -177,6 +203,10 @@ public class Page {
 	 *            the constant value to be written to the page
 	 */
 	public synchronized void setVal(int offset, Constant val) {
+		if (val.getType().getSqlType() == java.sql.Types.ARRAY) {
+			contents.putFloats(offset, ((VectorConstant) val).asJavaVal());
+			return;
+		}
 		byte[] byteval = val.asBytes();
 
 		// Append the size of value if it is not fixed size
@@ -21,6 +21,17 @@ public interface IoBuffer {
 
 	IoBuffer put(int position, byte[] src);
 
+	/**
+	 * Reads count big-endian floats starting at the position into
+	 * dst[dstOffset, dstOffset + count).
+	 */
+	IoBuffer getFloats(int position, float[] dst, int dstOffset, int count);
+
+	/**
+	 * Writes the floats of src as big-endian floats starting at the position.
+	 */
+	IoBuffer putFloats(int position, float[] src);
+
 	void clear();
 
 	void rewind();
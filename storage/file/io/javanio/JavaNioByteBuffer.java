@@ -16,6 +16,7 @@
 package org.vanilladb.core.storage.file.io.javanio;
 
 import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
 
 import org.vanilladb.core.storage.file.io.IoBuffer;
 
@@ -41,6 +42,28 @@ public class JavaNioByteBuffer implements IoBuffer {
 		return this;
 	}
 	
+	@Override
+	public IoBuffer getFloats(int position, float[] dst, int dstOffset, int count) {
+		floatView(position, count).get(dst, dstOffset, count);
+		return this;
+	}
+
+	@Override
+	public IoBuffer putFloats(int position, float[] src) {
+		floatView(position, src.length).put(src);
+		return this;
+	}
+
+	/*
+	 * A float view over the bytes of count floats starting at the position,
+	 * which copies them in bulk.
+	 */
+	private FloatBuffer floatView(int position, int count) {
+		ByteBuffer slice = byteBuffer.duplicate();
+		slice.position(position).limit(position + count * Float.BYTES);
+		return slice.slice().asFloatBuffer();
+	}
+
 	@Override
 	public void clear() {
 		byteBuffer.clear();
@@ -15,6 +15,8 @@
  *******************************************************************************/
 package org.vanilladb.core.storage.file.io.jaydio;
 
+import java.nio.ByteBuffer;
+
 import net.smacke.jaydio.DirectIoLib;
 import net.smacke.jaydio.buffer.AlignedDirectByteBuffer;
 
@@ -24,6 +26,8 @@ import org.vanilladb.core.storage.file.io.IoBuffer;
 public class JaydioDirectByteBuffer implements IoBuffer {
 
 	private AlignedDirectByteBuffer byteBuffer;
+	// the bytes of the floats being copied, reused across calls and only grown
+	private ByteBuffer scratch = ByteBuffer.allocate(0);
 	
 	public JaydioDirectByteBuffer(int capacity) {
 		byteBuffer = AlignedDirectByteBuffer
@@ -44,6 +48,32 @@ public class JaydioDirectByteBuffer implements IoBuffer {
 		return this;
 	}
 	
+	@Override
+	public synchronized IoBuffer getFloats(int position, float[] dst, int dstOffset, int count) {
+		int size = count * Float.BYTES;
+		ByteBuffer bytes = scratch(size);
+		byteBuffer.position(position);
+		byteBuffer.get(bytes.array(), 0, size);
+		bytes.asFloatBuffer().get(dst, dstOffset, count);
+		return this;
+	}
+
+	@Override
+	public synchronized IoBuffer putFloats(int position, float[] src) {
+		int size = src.length * Float.BYTES;
+		ByteBuffer bytes = scratch(size);
+		bytes.asFloatBuffer().put(src);
+		byteBuffer.position(position);
+		byteBuffer.put(bytes.array(), 0, size);
+		return this;
+	}
+
+	private ByteBuffer scratch(int size) {
+		if (scratch.capacity() < size)
+			scratch = ByteBuffer.allocate(size);
+		return scratch;
+	}
+
 	@Override
 	public void clear() {
 		byteBuffer.clear();
@@ -0,0 +1,196 @@
+package org.vanilladb.core.storage.index;
+
+import java.util.Arrays;
+
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.sql.distfn.EuclideanFn;
+import org.vanilladb.core.util.TopKHeap;
+
+/**
+ * The centroids of an IVF index, stored as one contiguous row-major float
+ * matrix along with the ids of the cluster files they stand for. A matrix is
+ * immutable once loaded, so concurrent queries can rank it without locking;
+ * every ranking keeps its distances in arrays of its own.
+ */
+public class CentroidMatrix {
+    // the number of rows scored per kernel call
+    private static final int BLOCK_SIZE = 256;
+
+    private final float[] vecs;
+    private final int[] ids;
+    private final int dim;
+    private final long version;
+
+    /**
+     * Creates a matrix over the specified centroids.
+     *
+     * @param vecs
+     *            the centroids, back to back
+     * @param ids
+     *            the cluster file id of every centroid
+     * @param dim
+     *            the dimension of the centroids
+     * @param version
+     *            the version of the index the centroids were loaded at
+     */
+    public CentroidMatrix(float[] vecs, int[] ids, int dim, long version) {
+        if (vecs.length != ids.length * dim)
+            throw new IllegalArgumentException("expected " + ids.length + " centroids of dimension " + dim);
+        this.vecs = vecs;
+        this.ids = ids;
+        this.dim = dim;
+        this.version = version;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public int dimension() {
+        return dim;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Returns the cluster file id of the i-th centroid.
+     */
+    public int id(int i) {
+        return ids[i];
+    }
+
+    /**
+     * Returns the row of the centroid of the specified cluster file, or -1 if
+     * the index has no such cluster.
+     */
+    public int row(int id) {
+        for (int i = 0; i < ids.length; ++i)
+            if (ids[i] == id)
+                return i;
+        return -1;
+    }
+
+    /**
+     * Returns a copy of this matrix without the centroid of the specified
+     * cluster file.
+     */
+    public CentroidMatrix without(int id) {
+        int row = row(id);
+        if (row < 0)
+            return this;
+        float[] restVecs = new float[vecs.length - dim];
+        int[] restIds = new int[ids.length - 1];
+        System.arraycopy(vecs, 0, restVecs, 0, row * dim);
+        System.arraycopy(vecs, (row + 1) * dim, restVecs, row * dim, restVecs.length - row * dim);
+        System.arraycopy(ids, 0, restIds, 0, row);
+        System.arraycopy(ids, row + 1, restIds, row, restIds.length - row);
+        return new CentroidMatrix(restVecs, restIds, dim, version);
+    }
+
+    /**
+     * Copies the i-th centroid out of the matrix.
+     */
+    public float[] vector(int i) {
+        return Arrays.copyOfRange(vecs, i * dim, (i + 1) * dim);
+    }
+
+    /**
+     * Writes the distance between the query of the distance function and the
+     * i-th centroid to out[i], scoring the matrix block by block.
+     *
+     * @param distFn
+     *            the distance function holding the query vector
+     * @param out
+     *            the array receiving the distances, one per centroid
+     */
+    public void distances(DistanceFn distFn, float[] out) {
+        float[] block = new float[Math.min(BLOCK_SIZE, ids.length)];
+        for (int from = 0; from < ids.length; from += BLOCK_SIZE) {
+            int count = Math.min(BLOCK_SIZE, ids.length - from);
+            distFn.distances(vecs, dim, from, count, block);
+            System.arraycopy(block, 0, out, from, count);
+        }
+    }
+
+    /**
+     * Returns the cluster file ids of the n centroids nearest to the query of
+     * the distance function, nearest first. The matrix is scored block by
+     * block with the batched kernel of the distance function, and only the n
+     * nearest survive in a bounded heap.
+     *
+     * @param distFn
+     *            the distance function holding the query vector
+     * @param n
+     *            the number of clusters to return
+     * @return the ids of the nearest clusters
+     */
+    public int[] nearest(DistanceFn distFn, int n) {
+        n = Math.min(n, ids.length);
+        if (n <= 0)
+            return new int[0];
+
+        TopKHeap heap = new TopKHeap(n);
+        float[] block = new float[Math.min(BLOCK_SIZE, ids.length)];
+        for (int from = 0; from < ids.length; from += BLOCK_SIZE) {
+            int count = Math.min(BLOCK_SIZE, ids.length - from);
+            distFn.distances(vecs, dim, from, count, block);
+            for (int i = 0; i < count; ++i)
+                if (block[i] < heap.threshold())
+                    heap.offer(block[i], from + i);
+        }
+        heap.sortAscending();
+
+        int[] nearest = new int[heap.size()];
+        for (int i = 0; i < nearest.length; ++i)
+            nearest[i] = ids[(int) heap.rid(i)];
+        return nearest;
+    }
+
+    /**
+     * Writes the cluster file id of the centroid nearest, in Euclidean
+     * distance, to each of the vectors [from, from + count) of the specified
+     * matrix to out[from..from + count). The vectors are scored block by
+     * block against all centroids with the batched kernel, so a centroid is
+     * loaded once for several vectors.
+     *
+     * @param matrix
+     *            the vectors, back to back
+     * @param from
+     *            the first vector to assign
+     * @param count
+     *            the number of vectors to assign
+     * @param out
+     *            the array receiving the cluster file ids
+     */
+    public void assign(float[] matrix, int from, int count, int[] out) {
+        int blockSize = Math.min(BLOCK_SIZE, count);
+        float[] block = new float[blockSize * dim];
+        float[] dists = new float[blockSize * ids.length];
+        for (int start = from; start < from + count; start += blockSize) {
+            int n = Math.min(blockSize, from + count - start);
+            System.arraycopy(matrix, start * dim, block, 0, n * dim);
+            EuclideanFn.distances(block, n, vecs, ids.length, dim, dists);
+            for (int q = 0; q < n; ++q) {
+                int best = 0;
+                for (int c = 1; c < ids.length; ++c)
+                    if (dists[q * ids.length + c] < dists[q * ids.length + best])
+                        best = c;
+                out[start + q] = ids[best];
+            }
+        }
+    }
+
+    /**
+     * Returns the cluster file id of the centroid nearest to the specified
+     * vector in Euclidean distance, which is how entries are assigned to
+     * clusters.
+     */
+    public int nearest(float[] vec) {
+        EuclideanFn distFn = new EuclideanFn("");
+        distFn.setQueryVector(new VectorConstant(vec));
+        return nearest(distFn, 1)[0];
+    }
+}
@@ -0,0 +1,212 @@
+package org.vanilladb.core.storage.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * The changes to the clusters of an IVF index that are not yet in its
+ * centroid table. An insert raises the radius of its cluster, if its entry
+ * lies beyond it, and adds the squared distance from the entry to the
+ * centroid to the error of the cluster here, without touching the centroid
+ * row, so concurrent inserts never wait on each other for it; the
+ * maintenance of the index writes the changes to the table in one batch.
+ * The radii of the clusters are cached here as well, with the unflushed
+ * raises applied, for range searches to prune the clusters with.
+ *
+ * <p>
+ * The errors and sizes only decide when a cluster is re-centered, so the
+ * changes of inserts that roll back are kept (a raised radius is still an
+ * upper bound), and those not yet written when the server crashes are lost.
+ * A lost raise would let a range search skip a match, though, so the index
+ * is marked stale by a file on disk before a raise is cached, and the mark
+ * is only removed once every raise is flushed. The radii of an index found
+ * stale by a later run are measured on its clusters instead of being read
+ * from the table.
+ * </p>
+ */
+public class IVFClusterStats {
+    private final File staleMark;
+    // Cluster Id -> the distance from the centroid to the farthest entry, null until loaded
+    private Map<Integer, Float> radii;
+    // Cluster Id -> {error, size} added to the cluster since the last flush
+    private final Map<Integer, double[]> pending = new HashMap<>();
+    // Cluster Id -> the radius of the cluster, if it was raised since the last flush
+    private final Map<Integer, Float> raised = new HashMap<>();
+    private boolean marked;
+    // whether a previous run left unflushed raises, until the radii are measured
+    private boolean stale;
+
+    /**
+     * Creates the statistics of an index, which is stale if the specified
+     * mark file exists.
+     *
+     * @param staleMark
+     *            the file marking the index as having unflushed raises
+     */
+    public IVFClusterStats(File staleMark) {
+        this.staleMark = staleMark;
+        this.marked = staleMark.exists();
+        this.stale = marked;
+    }
+
+    /**
+     * Returns true if the radii in the centroid table may be too small, since
+     * a previous run crashed before flushing its raises.
+     */
+    public synchronized boolean isStale() {
+        return stale;
+    }
+
+    public synchronized boolean hasRadii() {
+        return radii != null;
+    }
+
+    /**
+     * Caches the radii of the clusters, unless they are already cached. The
+     * unflushed raises are applied on top of them.
+     *
+     * @param loaded
+     *            the radii of the clusters
+     * @param measured
+     *            whether the radii were measured on the clusters rather than
+     *            read from the centroid table, in which case they are flushed
+     *            like raises and the index is no longer stale
+     */
+    public synchronized void loadRadii(Map<Integer, Float> loaded, boolean measured) {
+        if (radii != null)
+            return;
+        radii = new HashMap<>(loaded);
+        for (Map.Entry<Integer, Float> e : raised.entrySet())
+            radii.merge(e.getKey(), e.getValue(), Math::max);
+        if (measured) {
+            for (Map.Entry<Integer, Float> e : loaded.entrySet())
+                raised.merge(e.getKey(), e.getValue(), Math::max);
+            stale = false;
+        }
+    }
+
+    /**
+     * Drops the cached radii, so that they are reloaded from the centroid
+     * table. Called once the centroids changed.
+     */
+    public synchronized void dropRadii() {
+        radii = null;
+    }
+
+    /**
+     * Returns the radii of the clusters, in the order of the specified
+     * centroids. The radius of a cluster is infinite if it is unknown, e.g.,
+     * if the radii are not cached.
+     */
+    public synchronized float[] radii(CentroidMatrix centroids) {
+        float[] out = new float[centroids.size()];
+        if (radii == null) {
+            Arrays.fill(out, Float.POSITIVE_INFINITY);
+            return out;
+        }
+        for (int i = 0; i < out.length; ++i)
+            out[i] = radii.getOrDefault(centroids.id(i), Float.POSITIVE_INFINITY);
+        return out;
+    }
+
+    /**
+     * Adds entries to a cluster. If their radius exceeds that of the cluster,
+     * or that is not cached, the index is marked stale before the raise is
+     * cached, so the caller may commit once this returns.
+     *
+     * @param fileId
+     *            the id of the cluster
+     * @param radius
+     *            the distance from the centroid to the farthest entry
+     * @param error
+     *            the sum of the squared distances from the entries to the
+     *            centroid of the cluster
+     * @param count
+     *            the number of entries
+     */
+    public synchronized void add(int fileId, float radius, double error, long count) {
+        double[] s = pending.computeIfAbsent(fileId, id -> new double[2]);
+        s[0] += error;
+        s[1] += count;
+
+        Float bound = radii == null ? null : radii.get(fileId);
+        if (bound != null && bound >= radius)
+            return;
+        mark();
+        raised.merge(fileId, radius, Math::max);
+        if (radii != null)
+            radii.put(fileId, radius);
+    }
+
+    /**
+     * Returns a copy of the changes not yet in the centroid table, to be
+     * written by a flush: the error, the size and the raised radius (0 if it
+     * was not raised) of every changed cluster.
+     */
+    public synchronized Map<Integer, double[]> pending() {
+        Map<Integer, double[]> copy = new HashMap<>();
+        for (Map.Entry<Integer, double[]> e : pending.entrySet())
+            copy.put(e.getKey(), new double[] { e.getValue()[0], e.getValue()[1], 0 });
+        for (Map.Entry<Integer, Float> e : raised.entrySet())
+            copy.computeIfAbsent(e.getKey(), id -> new double[3])[2] = e.getValue();
+        return copy;
+    }
+
+    /**
+     * Drops the changes that a committed flush wrote to the centroid table;
+     * those added meanwhile are kept for the next flush. The stale mark is
+     * removed once no raise is left.
+     *
+     * @param flushed
+     *            the changes as returned by {@link #pending()}
+     */
+    public synchronized void flushed(Map<Integer, double[]> flushed) {
+        for (Map.Entry<Integer, double[]> e : flushed.entrySet()) {
+            double[] s = pending.get(e.getKey());
+            if (s != null) {
+                s[0] -= e.getValue()[0];
+                s[1] -= e.getValue()[1];
+            }
+            Float r = raised.get(e.getKey());
+            if (r != null && r <= e.getValue()[2])
+                raised.remove(e.getKey());
+        }
+        for (Iterator<double[]> it = pending.values().iterator(); it.hasNext();)
+            if (it.next()[1] == 0)
+                it.remove();
+        if (raised.isEmpty() && !stale)
+            unmark();
+    }
+
+    /**
+     * Removes the stale mark. Called when the index is dropped.
+     */
+    public synchronized void forget() {
+        unmark();
+    }
+
+    private void mark() {
+        if (marked)
+            return;
+        try (FileChannel fc = FileChannel.open(staleMark.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            fc.force(true);
+        } catch (IOException e) {
+            throw new RuntimeException("cannot mark IVF index stale " + staleMark, e);
+        }
+        marked = true;
+    }
+
+    private void unmark() {
+        if (!marked)
+            return;
+        staleMark.delete();
+        marked = false;
+    }
+}
@@ -0,0 +1,74 @@
+package org.vanilladb.core.storage.index;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.server.task.Task;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.storage.tx.concurrency.LockAbortException;
+import org.vanilladb.core.util.CoreProperties;
+
+/**
+ * The task that periodically purges the deleted entries of every IVF index
+ * from its cluster files, so that bursts of deletes only cost tombstones up
+ * front, and then seals the clusters whose data files have grown. Every
+ * index is compacted and sealed in a transaction of its own; see
+ * {@link IVF_FLATIndex#compact()} and {@link IVF_FLATIndex#seal()}.
+ */
+public class IVFCompactionTask extends Task {
+    private static Logger logger = Logger.getLogger(IVFCompactionTask.class.getName());
+
+    private static final long PERIOD;
+
+    static {
+        PERIOD = CoreProperties.getLoader().getPropertyAsLong(
+                IVFCompactionTask.class.getName() + ".PERIOD", 60000);
+    }
+
+    /**
+     * Compacts and seals every IVF index once.
+     */
+    public void compactIndexes() {
+        Transaction tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, true);
+        List<IndexInfo> iis = VanillaDb.catalogMgr().getIndexInfoByType(IndexType.IVF, tx);
+        tx.commit();
+
+        for (IndexInfo ii : iis) {
+            tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+            try {
+                Index idx = ii.open(tx);
+                int purged = ((IVF_FLATIndex) idx).compact();
+                int sealed = ((IVF_FLATIndex) idx).seal();
+                idx.close();
+                tx.commit();
+                if (purged > 0 && logger.isLoggable(Level.INFO))
+                    logger.info("purged " + purged + " deleted entries from index " + ii.indexName());
+                if (sealed > 0 && logger.isLoggable(Level.INFO))
+                    logger.info("sealed " + sealed + " clusters of index " + ii.indexName());
+            } catch (LockAbortException e) {
+                // retried in the next round
+                tx.rollback();
+            } catch (RuntimeException e) {
+                if (logger.isLoggable(Level.WARNING))
+                    logger.warning("cannot compact index " + ii.indexName() + ": " + e.getMessage());
+                tx.rollback();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                Thread.sleep(PERIOD);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            compactIndexes();
+        }
+    }
+}
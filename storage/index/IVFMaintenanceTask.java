@@ -0,0 +1,70 @@
+package org.vanilladb.core.storage.index;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.server.task.Task;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.storage.tx.concurrency.LockAbortException;
+import org.vanilladb.core.util.CoreProperties;
+
+/**
+ * The task that periodically maintains the clusters of every IVF index, so
+ * that the indexes stay balanced under continuous inserts without being
+ * rebuilt. Every index is maintained in a transaction of its own; see
+ * {@link IVF_FLATIndex#maintain()}.
+ */
+public class IVFMaintenanceTask extends Task {
+    private static Logger logger = Logger.getLogger(IVFMaintenanceTask.class.getName());
+
+    private static final long PERIOD;
+
+    static {
+        PERIOD = CoreProperties.getLoader().getPropertyAsLong(
+                IVFMaintenanceTask.class.getName() + ".PERIOD", 600000);
+    }
+
+    /**
+     * Maintains every IVF index once.
+     */
+    public void maintainIndexes() {
+        Transaction tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, true);
+        List<IndexInfo> iis = VanillaDb.catalogMgr().getIndexInfoByType(IndexType.IVF, tx);
+        tx.commit();
+
+        for (IndexInfo ii : iis) {
+            tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, false);
+            try {
+                Index idx = ii.open(tx);
+                boolean changed = ((IVF_FLATIndex) idx).maintain();
+                idx.close();
+                tx.commit();
+                if (changed && logger.isLoggable(Level.INFO))
+                    logger.info("maintained the clusters of index " + ii.indexName());
+            } catch (LockAbortException e) {
+                // retried in the next round
+                tx.rollback();
+            } catch (RuntimeException e) {
+                if (logger.isLoggable(Level.WARNING))
+                    logger.warning("cannot maintain index " + ii.indexName() + ": " + e.getMessage());
+                tx.rollback();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                Thread.sleep(PERIOD);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            maintainIndexes();
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package org.vanilladb.core.storage.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import jdk.incubator.vector.*;
+
+/**
+ * An immutable, column-packed image of a sealed IVF cluster. The file holds a
+ * small header, the float32 vectors of all entries back to back, and then the
+ * block numbers and slot ids of their data records as two parallel arrays:
+ *
+ * <pre>
+ * | magic | count | dim | vec[0..count*dim) | block[0..count) | id[0..count) |
+ * </pre>
+ *
+ * The file is memory-mapped read-only, so a scan reads the vectors straight
+ * from the page cache without decoding records into constants.
+ */
+public class IVFSegment {
+    private static final int MAGIC = 0x49564653; // "IVFS"
+    private static final int HEADER_SIZE = 3 * Integer.BYTES;
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private final MappedByteBuffer buf;
+    private final int count, dim;
+    private final long blockOffset, idOffset;
+
+    private IVFSegment(MappedByteBuffer buf) {
+        this.buf = buf;
+        buf.order(ORDER);
+        if (buf.getInt(0) != MAGIC)
+            throw new IllegalStateException("not an IVF segment");
+        this.count = buf.getInt(Integer.BYTES);
+        this.dim = buf.getInt(2 * Integer.BYTES);
+        this.blockOffset = HEADER_SIZE + (long) count * dim * Float.BYTES;
+        this.idOffset = blockOffset + (long) count * Long.BYTES;
+        if (idOffset + (long) count * Integer.BYTES != buf.capacity())
+            throw new IllegalStateException("truncated IVF segment");
+    }
+
+    /**
+     * Maps the segment file, or returns null if it does not exist.
+     *
+     * @param file
+     *            the segment file
+     * @return the mapped segment, or null
+     */
+    public static IVFSegment open(File file) {
+        if (!file.exists())
+            return null;
+        try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            return new IVFSegment(fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size()));
+        } catch (IOException e) {
+            throw new RuntimeException("cannot map IVF segment " + file, e);
+        }
+    }
+
+    /**
+     * Writes a segment to the specified file and forces it to the disk. The
+     * file should be a temporary one that is then moved into place by
+     * {@link #install(File, File)}, so a reader never maps a partially
+     * written segment.
+     *
+     * @param file
+     *            the file to write to
+     * @param vecs
+     *            the vectors of the entries
+     * @param blocks
+     *            the block numbers of the data records
+     * @param ids
+     *            the slot ids of the data records
+     */
+    public static void write(File file, List<float[]> vecs, long[] blocks, int[] ids) {
+        int count = vecs.size(), dim = count == 0 ? 0 : vecs.get(0).length;
+        long size = HEADER_SIZE + (long) count * ((long) dim * Float.BYTES + Long.BYTES + Integer.BYTES);
+        // a segment is mapped by a single buffer
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("IVF segment of " + count + " entries exceeds 2 GB");
+        ByteBuffer out = ByteBuffer.allocate((int) size).order(ORDER);
+        out.putInt(MAGIC).putInt(count).putInt(dim);
+        for (float[] v : vecs)
+            for (float f : v)
+                out.putFloat(f);
+        for (int i = 0; i < count; i++)
+            out.putLong(blocks[i]);
+        for (int i = 0; i < count; i++)
+            out.putInt(ids[i]);
+        out.flip();
+
+        try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (out.hasRemaining())
+                fc.write(out);
+            fc.force(true);
+        } catch (IOException e) {
+            throw new RuntimeException("cannot write IVF segment " + file, e);
+        }
+    }
+
+    /**
+     * Atomically moves a written segment to the specified file, replacing
+     * the segment there if any.
+     *
+     * @param tmpFile
+     *            the file the segment was written to
+     * @param file
+     *            the segment file
+     */
+    public static void install(File tmpFile, File file) {
+        try {
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException("cannot install IVF segment " + file, e);
+        }
+    }
+
+    /**
+     * Loads the whole mapping into physical memory, so that the first scan
+     * does not fault it in page by page.
+     */
+    public void load() {
+        buf.load();
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int dimension() {
+        return dim;
+    }
+
+    public long block(int i) {
+        return buf.getLong(Math.toIntExact(blockOffset + (long) i * Long.BYTES));
+    }
+
+    public int id(int i) {
+        return buf.getInt(Math.toIntExact(idOffset + (long) i * Integer.BYTES));
+    }
+
+    /**
+     * Copies the i-th vector out of the mapping.
+     */
+    public float[] vector(int i) {
+        float[] vec = new float[dim];
+        buf.asFloatBuffer().get(Math.toIntExact(HEADER_SIZE / Float.BYTES + (long) i * dim), vec);
+        return vec;
+    }
+
+    /**
+     * Copies the vectors [from, from + count) out of the mapping, back to
+     * back into dst.
+     */
+    public void copyVectors(int from, int count, float[] dst) {
+        buf.asFloatBuffer().get(Math.toIntExact(HEADER_SIZE / Float.BYTES + (long) from * dim), dst, 0, count * dim);
+    }
+
+    /**
+     * Returns the squared Euclidean distance between the query and the i-th
+     * vector, loading the lanes directly from the mapped buffer.
+     */
+    public double squaredEuclidean(int i, float[] query) {
+        int base = Math.toIntExact(HEADER_SIZE + (long) i * dim * Float.BYTES);
+        int d = 0;
+        FloatVector acc = FloatVector.zero(SPECIES);
+
+        for (; d < SPECIES.loopBound(dim); d += SPECIES.length()) {
+            FloatVector v = FloatVector.fromByteBuffer(SPECIES, buf, base + d * Float.BYTES, ORDER);
+            FloatVector diff = FloatVector.fromArray(SPECIES, query, d).sub(v);
+            acc = diff.fma(diff, acc);
+        }
+        double sum = acc.reduceLanes(VectorOperators.ADD);
+
+        for (; d < dim; d++) {
+            float diff = query[d] - buf.getFloat(base + d * Float.BYTES);
+            sum += diff * diff;
+        }
+        return sum;
+    }
+}
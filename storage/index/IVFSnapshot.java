@@ -0,0 +1,161 @@
+package org.vanilladb.core.storage.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A compact image of the metadata of an IVF index, so that a restarted
+ * server maps one file instead of decoding the centroid table record by
+ * record. The file holds a small header, the centroid matrix, and then the
+ * cluster file id, the estimated number of entries and the number of probes
+ * of every cluster as three parallel arrays:
+ *
+ * <pre>
+ * | magic | count | dim | vec[0..count*dim) | id[0..count) | size[0..count) | probes[0..count) |
+ * </pre>
+ *
+ * A snapshot is only kept while it matches the committed centroid table; see
+ * {@link IVF_FLATIndex#saveSnapshot()}.
+ */
+public class IVFSnapshot {
+    private static final int MAGIC = 0x4956464D; // "IVFM"
+    private static final int HEADER_SIZE = 3 * Integer.BYTES;
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private final MappedByteBuffer buf;
+    private final int count, dim;
+    private final int idOffset, sizeOffset, probeOffset;
+
+    private IVFSnapshot(MappedByteBuffer buf) {
+        this.buf = buf;
+        buf.order(ORDER);
+        if (buf.getInt(0) != MAGIC)
+            throw new IllegalStateException("not an IVF snapshot");
+        this.count = buf.getInt(Integer.BYTES);
+        this.dim = buf.getInt(2 * Integer.BYTES);
+        this.idOffset = HEADER_SIZE + count * dim * Float.BYTES;
+        this.sizeOffset = idOffset + count * Integer.BYTES;
+        this.probeOffset = sizeOffset + count * Long.BYTES;
+    }
+
+    /**
+     * Maps the snapshot file, or returns null if it does not exist.
+     *
+     * @param file
+     *            the snapshot file
+     * @return the mapped snapshot, or null
+     */
+    public static IVFSnapshot open(File file) {
+        if (!file.exists())
+            return null;
+        try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            return new IVFSnapshot(fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size()));
+        } catch (IOException e) {
+            throw new RuntimeException("cannot map IVF snapshot " + file, e);
+        }
+    }
+
+    /**
+     * Writes a snapshot to a temporary file and then atomically moves it to
+     * the specified file, so a reader never maps a partially written
+     * snapshot.
+     *
+     * @param file
+     *            the snapshot file
+     * @param tmpFile
+     *            the temporary file to write to first
+     * @param centroids
+     *            the centroids of the index
+     * @param sizes
+     *            the number of entries of every cluster, in the order of the
+     *            centroids
+     * @param probes
+     *            the number of probes of every cluster, in the order of the
+     *            centroids
+     */
+    public static void write(File file, File tmpFile, CentroidMatrix centroids, long[] sizes, long[] probes) {
+        int count = centroids.size(), dim = centroids.dimension();
+        ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE
+                + count * (dim * Float.BYTES + Integer.BYTES + 2 * Long.BYTES)).order(ORDER);
+        out.putInt(MAGIC).putInt(count).putInt(dim);
+        for (int i = 0; i < count; i++)
+            for (float f : centroids.vector(i))
+                out.putFloat(f);
+        for (int i = 0; i < count; i++)
+            out.putInt(centroids.id(i));
+        for (int i = 0; i < count; i++)
+            out.putLong(sizes[i]);
+        for (int i = 0; i < count; i++)
+            out.putLong(probes[i]);
+        out.flip();
+
+        try (FileChannel fc = FileChannel.open(tmpFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (out.hasRemaining())
+                fc.write(out);
+            fc.force(true);
+        } catch (IOException e) {
+            throw new RuntimeException("cannot write IVF snapshot " + file, e);
+        }
+        try {
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException("cannot install IVF snapshot " + file, e);
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int dimension() {
+        return dim;
+    }
+
+    /**
+     * Copies the centroids out of the mapping into a matrix.
+     *
+     * @param version
+     *            the version of the index the matrix is loaded at
+     */
+    public CentroidMatrix centroids(long version) {
+        float[] vecs = new float[count * dim];
+        buf.asFloatBuffer().get(HEADER_SIZE / Float.BYTES, vecs);
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++)
+            ids[i] = id(i);
+        return new CentroidMatrix(vecs, ids, dim, version);
+    }
+
+    /**
+     * Returns the cluster file id of the i-th centroid.
+     */
+    public int id(int i) {
+        return buf.getInt(idOffset + i * Integer.BYTES);
+    }
+
+    /**
+     * Returns the number of entries of the i-th cluster when the snapshot
+     * was written.
+     */
+    public long clusterSize(int i) {
+        return buf.getLong(sizeOffset + i * Long.BYTES);
+    }
+
+    /**
+     * Returns the number of times the i-th cluster was probed before the
+     * snapshot was written.
+     */
+    public long probes(int i) {
+        return buf.getLong(probeOffset + i * Long.BYTES);
+    }
+}
@@ -0,0 +1,119 @@
+package org.vanilladb.core.storage.index;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.server.task.Task;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.util.CoreProperties;
+
+/**
+ * The task that keeps the snapshots of the IVF indexes fresh. At startup,
+ * {@link #loadSnapshots()} maps the snapshot of every index, and the task
+ * then optionally warms up the most frequently probed clusters before it
+ * periodically rewrites the snapshots with the current probe counts. See
+ * {@link IVF_FLATIndex#saveSnapshot()} and {@link IVF_FLATIndex#warmUp(int)}.
+ */
+public class IVFSnapshotTask extends Task {
+    private static Logger logger = Logger.getLogger(IVFSnapshotTask.class.getName());
+
+    private static final long PERIOD;
+    private static final boolean WARM_UP;
+    // the number of blocks prefetched per index by the warm-up
+    private static final int WARM_UP_BLOCKS;
+
+    static {
+        PERIOD = CoreProperties.getLoader().getPropertyAsLong(
+                IVFSnapshotTask.class.getName() + ".PERIOD", 300000);
+        WARM_UP = CoreProperties.getLoader().getPropertyAsBoolean(
+                IVFSnapshotTask.class.getName() + ".WARM_UP", true);
+        WARM_UP_BLOCKS = CoreProperties.getLoader().getPropertyAsInteger(
+                IVFSnapshotTask.class.getName() + ".WARM_UP_BLOCKS", 512);
+    }
+
+    /**
+     * Loads the centroids of every IVF index, from its snapshot if it has
+     * one, and writes the snapshots that are missing.
+     */
+    public void loadSnapshots() {
+        Transaction tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, true);
+        try {
+            for (IndexInfo ii : VanillaDb.catalogMgr().getIndexInfoByType(IndexType.IVF, tx)) {
+                IVF_FLATIndex idx = (IVF_FLATIndex) ii.open(tx);
+                idx.preLoadToMemory();
+                if (!idx.hasSnapshot() && idx.saveSnapshot() && logger.isLoggable(Level.INFO))
+                    logger.info("wrote the snapshot of index " + ii.indexName());
+                idx.close();
+            }
+            tx.commit();
+        } catch (RuntimeException e) {
+            // the indexes then load their centroids on first use
+            if (logger.isLoggable(Level.WARNING))
+                logger.warning("cannot load the IVF snapshots: " + e.getMessage());
+            tx.rollback();
+        }
+    }
+
+    /**
+     * Prefetches the hottest clusters of every IVF index.
+     */
+    public void warmUp() {
+        Transaction tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, true);
+        try {
+            for (IndexInfo ii : VanillaDb.catalogMgr().getIndexInfoByType(IndexType.IVF, tx)) {
+                IVF_FLATIndex idx = (IVF_FLATIndex) ii.open(tx);
+                int blocks = idx.warmUp(WARM_UP_BLOCKS);
+                idx.close();
+                if (logger.isLoggable(Level.INFO))
+                    logger.info("prefetched " + blocks + " blocks of index " + ii.indexName());
+            }
+            tx.commit();
+        } catch (RuntimeException e) {
+            if (logger.isLoggable(Level.WARNING))
+                logger.warning("cannot warm up the IVF indexes: " + e.getMessage());
+            tx.rollback();
+        }
+    }
+
+    /**
+     * Rewrites the snapshot of every IVF index.
+     */
+    public void saveSnapshots() {
+        Transaction tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, true);
+        List<IndexInfo> iis = VanillaDb.catalogMgr().getIndexInfoByType(IndexType.IVF, tx);
+        tx.commit();
+
+        for (IndexInfo ii : iis) {
+            // a transaction per index, so that no lock is held across indexes
+            tx = VanillaDb.txMgr().newTransaction(Connection.TRANSACTION_SERIALIZABLE, true);
+            try {
+                IVF_FLATIndex idx = (IVF_FLATIndex) ii.open(tx);
+                idx.saveSnapshot();
+                idx.close();
+                tx.commit();
+            } catch (RuntimeException e) {
+                if (logger.isLoggable(Level.WARNING))
+                    logger.warning("cannot snapshot index " + ii.indexName() + ": " + e.getMessage());
+                tx.rollback();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        if (WARM_UP)
+            warmUp();
+        while (true) {
+            try {
+                Thread.sleep(PERIOD);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            saveSnapshots();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.vanilladb.core.storage.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The deleted entries of an IVF index that are still in its cluster files.
+ * A delete only records a tombstone, which scans check, and the entry is
+ * purged later when its cluster is compacted.
+ *
+ * <p>
+ * A tombstone identifies an entry by the packed record id it points to and a
+ * fingerprint of its vector, since a deleted record id is soon reused by a
+ * new record whose entry must stay visible. Every tombstone is attributed to
+ * the cluster the entry was expected in, so that the number of dead entries
+ * of a cluster is known without scanning it; a tombstone whose entry was not
+ * found there becomes a stray, which is still checked but counts for no
+ * cluster.
+ * </p>
+ */
+public class IVFTombstones {
+    public static final int STRAY = -1;
+
+    // Packed Rid -> Fingerprint -> the cluster the entry is attributed to
+    private final Map<Long, Map<Integer, Integer>> entries = new ConcurrentHashMap<>();
+    // Cluster Id -> the number of tombstones attributed to the cluster
+    private final Map<Integer, AtomicInteger> counts = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the fingerprint of the vector at vec[offset..offset + dim).
+     */
+    public static int fingerprint(float[] vec, int offset, int dim) {
+        int h = 1;
+        for (int d = offset; d < offset + dim; ++d)
+            h = 31 * h + Float.floatToIntBits(vec[d]);
+        return h;
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Returns true if some deleted entry points to the record. Scans check
+     * this before fingerprinting the vector of an entry.
+     */
+    public boolean containsRid(long packedRid) {
+        return entries.containsKey(packedRid);
+    }
+
+    /**
+     * Returns true if the entry pointing to the record with the vector at
+     * vec[offset..offset + dim) is deleted.
+     */
+    public boolean contains(long packedRid, float[] vec, int offset, int dim) {
+        Map<Integer, Integer> fps = entries.get(packedRid);
+        return fps != null && fps.containsKey(fingerprint(vec, offset, dim));
+    }
+
+    public void add(long packedRid, int fingerprint, int fileId) {
+        Integer old = entries.computeIfAbsent(packedRid, rid -> new ConcurrentHashMap<>())
+                .put(fingerprint, fileId);
+        if (old != null)
+            counter(old).decrementAndGet();
+        counter(fileId).incrementAndGet();
+    }
+
+    /**
+     * Removes a tombstone.
+     *
+     * @return the cluster the tombstone was attributed to, or null if there
+     *         was no such tombstone
+     */
+    public Integer remove(long packedRid, int fingerprint) {
+        Map<Integer, Integer> fps = entries.get(packedRid);
+        if (fps == null)
+            return null;
+        Integer fileId = fps.remove(fingerprint);
+        if (fileId != null)
+            counter(fileId).decrementAndGet();
+        if (fps.isEmpty())
+            entries.remove(packedRid, fps);
+        return fileId;
+    }
+
+    /**
+     * Returns the number of tombstones attributed to the cluster.
+     */
+    public int count(int fileId) {
+        AtomicInteger n = counts.get(fileId);
+        return n == null ? 0 : n.get();
+    }
+
+    /**
+     * Turns the tombstones attributed to the cluster into strays.
+     */
+    public void detach(int fileId) {
+        List<long[]> detached = new ArrayList<>();
+        for (Map.Entry<Long, Map<Integer, Integer>> e : entries.entrySet())
+            for (Map.Entry<Integer, Integer> fp : e.getValue().entrySet())
+                if (fp.getValue() == fileId)
+                    detached.add(new long[] { e.getKey(), fp.getKey() });
+        for (long[] d : detached)
+            add(d[0], (int) d[1], STRAY);
+    }
+
+    private AtomicInteger counter(int fileId) {
+        return counts.computeIfAbsent(fileId, id -> new AtomicInteger());
+    }
+}
@@ -2,12 +2,18 @@ package org.vanilladb.core.storage.index;
 
 import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.sql.BigIntConstant;
+import org.vanilladb.core.sql.Constant;
+import org.vanilladb.core.sql.DoubleConstant;
 import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Kmeans;
 import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.distfn.CosineFn;
 import org.vanilladb.core.sql.distfn.DistanceFn;
 import org.vanilladb.core.sql.distfn.EuclideanFn;
 import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.buffer.BufferMgr;
 import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.file.FileMgr;
 
 import org.vanilladb.core.storage.metadata.TableInfo;
 import org.vanilladb.core.storage.metadata.index.IndexInfo;
@@ -15,29 +21,118 @@ import org.vanilladb.core.storage.record.RecordFile;
 import org.vanilladb.core.storage.record.RecordId;
 import org.vanilladb.core.storage.record.RecordPage;
 import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.storage.tx.TransactionLifecycleListener;
 import org.vanilladb.core.util.CoreProperties;
+import org.vanilladb.core.util.RidFilter;
+import org.vanilladb.core.util.TopKHeap;
 import org.vanilladb.core.sql.Schema;
 import org.vanilladb.core.sql.VecRecPair;
 
 import java.util.*;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 public class IVF_FLATIndex extends Index {
     public static final String SCHEMA_KEY = "data_vector", SCHEMA_RID_BLOCK = "rid_block", 
-                             SCHEMA_RID_ID = "rid_id", SCHEMA_CENTROID_NUM = "centroid_id";
-    private static List<VecIntPair> listCentroids = null;
-    private PriorityQueue<VecIntPair> pqCentroids;
+                             SCHEMA_RID_ID = "rid_id", SCHEMA_CENTROID_NUM = "centroid_id",
+                             SCHEMA_FINGERPRINT = "fingerprint", SCHEMA_RADIUS = "radius",
+                             SCHEMA_ERROR = "error", SCHEMA_SIZE = "size", SCHEMA_FIT_ERROR = "fit_error",
+                             SCHEMA_VERSION = "version";
+    private CentroidMatrix centroids;
+    // the ids of the clusters to probe, nearest first
+    private int[] probes;
     private RecordFile dataFile;
     private Transaction tx;
+    // the entries are stored as unit vectors, so that cosine reduces to a dot product
+    private final boolean normalized;
+    // the entries of the cluster files are stored as bfloat16 vectors, halving their size
+    private final boolean halfPrecision;
     private IndexInfo ii;
     private int K; // Number of centroids to scan
     private int cur_k;
     private boolean isBeforeFirsted;
     private DistanceFn distFn;
+    // the radius of a range search, negative for a nearest neighbor search
+    private double rangeRadius = -1;
+    // merged top-k of the parallel probe mode, null in sequential mode
+    private List<VecRecPair> probeResults;
+    private int probeCursor;
+    // the sealed part of the current cluster, scanned before its data file
+    private IVFSegment segment;
+    private int segCursor;
+    // the tombstones checked by the current scan, null if the index has none
+    private IVFTombstones dead;
+    // the blocks the current query may still prefetch, and the running prefetch
+    private int prefetchBudget;
+    private Future<?> prefetching;
+
+    // Index Name -> the centroids of the index, as of some version
+    private static final Map<String, CentroidMatrix> centroidCache = new ConcurrentHashMap<>();
+    // Index Name -> the current version, bumped whenever the index is rebuilt
+    private static final Map<String, Long> centroidVersions = new ConcurrentHashMap<>();
+    // Index Name -> the number of uncommitted transactions that changed the centroids
+    private static final Map<String, AtomicInteger> pendingInvalidations = new ConcurrentHashMap<>();
+
+    // Index Name -> the radii of the clusters of the index, and the changes to the clusters of the index not yet in its centroid table
+    private static final Map<String, IVFClusterStats> clusterStats = new ConcurrentHashMap<>();
+
+    // Segment File Name -> the mapped segment, if the file exists
+    private static final Map<String, Optional<IVFSegment>> segments = new ConcurrentHashMap<>();
+    // Segment File Name -> the version of the committed segment of the cluster, 0 if it is not sealed
+    private static final Map<String, Long> segmentVersions = new ConcurrentHashMap<>();
+    // Transaction Number -> Segment File Name -> {the committed version replaced, the version written} by the uncommitted transaction
+    private static final Map<Long, Map<String, long[]>> pendingSegments = new ConcurrentHashMap<>();
+    // numbers the temporary files the segments are written to
+    private static final AtomicLong pendingSegmentNum = new AtomicLong();
+
+    // Index Name -> Cluster Id -> the number of times the cluster was probed
+    private static final Map<String, Map<Integer, AtomicLong>> probeCounts = new ConcurrentHashMap<>();
+    // guards the snapshot files against a write racing with an invalidation
+    private static final Object snapshotLock = new Object();
+
+    // Index Name -> the deleted entries still in the clusters of the index
+    private static final Map<String, IVFTombstones> tombstones = new ConcurrentHashMap<>();
+    // Transaction Number -> Index Name -> the tombstones added by the uncommitted transaction
+    private static final Map<Long, Map<String, IVFTombstones>> pendingTombstones = new ConcurrentHashMap<>();
 
 
     public static final int NUM_CLUSTERS;
     public static final double RATE;
+    public static final boolean PARALLEL_PROBE;
+    public static final int PROBE_THREADS;
+    // the number of sampled vectors the centroids of a bulk build are trained on
+    public static final int TRAIN_SIZE;
+    public static final int TRAIN_ITERATIONS;
+    // the bytes of vectors a bulk build assigns to clusters at a time
+    public static final long BUILD_BUFFER_SIZE;
+    // maintenance splits clusters larger than SPLIT_FACTOR times the average size
+    public static final double SPLIT_FACTOR;
+    // and merges clusters smaller than MERGE_FACTOR times the average size
+    public static final double MERGE_FACTOR;
+    // a cluster is re-centered once its mean squared error grew by this fraction since its centroid was fitted
+    public static final double ERROR_GROWTH;
+    // a cluster is compacted once this fraction of its entries is deleted
+    public static final double COMPACT_RATIO;
+    // the number of cluster blocks a query may prefetch ahead of its scan, 0 to disable
+    public static final int PREFETCH_BLOCKS;
+    // a cluster is sealed once its data file holds this many entries, 0 to disable
+    public static final int SEAL_SIZE;
+    // the number of cluster entries scored at a time by a batch search
+    private static final int BATCH_BLOCK_SIZE = 64;
+    private static final List<String> DATA_FIELDS = Arrays.asList(SCHEMA_KEY, SCHEMA_RID_BLOCK, SCHEMA_RID_ID);
+
+    /*  a pool of its own, so that probing never competes with
+        (or deadlocks on) the workers of TaskMgr */
+    private static ForkJoinPool probePool;
+    private static ExecutorService prefetchPool;
 
 	static {
 		NUM_CLUSTERS = CoreProperties.getLoader().getPropertyAsInteger(
@@ -46,33 +141,36 @@ public class IVF_FLATIndex extends Index {
     static {
 		RATE = CoreProperties.getLoader().getPropertyAsDouble(
 				IVF_FLATIndex.class.getName() + ".RATE", 0.1);
+		PARALLEL_PROBE = CoreProperties.getLoader().getPropertyAsBoolean(
+				IVF_FLATIndex.class.getName() + ".PARALLEL_PROBE", false);
+		PROBE_THREADS = CoreProperties.getLoader().getPropertyAsInteger(
+				IVF_FLATIndex.class.getName() + ".PROBE_THREADS", Runtime.getRuntime().availableProcessors());
+		TRAIN_SIZE = CoreProperties.getLoader().getPropertyAsInteger(
+				IVF_FLATIndex.class.getName() + ".TRAIN_SIZE", 100000);
+		TRAIN_ITERATIONS = CoreProperties.getLoader().getPropertyAsInteger(
+				IVF_FLATIndex.class.getName() + ".TRAIN_ITERATIONS", 20);
+		BUILD_BUFFER_SIZE = CoreProperties.getLoader().getPropertyAsLong(
+				IVF_FLATIndex.class.getName() + ".BUILD_BUFFER_SIZE", 256L << 20);
+		SPLIT_FACTOR = CoreProperties.getLoader().getPropertyAsDouble(
+				IVF_FLATIndex.class.getName() + ".SPLIT_FACTOR", 2.0);
+		MERGE_FACTOR = CoreProperties.getLoader().getPropertyAsDouble(
+				IVF_FLATIndex.class.getName() + ".MERGE_FACTOR", 0.25);
+		ERROR_GROWTH = CoreProperties.getLoader().getPropertyAsDouble(
+				IVF_FLATIndex.class.getName() + ".ERROR_GROWTH", 0.2);
+		COMPACT_RATIO = CoreProperties.getLoader().getPropertyAsDouble(
+				IVF_FLATIndex.class.getName() + ".COMPACT_RATIO", 0.2);
+		PREFETCH_BLOCKS = CoreProperties.getLoader().getPropertyAsInteger(
+				IVF_FLATIndex.class.getName() + ".PREFETCH_BLOCKS", 64);
+		SEAL_SIZE = CoreProperties.getLoader().getPropertyAsInteger(
+				IVF_FLATIndex.class.getName() + ".SEAL_SIZE", 4096);
 	}
-    public static class VecIntPair implements Comparable<VecIntPair> {
-        VectorConstant v;
-        int fileId;
-        private double distToTarget;
-
-        public VecIntPair(VectorConstant v, int fileId) {
-            this.v = v;
-            this.fileId = fileId;
-            this.distToTarget = -1;
-        }
-
-        public void setDistFn(DistanceFn distFn) {
-            this.distToTarget = distFn.distance(this.v);
-        }
-
-        @Override
-        public int compareTo(VecIntPair other) {
-            return Double.compare(this.distToTarget, other.distToTarget);
-        }
-    }
-
     public IVF_FLATIndex(IndexInfo ii, SearchKeyType keyType, Transaction tx) {
         super(ii, keyType, tx);
         this.ii = ii;
         this.tx = tx;
-        this.K = 1;// Default K, will be overridden by openIVF
+        this.normalized = ii.hasOption(IndexOption.NORMALIZE);
+        this.halfPrecision = ii.hasOption(IndexOption.HALF_PRECISION);
+        this.K = -1;// Default K (RATE of the clusters), may be overridden per query
         this.cur_k = -1;
         this.isBeforeFirsted = false;
     }
@@ -104,11 +202,339 @@ public class IVF_FLATIndex extends Index {
 
     @Override
     public void preLoadToMemory() {
-        if (listCentroids != null) return;
+        centroids = centroids(ii, dimension(), tx);
+    }
+
+    /**
+     * Returns the centroids of the coarse quantizer of the specified index,
+     * loading them if they are not cached or were cached before the index was
+     * last rebuilt.
+     */
+    static CentroidMatrix centroids(IndexInfo ii, int dim, Transaction tx) {
+        String idxName = ii.indexName();
+        long version = centroidVersions.getOrDefault(idxName, 0L);
+        CentroidMatrix cached = centroidCache.get(idxName);
+        if (cached != null && cached.version() == version)
+            return cached;
+
+        CentroidMatrix loaded = loadSnapshot(ii.indexName(), dim, version);
+        if (loaded == null)
+            loaded = loadCentroids(ii, dim, tx, version);
+        // a load racing with an invalidation must not replace a newer matrix
+        centroidCache.merge(idxName, loaded, (old, cur) -> old.version() >= cur.version() ? old : cur);
+        return loaded;
+    }
+
+    /**
+     * Drops the cached centroids and the snapshot of the specified index once
+     * the specified transaction commits, so that the next query reloads them.
+     * Called whenever the index is rebuilt or dropped. Until then, the cache
+     * and the snapshot still match the committed centroid table; if the
+     * transaction rolls back, they are kept.
+     *
+     * @param idxName
+     *            the name of the index
+     * @param tx
+     *            the transaction changing the centroids
+     */
+    public static void invalidateCentroids(String idxName, Transaction tx) {
+        AtomicInteger pending = pendingInvalidations.computeIfAbsent(idxName, name -> new AtomicInteger());
+        pending.incrementAndGet();
+        tx.addLifecycleListener(new TransactionLifecycleListener() {
+            @Override
+            public void onTxCommit(Transaction tx) {
+                synchronized (snapshotLock) {
+                    centroidVersions.merge(idxName, 1L, Long::sum);
+                    VanillaDb.fileMgr().dbFile(snapshotFileName(idxName)).delete();
+                }
+                centroidCache.remove(idxName);
+                IVFClusterStats stats = clusterStats.get(idxName);
+                if (stats != null)
+                    stats.dropRadii();
+                pending.decrementAndGet();
+            }
+
+            @Override
+            public void onTxRollback(Transaction tx) {
+                pending.decrementAndGet();
+            }
+
+            @Override
+            public void onTxEndStatement(Transaction tx) {
+            }
+        });
+    }
+
+    /*  whether a transaction changed the centroids of the index and has not
+        yet published them */
+    private static boolean invalidating(String idxName) {
+        AtomicInteger pending = pendingInvalidations.get(idxName);
+        return pending != null && pending.get() > 0;
+    }
+
+    /*  maps the snapshot of the index, or returns null if it has none; the
+        probe counts it carries seed those of this run */
+    private static CentroidMatrix loadSnapshot(String idxName, int dim, long version) {
+        IVFSnapshot snap = IVFSnapshot.open(VanillaDb.fileMgr().dbFile(snapshotFileName(idxName)));
+        if (snap == null || snap.dimension() != dim || snap.size() == 0)
+            return null;
+        Map<Integer, AtomicLong> counts = probeCounts.computeIfAbsent(idxName, name -> new ConcurrentHashMap<>());
+        for (int i = 0; i < snap.size(); ++i)
+            counts.putIfAbsent(snap.id(i), new AtomicLong(snap.probes(i)));
+        return snap.centroids(version);
+    }
+
+    /**
+     * Returns true if the index has a snapshot on disk.
+     */
+    public boolean hasSnapshot() {
+        return VanillaDb.fileMgr().dbFile(snapshotFileName(ii.indexName())).exists();
+    }
+
+    /**
+     * Writes a snapshot of the centroids of the index, the estimated sizes of
+     * its clusters and how often they were probed, so that a restarted
+     * server maps it instead of reading the centroid table. The centroids are
+     * read from the table, so the calling transaction must not have modified
+     * the index. The snapshot is not written if the index changed meanwhile,
+     * and a snapshot is deleted as soon as the index changes, so that a
+     * snapshot on disk always matches the committed centroid table.
+     *
+     * @return true if the snapshot was written
+     */
+    public boolean saveSnapshot() {
+        String idxName = ii.indexName();
+        long version = centroidVersions.getOrDefault(idxName, 0L);
+        CentroidMatrix committed = loadCentroids(ii, dimension(), tx, version);
+        if (committed.size() == 0)
+            return false;
+
+        Map<Integer, AtomicLong> counts = probeCounts.getOrDefault(idxName, Collections.emptyMap());
+        long[] sizes = new long[committed.size()], probes = new long[committed.size()];
+        for (int i = 0; i < sizes.length; ++i) {
+            sizes[i] = clusterSize(committed.id(i));
+            AtomicLong n = counts.get(committed.id(i));
+            probes[i] = n == null ? 0 : n.get();
+        }
+        synchronized (snapshotLock) {
+            if (version != centroidVersions.getOrDefault(idxName, 0L))
+                return false;
+            IVFSnapshot.write(VanillaDb.fileMgr().dbFile(snapshotFileName(idxName)),
+                    VanillaDb.fileMgr().dbFile(FileMgr.TMP_FILE_NAME_PREFIX + snapshotFileName(idxName)),
+                    committed, sizes, probes);
+        }
+        return true;
+    }
+
+    /**
+     * Prefetches the most frequently probed clusters of the index, so that
+     * the first queries after a restart do not fault them in one block at a
+     * time. The clusters are read in parallel on the probe pool, hottest
+     * first, until the specified number of blocks is read into the buffer
+     * pool; their sealed segments are loaded into the page cache as well.
+     * The blocks are not pinned, so the workers never use the transaction.
+     *
+     * @param maxBlocks
+     *            the number of blocks to prefetch at most
+     * @return the number of prefetched blocks
+     */
+    public int warmUp(int maxBlocks) {
+        preLoadToMemory();
+        Map<Integer, AtomicLong> counts = probeCounts.getOrDefault(ii.indexName(), Collections.emptyMap());
+        List<Integer> hottest = new ArrayList<>(centroids.size());
+        for (int i = 0; i < centroids.size(); ++i)
+            hottest.add(centroids.id(i));
+        hottest.sort(Comparator.comparingLong(
+                (Integer fileId) -> counts.containsKey(fileId) ? counts.get(fileId).get() : 0).reversed());
+
+        BufferMgr bufferMgr = tx.bufferMgr();
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        int planned = 0;
+        for (int fileId : hottest) {
+            if (planned >= maxBlocks)
+                break;
+            String fileName = new TableInfo(dataTableName(fileId), dataSchema()).fileName();
+            int numBlocks = (int) Math.min(VanillaDb.fileMgr().size(fileName), maxBlocks - planned);
+            IVFSegment seg = segment(fileId);
+            planned += numBlocks;
+            tasks.add(() -> {
+                if (seg != null)
+                    seg.load();
+                for (int b = 0; b < numBlocks; ++b)
+                    if (!bufferMgr.prefetch(new BlockId(fileName, b)))
+                        return b;
+                return numBlocks;
+            });
+        }
+
+        int prefetched = 0;
+        try {
+            for (Future<Integer> f : probePool().invokeAll(tasks))
+                prefetched += f.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("warm-up of index '" + ii.indexName() + "' failed", e);
+        }
+        return prefetched;
+    }
+
+    /*  counts a probe of the cluster, to rank the clusters for warm-up */
+    private void countProbe(int fileId) {
+        probeCounts.computeIfAbsent(ii.indexName(), name -> new ConcurrentHashMap<>())
+                .computeIfAbsent(fileId, id -> new AtomicLong()).incrementAndGet();
+    }
+
+    /*  returns the function scoring the stored entries against the query;
+        on unit vectors, cosine only needs their dot product with the query,
+        and the other distances would be off */
+    private DistanceFn entryDistance(DistanceFn distFn) {
+        if (!normalized)
+            return distFn;
+        if (!(distFn instanceof CosineFn))
+            throw new UnsupportedOperationException("index '" + ii.indexName()
+                    + "' stores normalized vectors and only answers cosine queries");
+        return ((CosineFn) distFn).forUnitVectors();
+    }
 
-        String tblname = "idx_items_centroid";
-        System.out.println("Loading centroids from table: " + tblname);
-        TableInfo ti = new TableInfo(tblname, centroidsSchema());
+    /*  returns the vector as stored in the index */
+    private VectorConstant entryVector(VectorConstant vec) {
+        if (!normalized)
+            return vec;
+        float[] unit = vec.asJavaVal().clone();
+        normalize(unit, 0, unit.length);
+        return VectorConstant.wrap(unit);
+    }
+
+    /*  scales the vector at vecs[offset] to unit length, unless it is zero */
+    private static void normalize(float[] vecs, int offset, int dim) {
+        double norm = 0;
+        for (int d = offset; d < offset + dim; ++d)
+            norm += vecs[d] * vecs[d];
+        if (norm == 0)
+            return;
+        norm = Math.sqrt(norm);
+        for (int d = offset; d < offset + dim; ++d)
+            vecs[d] = (float) (vecs[d] / norm);
+    }
+
+    /*  the tables of an index are named after the index, so that indexes
+        on different tables or fields can live side by side */
+    static String centroidTableName(IndexInfo ii) {
+        return ii.indexName() + "_centroid";
+    }
+
+    private String dataTableName(int fileId) {
+        return ii.indexName() + "_data" + fileId;
+    }
+
+    private static String snapshotFileName(String idxName) {
+        return idxName + "_centroid.snap";
+    }
+
+    private static String staleMarkFileName(String idxName) {
+        return idxName + "_centroid.stale";
+    }
+
+    private static String tombstoneTableName(IndexInfo ii) {
+        return ii.indexName() + "_tomb";
+    }
+
+    /*  the dimension of the indexed field */
+    private int dimension() {
+        return keyType.get(0).getArgument();
+    }
+
+    /**
+     * Drops the cached tombstones of the specified index. Called when the
+     * index is dropped.
+     */
+    public static void forgetTombstones(String idxName) {
+        tombstones.remove(idxName);
+    }
+
+    /**
+     * Drops the unflushed cluster statistics of the specified index. Called
+     * when the index is dropped.
+     */
+    public static void forgetStats(String idxName) {
+        IVFClusterStats stats = clusterStats.remove(idxName);
+        if (stats != null)
+            stats.forget();
+        else
+            VanillaDb.fileMgr().dbFile(staleMarkFileName(idxName)).delete();
+    }
+
+    private IVFClusterStats stats() {
+        return clusterStats.computeIfAbsent(ii.indexName(),
+                name -> new IVFClusterStats(VanillaDb.fileMgr().dbFile(staleMarkFileName(name))));
+    }
+
+    /*  returns the tombstones of the index, loading them from the tombstone
+        table on the first call */
+    private IVFTombstones tombstones() {
+        IVFTombstones cached = tombstones.get(ii.indexName());
+        if (cached != null)
+            return cached;
+        IVFTombstones loaded = loadTombstones();
+        cached = tombstones.putIfAbsent(ii.indexName(), loaded);
+        return cached != null ? cached : loaded;
+    }
+
+    private IVFTombstones loadTombstones() {
+        IVFTombstones loaded = new IVFTombstones();
+        RecordFile rf = new TableInfo(tombstoneTableName(ii), tombstoneSchema()).open(tx, true);
+        rf.beforeFirst();
+        while (rf.next())
+            loaded.add(TopKHeap.packRid((long) rf.getVal(SCHEMA_RID_BLOCK).asJavaVal(),
+                    (int) rf.getVal(SCHEMA_RID_ID).asJavaVal()),
+                    (int) rf.getVal(SCHEMA_FINGERPRINT).asJavaVal(),
+                    (int) rf.getVal(SCHEMA_CENTROID_NUM).asJavaVal());
+        rf.close();
+        return loaded;
+    }
+
+    /*  returns the tombstones of the index, or null if it has none, so that
+        scans only check entries while there are deletes left to compact */
+    private IVFTombstones deadEntries() {
+        IVFTombstones t = tombstones();
+        return t.isEmpty() ? null : t;
+    }
+
+    /*  whether the entry with the vector at vec[offset] is deleted */
+    private boolean isDead(long rid, float[] vec, int offset) {
+        return dead != null && dead.containsRid(rid) && dead.contains(rid, vec, offset, dimension());
+    }
+
+    /*  whether the i-th entry of the segment is deleted */
+    private boolean isDead(IVFSegment seg, int i) {
+        if (dead == null)
+            return false;
+        long rid = TopKHeap.packRid(seg.block(i), seg.id(i));
+        return dead.containsRid(rid) && dead.contains(rid, seg.vector(i), 0, seg.dimension());
+    }
+
+    /*  whether the current entry of the data file is deleted */
+    private boolean isDead(RecordFile rf) {
+        if (dead == null)
+            return false;
+        long rid = TopKHeap.packRid((long) rf.getVal(SCHEMA_RID_BLOCK).asJavaVal(),
+                (int) rf.getVal(SCHEMA_RID_ID).asJavaVal());
+        if (!dead.containsRid(rid))
+            return false;
+        float[] vec = new float[dimension()];
+        rf.getVector(SCHEMA_KEY, vec, 0);
+        return dead.contains(rid, vec, 0, vec.length);
+    }
+
+    /*  returns the vector as decoded from the cluster files */
+    private float[] storedVector(VectorConstant entry) {
+        if (!halfPrecision)
+            return entry.asJavaVal();
+        return ((VectorConstant) entry.castTo(org.vanilladb.core.sql.Type.VECTOR16(dimension()))).asJavaVal();
+    }
+
+    private static CentroidMatrix loadCentroids(IndexInfo ii, int dim, Transaction tx, long version) {
+        String tblname = centroidTableName(ii);
+        TableInfo ti = new TableInfo(tblname, centroidsSchema(dim));
         RecordFile rf = ti.open(tx, true);
 
         long size = VanillaDb.fileMgr().size(ti.fileName());
@@ -121,143 +547,1595 @@ public class IVF_FLATIndex extends Index {
         }
 
         rf.beforeFirst();
-        listCentroids = new CopyOnWriteArrayList<>();
+        List<float[]> vecs = new ArrayList<>();
+        List<Integer> ids = new ArrayList<>();
 
         while (rf.next()) {
-            VectorConstant v = (VectorConstant) rf.getVal(SCHEMA_KEY);
-            int num = (int) rf.getVal(SCHEMA_CENTROID_NUM).asJavaVal();
-            listCentroids.add(new VecIntPair(v, num));
+            vecs.add(((VectorConstant) rf.getVal(SCHEMA_KEY)).asJavaVal());
+            ids.add((int) rf.getVal(SCHEMA_CENTROID_NUM).asJavaVal());
         }
 
         rf.close();
         buffers.forEach(b -> tx.bufferMgr().unpin(b));
+
+        float[] matrix = new float[vecs.size() * dim];
+        for (int i = 0; i < vecs.size(); ++i)
+            System.arraycopy(vecs.get(i), 0, matrix, i * dim, dim);
+        return new CentroidMatrix(matrix, ids.stream().mapToInt(Integer::intValue).toArray(), dim, version);
     }
     
     @Override
     public void beforeFirst(DistanceFn distFn) {
         preLoadToMemory();
+        this.distFn = entryDistance(distFn);
+        this.rangeRadius = -1;
+        this.dead = deadEntries();
+        this.prefetchBudget = PREFETCH_BLOCKS;
+        if (K <= 0)
+            K = Math.max(1, (int) (RATE * centroids.size()));
         
-        /* sort the clusters according to the 
-            distance between query vector and cluster point */
-        this.pqCentroids = new PriorityQueue<>();
-        listCentroids.forEach(c -> {
-            c.setDistFn(distFn);
-            this.pqCentroids.add(c);
-        });
+        /* rank the clusters according to the distance between query
+            vector and cluster point, without touching shared state */
+        this.probes = centroids.nearest(distFn, K);
 
         isBeforeFirsted = true;
     }
 
+    /**
+     * Positions the index before the first entry within the radius. With the
+     * Euclidean distance, a cluster whose centroid is farther from the query
+     * than the radius plus the distance from the centroid to its farthest
+     * entry cannot hold a match (by the triangle inequality), so only the
+     * other clusters are iterated, nearest first. The entries are filtered
+     * lazily by {@link #next()}, so matches stream out while the later
+     * clusters are still unread.
+     *
+     * <p>
+     * The radius is in the unit of the distance function, i.e., a squared
+     * distance for {@link EuclideanFn}. Other distance functions give no
+     * bound, so every cluster is iterated.
+     * </p>
+     */
+    @Override
+    public void beforeFirst(DistanceFn distFn, double radius) {
+        preLoadToMemory();
+        this.distFn = entryDistance(distFn);
+        this.rangeRadius = radius;
+        this.dead = deadEntries();
+        this.prefetchBudget = PREFETCH_BLOCKS;
+        probeResults = null;
+
+        float[] dists = new float[centroids.size()];
+        centroids.distances(distFn, dists);
+        float[] radii = distFn instanceof EuclideanFn ? clusterRadii() : null;
+        double bound = Math.sqrt(radius);
+
+        TopKHeap ranked = new TopKHeap(Math.max(1, dists.length));
+        for (int i = 0; i < dists.length; ++i)
+            if (radii == null || Math.sqrt(dists[i]) - radii[i] <= bound)
+                ranked.offer(dists[i], i);
+        ranked.sortAscending();
+
+        probes = new int[ranked.size()];
+        for (int i = 0; i < probes.length; ++i)
+            probes[i] = centroids.id((int) ranked.rid(i));
+        isBeforeFirsted = true;
+    }
+
+    /*  returns the Euclidean distance from every centroid to the farthest
+        entry of its cluster, in the order of the centroids */
+    private float[] clusterRadii() {
+        return statsWithRadii().radii(centroids);
+    }
+
+    /*  returns the statistics of the index with the radii of its clusters
+        cached; the radii are read from the centroid table on the first
+        call, or measured on the clusters if a crash may have lost raises */
+    private IVFClusterStats statsWithRadii() {
+        IVFClusterStats stats = stats();
+        if (stats.hasRadii())
+            return stats;
+        if (stats.isStale()) {
+            stats.loadRadii(measureRadii(), true);
+            return stats;
+        }
+        Map<Integer, Float> radii = new HashMap<>();
+        RecordFile rf = new TableInfo(centroidTableName(ii), centroidsSchema(dimension())).open(tx, true);
+        rf.beforeFirst();
+        while (rf.next())
+            radii.put((int) rf.getVal(SCHEMA_CENTROID_NUM).asJavaVal(),
+                    (float) (double) rf.getVal(SCHEMA_RADIUS).asJavaVal());
+        rf.close();
+        stats.loadRadii(radii, false);
+        return stats;
+    }
+
+    /*  returns the radius of every cluster, measured on all of its entries
+        against the committed centroids; the deleted entries are measured
+        too, which still gives an upper bound */
+    private Map<Integer, Float> measureRadii() {
+        CentroidMatrix committed = loadCentroids(ii, dimension(), tx, -1);
+        Map<Integer, Float> radii = new HashMap<>();
+        for (int i = 0; i < committed.size(); ++i) {
+            int fileId = committed.id(i);
+            List<float[]> vecs = new ArrayList<>();
+            IVFSegment seg = segment(fileId);
+            if (seg != null)
+                for (int j = 0; j < seg.size(); ++j)
+                    vecs.add(seg.vector(j));
+            RecordFile rf = new TableInfo(dataTableName(fileId), dataSchema()).open(tx, true);
+            rf.beforeFirst();
+            while (rf.next()) {
+                float[] vec = new float[dimension()];
+                rf.getVector(SCHEMA_KEY, vec, 0);
+                vecs.add(vec);
+            }
+            rf.close();
+            radii.put(fileId, radius(committed.vector(i), vecs.toArray(new float[0][])));
+        }
+        return radii;
+    }
+
+    /*  returns the Euclidean distance from the centroid to its farthest
+        vector, rounded up so that the bound never excludes a match */
+    private static float radius(float[] centroid, float[]... vecs) {
+        double max = 0;
+        for (float[] vec : vecs) {
+            double dist = 0;
+            for (int d = 0; d < centroid.length; ++d) {
+                double diff = centroid[d] - vec[d];
+                dist += diff * diff;
+            }
+            max = Math.max(max, dist);
+        }
+        return Math.nextUp((float) Math.sqrt(max));
+    }
+
+    /*  returns the sum of the squared Euclidean distances from the centroid
+        to the vectors */
+    private static double squaredError(float[] centroid, float[]... vecs) {
+        double sum = 0;
+        for (float[] vec : vecs)
+            for (int d = 0; d < centroid.length; ++d) {
+                double diff = centroid[d] - vec[d];
+                sum += diff * diff;
+            }
+        return sum;
+    }
+
+    /**
+     * In the parallel probe mode, scores the probed clusters concurrently on
+     * a dedicated pool. Every cluster is read on the calling thread, the only
+     * one touching the transaction, and handed to a worker that keeps its own
+     * top-k of it; the partial results are merged here, so {@link #next()}
+     * only iterates the k nearest candidates. Otherwise the clusters are
+     * scanned lazily by {@link #next()} on the calling thread.
+     *
+     * <p>
+     * The query may override the number of probed clusters with nprobe;
+     * otherwise {@link #RATE} of the clusters are probed.
+     * </p>
+     */
+    @Override
+    public void beforeFirst(DistanceFn distFn, int k, int nprobe) {
+        K = nprobe;
+        beforeFirst(distFn);
+        probeResults = null;
+        if (!PARALLEL_PROBE || K <= 1)
+            return;
+
+        DistanceFn entryFn = this.distFn;
+        List<VecRecPair> merged = new ArrayList<>(probes.length * k);
+        for (List<VecRecPair> part : probeInParallel(probes, null, c -> probeCluster(c, entryFn, k)))
+            merged.addAll(part);
+        cur_k = probes.length - 1;
+        merged.sort((a, b) -> Double.compare(a.getDist(), b.getDist()));
+        probeResults = merged.size() > k ? new ArrayList<>(merged.subList(0, k)) : merged;
+        probeCursor = -1;
+    }
+
+    private static synchronized ForkJoinPool probePool() {
+        if (probePool == null)
+            probePool = new ForkJoinPool(PROBE_THREADS);
+        return probePool;
+    }
+
+    /*  the prefetches block on the disk, so they get threads of their own */
+    private static synchronized ExecutorService prefetchPool() {
+        if (prefetchPool == null)
+            prefetchPool = Executors.newFixedThreadPool(PROBE_THREADS, r -> {
+                Thread t = new Thread(r, "ivf-prefetch");
+                t.setDaemon(true);
+                return t;
+            });
+        return prefetchPool;
+    }
+
+    /**
+     * Reads the data file of a cluster into the buffer pool in the
+     * background, so that the scan reaching it next finds its blocks there
+     * instead of stalling on the disk. The blocks are charged to the prefetch
+     * budget of the query, and nothing is prefetched once it runs out; the
+     * sealed segment of the cluster is loaded into the page cache as well.
+     */
+    private void prefetch(int fileId) {
+        if (prefetchBudget <= 0)
+            return;
+        String fileName = new TableInfo(dataTableName(fileId), dataSchema()).fileName();
+        // the first block is the file header
+        int numBlocks = (int) Math.min(Math.max(0, VanillaDb.fileMgr().size(fileName) - 1), prefetchBudget);
+        IVFSegment seg = segment(fileId);
+        if (numBlocks == 0 && seg == null)
+            return;
+        prefetchBudget -= numBlocks;
+
+        BufferMgr bufferMgr = tx.bufferMgr();
+        prefetching = prefetchPool().submit(() -> {
+            if (seg != null)
+                seg.load();
+            for (int b = 1; b <= numBlocks; ++b)
+                if (!bufferMgr.prefetch(new BlockId(fileName, b)))
+                    break;
+        });
+    }
+
+    /*  the live entries of a cluster: its sealed segment, whose dead entries
+        are skipped while it is scored, and the entries of its data file,
+        decoded back to back */
+    private static class ClusterEntries {
+        final int fileId;
+        final IVFSegment seg;
+        final float[] vecs;
+        final long[] rids;
+        final int count;
+
+        ClusterEntries(int fileId, IVFSegment seg, float[] vecs, long[] rids, int count) {
+            this.fileId = fileId;
+            this.seg = seg;
+            this.vecs = vecs;
+            this.rids = rids;
+            this.count = count;
+        }
+    }
+
+    /*  reads the live entries of a cluster that pass the lookup filter, if
+        any; only the calling thread reads, so the workers of a parallel
+        probe never use the pins or the locks of the transaction */
+    private ClusterEntries readCluster(int fileId, RidFilter before) {
+        countProbe(fileId);
+        int dim = centroids.dimension();
+        float[] vecs = new float[BATCH_BLOCK_SIZE * dim];
+        long[] rids = new long[BATCH_BLOCK_SIZE];
+        int count = 0;
+
+        var ti = new TableInfo(dataTableName(fileId), dataSchema());
+        RecordFile rf = ti.open(tx, true);
+        rf.beforeFirst();
+        while (rf.next()) {
+            long rid = TopKHeap.packRid((long) rf.getVal(SCHEMA_RID_BLOCK).asJavaVal(),
+                    (int) rf.getVal(SCHEMA_RID_ID).asJavaVal());
+            if (before != null && !before.accept(rid))
+                continue;
+            if (count == rids.length) {
+                vecs = Arrays.copyOf(vecs, 2 * vecs.length);
+                rids = Arrays.copyOf(rids, 2 * rids.length);
+            }
+            rf.getVector(SCHEMA_KEY, vecs, count * dim);
+            if (isDead(rid, vecs, count * dim))
+                continue;
+            rids[count++] = rid;
+        }
+        rf.close();
+        return new ClusterEntries(fileId, segment(fileId), vecs, rids, count);
+    }
+
+    /*  reads the clusters one by one and scores each on the probe pool as
+        soon as it is read, so that scoring overlaps the reading of the next */
+    private <T> List<T> probeInParallel(int[] fileIds, RidFilter before, Function<ClusterEntries, T> score) {
+        List<Future<T>> futures = new ArrayList<>(fileIds.length);
+        for (int i = 0; i < fileIds.length; ++i) {
+            if (i + 1 < fileIds.length)
+                prefetch(fileIds[i + 1]);
+            ClusterEntries entries = readCluster(fileIds[i], before);
+            futures.add(probePool().submit(() -> score.apply(entries)));
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> f : futures)
+                results.add(f.get());
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("parallel probing of index '" + ii.indexName() + "' failed", e);
+        }
+        return results;
+    }
+
+    /*  returns the k nearest entries of one cluster */
+    private List<VecRecPair> probeCluster(ClusterEntries entries, DistanceFn distFn, int k) {
+        PriorityQueue<VecRecPair> maxPQ = new PriorityQueue<>(k,
+                (a, b) -> Double.compare(b.getDist(), a.getDist()));
+
+        // only the survivors are materialized
+        IVFSegment seg = entries.seg;
+        if (seg != null) {
+            boolean isEuclidean = distFn instanceof EuclideanFn;
+            float[] query = distFn.queryVector().asJavaVal();
+            for (int i = 0; i < seg.size(); ++i) {
+                double dist = isEuclidean ? seg.squaredEuclidean(i, query)
+                        : distFn.distance(new VectorConstant(seg.vector(i)));
+                if (maxPQ.size() == k && dist >= maxPQ.peek().getDist() || isDead(seg, i))
+                    continue;
+                maxPQ.add(new VecRecPair(new VectorConstant(seg.vector(i)),
+                        new RecordId(new BlockId(dataFileName, seg.block(i)), seg.id(i)), dist));
+                if (maxPQ.size() > k)
+                    maxPQ.poll();
+            }
+        }
+
+        int dim = centroids.dimension();
+        float[] dists = new float[BATCH_BLOCK_SIZE];
+        for (int from = 0; from < entries.count; from += BATCH_BLOCK_SIZE) {
+            int count = Math.min(BATCH_BLOCK_SIZE, entries.count - from);
+            distFn.distances(entries.vecs, dim, from, count, dists);
+            for (int v = 0; v < count; ++v) {
+                if (maxPQ.size() == k && dists[v] >= maxPQ.peek().getDist())
+                    continue;
+                long rid = entries.rids[from + v];
+                VectorConstant vec = VectorConstant.wrap(
+                        Arrays.copyOfRange(entries.vecs, (from + v) * dim, (from + v + 1) * dim));
+                maxPQ.add(new VecRecPair(vec, new RecordId(new BlockId(dataFileName, TopKHeap.blockNum(rid)),
+                        TopKHeap.id(rid)), dists[v]));
+                if (maxPQ.size() > k)
+                    maxPQ.poll();
+            }
+        }
+        return new ArrayList<>(maxPQ);
+    }
+
+    /**
+     * Streams the probed clusters straight into the heap. A sealed segment is
+     * scored on its mapped vectors and a candidate only costs a primitive
+     * heap slot, so no record id or vector is created per entry; the caller
+     * materializes the final k. In the parallel probe mode, every cluster is
+     * read on the calling thread and scored by a worker into a heap of its
+     * own, which is merged into the given one.
+     *
+     * <p>
+     * With a filter, the probed clusters may hold fewer than k qualified
+     * entries; the number of probed clusters then doubles, following the
+     * ranking of the centroids, until the heap is full or every cluster is
+     * probed.
+     * </p>
+     */
+    @Override
+    public void collectNearest(DistanceFn distFn, int nprobe, TopKHeap heap, RidFilter filter) {
+        K = nprobe;
+        beforeFirst(distFn);
+        if (filter != null)
+            probes = centroids.nearest(distFn, centroids.size());
+
+        // the centroids are ranked by the given function, the entries by that of beforeFirst
+        DistanceFn entryFn = this.distFn;
+        int probed = Math.min(K, probes.length);
+        probeClusters(0, probed, entryFn, heap, filter);
+        while (filter != null && heap.size() < heap.capacity() && probed < probes.length) {
+            int next = Math.min(probes.length, 2 * probed);
+            probeClusters(probed, next, entryFn, heap, filter);
+            probed = next;
+        }
+        close();
+    }
+
+    /*  scans the clusters probes[from, to) into the heap */
+    private void probeClusters(int from, int to, DistanceFn distFn, TopKHeap heap, RidFilter filter) {
+        // a lookup is cheaper than a distance, other filters are only run on survivors
+        RidFilter before = filter != null && filter.isLookup() ? filter : null;
+        RidFilter after = filter != null && !filter.isLookup() ? filter : null;
+
+        // a filter that reads data records must stay on the calling thread
+        if (!PARALLEL_PROBE || to - from <= 1 || after != null) {
+            for (int i = from; i < to; ++i) {
+                if (i + 1 < to)
+                    prefetch(probes[i + 1]);
+                scanCluster(readCluster(probes[i], before), distFn, heap, before, after);
+            }
+            return;
+        }
+
+        List<TopKHeap> locals = probeInParallel(Arrays.copyOfRange(probes, from, to), before, entries -> {
+            TopKHeap local = new TopKHeap(heap.capacity());
+            scanCluster(entries, distFn, local, before, null);
+            return local;
+        });
+        for (TopKHeap local : locals)
+            heap.merge(local);
+    }
+
+    /**
+     * Routes every query of the batch to its probed clusters and then scans
+     * every probed cluster once, in the order of cluster ids, scoring blocks
+     * of its entries against all the queries routed to it. Euclidean queries
+     * are scored with a query-block by vector-block kernel.
+     */
+    @Override
+    public TopKHeap[] collectNearest(List<DistanceFn> distFns, int nprobe, int k) {
+        preLoadToMemory();
+        dead = deadEntries();
+        int numProbes = nprobe > 0 ? nprobe : Math.max(1, (int) (RATE * centroids.size()));
+
+        // Cluster Id -> the queries probing the cluster
+        Map<Integer, List<Integer>> routes = new TreeMap<>();
+        TopKHeap[] heaps = new TopKHeap[distFns.size()];
+        for (int q = 0; q < heaps.length; ++q) {
+            heaps[q] = new TopKHeap(k);
+            for (int fileId : centroids.nearest(distFns.get(q), numProbes))
+                routes.computeIfAbsent(fileId, id -> new ArrayList<>()).add(q);
+        }
+
+        List<DistanceFn> entryFns = new ArrayList<>(distFns.size());
+        for (DistanceFn distFn : distFns)
+            entryFns.add(entryDistance(distFn));
+
+        if (!PARALLEL_PROBE || routes.size() <= 1) {
+            for (Map.Entry<Integer, List<Integer>> route : routes.entrySet()) {
+                int[] queries = route.getValue().stream().mapToInt(Integer::intValue).toArray();
+                TopKHeap[] routed = new TopKHeap[queries.length];
+                for (int j = 0; j < queries.length; ++j)
+                    routed[j] = heaps[queries[j]];
+                scanCluster(readCluster(route.getKey(), null), entryFns, queries, routed);
+            }
+            return heaps;
+        }
+
+        int[] fileIds = routes.keySet().stream().mapToInt(Integer::intValue).toArray();
+        List<int[]> routedQueries = new ArrayList<>(routes.size());
+        for (List<Integer> queries : routes.values())
+            routedQueries.add(queries.stream().mapToInt(Integer::intValue).toArray());
+        Map<Integer, int[]> queriesOf = new HashMap<>();
+        for (int t = 0; t < fileIds.length; ++t)
+            queriesOf.put(fileIds[t], routedQueries.get(t));
+
+        List<TopKHeap[]> results = probeInParallel(fileIds, null, entries -> {
+            int[] queries = queriesOf.get(entries.fileId);
+            TopKHeap[] local = new TopKHeap[queries.length];
+            for (int j = 0; j < queries.length; ++j)
+                local[j] = new TopKHeap(k);
+            scanCluster(entries, entryFns, queries, local);
+            return local;
+        });
+        for (int t = 0; t < results.size(); ++t) {
+            int[] queries = routedQueries.get(t);
+            TopKHeap[] local = results.get(t);
+            for (int j = 0; j < queries.length; ++j)
+                heaps[queries[j]].merge(local[j]);
+        }
+        return heaps;
+    }
+
+    /*  offers every entry of one cluster to the heaps of the queries routed
+        to it, heaps[j] being the heap of distFns.get(queries[j]) */
+    private void scanCluster(ClusterEntries entries, List<DistanceFn> distFns, int[] queries, TopKHeap[] heaps) {
+        int dim = centroids.dimension();
+        boolean isEuclidean = true;
+        for (int q : queries)
+            isEuclidean &= distFns.get(q) instanceof EuclideanFn;
+
+        float[] queryBlock = null;
+        if (isEuclidean) {
+            queryBlock = new float[queries.length * dim];
+            for (int j = 0; j < queries.length; ++j)
+                System.arraycopy(distFns.get(queries[j]).queryVector().asJavaVal(), 0, queryBlock, j * dim, dim);
+        }
+        float[] vecBlock = new float[BATCH_BLOCK_SIZE * dim];
+        long[] rids = new long[BATCH_BLOCK_SIZE];
+        float[] scores = new float[(isEuclidean ? queries.length : 1) * BATCH_BLOCK_SIZE];
+
+        IVFSegment seg = entries.seg;
+        if (seg != null)
+            for (int from = 0; from < seg.size(); from += BATCH_BLOCK_SIZE) {
+                int count = Math.min(BATCH_BLOCK_SIZE, seg.size() - from);
+                seg.copyVectors(from, count, vecBlock);
+                // the live entries are packed to the front of the block
+                int live = 0;
+                for (int v = 0; v < count; ++v) {
+                    rids[live] = TopKHeap.packRid(seg.block(from + v), seg.id(from + v));
+                    if (isDead(rids[live], vecBlock, v * dim))
+                        continue;
+                    if (live < v)
+                        System.arraycopy(vecBlock, v * dim, vecBlock, live * dim, dim);
+                    ++live;
+                }
+                if (live > 0)
+                    scoreBlock(distFns, queries, queryBlock, vecBlock, rids, live, scores, heaps);
+            }
+
+        for (int from = 0; from < entries.count; from += BATCH_BLOCK_SIZE) {
+            int count = Math.min(BATCH_BLOCK_SIZE, entries.count - from);
+            System.arraycopy(entries.vecs, from * dim, vecBlock, 0, count * dim);
+            System.arraycopy(entries.rids, from, rids, 0, count);
+            scoreBlock(distFns, queries, queryBlock, vecBlock, rids, count, scores, heaps);
+        }
+    }
+
+    private void scoreBlock(List<DistanceFn> distFns, int[] queries, float[] queryBlock, float[] vecBlock,
+            long[] rids, int count, float[] scores, TopKHeap[] heaps) {
+        int dim = centroids.dimension();
+        if (queryBlock != null) {
+            EuclideanFn.distances(queryBlock, queries.length, vecBlock, count, dim, scores);
+            for (int j = 0; j < queries.length; ++j)
+                for (int v = 0; v < count; ++v)
+                    if (scores[j * count + v] < heaps[j].threshold())
+                        heaps[j].offer(scores[j * count + v], rids[v]);
+            return;
+        }
+        for (int j = 0; j < queries.length; ++j) {
+            distFns.get(queries[j]).distances(vecBlock, dim, 0, count, scores);
+            for (int v = 0; v < count; ++v)
+                if (scores[v] < heaps[j].threshold())
+                    heaps[j].offer(scores[v], rids[v]);
+        }
+    }
+
+    /*  offers every entry of one cluster that passes the filters to the heap */
+    private void scanCluster(ClusterEntries entries, DistanceFn distFn, TopKHeap heap, RidFilter before,
+            RidFilter after) {
+        IVFSegment seg = entries.seg;
+        if (seg != null) {
+            boolean isEuclidean = distFn instanceof EuclideanFn;
+            float[] query = distFn.queryVector().asJavaVal();
+            for (int i = 0; i < seg.size(); ++i) {
+                long rid = TopKHeap.packRid(seg.block(i), seg.id(i));
+                if (before != null && !before.accept(rid) || isDead(seg, i))
+                    continue;
+                double dist = isEuclidean ? seg.squaredEuclidean(i, query)
+                        : distFn.distance(new VectorConstant(seg.vector(i)));
+                if (dist < heap.threshold() && (after == null || after.accept(rid)))
+                    heap.offer((float) dist, rid);
+            }
+        }
+
+        int dim = centroids.dimension();
+        float[] dists = new float[BATCH_BLOCK_SIZE];
+        for (int from = 0; from < entries.count; from += BATCH_BLOCK_SIZE) {
+            int count = Math.min(BATCH_BLOCK_SIZE, entries.count - from);
+            distFn.distances(entries.vecs, dim, from, count, dists);
+            for (int v = 0; v < count; ++v) {
+                long rid = entries.rids[from + v];
+                if (dists[v] < heap.threshold() && (after == null || after.accept(rid)))
+                    heap.offer(dists[v], rid);
+            }
+        }
+    }
+
     public boolean next() {
         if (!isBeforeFirsted)
             throw new IllegalStateException("You must call beforeFirst() before iterating index '"
                     + ii.indexName() + "'");
 
-        while (dataFile == null || !dataFile.next()) {
+        if (probeResults != null)
+            return ++probeCursor < probeResults.size();
+
+        while (true) {
+            // the sealed part of a cluster goes first
+            if (segment != null) {
+                while (++segCursor < segment.size())
+                    if (!isDead(segment, segCursor)
+                            && (rangeRadius < 0 || segmentDistance(segCursor) <= rangeRadius))
+                        return true;
+                segment = null;
+            }
+            while (dataFile != null && dataFile.next())
+                if (!isDead(dataFile) && (rangeRadius < 0
+                        || distFn.distance((VectorConstant) dataFile.getVal(SCHEMA_KEY)) <= rangeRadius))
+                    return true;
             // End case: last centroid is iterated
-            if (cur_k + 1 == K)
+            if (cur_k + 1 >= probes.length)
                 return false;
             // close traversed dataFile
             if (dataFile != null)
                 dataFile.close();
             // load new data file from FileSystem
             ++cur_k;
-            var cur_cent = pqCentroids.poll();
-            //System.out.println("index info:" + ii.indexName() + ", current centroid: " + cur_cent.fileId);
-            var ti = new TableInfo("idx_items_data" +
-                    cur_cent.fileId, dataSchema());
+            int fileId = probes[cur_k];
+            countProbe(fileId);
+            // the probe order is known, so the next cluster is read while this one is scanned
+            if (cur_k + 1 < probes.length)
+                prefetch(probes[cur_k + 1]);
+            //System.out.println("index info:" + ii.indexName() + ", current centroid: " + fileId);
+            segment = segment(fileId);
+            segCursor = -1;
+            var ti = new TableInfo(dataTableName(fileId), dataSchema());
             dataFile = ti.open(tx, true);
             dataFile.beforeFirst();
         }
-        return true;
+    }
+
+    private double segmentDistance(int i) {
+        if (distFn instanceof EuclideanFn)
+            return segment.squaredEuclidean(i, distFn.queryVector().asJavaVal());
+        return distFn.distance(new VectorConstant(segment.vector(i)));
     }
 
     @Override
     public RecordId getDataRecordId() {
+        if (probeResults != null)
+            return probeResults.get(probeCursor).getRid();
+        if (segment != null)
+            return new RecordId(new BlockId(dataFileName, segment.block(segCursor)), segment.id(segCursor));
         if (dataFile == null) {
             throw new IllegalStateException("No data file is currently being iterated. Call next() first.");
         }
         long blockNum = (long) ((BigIntConstant) dataFile.getVal(SCHEMA_RID_BLOCK)).asJavaVal();
         int recordId = (int) ((IntegerConstant) dataFile.getVal(SCHEMA_RID_ID)).asJavaVal();
-        return new RecordId(new BlockId("sift", blockNum), recordId);
+        return new RecordId(new BlockId(dataFileName, blockNum), recordId);
     }
 
     // Method to support IndexVecScan
+    @Override
     public VecRecPair getDataVecRecPair() {
+        if (probeResults != null)
+            return probeResults.get(probeCursor);
+        if (segment != null) {
+            RecordId rid = new RecordId(new BlockId(dataFileName, segment.block(segCursor)), segment.id(segCursor));
+            VectorConstant vec = new VectorConstant(segment.vector(segCursor));
+            // the distance is computed on the mapped vector right away
+            if (distFn instanceof EuclideanFn)
+                return new VecRecPair(vec, rid, segment.squaredEuclidean(segCursor, distFn.queryVector().asJavaVal()));
+            return new VecRecPair(vec, rid);
+        }
         if (dataFile == null) {
             throw new IllegalStateException("No data file is currently being iterated. Call next() first.");
         }
         VectorConstant vec = (VectorConstant) dataFile.getVal(SCHEMA_KEY);
         long blockNum = (long) ((BigIntConstant) dataFile.getVal(SCHEMA_RID_BLOCK)).asJavaVal();
         int recordId = (int) ((IntegerConstant) dataFile.getVal(SCHEMA_RID_ID)).asJavaVal();
-        RecordId rid = new RecordId(new BlockId("sift", blockNum), recordId);
+        RecordId rid = new RecordId(new BlockId(dataFileName, blockNum), recordId);
         return new VecRecPair(vec, rid);
     }
 
         public void insert(VectorConstant key, RecordId dataRecordId) {
         preLoadToMemory();
-        
-        // set the disfn with insert vector
-        var keyDist = new EuclideanFn("");
-        keyDist.setQueryVector(key);
-        
-        // loop through all the centroids to find the closest one
-        int idx = -1;
-        double dist = Double.MAX_VALUE, tmp;
-        for (int i = 0; i < listCentroids.size(); ++i) {
-            if ((tmp = keyDist.distance(listCentroids.get(i).v)) < dist) {
-                idx = i;
-                dist = tmp;
-            }
+        key = entryVector(key);
+
+        // a reused record id with the vector of a deleted entry would be
+        // hidden by its tombstone; the entry is still in its cluster, so the
+        // tombstone is dropped instead
+        long rid = TopKHeap.packRid(dataRecordId.block().number(), dataRecordId.id());
+        float[] stored = storedVector(key);
+        IVFTombstones tombs = tombstones();
+        if (tombs.containsRid(rid) && tombs.contains(rid, stored, 0, stored.length)) {
+            reviveEntry(rid, IVFTombstones.fingerprint(stored, 0, stored.length));
+            return;
         }
-        
+
+        // find the closest centroid; maintenance cannot move the clusters
+        // while the data file is locked, but it may have while we waited,
+        // and its centroids are only cached once its transaction commits,
+        // so they are read from the table then
+        int fileId;
+        TableInfo ti;
+        while (true) {
+            fileId = centroids.nearest(key.asJavaVal());
+            ti = new TableInfo(dataTableName(fileId), dataSchema());
+            tx.concurrencyMgr().modifyFile(ti.fileName());
+            if (centroids.version() == centroidVersions.getOrDefault(ii.indexName(), 0L)
+                    && !invalidating(ii.indexName()))
+                break;
+            CentroidMatrix committed = loadCentroids(ii, dimension(), tx, -1);
+            boolean moved = committed.nearest(key.asJavaVal()) != fileId;
+            centroids = committed;
+            if (!moved)
+                break;
+        }
+
         // open the corresponding data file and insert the vector
-        String tblname = "idx_items_data" + listCentroids.get(idx).fileId;
-        TableInfo ti = new TableInfo(tblname, dataSchema());
         RecordFile rf = ti.open(tx, true);
         rf.insert();
         rf.setVal(SCHEMA_KEY, key);
         rf.setVal(SCHEMA_RID_BLOCK, new BigIntConstant(dataRecordId.block().number()));
         rf.setVal(SCHEMA_RID_ID, new IntegerConstant(dataRecordId.id()));
         rf.close();
+
+        // keep the radius of the cluster an upper bound, and its error up to
+        // date; both are changed in memory and flushed to the centroid table
+        // by maintenance, so inserts into different clusters never lock the
+        // same centroid rows
+        int row = centroids.row(fileId);
+        if (row >= 0)
+            statsWithRadii().add(fileId, radius(centroids.vector(row), stored),
+                    squaredError(centroids.vector(row), stored), 1);
     }
 
+    /*  drops the tombstone of a deleted entry, which makes the entry visible
+        again; the cached tombstone is restored if the transaction rolls back,
+        unless the transaction added it itself */
+    private void reviveEntry(long rid, int fingerprint) {
+        RecordFile rf = new TableInfo(tombstoneTableName(ii), tombstoneSchema()).open(tx, true);
+        rf.beforeFirst();
+        while (rf.next())
+            if (TopKHeap.packRid((long) rf.getVal(SCHEMA_RID_BLOCK).asJavaVal(),
+                    (int) rf.getVal(SCHEMA_RID_ID).asJavaVal()) == rid
+                    && (int) rf.getVal(SCHEMA_FINGERPRINT).asJavaVal() == fingerprint) {
+                rf.delete();
+                break;
+            }
+        rf.close();
+
+        IVFTombstones own = pendingTombstones.getOrDefault(tx.getTransactionNumber(), Collections.emptyMap())
+                .get(ii.indexName());
+        boolean committed = own == null || own.remove(rid, fingerprint) == null;
+        IVFTombstones tombs = tombstones();
+        Integer fileId = tombs.remove(rid, fingerprint);
+        if (!committed || fileId == null)
+            return;
+        tx.addLifecycleListener(new TransactionLifecycleListener() {
+            @Override
+            public void onTxCommit(Transaction tx) {
+            }
+
+            @Override
+            public void onTxRollback(Transaction tx) {
+                tombs.add(rid, fingerprint, fileId);
+            }
+
+            @Override
+            public void onTxEndStatement(Transaction tx) {
+            }
+        });
+    }
+
+    /*  adds entries to a cluster in the centroid table: raises its radius
+        if it is smaller, and adds their squared distances to its centroid
+        to its error */
+    private void addEntries(int fileId, float radius, double error, long count) {
+        RecordFile rf = new TableInfo(centroidTableName(ii), centroidsSchema(dimension())).open(tx, true);
+        rf.beforeFirst();
+        while (rf.next())
+            if ((int) rf.getVal(SCHEMA_CENTROID_NUM).asJavaVal() == fileId) {
+                if ((double) rf.getVal(SCHEMA_RADIUS).asJavaVal() < radius)
+                    rf.setVal(SCHEMA_RADIUS, new DoubleConstant(radius));
+                rf.setVal(SCHEMA_ERROR, new DoubleConstant((double) rf.getVal(SCHEMA_ERROR).asJavaVal() + error));
+                rf.setVal(SCHEMA_SIZE, new BigIntConstant((long) rf.getVal(SCHEMA_SIZE).asJavaVal() + count));
+                break;
+            }
+        rf.close();
+    }
+
+    /**
+     * Deletes an entry by recording a tombstone instead of searching the
+     * cluster for it, so a delete costs one logged insert into the tombstone
+     * table of the index. Scans skip the entries with tombstones, and the
+     * entries are purged when their cluster is compacted; see
+     * {@link #compactCluster(int)}.
+     */
     @Override
     public void delete(SearchKey key, RecordId dataRecordId, boolean doLogicalLogging) {
-        // Deletion not implemented in original; provide basic implementation
         if (!(key.get(0) instanceof VectorConstant)) {
             throw new IllegalArgumentException("SearchKey must be a VectorConstant");
         }
-        VectorConstant vectorKey = (VectorConstant) key.get(0);
+        VectorConstant vectorKey = entryVector((VectorConstant) key.get(0));
+
+        preLoadToMemory();
+        int fileId = centroids.nearest(vectorKey.asJavaVal());
+        long rid = TopKHeap.packRid(dataRecordId.block().number(), dataRecordId.id());
+        float[] stored = storedVector(vectorKey);
+        int fingerprint = IVFTombstones.fingerprint(stored, 0, stored.length);
+
+        TableInfo ti = new TableInfo(tombstoneTableName(ii), tombstoneSchema());
+        RecordFile.formatFileHeader(ti.fileName(), tx);
+        RecordFile rf = ti.open(tx, true);
+        rf.insert();
+        rf.setVal(SCHEMA_CENTROID_NUM, new IntegerConstant(fileId));
+        rf.setVal(SCHEMA_RID_BLOCK, new BigIntConstant(dataRecordId.block().number()));
+        rf.setVal(SCHEMA_RID_ID, new IntegerConstant(dataRecordId.id()));
+        rf.setVal(SCHEMA_FINGERPRINT, new IntegerConstant(fingerprint));
+        rf.close();
+
+        // scans skip the entry right away, until the transaction rolls back
+        IVFTombstones tombs = tombstones();
+        tombs.add(rid, fingerprint, fileId);
+        pendingTombstones.computeIfAbsent(tx.getTransactionNumber(), txNum -> new ConcurrentHashMap<>())
+                .computeIfAbsent(ii.indexName(), name -> new IVFTombstones()).add(rid, fingerprint, fileId);
+        tx.addLifecycleListener(new TransactionLifecycleListener() {
+            @Override
+            public void onTxCommit(Transaction tx) {
+                pendingTombstones.remove(tx.getTransactionNumber());
+            }
+
+            @Override
+            public void onTxRollback(Transaction tx) {
+                pendingTombstones.remove(tx.getTransactionNumber());
+                tombs.remove(rid, fingerprint);
+            }
+
+            @Override
+            public void onTxEndStatement(Transaction tx) {
+            }
+        });
+    }
+
+    /**
+     * Builds the index over all records of the indexed table at once, instead
+     * of inserting them one by one. The centroids are trained on a random
+     * sample of {@link #TRAIN_SIZE} vectors. The table is then read in chunks
+     * of {@link #BUILD_BUFFER_SIZE} bytes of vectors; the vectors of a chunk
+     * are assigned to their clusters in parallel and grouped by cluster, and
+     * every cluster file is appended to a full block at a time, so the
+     * records are neither logged one by one nor searched for free slots. The
+     * index must not have been built yet. The caller should run this in a
+     * transaction of its own and commit it right after; a build interrupted
+     * by a crash has to be rerun on a new index.
+     *
+     * @return the number of indexed records
+     */
+    public long bulkBuild() {
+        int dim = dimension();
+        TableInfo cti = new TableInfo(centroidTableName(ii), centroidsSchema(dim));
+        if (VanillaDb.fileMgr().size(cti.fileName()) > 1)
+            throw new IllegalStateException("index '" + ii.indexName() + "' is already built");
+
+        String fldName = ii.fieldNames().get(0);
+        TableInfo baseTi = VanillaDb.catalogMgr().getTableInfo(ii.tableName(), tx);
+
+        // train the centroids on a reservoir sample of the table
+        float[][] sample = new float[TRAIN_SIZE][];
+        Random random = new Random();
+        long numRecs = 0;
+        RecordFile rf = baseTi.open(tx, true);
+        rf.beforeFirst();
+        while (rf.next()) {
+            long slot = numRecs < TRAIN_SIZE ? numRecs : random.nextLong(numRecs + 1);
+            ++numRecs;
+            if (slot < TRAIN_SIZE) {
+                float[] vec = new float[dim];
+                rf.getVector(fldName, vec, 0);
+                if (normalized)
+                    normalize(vec, 0, dim);
+                sample[(int) slot] = vec;
+            }
+        }
+        rf.close();
+        if (numRecs == 0)
+            throw new IllegalStateException("table '" + ii.tableName() + "' has no records to index");
+        float[][] trained = new Kmeans(NUM_CLUSTERS, Arrays.copyOf(sample, (int) Math.min(numRecs, TRAIN_SIZE)))
+                .train(TRAIN_ITERATIONS);
+        sample = null;
+
+        float[] matrix = new float[trained.length * dim];
+        int[] ids = new int[trained.length];
+        for (int c = 0; c < trained.length; ++c) {
+            System.arraycopy(trained[c], 0, matrix, c * dim, dim);
+            ids[c] = c;
+        }
+        CentroidMatrix built = new CentroidMatrix(matrix, ids, dim, -1);
+        float[] radii = new float[ids.length];
+        double[] errors = new double[ids.length];
+        long[] sizes = new long[ids.length];
+
+        // the records of a cluster wait here until they fill a block
+        List<List<Constant[]>> pending = new ArrayList<>(ids.length);
+        for (int fileId : ids) {
+            RecordFile.formatFileHeader(new TableInfo(dataTableName(fileId), dataSchema()).fileName(), tx);
+            pending.add(new ArrayList<>());
+        }
+
+        int chunkSize = (int) Math.max(1, Math.min(numRecs, BUILD_BUFFER_SIZE / ((long) dim * Float.BYTES)));
+        float[] chunk = new float[chunkSize * dim];
+        long[] blocks = new long[chunkSize];
+        int[] slots = new int[chunkSize], assignment = new int[chunkSize];
+        int count = 0;
+        rf = baseTi.open(tx, true);
+        rf.beforeFirst();
+        boolean hasNext = true;
+        while (hasNext) {
+            hasNext = rf.next();
+            if (hasNext) {
+                rf.getVector(fldName, chunk, count * dim);
+                if (normalized)
+                    normalize(chunk, count * dim, dim);
+                RecordId rid = rf.currentRecordId();
+                blocks[count] = rid.block().number();
+                slots[count] = rid.id();
+                ++count;
+            }
+            if (count == chunkSize || (!hasNext && count > 0)) {
+                assign(built, chunk, count, assignment);
+                for (int i = 0; i < count; ++i) {
+                    VectorConstant vec = VectorConstant.wrap(Arrays.copyOfRange(chunk, i * dim, (i + 1) * dim));
+                    int c = assignment[i];
+                    float[] stored = storedVector(vec);
+                    radii[c] = Math.max(radii[c], radius(trained[c], stored));
+                    errors[c] += squaredError(trained[c], stored);
+                    ++sizes[c];
+                    pending.get(c).add(new Constant[] { vec, new BigIntConstant(blocks[i]),
+                            new IntegerConstant(slots[i]) });
+                }
+                for (int fileId : ids)
+                    appendEntries(fileId, pending.get(fileId), false);
+                count = 0;
+            }
+        }
+        rf.close();
+        for (int fileId : ids)
+            appendEntries(fileId, pending.get(fileId), true);
 
-        DistanceFn keyDist = new EuclideanFn("");
-        keyDist.setQueryVector(vectorKey);
+        // the centroids are written last, along with the radii and the errors of their clusters
+        List<Constant[]> centroidRecs = new ArrayList<>(trained.length);
+        for (int c = 0; c < trained.length; ++c)
+            centroidRecs.add(new Constant[] { VectorConstant.wrap(trained[c]), new IntegerConstant(c),
+                    new DoubleConstant(radii[c]), new DoubleConstant(errors[c]), new BigIntConstant(sizes[c]),
+                    new DoubleConstant(sizes[c] == 0 ? 0 : errors[c] / sizes[c]) });
+        RecordFile.formatFileHeader(cti.fileName(), tx);
+        rf = cti.open(tx, false);
+        rf.appendRecords(Arrays.asList(SCHEMA_KEY, SCHEMA_CENTROID_NUM, SCHEMA_RADIUS, SCHEMA_ERROR, SCHEMA_SIZE,
+                SCHEMA_FIT_ERROR), centroidRecs);
+        rf.close();
 
-        int idx = -1;
-        double dist = Double.MAX_VALUE, tmp;
+        invalidateCentroids(ii.indexName(), tx);
+        return numRecs;
+    }
 
-        for (int i = 0; i < listCentroids.size(); ++i) {
-            if ((tmp = keyDist.distance(listCentroids.get(i).v)) < dist) {
-                idx = i;
-                dist = tmp;
+    /*  assigns the vectors of a bulk build to their clusters on the probe pool */
+    private void assign(CentroidMatrix built, float[] vecs, int count, int[] out) {
+        int slices = Math.min(PROBE_THREADS, count);
+        List<Callable<Void>> tasks = new ArrayList<>(slices);
+        for (int s = 0; s < slices; ++s) {
+            int from = (int) ((long) count * s / slices), to = (int) ((long) count * (s + 1) / slices);
+            tasks.add(() -> {
+                built.assign(vecs, from, to - from, out);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> f : probePool().invokeAll(tasks))
+                f.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("bulk build of index '" + ii.indexName() + "' failed", e);
+        }
+    }
+
+    /*  appends the full blocks of pending entries to the cluster file,
+        or all of them if last is set */
+    private void appendEntries(int fileId, List<Constant[]> pending, boolean last) {
+        int slotsPerBlock = Buffer.BUFFER_SIZE / RecordPage.slotSize(dataSchema());
+        int n = last ? pending.size() : pending.size() / slotsPerBlock * slotsPerBlock;
+        if (n == 0)
+            return;
+        RecordFile rf = new TableInfo(dataTableName(fileId), dataSchema()).open(tx, false);
+        rf.appendRecords(DATA_FIELDS, pending.subList(0, n));
+        rf.close();
+        pending.subList(0, n).clear();
+    }
+
+    /**
+     * Runs one round of online maintenance over the clusters of the index,
+     * so that continuous inserts degrade neither the balance of the clusters
+     * nor how well their centroids fit them:
+     * <ul>
+     * <li>the largest cluster is split in two by 2-means if it holds more
+     * than {@link #SPLIT_FACTOR} times the average number of entries,</li>
+     * <li>the smallest cluster is merged away, its entries moving to their
+     * nearest other clusters, if it holds less than {@link #MERGE_FACTOR}
+     * times the average, and</li>
+     * <li>a cluster whose mean squared distance to its centroid grew by more
+     * than {@link #ERROR_GROWTH} since the centroid was fitted is re-centered
+     * on the mean of its entries.</li>
+     * </ul>
+     * Cluster sizes are estimated from the sizes of the data files, and the
+     * errors the inserts kept in memory are first flushed to the centroid
+     * table, so only the clusters acted on are scanned. The entries are moved with ordinary
+     * logged deletes and inserts, and the centroid table is updated in place,
+     * so a round is atomic under the calling transaction. Sealed clusters are
+     * left alone. The caller should commit right after.
+     *
+     * @return true if any cluster was changed
+     */
+    public boolean maintain() {
+        flushStats();
+        CentroidMatrix current = loadCentroids(ii, dimension(), tx, -1);
+        if (current.size() == 0)
+            return false;
+
+        long[] sizes = new long[current.size()];
+        long total = 0;
+        int largest = -1, smallest = -1;
+        for (int i = 0; i < sizes.length; ++i) {
+            int fileId = current.id(i);
+            sizes[i] = clusterSize(fileId);
+            total += sizes[i];
+            if (segment(fileId) != null)
+                continue;
+            if (largest < 0 || sizes[i] > sizes[largest])
+                largest = i;
+            if (smallest < 0 || sizes[i] < sizes[smallest])
+                smallest = i;
+        }
+        double mean = (double) total / sizes.length;
+
+        Set<Integer> maintained = new HashSet<>();
+        boolean changed = false;
+        if (largest >= 0 && sizes[largest] > SPLIT_FACTOR * mean) {
+            maintained.add(current.id(largest));
+            changed |= splitCluster(current, current.id(largest));
+        }
+        if (smallest >= 0 && smallest != largest && current.size() > 1 && sizes[smallest] < MERGE_FACTOR * mean) {
+            maintained.add(current.id(smallest));
+            changed |= mergeCluster(current.id(smallest));
+        }
+
+        for (int fileId : driftedClusters())
+            if (!maintained.contains(fileId) && segment(fileId) == null)
+                changed |= recenterCluster(fileId);
+
+        if (changed)
+            invalidateCentroids(ii.indexName(), tx);
+        return changed;
+    }
+
+    /*  writes the radii, errors and sizes the inserts kept in memory to the
+        centroid table in one pass; they are dropped from memory once the
+        transaction commits */
+    private void flushStats() {
+        IVFClusterStats stats = stats();
+        Map<Integer, double[]> flushed = stats.pending();
+        if (flushed.isEmpty())
+            return;
+        RecordFile rf = new TableInfo(centroidTableName(ii), centroidsSchema(dimension())).open(tx, true);
+        rf.beforeFirst();
+        while (rf.next()) {
+            double[] s = flushed.get((int) rf.getVal(SCHEMA_CENTROID_NUM).asJavaVal());
+            if (s == null)
+                continue;
+            if ((double) rf.getVal(SCHEMA_RADIUS).asJavaVal() < s[2])
+                rf.setVal(SCHEMA_RADIUS, new DoubleConstant(s[2]));
+            if (s[1] > 0) {
+                rf.setVal(SCHEMA_ERROR, new DoubleConstant((double) rf.getVal(SCHEMA_ERROR).asJavaVal() + s[0]));
+                rf.setVal(SCHEMA_SIZE, new BigIntConstant((long) rf.getVal(SCHEMA_SIZE).asJavaVal() + (long) s[1]));
             }
         }
+        rf.close();
+        tx.addLifecycleListener(new TransactionLifecycleListener() {
+            @Override
+            public void onTxCommit(Transaction tx) {
+                stats.flushed(flushed);
+            }
+
+            @Override
+            public void onTxRollback(Transaction tx) {
+            }
+
+            @Override
+            public void onTxEndStatement(Transaction tx) {
+            }
+        });
+    }
+
+    /*  returns the clusters whose mean squared error, as kept in the centroid
+        table, grew by more than ERROR_GROWTH since their centroids were fitted */
+    private List<Integer> driftedClusters() {
+        List<Integer> drifted = new ArrayList<>();
+        RecordFile rf = new TableInfo(centroidTableName(ii), centroidsSchema(dimension())).open(tx, true);
+        rf.beforeFirst();
+        while (rf.next()) {
+            long size = (long) rf.getVal(SCHEMA_SIZE).asJavaVal();
+            double error = (double) rf.getVal(SCHEMA_ERROR).asJavaVal();
+            double fitError = (double) rf.getVal(SCHEMA_FIT_ERROR).asJavaVal();
+            if (size > 0 && error / size > (1 + ERROR_GROWTH) * fitError)
+                drifted.add((int) rf.getVal(SCHEMA_CENTROID_NUM).asJavaVal());
+        }
+        rf.close();
+        return drifted;
+    }
+
+    /*  estimates the number of entries of a cluster from the size of its
+        data file, without scanning it */
+    private long clusterSize(int fileId) {
+        int slotsPerBlock = Buffer.BUFFER_SIZE / RecordPage.slotSize(dataSchema());
+        IVFSegment seg = segment(fileId);
+        long blocks = VanillaDb.fileMgr().size(new TableInfo(dataTableName(fileId), dataSchema()).fileName());
+        return Math.max(0, blocks - 1) * slotsPerBlock + (seg == null ? 0 : seg.size());
+    }
+
+    /*  splits a cluster in two by 2-means, the entries of the second half
+        moving to a new cluster, whose id is allocated in the index catalog */
+    private boolean splitCluster(CentroidMatrix current, int fileId) {
+        float[][] vecs = clusterVectors(fileId);
+        if (vecs.length < 2)
+            return false;
+        Kmeans kmeans = new Kmeans(2, vecs);
+        float[][] halves = kmeans.train(TRAIN_ITERATIONS);
+        int[] assignment = kmeans.assignments();
 
-        String tblname = "idx_items_data" + listCentroids.get(idx).fileId;
-        TableInfo ti = new TableInfo(tblname, dataSchema());
+        int floor = 0;
+        for (int i = 0; i < current.size(); ++i)
+            floor = Math.max(floor, current.id(i) + 1);
+        int newId = VanillaDb.catalogMgr().nextClusterId(ii.indexName(), floor, tx);
+        RecordFile.formatFileHeader(new TableInfo(dataTableName(newId), dataSchema()).fileName(), tx);
+        int[] targets = new int[vecs.length];
+        for (int i = 0; i < vecs.length; ++i)
+            targets[i] = assignment[i] == 0 ? fileId : newId;
+        moveEntries(fileId, targets);
+
+        List<float[]> first = new ArrayList<>(), second = new ArrayList<>();
+        for (int i = 0; i < vecs.length; ++i)
+            (assignment[i] == 0 ? first : second).add(vecs[i]);
+        putCentroid(fileId, halves[0], first.toArray(new float[0][]));
+        putCentroid(newId, halves[1], second.toArray(new float[0][]));
+        return true;
+    }
+
+    /*  removes a cluster, moving each of its entries to its nearest other cluster */
+    private boolean mergeCluster(int fileId) {
+        CentroidMatrix rest = loadCentroids(ii, dimension(), tx, -1).without(fileId);
+        float[][] vecs = clusterVectors(fileId);
+        int dim = dimension();
+        float[] matrix = new float[vecs.length * dim];
+        for (int i = 0; i < vecs.length; ++i)
+            System.arraycopy(vecs[i], 0, matrix, i * dim, dim);
+        int[] targets = new int[vecs.length];
+        if (vecs.length > 0)
+            rest.assign(matrix, 0, vecs.length, targets);
+        moveEntries(fileId, targets);
+
+        // Cluster Id -> the entries it received
+        Map<Integer, List<float[]>> received = new HashMap<>();
+        for (int i = 0; i < vecs.length; ++i)
+            received.computeIfAbsent(targets[i], id -> new ArrayList<>()).add(vecs[i]);
+        for (Map.Entry<Integer, List<float[]>> e : received.entrySet()) {
+            float[] centroid = rest.vector(rest.row(e.getKey()));
+            float[][] entries = e.getValue().toArray(new float[0][]);
+            addEntries(e.getKey(), radius(centroid, entries), squaredError(centroid, entries), entries.length);
+        }
+
+        putCentroid(fileId, null, null);
+        return true;
+    }
+
+    /*  moves the centroid of a cluster to the mean of its entries */
+    private boolean recenterCluster(int fileId) {
+        float[][] vecs = clusterVectors(fileId);
+        if (vecs.length == 0)
+            return false;
+        int dim = dimension();
+        double[] sum = new double[dim];
+        for (float[] v : vecs)
+            for (int d = 0; d < dim; ++d)
+                sum[d] += v[d];
+        float[] mean = new float[dim];
+        for (int d = 0; d < dim; ++d)
+            mean[d] = (float) (sum[d] / vecs.length);
+        putCentroid(fileId, mean, vecs);
+        return true;
+    }
+
+    /*  reads the vectors of the data file of a cluster, in file order; the
+        deleted entries are purged first, so they neither move nor skew the
+        centroids */
+    private float[][] clusterVectors(int fileId) {
+        compactCluster(fileId);
+        List<float[]> vecs = new ArrayList<>();
+        RecordFile rf = new TableInfo(dataTableName(fileId), dataSchema()).open(tx, true);
+        rf.beforeFirst();
+        while (rf.next()) {
+            float[] vec = new float[dimension()];
+            rf.getVector(SCHEMA_KEY, vec, 0);
+            vecs.add(vec);
+        }
+        rf.close();
+        return vecs.toArray(new float[0][]);
+    }
+
+    /*  moves the i-th entry of the data file of a cluster, in file order,
+        to the cluster targets[i], unless that is the cluster itself */
+    private void moveEntries(int fileId, int[] targets) {
+        Map<Integer, RecordFile> dsts = new HashMap<>();
+        float[] vec = new float[dimension()];
+        RecordFile src = new TableInfo(dataTableName(fileId), dataSchema()).open(tx, true);
+        src.beforeFirst();
+        for (int i = 0; src.next(); ++i) {
+            if (targets[i] == fileId)
+                continue;
+            src.getVector(SCHEMA_KEY, vec, 0);
+            Constant blockNum = src.getVal(SCHEMA_RID_BLOCK), recordId = src.getVal(SCHEMA_RID_ID);
+            src.delete();
+
+            RecordFile dst = dsts.computeIfAbsent(targets[i],
+                    id -> new TableInfo(dataTableName(id), dataSchema()).open(tx, true));
+            dst.insert();
+            dst.setVal(SCHEMA_KEY, VectorConstant.wrap(vec.clone()));
+            dst.setVal(SCHEMA_RID_BLOCK, blockNum);
+            dst.setVal(SCHEMA_RID_ID, recordId);
+        }
+        src.close();
+        dsts.values().forEach(RecordFile::close);
+    }
+
+    /*  sets the centroid of a cluster in the centroid table, fitted to the
+        given entries of the cluster, adding the cluster if it is new, or
+        removes the cluster if the centroid is null */
+    private void putCentroid(int fileId, float[] centroid, float[][] vecs) {
+        RecordFile rf = new TableInfo(centroidTableName(ii), centroidsSchema(dimension())).open(tx, true);
+        rf.beforeFirst();
+        boolean found = false;
+        while (!found && rf.next())
+            found = (int) rf.getVal(SCHEMA_CENTROID_NUM).asJavaVal() == fileId;
+        if (centroid == null) {
+            if (found)
+                rf.delete();
+        } else {
+            if (!found) {
+                rf.insert();
+                rf.setVal(SCHEMA_CENTROID_NUM, new IntegerConstant(fileId));
+            }
+            double error = squaredError(centroid, vecs);
+            rf.setVal(SCHEMA_KEY, VectorConstant.wrap(centroid));
+            rf.setVal(SCHEMA_RADIUS, new DoubleConstant(radius(centroid, vecs)));
+            rf.setVal(SCHEMA_ERROR, new DoubleConstant(error));
+            rf.setVal(SCHEMA_SIZE, new BigIntConstant(vecs.length));
+            rf.setVal(SCHEMA_FIT_ERROR, new DoubleConstant(vecs.length == 0 ? 0 : error / vecs.length));
+        }
+        rf.close();
+    }
+
+    /*  the segment files of a cluster are named after its data file and
+        numbered by version, the current version being kept in the segment
+        table of the index */
+    private String segmentFileName(int fileId) {
+        return dataTableName(fileId) + ".seg";
+    }
+
+    private String segmentTableName() {
+        return ii.indexName() + "_segment";
+    }
+
+    /*  returns the mapped segment of the cluster, or null if it is not
+        sealed; the transaction sees the segments it wrote itself */
+    private IVFSegment segment(int fileId) {
+        String baseName = segmentFileName(fileId);
+        Map<String, long[]> pending = pendingSegments.get(tx.getTransactionNumber());
+        long[] written = pending == null ? null : pending.get(baseName);
+        if (written != null)
+            return mapSegment(baseName + "." + written[1]);
+
+        while (true) {
+            long version = segmentVersion(fileId);
+            if (version == 0)
+                return null;
+            IVFSegment seg = mapSegment(baseName + "." + version);
+            // the segment was replaced, and its file deleted, since the version was read
+            if (seg != null || segmentVersion(fileId) == version)
+                return seg;
+        }
+    }
+
+    private static IVFSegment mapSegment(String fileName) {
+        IVFSegment seg = segments.computeIfAbsent(fileName, name -> Optional.ofNullable(
+                IVFSegment.open(VanillaDb.fileMgr().dbFile(name)))).orElse(null);
+        if (seg == null)
+            segments.remove(fileName);
+        return seg;
+    }
+
+    /*  the version of the committed segment of the cluster, 0 if it is not
+        sealed; read from the segment table, which is locked by a transaction
+        writing a new version until it ends, if not cached */
+    private long segmentVersion(int fileId) {
+        String baseName = segmentFileName(fileId);
+        Long cached = segmentVersions.get(baseName);
+        if (cached != null)
+            return cached;
+
+        long version = 0;
+        RecordFile rf = new TableInfo(segmentTableName(), segmentSchema()).open(tx, true);
+        if (rf.fileSize() > 0) {
+            rf.beforeFirst();
+            while (rf.next())
+                if ((int) rf.getVal(SCHEMA_CENTROID_NUM).asJavaVal() == fileId) {
+                    version = (long) rf.getVal(SCHEMA_VERSION).asJavaVal();
+                    break;
+                }
+        }
+        rf.close();
+        // the versions only grow, so a load racing with a commit keeps the newer one
+        return segmentVersions.merge(baseName, version, Math::max);
+    }
+
+    /*  writes a new version of the segment of the cluster, which replaces the
+        current one once the transaction commits. The file is written and
+        forced before the version is switched in the segment table, so the
+        switch is logged and recovered along with the other changes of the
+        transaction: if the server crashes, the segment is in place exactly
+        when the entries it took from the data file are gone. The version is
+        taken from the table while holding its lock, so a file of a version
+        never replaces one in use; a file left by a transaction that rolled
+        back is replaced by the next writer of that version. */
+    private void writeSegment(int fileId, List<float[]> vecs, List<Long> blocks, List<Integer> ids) {
+        String baseName = segmentFileName(fileId);
+        long[] versions = nextSegmentVersion(fileId);
+        String fileName = baseName + "." + versions[1];
+        String tmpName = FileMgr.TMP_FILE_NAME_PREFIX + fileName + "." + pendingSegmentNum.incrementAndGet();
+        IVFSegment.write(VanillaDb.fileMgr().dbFile(tmpName), vecs,
+                blocks.stream().mapToLong(Long::longValue).toArray(),
+                ids.stream().mapToInt(Integer::intValue).toArray());
+        IVFSegment.install(VanillaDb.fileMgr().dbFile(tmpName), VanillaDb.fileMgr().dbFile(fileName));
+        segments.remove(fileName);
+        // the readers of the version block on the lock of the table until the transaction ends
+        segmentVersions.remove(baseName);
+
+        long txNum = tx.getTransactionNumber();
+        Map<String, long[]> pending = pendingSegments.get(txNum);
+        if (pending == null) {
+            pending = new HashMap<>();
+            pendingSegments.put(txNum, pending);
+            tx.addLifecycleListener(new TransactionLifecycleListener() {
+                @Override
+                public void onTxCommit(Transaction tx) {
+                    for (Map.Entry<String, long[]> e : pendingSegments.remove(txNum).entrySet()) {
+                        segmentVersions.merge(e.getKey(), e.getValue()[1], Math::max);
+                        if (e.getValue()[0] > 0) {
+                            String replaced = e.getKey() + "." + e.getValue()[0];
+                            VanillaDb.fileMgr().dbFile(replaced).delete();
+                            segments.remove(replaced);
+                        }
+                    }
+                }
+
+                @Override
+                public void onTxRollback(Transaction tx) {
+                    // the files are left to the next writers of their versions
+                    for (Map.Entry<String, long[]> e : pendingSegments.remove(txNum).entrySet())
+                        segments.remove(e.getKey() + "." + e.getValue()[1]);
+                }
+
+                @Override
+                public void onTxEndStatement(Transaction tx) {
+                }
+            });
+        }
+        // a segment rewritten by the same transaction replaces its previous version
+        long[] previous = pending.get(baseName);
+        if (previous != null) {
+            String previousName = baseName + "." + previous[1];
+            VanillaDb.fileMgr().dbFile(previousName).delete();
+            segments.remove(previousName);
+            versions[0] = previous[0];
+        }
+        pending.put(baseName, versions);
+    }
+
+    /*  bumps the version of the segment of the cluster in the segment table,
+        returning {the version before, the version after} */
+    private long[] nextSegmentVersion(int fileId) {
+        TableInfo ti = new TableInfo(segmentTableName(), segmentSchema());
+        RecordFile.formatFileHeader(ti.fileName(), tx);
         RecordFile rf = ti.open(tx, true);
+        rf.beforeFirst();
+        boolean found = false;
+        while (!found && rf.next())
+            found = (int) rf.getVal(SCHEMA_CENTROID_NUM).asJavaVal() == fileId;
+        long current = 0;
+        if (found)
+            current = (long) rf.getVal(SCHEMA_VERSION).asJavaVal();
+        else {
+            rf.insert();
+            rf.setVal(SCHEMA_CENTROID_NUM, new IntegerConstant(fileId));
+        }
+        rf.setVal(SCHEMA_VERSION, new BigIntConstant(current + 1));
+        rf.close();
+        return new long[] { current, current + 1 };
+    }
+
+    /**
+     * Seals a cluster by moving the entries of its data file into an
+     * immutable, memory-mapped segment. Entries inserted afterwards go to the
+     * (now empty) data file again and can be sealed by a later call, which
+     * rewrites the segment with both parts. The new segment is written to the
+     * disk before the transaction commits, and replaces the current one by
+     * the commit; if the transaction rolls back, or the server crashes before
+     * the commit, the entries stay in the data file. The caller should run
+     * this in a transaction of its own and commit it right after.
+     *
+     * @param fileId
+     *            the id of the cluster
+     */
+    public void sealCluster(int fileId) {
+        // the deleted entries are not carried into the new segment
+        compactCluster(fileId);
+        List<float[]> vecs = new ArrayList<>();
+        List<Long> blocks = new ArrayList<>();
+        List<Integer> ids = new ArrayList<>();
+
+        IVFSegment old = segment(fileId);
+        if (old != null)
+            for (int i = 0; i < old.size(); ++i) {
+                vecs.add(old.vector(i));
+                blocks.add(old.block(i));
+                ids.add(old.id(i));
+            }
 
+        var ti = new TableInfo(dataTableName(fileId), dataSchema());
+        RecordFile rf = ti.open(tx, true);
+        rf.beforeFirst();
+        while (rf.next()) {
+            vecs.add(((VectorConstant) rf.getVal(SCHEMA_KEY)).copy());
+            blocks.add((long) rf.getVal(SCHEMA_RID_BLOCK).asJavaVal());
+            ids.add((int) rf.getVal(SCHEMA_RID_ID).asJavaVal());
+        }
+
+        writeSegment(fileId, vecs, blocks, ids);
+
+        rf.beforeFirst();
+        while (rf.next())
+            rf.delete();
+        rf.close();
+    }
+
+    /**
+     * Compacts every cluster holding more than {@link #COMPACT_RATIO} of
+     * deleted entries. The caller should run this in a transaction of its own
+     * and commit it right after.
+     *
+     * @return the number of purged entries
+     * @see #compactCluster(int)
+     */
+    public int compact() {
+        IVFTombstones tombs = tombstones();
+        if (tombs.isEmpty())
+            return 0;
+        CentroidMatrix current = loadCentroids(ii, dimension(), tx, -1);
+        int purged = 0;
+        for (int i = 0; i < current.size(); ++i) {
+            int fileId = current.id(i);
+            int deleted = tombs.count(fileId);
+            if (deleted > 0 && deleted >= COMPACT_RATIO * clusterSize(fileId))
+                purged += compactCluster(fileId);
+        }
+        return purged;
+    }
+
+    /**
+     * Purges the deleted entries of a cluster, rewriting its sealed segment
+     * without them and deleting them from its data file. The tombstones of
+     * the purged entries are then removed, and the other tombstones
+     * attributed to the cluster, whose entries were not found in it, become
+     * strays. Only committed tombstones are purged, since the tombstone table
+     * stays locked until the transaction ends; the cached tombstones are
+     * updated once it commits.
+     *
+     * <p>
+     * A rewritten segment replaces the current one once the transaction
+     * commits, and is dropped if it rolls back.
+     * </p>
+     *
+     * @param fileId
+     *            the id of the cluster
+     * @return the number of purged entries
+     */
+    public int compactCluster(int fileId) {
+        // the cached tombstones hold every committed one
+        if (tombstones().isEmpty())
+            return 0;
+        TableInfo tti = new TableInfo(tombstoneTableName(ii), tombstoneSchema());
+        RecordFile.formatFileHeader(tti.fileName(), tx);
+        IVFTombstones committed = loadTombstones();
+        if (committed.isEmpty())
+            return 0;
+
+        int dim = dimension();
+        // Packed Rid -> the fingerprints of the purged entries
+        Map<Long, Set<Integer>> purged = new HashMap<>();
+        int numPurged = 0;
+
+        IVFSegment seg = segment(fileId);
+        if (seg != null) {
+            List<float[]> vecs = new ArrayList<>();
+            List<Long> blocks = new ArrayList<>();
+            List<Integer> ids = new ArrayList<>();
+            for (int i = 0; i < seg.size(); ++i) {
+                long rid = TopKHeap.packRid(seg.block(i), seg.id(i));
+                float[] vec = seg.vector(i);
+                if (committed.containsRid(rid) && committed.contains(rid, vec, 0, dim)) {
+                    purged.computeIfAbsent(rid, r -> new HashSet<>()).add(IVFTombstones.fingerprint(vec, 0, dim));
+                    ++numPurged;
+                    continue;
+                }
+                vecs.add(vec);
+                blocks.add(seg.block(i));
+                ids.add(seg.id(i));
+            }
+            if (numPurged > 0)
+                writeSegment(fileId, vecs, blocks, ids);
+        }
+
+        float[] vec = new float[dim];
+        RecordFile rf = new TableInfo(dataTableName(fileId), dataSchema()).open(tx, true);
         rf.beforeFirst();
         while (rf.next()) {
-            VectorConstant vec = (VectorConstant) rf.getVal(SCHEMA_KEY);
-            long blockNum = (long) ((BigIntConstant) rf.getVal(SCHEMA_RID_BLOCK)).asJavaVal();
-            int recordId = (int) ((IntegerConstant) rf.getVal(SCHEMA_RID_ID)).asJavaVal();
-            if (vec.equals(vectorKey) && blockNum == dataRecordId.block().number() && recordId == dataRecordId.id()) {
+            long rid = TopKHeap.packRid((long) rf.getVal(SCHEMA_RID_BLOCK).asJavaVal(),
+                    (int) rf.getVal(SCHEMA_RID_ID).asJavaVal());
+            if (!committed.containsRid(rid))
+                continue;
+            rf.getVector(SCHEMA_KEY, vec, 0);
+            if (committed.contains(rid, vec, 0, dim)) {
+                purged.computeIfAbsent(rid, r -> new HashSet<>()).add(IVFTombstones.fingerprint(vec, 0, dim));
                 rf.delete();
-                break;
+                ++numPurged;
             }
         }
         rf.close();
+
+        rf = tti.open(tx, true);
+        rf.beforeFirst();
+        while (rf.next()) {
+            long rid = TopKHeap.packRid((long) rf.getVal(SCHEMA_RID_BLOCK).asJavaVal(),
+                    (int) rf.getVal(SCHEMA_RID_ID).asJavaVal());
+            Set<Integer> fps = purged.get(rid);
+            if (fps != null && fps.contains((int) rf.getVal(SCHEMA_FINGERPRINT).asJavaVal()))
+                rf.delete();
+            else if ((int) rf.getVal(SCHEMA_CENTROID_NUM).asJavaVal() == fileId)
+                rf.setVal(SCHEMA_CENTROID_NUM, new IntegerConstant(IVFTombstones.STRAY));
+        }
+        rf.close();
+
+        IVFTombstones tombs = tombstones();
+        tx.addLifecycleListener(new TransactionLifecycleListener() {
+            @Override
+            public void onTxCommit(Transaction tx) {
+                for (Map.Entry<Long, Set<Integer>> e : purged.entrySet())
+                    for (int fp : e.getValue())
+                        tombs.remove(e.getKey(), fp);
+                tombs.detach(fileId);
+            }
+
+            @Override
+            public void onTxRollback(Transaction tx) {
+            }
+
+            @Override
+            public void onTxEndStatement(Transaction tx) {
+            }
+        });
+        return numPurged;
+    }
+
+    /**
+     * Seals every cluster whose data file holds at least {@link #SEAL_SIZE}
+     * entries. The caller should run this in a transaction of its own and
+     * commit it right after.
+     *
+     * @return the number of sealed clusters
+     * @see #sealCluster(int)
+     */
+    public int seal() {
+        if (SEAL_SIZE <= 0)
+            return 0;
+        CentroidMatrix current = loadCentroids(ii, dimension(), tx, -1);
+        int sealed = 0;
+        for (int i = 0; i < current.size(); ++i) {
+            int fileId = current.id(i);
+            // the slots freed by a previous seal stay in the file, so the entries are counted
+            RecordFile rf = new TableInfo(dataTableName(fileId), dataSchema()).open(tx, true);
+            rf.beforeFirst();
+            int entries = 0;
+            while (entries < SEAL_SIZE && rf.next())
+                ++entries;
+            rf.close();
+            if (entries >= SEAL_SIZE) {
+                sealCluster(fileId);
+                ++sealed;
+            }
+        }
+        return sealed;
+    }
+
+    /**
+     * Seals every cluster of the index.
+     *
+     * @see #sealCluster(int)
+     */
+    public void sealClusters() {
+        preLoadToMemory();
+        for (int i = 0; i < centroids.size(); ++i)
+            sealCluster(centroids.id(i));
     }
 
     @Override
@@ -266,23 +2144,52 @@ public class IVF_FLATIndex extends Index {
             dataFile.close();
             dataFile = null;
         }
-        pqCentroids = null;
+        if (prefetching != null) {
+            prefetching.cancel(false);
+            prefetching = null;
+        }
+        probes = null;
+        probeResults = null;
+        segment = null;
+        dead = null;
+        rangeRadius = -1;
         cur_k = -1;
         isBeforeFirsted = false;
     }
 
-    private Schema centroidsSchema() {
+    static Schema centroidsSchema(int dim) {
         Schema schema = new Schema();
-        schema.addField(SCHEMA_KEY, org.vanilladb.core.sql.Type.VECTOR(128));
+        schema.addField(SCHEMA_KEY, org.vanilladb.core.sql.Type.VECTOR(dim));
         schema.addField(SCHEMA_CENTROID_NUM, org.vanilladb.core.sql.Type.INTEGER);
+        schema.addField(SCHEMA_RADIUS, org.vanilladb.core.sql.Type.DOUBLE);
+        schema.addField(SCHEMA_ERROR, org.vanilladb.core.sql.Type.DOUBLE);
+        schema.addField(SCHEMA_SIZE, org.vanilladb.core.sql.Type.BIGINT);
+        schema.addField(SCHEMA_FIT_ERROR, org.vanilladb.core.sql.Type.DOUBLE);
         return schema;
     }
 
     private Schema dataSchema() {
         Schema schema = new Schema();
-        schema.addField(SCHEMA_KEY, org.vanilladb.core.sql.Type.VECTOR(128));
+        schema.addField(SCHEMA_KEY, halfPrecision ? org.vanilladb.core.sql.Type.VECTOR16(dimension())
+                : org.vanilladb.core.sql.Type.VECTOR(dimension()));
+        schema.addField(SCHEMA_RID_BLOCK, org.vanilladb.core.sql.Type.BIGINT);
+        schema.addField(SCHEMA_RID_ID, org.vanilladb.core.sql.Type.INTEGER);
+        return schema;
+    }
+
+    private static Schema segmentSchema() {
+        Schema schema = new Schema();
+        schema.addField(SCHEMA_CENTROID_NUM, org.vanilladb.core.sql.Type.INTEGER);
+        schema.addField(SCHEMA_VERSION, org.vanilladb.core.sql.Type.BIGINT);
+        return schema;
+    }
+
+    private static Schema tombstoneSchema() {
+        Schema schema = new Schema();
+        schema.addField(SCHEMA_CENTROID_NUM, org.vanilladb.core.sql.Type.INTEGER);
         schema.addField(SCHEMA_RID_BLOCK, org.vanilladb.core.sql.Type.BIGINT);
         schema.addField(SCHEMA_RID_ID, org.vanilladb.core.sql.Type.INTEGER);
+        schema.addField(SCHEMA_FINGERPRINT, org.vanilladb.core.sql.Type.INTEGER);
         return schema;
     }
 
@@ -298,4 +2205,4 @@ public class IVF_FLATIndex extends Index {
         throw new UnsupportedOperationException("Unimplemented method 'insert'");
     }
 
-}
\ No newline at end of file
+}
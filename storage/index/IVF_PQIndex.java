@@ -0,0 +1,495 @@
+package org.vanilladb.core.storage.index;
+
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.BigIntConstant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Kmeans;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.sql.VecRecPair;
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.sql.distfn.EuclideanFn;
+import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.record.RecordFile;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.record.RecordPage;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.util.CoreProperties;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An IVF index whose cluster files hold product-quantized codes instead of
+ * full vectors. Each vector is split into {@link #NUM_SUBSPACES} sub-vectors
+ * and every sub-vector is replaced by the one-byte id of its nearest codeword,
+ * so a VECTOR(128) entry shrinks from 512 bytes to 16. The coarse quantizer is
+ * loaded like that of {@link IVF_FLATIndex}, from the centroid table named
+ * after this index.
+ *
+ * <p>
+ * For Euclidean queries the distances are computed by asymmetric distance
+ * computation (ADC): the distances between the query sub-vectors and all
+ * codewords are tabulated once in {@link #beforeFirst(DistanceFn)}, and the
+ * distance to an entry is the sum of {@link #NUM_SUBSPACES} table lookups. If
+ * {@link #RERANK} is positive, the best candidates by ADC distance are
+ * re-ranked with the exact vectors read from the base table.
+ * </p>
+ */
+public class IVF_PQIndex extends Index {
+    public static final String SCHEMA_CODE = "pq_code", SCHEMA_RID_BLOCK = "rid_block",
+                             SCHEMA_RID_ID = "rid_id";
+    private static final String SCHEMA_SUBSPACE = "subspace", SCHEMA_CODEWORD = "codeword",
+                             SCHEMA_CODEWORD_ID = "codeword_id";
+    private static final int NUM_CODEWORDS = 256;
+
+    // Index Name -> codebook[subspace][codeword][dimension]
+    private static final Map<String, float[][][]> codebooks = new ConcurrentHashMap<>();
+
+    public static final int NUM_SUBSPACES;
+    public static final int NUM_PROBES;
+    public static final int RERANK;
+    public static final int TRAIN_SIZE;
+    public static final int TRAIN_ITERATIONS;
+
+    static {
+        NUM_SUBSPACES = CoreProperties.getLoader().getPropertyAsInteger(
+                IVF_PQIndex.class.getName() + ".NUM_SUBSPACES", 16);
+        NUM_PROBES = CoreProperties.getLoader().getPropertyAsInteger(
+                IVF_PQIndex.class.getName() + ".NUM_PROBES", 1);
+        RERANK = CoreProperties.getLoader().getPropertyAsInteger(
+                IVF_PQIndex.class.getName() + ".RERANK", 0);
+        TRAIN_SIZE = CoreProperties.getLoader().getPropertyAsInteger(
+                IVF_PQIndex.class.getName() + ".TRAIN_SIZE", 20000);
+        TRAIN_ITERATIONS = CoreProperties.getLoader().getPropertyAsInteger(
+                IVF_PQIndex.class.getName() + ".TRAIN_ITERATIONS", 10);
+    }
+
+    private int dimension, subDimension;
+    private float[][][] codebook;
+
+    private int numProbes = NUM_PROBES, numRerank = RERANK;
+    private int[] probes;
+    private int cur_k;
+    private RecordFile dataFile;
+    private float[][] adcTable;
+    private DistanceFn distFn;
+    private List<VecRecPair> reranked;
+    private int cursor;
+    private boolean isBeforeFirsted;
+
+    public IVF_PQIndex(IndexInfo ii, SearchKeyType keyType, Transaction tx) {
+        super(ii, keyType, tx);
+        this.dimension = keyType.get(0).getArgument();
+        if (dimension % NUM_SUBSPACES != 0)
+            throw new IllegalArgumentException("vector dimension " + dimension
+                    + " is not divisible by " + NUM_SUBSPACES + " subspaces");
+        this.subDimension = dimension / NUM_SUBSPACES;
+        this.cur_k = -1;
+        this.isBeforeFirsted = false;
+    }
+
+    public static long searchCost(SearchKeyType keyType, long totRecs, long matchRecs) {
+        int rpb = Buffer.BUFFER_SIZE / RecordPage.slotSize(dataSchema());
+        return NUM_PROBES * ((totRecs / rpb) / IVF_FLATIndex.NUM_CLUSTERS);
+    }
+
+    private static int numCodeWords() {
+        return (NUM_SUBSPACES + Long.BYTES - 1) / Long.BYTES;
+    }
+
+    private static String codeFieldName(int index) {
+        return SCHEMA_CODE + index;
+    }
+
+    private static Schema dataSchema() {
+        Schema schema = new Schema();
+        for (int i = 0; i < numCodeWords(); i++)
+            schema.addField(codeFieldName(i), Type.BIGINT);
+        schema.addField(SCHEMA_RID_BLOCK, Type.BIGINT);
+        schema.addField(SCHEMA_RID_ID, Type.INTEGER);
+        return schema;
+    }
+
+    private Schema codebookSchema() {
+        Schema schema = new Schema();
+        schema.addField(SCHEMA_SUBSPACE, Type.INTEGER);
+        schema.addField(SCHEMA_CODEWORD_ID, Type.INTEGER);
+        schema.addField(SCHEMA_CODEWORD, Type.VECTOR(subDimension));
+        return schema;
+    }
+
+    private String clusterTableName(int fileId) {
+        return ii.indexName() + "_pq" + fileId;
+    }
+
+    @Override
+    public void preLoadToMemory() {
+        IVF_FLATIndex.centroids(ii, dimension, tx);
+        codebook = codebooks.get(ii.indexName());
+        if (codebook != null) return;
+
+        synchronized (codebooks) {
+            codebook = codebooks.get(ii.indexName());
+            if (codebook != null) return;
+
+            codebook = loadCodebook();
+            if (codebook == null) {
+                codebook = trainCodebook(sampleBaseTable());
+                saveCodebook(codebook);
+            }
+            codebooks.put(ii.indexName(), codebook);
+        }
+    }
+
+    @Override
+    public void beforeFirst(DistanceFn distFn) {
+        close();
+        preLoadToMemory();
+        this.distFn = distFn;
+
+        // rank the clusters by the distance between the query vector and the centroids
+        probes = IVF_FLATIndex.centroids(ii, dimension, tx).nearest(distFn, numProbes);
+
+        // the ADC table is exact for the (squared) Euclidean distance only
+        if (distFn instanceof EuclideanFn)
+            adcTable = computeAdcTable(distFn.queryVector().asJavaVal());
+
+        isBeforeFirsted = true;
+        if (numRerank > 0)
+            rerank();
+    }
+
+    /**
+     * Probes nprobe clusters instead of {@link #NUM_PROBES} if given, and
+     * re-ranks at least k candidates when re-ranking is enabled.
+     */
+    @Override
+    public void beforeFirst(DistanceFn distFn, int k, int nprobe) {
+        numProbes = nprobe > 0 ? nprobe : NUM_PROBES;
+        numRerank = RERANK > 0 ? Math.max(RERANK, k) : 0;
+        beforeFirst(distFn);
+    }
+
+    @Override
+    public void beforeFirst(SearchRange searchRange) {
+        throw new UnsupportedOperationException("IVF-PQ index supports nearest neighbor search only");
+    }
+
+    @Override
+    public boolean next() {
+        if (!isBeforeFirsted)
+            throw new IllegalStateException("You must call beforeFirst() before iterating index '"
+                    + ii.indexName() + "'");
+
+        if (reranked != null)
+            return ++cursor < reranked.size();
+
+        while (dataFile == null || !dataFile.next()) {
+            // End case: last probed cluster is iterated
+            if (cur_k + 1 == probes.length)
+                return false;
+            if (dataFile != null)
+                dataFile.close();
+            ++cur_k;
+            dataFile = openCluster(probes[cur_k]);
+            dataFile.beforeFirst();
+        }
+        return true;
+    }
+
+    @Override
+    public RecordId getDataRecordId() {
+        if (reranked != null)
+            return reranked.get(cursor).getRid();
+        if (dataFile == null)
+            throw new IllegalStateException("No data file is currently being iterated. Call next() first.");
+        return currentDataRecordId();
+    }
+
+    /**
+     * Returns the reconstructed vector of the current entry along with its ADC
+     * distance, or the exact vector if the entries are re-ranked.
+     */
+    @Override
+    public VecRecPair getDataVecRecPair() {
+        if (reranked != null)
+            return reranked.get(cursor);
+        if (dataFile == null)
+            throw new IllegalStateException("No data file is currently being iterated. Call next() first.");
+
+        byte[] codes = currentCodes();
+        VectorConstant vec = reconstruct(codes);
+        if (adcTable != null)
+            return new VecRecPair(vec, currentDataRecordId(), adcDistance(codes));
+        return new VecRecPair(vec, currentDataRecordId());
+    }
+
+    @Override
+    public void insert(VectorConstant key, RecordId dataRecordId) {
+        preLoadToMemory();
+
+        RecordFile rf = openCluster(nearestCluster(key));
+        long[] words = packCodes(encode(key.asJavaVal()));
+        rf.insert();
+        for (int i = 0; i < words.length; ++i)
+            rf.setVal(codeFieldName(i), new BigIntConstant(words[i]));
+        rf.setVal(SCHEMA_RID_BLOCK, new BigIntConstant(dataRecordId.block().number()));
+        rf.setVal(SCHEMA_RID_ID, new IntegerConstant(dataRecordId.id()));
+        rf.close();
+    }
+
+    @Override
+    public void insert(SearchKey key, RecordId dataRecordId, boolean doLogicalLogging) {
+        insert((VectorConstant) key.get(0), dataRecordId);
+    }
+
+    @Override
+    public void delete(SearchKey key, RecordId dataRecordId, boolean doLogicalLogging) {
+        if (!(key.get(0) instanceof VectorConstant))
+            throw new IllegalArgumentException("SearchKey must be a VectorConstant");
+        preLoadToMemory();
+
+        RecordFile rf = openCluster(nearestCluster((VectorConstant) key.get(0)));
+        rf.beforeFirst();
+        while (rf.next()) {
+            long blockNum = (long) rf.getVal(SCHEMA_RID_BLOCK).asJavaVal();
+            int recordId = (int) rf.getVal(SCHEMA_RID_ID).asJavaVal();
+            if (blockNum == dataRecordId.block().number() && recordId == dataRecordId.id()) {
+                rf.delete();
+                break;
+            }
+        }
+        rf.close();
+    }
+
+    @Override
+    public void close() {
+        if (dataFile != null) {
+            dataFile.close();
+            dataFile = null;
+        }
+        probes = null;
+        adcTable = null;
+        reranked = null;
+        cur_k = -1;
+        cursor = -1;
+        isBeforeFirsted = false;
+    }
+
+    /*  scans all the probed clusters, keeps the best RERANK entries by
+        ADC distance and replaces them by the exact vectors */
+    private void rerank() {
+        PriorityQueue<VecRecPair> maxPQ = new PriorityQueue<>(numRerank,
+                (a, b) -> Double.compare(b.getDist(), a.getDist()));
+        while (next()) {
+            byte[] codes = currentCodes();
+            double dist = adcTable != null ? adcDistance(codes) : distFn.distance(reconstruct(codes));
+            if (maxPQ.size() < numRerank)
+                maxPQ.add(new VecRecPair(null, currentDataRecordId(), dist));
+            else if (dist < maxPQ.peek().getDist()) {
+                maxPQ.poll();
+                maxPQ.add(new VecRecPair(null, currentDataRecordId(), dist));
+            }
+        }
+        if (dataFile != null) {
+            dataFile.close();
+            dataFile = null;
+        }
+
+        TableInfo ti = VanillaDb.catalogMgr().getTableInfo(ii.tableName(), tx);
+        RecordFile baseFile = ti.open(tx, false);
+        String fldName = ii.fieldNames().get(0);
+        reranked = new ArrayList<>(maxPQ.size());
+        for (VecRecPair p : maxPQ) {
+            baseFile.moveToRecordId(p.getRid());
+            reranked.add(new VecRecPair((VectorConstant) baseFile.getVal(fldName), p.getRid()));
+        }
+        baseFile.close();
+        cursor = -1;
+    }
+
+    private RecordFile openCluster(int fileId) {
+        TableInfo ti = new TableInfo(clusterTableName(fileId), dataSchema());
+        RecordFile rf = ti.open(tx, true);
+        if (rf.fileSize() == 0)
+            RecordFile.formatFileHeader(ti.fileName(), tx);
+        return rf;
+    }
+
+    private int nearestCluster(VectorConstant key) {
+        return IVF_FLATIndex.centroids(ii, dimension, tx).nearest(key.asJavaVal());
+    }
+
+    private RecordId currentDataRecordId() {
+        long blockNum = (long) dataFile.getVal(SCHEMA_RID_BLOCK).asJavaVal();
+        int recordId = (int) dataFile.getVal(SCHEMA_RID_ID).asJavaVal();
+        return new RecordId(new BlockId(dataFileName, blockNum), recordId);
+    }
+
+    private byte[] currentCodes() {
+        long[] words = new long[numCodeWords()];
+        for (int i = 0; i < words.length; ++i)
+            words[i] = (long) dataFile.getVal(codeFieldName(i)).asJavaVal();
+        return unpackCodes(words);
+    }
+
+    private static long[] packCodes(byte[] codes) {
+        long[] words = new long[numCodeWords()];
+        for (int s = 0; s < codes.length; ++s)
+            words[s / Long.BYTES] |= (codes[s] & 0xFFL) << ((s % Long.BYTES) * Byte.SIZE);
+        return words;
+    }
+
+    private static byte[] unpackCodes(long[] words) {
+        byte[] codes = new byte[NUM_SUBSPACES];
+        for (int s = 0; s < codes.length; ++s)
+            codes[s] = (byte) (words[s / Long.BYTES] >>> ((s % Long.BYTES) * Byte.SIZE));
+        return codes;
+    }
+
+    private byte[] encode(float[] vec) {
+        byte[] codes = new byte[NUM_SUBSPACES];
+        for (int s = 0; s < NUM_SUBSPACES; ++s)
+            codes[s] = (byte) nearestCodeword(codebook[s], vec, s * subDimension);
+        return codes;
+    }
+
+    private VectorConstant reconstruct(byte[] codes) {
+        float[] vec = new float[dimension];
+        for (int s = 0; s < NUM_SUBSPACES; ++s)
+            System.arraycopy(codebook[s][codes[s] & 0xFF], 0, vec, s * subDimension, subDimension);
+        return new VectorConstant(vec);
+    }
+
+    private float[][] computeAdcTable(float[] query) {
+        float[][] table = new float[NUM_SUBSPACES][];
+        for (int s = 0; s < NUM_SUBSPACES; ++s) {
+            table[s] = new float[codebook[s].length];
+            for (int c = 0; c < codebook[s].length; ++c)
+                table[s][c] = squaredDistance(codebook[s][c], query, s * subDimension);
+        }
+        return table;
+    }
+
+    private double adcDistance(byte[] codes) {
+        double sum = 0;
+        for (int s = 0; s < NUM_SUBSPACES; ++s)
+            sum += adcTable[s][codes[s] & 0xFF];
+        return sum;
+    }
+
+    private static int nearestCodeword(float[][] codewords, float[] vec, int offset) {
+        int best = 0;
+        float bestDist = Float.MAX_VALUE, tmp;
+        for (int c = 0; c < codewords.length; ++c) {
+            if ((tmp = squaredDistance(codewords[c], vec, offset)) < bestDist) {
+                best = c;
+                bestDist = tmp;
+            }
+        }
+        return best;
+    }
+
+    private static float squaredDistance(float[] codeword, float[] vec, int offset) {
+        float sum = 0;
+        for (int d = 0; d < codeword.length; ++d) {
+            float diff = codeword[d] - vec[offset + d];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    /*  draws a uniform sample of at most TRAIN_SIZE vectors
+        from the indexed field of the base table */
+    private List<float[]> sampleBaseTable() {
+        TableInfo ti = VanillaDb.catalogMgr().getTableInfo(ii.tableName(), tx);
+        RecordFile rf = ti.open(tx, false);
+        String fldName = ii.fieldNames().get(0);
+        Random random = new Random(ii.indexName().hashCode());
+        List<float[]> sample = new ArrayList<>();
+
+        rf.beforeFirst();
+        long seen = 0;
+        while (rf.next()) {
+            seen++;
+            if (sample.size() < TRAIN_SIZE)
+                sample.add(((VectorConstant) rf.getVal(fldName)).copy());
+            else {
+                long r = (long) (random.nextDouble() * seen);
+                if (r < TRAIN_SIZE)
+                    sample.set((int) r, ((VectorConstant) rf.getVal(fldName)).copy());
+            }
+        }
+        rf.close();
+
+        if (sample.isEmpty())
+            throw new IllegalStateException("cannot train the codebook of index '"
+                    + ii.indexName() + "' on an empty table");
+        return sample;
+    }
+
+    /*  runs k-means independently in every subspace */
+    private float[][][] trainCodebook(List<float[]> sample) {
+        float[][][] cb = new float[NUM_SUBSPACES][][];
+
+        for (int s = 0; s < NUM_SUBSPACES; ++s) {
+            int offset = s * subDimension;
+            float[][] sub = new float[sample.size()][];
+            for (int i = 0; i < sub.length; ++i)
+                sub[i] = Arrays.copyOfRange(sample.get(i), offset, offset + subDimension);
+            cb[s] = new Kmeans(NUM_CODEWORDS, sub).withSeed(ii.indexName().hashCode() + s)
+                    .train(TRAIN_ITERATIONS);
+        }
+        return cb;
+    }
+
+    private float[][][] loadCodebook() {
+        TableInfo ti = new TableInfo(ii.indexName() + "_pq_codebook", codebookSchema());
+        RecordFile rf = ti.open(tx, true);
+        if (rf.fileSize() == 0) {
+            rf.close();
+            return null;
+        }
+
+        List<List<float[]>> words = new ArrayList<>();
+        for (int s = 0; s < NUM_SUBSPACES; ++s)
+            words.add(new ArrayList<>());
+        rf.beforeFirst();
+        while (rf.next()) {
+            int s = (int) rf.getVal(SCHEMA_SUBSPACE).asJavaVal();
+            int c = (int) rf.getVal(SCHEMA_CODEWORD_ID).asJavaVal();
+            List<float[]> sub = words.get(s);
+            while (sub.size() <= c)
+                sub.add(null);
+            sub.set(c, ((VectorConstant) rf.getVal(SCHEMA_CODEWORD)).copy());
+        }
+        rf.close();
+
+        if (words.get(0).isEmpty())
+            return null;
+        float[][][] cb = new float[NUM_SUBSPACES][][];
+        for (int s = 0; s < NUM_SUBSPACES; ++s)
+            cb[s] = words.get(s).toArray(new float[0][]);
+        return cb;
+    }
+
+    private void saveCodebook(float[][][] cb) {
+        TableInfo ti = new TableInfo(ii.indexName() + "_pq_codebook", codebookSchema());
+        RecordFile rf = ti.open(tx, true);
+        if (rf.fileSize() == 0)
+            RecordFile.formatFileHeader(ti.fileName(), tx);
+        for (int s = 0; s < cb.length; ++s)
+            for (int c = 0; c < cb[s].length; ++c) {
+                rf.insert();
+                rf.setVal(SCHEMA_SUBSPACE, new IntegerConstant(s));
+                rf.setVal(SCHEMA_CODEWORD_ID, new IntegerConstant(c));
+                rf.setVal(SCHEMA_CODEWORD, new VectorConstant(cb[s][c]));
+            }
+        rf.close();
+    }
+}
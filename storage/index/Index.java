@@ -15,14 +15,20 @@
  *******************************************************************************/
 package org.vanilladb.core.storage.index;
 
+import java.util.List;
+
+import org.vanilladb.core.sql.VecRecPair;
 import org.vanilladb.core.sql.VectorConstant;
 import org.vanilladb.core.sql.distfn.DistanceFn;
 import org.vanilladb.core.storage.index.btree.BTreeIndex;
 import org.vanilladb.core.storage.index.hash.HashIndex;
-// import org.vanilladb.core.storage.index.lsh.LSHashIndex;
+import org.vanilladb.core.storage.index.hnsw.HNSWIndex;
+import org.vanilladb.core.storage.index.lsh.LSHashIndex;
 import org.vanilladb.core.storage.metadata.index.IndexInfo;
 import org.vanilladb.core.storage.record.RecordId;
 import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.util.RidFilter;
+import org.vanilladb.core.util.TopKHeap;
 
 /**
  * An abstract index that defines the index traversal interface and provides
@@ -54,6 +60,12 @@ public abstract class Index {
 			return HashIndex.searchCost(keyType, totRecs, matchRecs);
 		else if (idxType == IndexType.BTREE)
 			return BTreeIndex.searchCost(keyType, totRecs, matchRecs);
+		else if (idxType == IndexType.LSH)
+			return LSHashIndex.searchCost(keyType, totRecs, matchRecs);
+		else if (idxType == IndexType.HNSW)
+			return HNSWIndex.searchCost(keyType, totRecs, matchRecs);
+		else if (idxType == IndexType.IVF_PQ)
+			return IVF_PQIndex.searchCost(keyType, totRecs, matchRecs);
 		else
 			throw new IllegalArgumentException("unsupported index type");
 	}
@@ -63,10 +75,14 @@ public abstract class Index {
 			return new HashIndex(ii, keyType, tx);
 		else if (ii.indexType() == IndexType.BTREE)
 			return new BTreeIndex(ii, keyType, tx);
-		// else if (ii.indexType() == IndexType.LSH)
-		// 	return new LSHashIndex(ii, keyType, tx);
+		else if (ii.indexType() == IndexType.LSH)
+			return new LSHashIndex(ii, keyType, tx);
 		else if (ii.indexType() == IndexType.IVF)
 			return new IVF_FLATIndex(ii, keyType, tx);
+		else if (ii.indexType() == IndexType.HNSW)
+			return new HNSWIndex(ii, keyType, tx);
+		else if (ii.indexType() == IndexType.IVF_PQ)
+			return new IVF_PQIndex(ii, keyType, tx);
 		else
 			throw new IllegalArgumentException("unsupported index type");
 	}
@@ -103,6 +119,40 @@ public abstract class Index {
 	public abstract void beforeFirst(SearchRange searchRange);
 	public abstract void beforeFirst(DistanceFn distFn);
 
+	/**
+	 * Positions the index before the first candidate of a nearest neighbor
+	 * search, hinting that the caller only keeps the k nearest ones. Indexes
+	 * that can prune with the hint (e.g., by keeping partial top-k results) or
+	 * that partition the vectors into clusters override this method; the
+	 * others simply ignore the extra arguments.
+	 * 
+	 * @param distFn
+	 *            the distance function holding the query vector
+	 * @param k
+	 *            the number of nearest neighbors the caller keeps
+	 * @param nprobe
+	 *            the number of clusters to probe, or -1 for the index default
+	 */
+	public void beforeFirst(DistanceFn distFn, int k, int nprobe) {
+		beforeFirst(distFn);
+	}
+
+	/**
+	 * Positions the index before the first entry whose distance to the query
+	 * is at most the specified radius, in the unit of the distance function.
+	 * The entries are then iterated by {@link #next()} as they are found, in
+	 * no particular order.
+	 * 
+	 * @param distFn
+	 *            the distance function holding the query vector
+	 * @param radius
+	 *            the largest distance of a matching entry
+	 */
+	public void beforeFirst(DistanceFn distFn, double radius) {
+		throw new UnsupportedOperationException("index '" + ii.indexName()
+				+ "' does not support range search");
+	}
+
 	/**
 	 * Moves the index to the next record matching the search range specified in
 	 * the {@link #beforeFirst} method. Returns false if there are no more such
@@ -119,6 +169,92 @@ public abstract class Index {
 	 */
 	public abstract RecordId getDataRecordId();
 
+	/**
+	 * Returns the indexed vector and the data record ID stored in the current
+	 * index record. Only vector indexes support this method.
+	 * 
+	 * @return the vector and the data record ID of the current index record
+	 */
+	public VecRecPair getDataVecRecPair() {
+		throw new UnsupportedOperationException("index '" + ii.indexName()
+				+ "' does not store vectors");
+	}
+
+	/**
+	 * Collects the nearest candidates of a nearest neighbor search into the
+	 * specified heap, whose capacity is the number of neighbors to keep. The
+	 * default implementation iterates the candidates through
+	 * {@link #getDataVecRecPair()}; indexes that can compute distances over
+	 * their raw storage override it to avoid allocating per candidate.
+	 * 
+	 * @param distFn
+	 *            the distance function holding the query vector
+	 * @param nprobe
+	 *            the number of clusters to probe, or -1 for the index default
+	 * @param heap
+	 *            the heap receiving the distances and packed data record IDs
+	 */
+	public void collectNearest(DistanceFn distFn, int nprobe, TopKHeap heap) {
+		collectNearest(distFn, nprobe, heap, null);
+	}
+
+	/**
+	 * Collects the nearest candidates accepted by the specified filter. The
+	 * filter is consulted only for candidates that would enter the heap,
+	 * unless it is a plain lookup. Indexes that partition the vectors should
+	 * probe more partitions while the heap is not full.
+	 * 
+	 * @param distFn
+	 *            the distance function holding the query vector
+	 * @param nprobe
+	 *            the number of clusters to probe, or -1 for the index default
+	 * @param heap
+	 *            the heap receiving the distances and packed data record IDs
+	 * @param filter
+	 *            the filter of the data records, or null to accept all
+	 */
+	public void collectNearest(DistanceFn distFn, int nprobe, TopKHeap heap, RidFilter filter) {
+		beforeFirst(distFn, heap.capacity(), nprobe);
+		while (next()) {
+			VecRecPair vr = getDataVecRecPair();
+			RecordId rid = vr.getRid();
+			long packedRid = TopKHeap.packRid(rid.block().number(), rid.id());
+			if (filter != null && filter.isLookup() && !filter.accept(packedRid))
+				continue;
+			double dist = vr.getDist() >= 0 ? vr.getDist() : distFn.distance(vr.getVec());
+			if (dist >= heap.threshold())
+				continue;
+			if (filter != null && !filter.isLookup() && !filter.accept(packedRid))
+				continue;
+			heap.offer((float) dist, packedRid);
+		}
+		close();
+	}
+
+	/**
+	 * Collects the k nearest candidates of every query of a batch. The default
+	 * implementation runs the queries one by one; indexes that partition the
+	 * vectors override it to scan every partition once for all the queries
+	 * routed to it.
+	 * 
+	 * @param distFns
+	 *            the distance functions holding the query vectors
+	 * @param nprobe
+	 *            the number of clusters to probe per query, or -1 for the
+	 *            index default
+	 * @param k
+	 *            the number of neighbors to keep per query
+	 * @return the heap of every query, in the order of the queries
+	 */
+	public TopKHeap[] collectNearest(List<DistanceFn> distFns, int nprobe, int k) {
+		TopKHeap[] heaps = new TopKHeap[distFns.size()];
+		for (int i = 0; i < heaps.length; i++) {
+			heaps[i] = new TopKHeap(k);
+			collectNearest(distFns.get(i), nprobe, heaps[i]);
+		}
+		return heaps;
+	}
+
 	/**
 	 * Inserts an index record having the specified key and data record ID.
 	 * 
@@ -161,4 +297,8 @@ public abstract class Index {
 	public SearchKeyType getKeyType() {
 		return keyType;
 	}
+
+	public String dataFileName() {
+		return dataFileName;
+	}
 }
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright 2016, 2017 vanilladb.org contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package org.vanilladb.core.storage.index;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The options an index may be created with. The options of an index are
+ * kept in the index catalog as a bit mask, so they survive a restart and
+ * every transaction opens the index the same way.
+ */
+public enum IndexOption {
+	/**
+	 * Stores the entries of an IVF or HNSW index as unit vectors, so that
+	 * cosine reduces to a dot product, or ranks the entries as the Euclidean
+	 * distance does. Such an index only answers cosine queries.
+	 */
+	NORMALIZE,
+
+	/**
+	 * Stores the entries of the cluster files of an IVF index as bfloat16
+	 * vectors, halving their size; the option decides the schema of the
+	 * files, so it is fixed when the index is created.
+	 */
+	HALF_PRECISION,
+
+	/**
+	 * Hashes the entries of an LSH index with random hyperplanes, one sign
+	 * bit per projection, so that the index answers cosine queries; without
+	 * it the index hashes with p-stable projections for Euclidean queries.
+	 * The option decides the buckets of the entries, so it is fixed when the
+	 * index is created.
+	 */
+	COSINE;
+
+	public int toInteger() {
+		switch (this) {
+		case NORMALIZE:
+			return 1;
+		case HALF_PRECISION:
+			return 2;
+		case COSINE:
+			return 4;
+		}
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Returns true if indexes of the specified type implement this option.
+	 * 
+	 * @param type
+	 *            the index type
+	 * @return true if the type takes this option
+	 */
+	public boolean appliesTo(IndexType type) {
+		switch (this) {
+		case NORMALIZE:
+			return type == IndexType.IVF || type == IndexType.HNSW;
+		case HALF_PRECISION:
+			return type == IndexType.IVF;
+		case COSINE:
+			return type == IndexType.LSH;
+		}
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Returns the bit mask of the specified options.
+	 * 
+	 * @param options
+	 *            the options
+	 * @return the bit mask
+	 */
+	public static int toMask(Set<IndexOption> options) {
+		int mask = 0;
+		for (IndexOption option : options)
+			mask |= option.toInteger();
+		return mask;
+	}
+
+	/**
+	 * Returns the options of the specified bit mask.
+	 * 
+	 * @param mask
+	 *            the bit mask
+	 * @return the options
+	 */
+	public static Set<IndexOption> fromMask(int mask) {
+		Set<IndexOption> options = EnumSet.noneOf(IndexOption.class);
+		for (IndexOption option : values())
+			if ((mask & option.toInteger()) != 0)
+				options.add(option);
+		return options;
+	}
+}
\ No newline at end of file
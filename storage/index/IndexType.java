@@ -19,7 +19,7 @@ package org.vanilladb.core.storage.index;
  * Supported index types.
  */
 public enum IndexType {
-	HASH, BTREE, LSH, IVF;
+	HASH, BTREE, LSH, IVF, HNSW, IVF_PQ;
 	
 	public static IndexType fromInteger(int typeVal) {
 		switch (typeVal) {
@@ -31,6 +31,10 @@ public enum IndexType {
 			return IVF;
 		case 3:
 			return LSH;
+		case 4:
+			return HNSW;
+		case 5:
+			return IVF_PQ;
 		}
 		throw new UnsupportedOperationException();
 	}
@@ -45,6 +49,10 @@ public enum IndexType {
 			return 2;
 		case LSH:
 			return 3;
+		case HNSW:
+			return 4;
+		case IVF_PQ:
+			return 5;
 		}
 		throw new UnsupportedOperationException();
 	}
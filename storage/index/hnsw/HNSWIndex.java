@@ -0,0 +1,721 @@
+package org.vanilladb.core.storage.index.hnsw;
+
+import static org.vanilladb.core.sql.Type.BIGINT;
+import static org.vanilladb.core.sql.Type.INTEGER;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.BigIntConstant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.VecRecPair;
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.distfn.CosineFn;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.sql.distfn.EuclideanFn;
+import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.index.IndexOption;
+import org.vanilladb.core.storage.index.SearchKey;
+import org.vanilladb.core.storage.index.SearchKeyType;
+import org.vanilladb.core.storage.index.SearchRange;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.record.RecordFile;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.record.RecordPage;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.storage.tx.TransactionLifecycleListener;
+import org.vanilladb.core.util.CoreProperties;
+
+/**
+ * A hierarchical navigable small world (HNSW) graph implementation of
+ * {@link Index}. The graph is kept in three record files so that every access
+ * goes through the buffer manager:
+ * <ul>
+ * <li><em>node</em>: one record per indexed vector, holding the vector, its
+ * data record ID, its top layer and its neighbors on layer 0. Records are
+ * never physically removed, so the node ID is simply the position of the
+ * record in the file.</li>
+ * <li><em>upper</em>: the neighbors of a node on a layer above 0.</li>
+ * <li><em>meta</em>: the entry point and the top layer of the graph.</li>
+ * </ul>
+ * The upper layers hold roughly 1/M of the nodes, so they and the entry point
+ * are cached in memory per index. Layer 0 is always read through the buffer
+ * pool.
+ * <p>
+ * The graph is built on the Euclidean distance, so it only answers Euclidean
+ * queries, unless the index is created with {@link IndexOption#NORMALIZE}: it
+ * then stores unit vectors, on which the Euclidean distance ranks the nodes
+ * as the cosine distance does, and only answers cosine queries.
+ * </p>
+ */
+public class HNSWIndex extends Index {
+
+	/**
+	 * Field names of the schemas of the graph files.
+	 */
+	private static final String SCHEMA_KEY = "key", SCHEMA_RID_BLOCK = "block",
+			SCHEMA_RID_ID = "id", SCHEMA_LEVEL = "level", SCHEMA_DELETED = "deleted",
+			SCHEMA_NODE = "node", SCHEMA_LINK_CNT = "cnt", SCHEMA_LINK = "nbr",
+			SCHEMA_ENTRY = "entry", SCHEMA_MAX_LEVEL = "max_level";
+
+	/**
+	 * The maximal number of neighbors of a node on the upper layers.
+	 */
+	public static final int M;
+
+	/**
+	 * The maximal number of neighbors of a node on layer 0.
+	 */
+	public static final int M0;
+
+	/**
+	 * The size of the dynamic candidate list used when inserting a node.
+	 */
+	public static final int EF_CONSTRUCTION;
+
+	/**
+	 * The size of the dynamic candidate list used when searching.
+	 */
+	public static final int EF_SEARCH;
+
+	static {
+		M = CoreProperties.getLoader().getPropertyAsInteger(
+				HNSWIndex.class.getName() + ".M", 16);
+		M0 = CoreProperties.getLoader().getPropertyAsInteger(
+				HNSWIndex.class.getName() + ".M0", 2 * M);
+		EF_CONSTRUCTION = CoreProperties.getLoader().getPropertyAsInteger(
+				HNSWIndex.class.getName() + ".EF_CONSTRUCTION", 200);
+		EF_SEARCH = CoreProperties.getLoader().getPropertyAsInteger(
+				HNSWIndex.class.getName() + ".EF_SEARCH", 64);
+	}
+
+	private static final double LEVEL_MULT = 1 / Math.log(M);
+	private static final int NO_NODE = -1;
+
+	// Index Name -> the cached entry point and upper layers of the graph
+	private static final Map<String, Graph> graphs = new ConcurrentHashMap<String, Graph>();
+	// Transaction Number -> the indexes whose cached graphs the uncommitted transaction changed
+	private static final Map<Long, Set<String>> pendingGraphs = new ConcurrentHashMap<Long, Set<String>>();
+
+	public static long searchCost(SearchKeyType keyType, long totRecs, long matchRecs) {
+		int rpb = Buffer.BUFFER_SIZE / RecordPage.slotSize(nodeSchema(keyType));
+		long blks = Math.max(1, totRecs / rpb);
+		// Roughly EF_SEARCH expansions, each reading the M0 neighbors
+		return Math.min(blks, (long) EF_SEARCH * M0);
+	}
+
+	private static Schema nodeSchema(SearchKeyType keyType) {
+		Schema sch = new Schema();
+		sch.addField(SCHEMA_KEY, keyType.get(0));
+		sch.addField(SCHEMA_RID_BLOCK, BIGINT);
+		sch.addField(SCHEMA_RID_ID, INTEGER);
+		sch.addField(SCHEMA_LEVEL, INTEGER);
+		sch.addField(SCHEMA_DELETED, INTEGER);
+		addLinkFields(sch, M0);
+		return sch;
+	}
+
+	private static Schema upperSchema() {
+		Schema sch = new Schema();
+		sch.addField(SCHEMA_NODE, INTEGER);
+		sch.addField(SCHEMA_LEVEL, INTEGER);
+		addLinkFields(sch, M);
+		return sch;
+	}
+
+	private static Schema metaSchema() {
+		Schema sch = new Schema();
+		sch.addField(SCHEMA_ENTRY, INTEGER);
+		sch.addField(SCHEMA_MAX_LEVEL, INTEGER);
+		return sch;
+	}
+
+	private static void addLinkFields(Schema sch, int maxConn) {
+		sch.addField(SCHEMA_LINK_CNT, INTEGER);
+		for (int i = 0; i < maxConn; i++)
+			sch.addField(linkFieldName(i), INTEGER);
+	}
+
+	private static String linkFieldName(int index) {
+		return SCHEMA_LINK + index;
+	}
+
+	private static long linkKey(int node, int layer) {
+		return ((long) node << 8) | layer;
+	}
+
+	/**
+	 * The part of a graph that is cached in memory.
+	 */
+	private static class Graph {
+		volatile int entry = NO_NODE;
+		volatile int maxLevel = -1;
+		RecordId metaRid;
+		// (node, layer) -> neighbors of the node on that layer
+		Map<Long, int[]> upperLinks = new ConcurrentHashMap<Long, int[]>();
+		// (node, layer) -> the record holding the neighbors
+		Map<Long, RecordId> upperRids = new ConcurrentHashMap<Long, RecordId>();
+	}
+
+	/**
+	 * A visited node and its distance to the current target.
+	 */
+	private static class Candidate implements Comparable<Candidate> {
+		int id;
+		double dist;
+		VectorConstant vec;
+		RecordId dataRid;
+		boolean deleted;
+
+		@Override
+		public int compareTo(Candidate other) {
+			return Double.compare(dist, other.dist);
+		}
+	}
+
+	private TableInfo nodeTi, upperTi, metaTi;
+	private int nodesPerBlock;
+	private RecordFile nodeFile;
+	private List<Candidate> results;
+	private int cursor;
+	private boolean isBeforeFirsted;
+	// the entries are stored as unit vectors, so that the graph answers cosine queries
+	private boolean normalized;
+
+	/**
+	 * Opens a HNSW index for the specified index.
+	 *
+	 * @param ii
+	 *            the information of this index
+	 * @param keyType
+	 *            the type of the search key
+	 * @param tx
+	 *            the calling transaction
+	 */
+	public HNSWIndex(IndexInfo ii, SearchKeyType keyType, Transaction tx) {
+		super(ii, keyType, tx);
+		if (keyType.length() != 1)
+			throw new UnsupportedOperationException("HNSW index supports a single vector field only");
+
+		Schema nodeSch = nodeSchema(keyType);
+		nodeTi = new TableInfo(ii.indexName() + "_hnsw_node", nodeSch);
+		upperTi = new TableInfo(ii.indexName() + "_hnsw_upper", upperSchema());
+		metaTi = new TableInfo(ii.indexName() + "_hnsw_meta", metaSchema());
+		nodesPerBlock = Buffer.BUFFER_SIZE / RecordPage.slotSize(nodeSch);
+		normalized = ii.hasOption(IndexOption.NORMALIZE);
+
+		// initialize the file headers if needed
+		for (TableInfo ti : new TableInfo[] { nodeTi, upperTi, metaTi })
+			if (fileSize(ti.fileName()) == 0)
+				RecordFile.formatFileHeader(ti.fileName(), tx);
+	}
+
+	@Override
+	public void preLoadToMemory() {
+		graph();
+		long size = fileSize(nodeTi.fileName());
+		BlockId blk;
+		for (int j = 0; j < size; j++) {
+			blk = new BlockId(nodeTi.fileName(), j);
+			tx.bufferMgr().pin(blk);
+		}
+	}
+
+	/**
+	 * Searches the graph for the nearest neighbors of the query vector held by
+	 * the distance function. The search greedily descends the upper layers and
+	 * then runs a beam search of width {@link #EF_SEARCH} on layer 0. The
+	 * found records are returned by {@link #next()} in ascending distance.
+	 *
+	 * @see Index#beforeFirst(DistanceFn)
+	 */
+	@Override
+	public void beforeFirst(DistanceFn distFn) {
+		search(entryDistance(distFn), EF_SEARCH);
+	}
+
+	/**
+	 * Widens the beam to k if the caller keeps more than {@link #EF_SEARCH}
+	 * neighbors. The graph has no clusters, so nprobe is ignored.
+	 */
+	@Override
+	public void beforeFirst(DistanceFn distFn, int k, int nprobe) {
+		search(entryDistance(distFn), Math.max(EF_SEARCH, k));
+	}
+
+	private void search(DistanceFn distFn, int ef) {
+		close();
+		Graph g = graph();
+		results = new ArrayList<Candidate>();
+
+		int entry = g.entry, maxLevel = g.maxLevel;
+		if (entry != NO_NODE) {
+			openNodeFile();
+			Candidate ep = readNode(entry, distFn);
+			for (int layer = maxLevel; layer > 0; layer--)
+				ep = greedyClosest(distFn, ep, layer);
+			for (Candidate c : searchLayer(distFn, ep, ef, 0))
+				if (!c.deleted)
+					results.add(c);
+		}
+
+		cursor = -1;
+		isBeforeFirsted = true;
+	}
+
+	/*
+	 * Returns the function scoring the stored nodes against the query; the
+	 * links of the graph only suit the distance it was built on.
+	 */
+	private DistanceFn entryDistance(DistanceFn distFn) {
+		if (normalized) {
+			if (!(distFn instanceof CosineFn))
+				throw new UnsupportedOperationException("index '" + ii.indexName()
+						+ "' stores normalized vectors and only answers cosine queries");
+			return ((CosineFn) distFn).forUnitVectors();
+		}
+		if (!(distFn instanceof EuclideanFn))
+			throw new UnsupportedOperationException("index '" + ii.indexName()
+					+ "' is built on the Euclidean distance and only answers Euclidean queries");
+		return distFn;
+	}
+
+	/*
+	 * Returns the vector as stored in the graph.
+	 */
+	private VectorConstant entryVector(VectorConstant vec) {
+		if (!normalized)
+			return vec;
+		float[] unit = vec.asJavaVal().clone();
+		double norm = 0;
+		for (float f : unit)
+			norm += f * f;
+		if (norm == 0)
+			return vec;
+		norm = Math.sqrt(norm);
+		for (int d = 0; d < unit.length; d++)
+			unit[d] = (float) (unit[d] / norm);
+		return VectorConstant.wrap(unit);
+	}
+
+	@Override
+	public void beforeFirst(SearchRange searchRange) {
+		throw new UnsupportedOperationException("HNSW index supports nearest neighbor search only");
+	}
+
+	@Override
+	public boolean next() {
+		if (!isBeforeFirsted)
+			throw new IllegalStateException("You must call beforeFirst() before iterating index '"
+					+ ii.indexName() + "'");
+		return ++cursor < results.size();
+	}
+
+	@Override
+	public RecordId getDataRecordId() {
+		return results.get(cursor).dataRid;
+	}
+
+	@Override
+	public VecRecPair getDataVecRecPair() {
+		Candidate c = results.get(cursor);
+		return new VecRecPair(c.vec, c.dataRid);
+	}
+
+	@Override
+	public void insert(SearchKey key, RecordId dataRecordId, boolean doLogicalLogging) {
+		insert((VectorConstant) key.get(0), dataRecordId);
+	}
+
+	/**
+	 * Inserts a vector into the graph. The node is assigned a random top layer
+	 * and linked to its nearest neighbors on every layer up to it. Inserts into
+	 * the same index are serialized. If the transaction rolls back, the cached
+	 * part of the graph is dropped and reloaded from the undone files.
+	 *
+	 * @see Index#insert(VectorConstant, RecordId)
+	 */
+	@Override
+	public void insert(VectorConstant key, RecordId dataRecordId) {
+		key = entryVector(key);
+		trackChange();
+		Graph g = graph();
+		synchronized (g) {
+			openNodeFile();
+			int level = randomLevel();
+			int id = appendNode(key, level, dataRecordId);
+			for (int layer = 1; layer <= level; layer++)
+				setNeighbors(g, id, layer, new int[0]);
+
+			if (g.entry == NO_NODE) {
+				setEntry(g, id, level);
+				return;
+			}
+
+			EuclideanFn distFn = new EuclideanFn(SCHEMA_KEY);
+			distFn.setQueryVector(key);
+			Candidate ep = readNode(g.entry, distFn);
+			for (int layer = g.maxLevel; layer > level; layer--)
+				ep = greedyClosest(distFn, ep, layer);
+
+			for (int layer = Math.min(level, g.maxLevel); layer >= 0; layer--) {
+				List<Candidate> cands = searchLayer(distFn, ep, EF_CONSTRUCTION, layer);
+				List<Candidate> nbrs = selectNeighbors(cands, M);
+				setNeighbors(g, id, layer, toIds(nbrs));
+
+				int maxConn = layer == 0 ? M0 : M;
+				for (Candidate n : nbrs)
+					connect(g, n.id, id, layer, maxConn);
+				ep = cands.get(0);
+			}
+
+			if (level > g.maxLevel)
+				setEntry(g, id, level);
+		}
+	}
+
+	/**
+	 * Marks the node of the specified index record as deleted. The node stays
+	 * in the graph so that it still connects its neighbors.
+	 *
+	 * @see Index#delete(SearchKey, RecordId, boolean)
+	 */
+	@Override
+	public void delete(SearchKey key, RecordId dataRecordId, boolean doLogicalLogging) {
+		EuclideanFn distFn = new EuclideanFn(SCHEMA_KEY);
+		distFn.setQueryVector(entryVector((VectorConstant) key.get(0)));
+		search(distFn, EF_SEARCH);
+		for (Candidate c : results)
+			if (c.dataRid.equals(dataRecordId)) {
+				markDeleted(c.id);
+				return;
+			}
+
+		// The graph search is approximate, fall back to a full scan
+		openNodeFile();
+		nodeFile.beforeFirst();
+		while (nodeFile.next()) {
+			long blkNum = (Long) nodeFile.getVal(SCHEMA_RID_BLOCK).asJavaVal();
+			int rid = (Integer) nodeFile.getVal(SCHEMA_RID_ID).asJavaVal();
+			if (blkNum == dataRecordId.block().number() && rid == dataRecordId.id()) {
+				nodeFile.setVal(SCHEMA_DELETED, new IntegerConstant(1));
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		if (nodeFile != null) {
+			nodeFile.close();
+			nodeFile = null;
+		}
+		results = null;
+		isBeforeFirsted = false;
+	}
+
+	/*
+	 * Remembers that the transaction changed the cached graph of this index,
+	 * so that the graph is dropped if the transaction rolls back.
+	 */
+	private void trackChange() {
+		final long txNum = tx.getTransactionNumber();
+		Set<String> changed = pendingGraphs.get(txNum);
+		if (changed == null) {
+			changed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+			pendingGraphs.put(txNum, changed);
+			tx.addLifecycleListener(new TransactionLifecycleListener() {
+				@Override
+				public void onTxCommit(Transaction tx) {
+					pendingGraphs.remove(txNum);
+				}
+
+				@Override
+				public void onTxRollback(Transaction tx) {
+					for (String idxName : pendingGraphs.remove(txNum))
+						graphs.remove(idxName);
+				}
+
+				@Override
+				public void onTxEndStatement(Transaction tx) {
+				}
+			});
+		}
+		changed.add(ii.indexName());
+	}
+
+	private Graph graph() {
+		Graph g = graphs.get(ii.indexName());
+		if (g == null) {
+			synchronized (graphs) {
+				g = graphs.get(ii.indexName());
+				if (g == null) {
+					g = loadGraph();
+					graphs.put(ii.indexName(), g);
+				}
+			}
+		}
+		return g;
+	}
+
+	private Graph loadGraph() {
+		Graph g = new Graph();
+
+		RecordFile rf = metaTi.open(tx, true);
+		rf.beforeFirst();
+		if (rf.next()) {
+			g.metaRid = rf.currentRecordId();
+			g.entry = (Integer) rf.getVal(SCHEMA_ENTRY).asJavaVal();
+			g.maxLevel = (Integer) rf.getVal(SCHEMA_MAX_LEVEL).asJavaVal();
+		}
+		rf.close();
+
+		rf = upperTi.open(tx, true);
+		rf.beforeFirst();
+		while (rf.next()) {
+			int node = (Integer) rf.getVal(SCHEMA_NODE).asJavaVal();
+			int layer = (Integer) rf.getVal(SCHEMA_LEVEL).asJavaVal();
+			g.upperLinks.put(linkKey(node, layer), readLinks(rf));
+			g.upperRids.put(linkKey(node, layer), rf.currentRecordId());
+		}
+		rf.close();
+		return g;
+	}
+
+	private void openNodeFile() {
+		if (nodeFile == null)
+			nodeFile = nodeTi.open(tx, true);
+	}
+
+	private RecordId nodeRecordId(int id) {
+		// block 0 is the file header
+		return new RecordId(new BlockId(nodeTi.fileName(), 1 + id / nodesPerBlock), id % nodesPerBlock);
+	}
+
+	private int nodeId(RecordId rid) {
+		return (int) (rid.block().number() - 1) * nodesPerBlock + rid.id();
+	}
+
+	private int randomLevel() {
+		double r = 1.0 - ThreadLocalRandom.current().nextDouble();
+		return (int) Math.floor(-Math.log(r) * LEVEL_MULT);
+	}
+
+	private int appendNode(VectorConstant key, int level, RecordId dataRecordId) {
+		nodeFile.insert();
+		nodeFile.setVal(SCHEMA_KEY, key);
+		nodeFile.setVal(SCHEMA_RID_BLOCK, new BigIntConstant(dataRecordId.block().number()));
+		nodeFile.setVal(SCHEMA_RID_ID, new IntegerConstant(dataRecordId.id()));
+		nodeFile.setVal(SCHEMA_LEVEL, new IntegerConstant(level));
+		nodeFile.setVal(SCHEMA_DELETED, new IntegerConstant(0));
+		nodeFile.setVal(SCHEMA_LINK_CNT, new IntegerConstant(0));
+		return nodeId(nodeFile.currentRecordId());
+	}
+
+	private void markDeleted(int id) {
+		nodeFile.moveToRecordId(nodeRecordId(id));
+		nodeFile.setVal(SCHEMA_DELETED, new IntegerConstant(1));
+	}
+
+	private Candidate readNode(int id, DistanceFn distFn) {
+		nodeFile.moveToRecordId(nodeRecordId(id));
+		Candidate c = new Candidate();
+		c.id = id;
+		c.vec = (VectorConstant) nodeFile.getVal(SCHEMA_KEY);
+		long blkNum = (Long) nodeFile.getVal(SCHEMA_RID_BLOCK).asJavaVal();
+		int rid = (Integer) nodeFile.getVal(SCHEMA_RID_ID).asJavaVal();
+		c.dataRid = new RecordId(new BlockId(dataFileName, blkNum), rid);
+		c.deleted = (Integer) nodeFile.getVal(SCHEMA_DELETED).asJavaVal() != 0;
+		if (distFn != null)
+			c.dist = distFn.distance(c.vec);
+		return c;
+	}
+
+	private int[] neighbors(int id, int layer) {
+		if (layer > 0) {
+			int[] links = graph().upperLinks.get(linkKey(id, layer));
+			return links == null ? new int[0] : links;
+		}
+		nodeFile.moveToRecordId(nodeRecordId(id));
+		return readLinks(nodeFile);
+	}
+
+	private int[] readLinks(RecordFile rf) {
+		int cnt = (Integer) rf.getVal(SCHEMA_LINK_CNT).asJavaVal();
+		int[] links = new int[cnt];
+		for (int i = 0; i < cnt; i++)
+			links[i] = (Integer) rf.getVal(linkFieldName(i)).asJavaVal();
+		return links;
+	}
+
+	private void writeLinks(RecordFile rf, int[] links) {
+		rf.setVal(SCHEMA_LINK_CNT, new IntegerConstant(links.length));
+		for (int i = 0; i < links.length; i++)
+			rf.setVal(linkFieldName(i), new IntegerConstant(links[i]));
+	}
+
+	private void setNeighbors(Graph g, int id, int layer, int[] links) {
+		if (layer == 0) {
+			nodeFile.moveToRecordId(nodeRecordId(id));
+			writeLinks(nodeFile, links);
+			return;
+		}
+
+		long key = linkKey(id, layer);
+		RecordFile rf = upperTi.open(tx, true);
+		RecordId rid = g.upperRids.get(key);
+		if (rid == null) {
+			rf.insert();
+			rf.setVal(SCHEMA_NODE, new IntegerConstant(id));
+			rf.setVal(SCHEMA_LEVEL, new IntegerConstant(layer));
+			g.upperRids.put(key, rf.currentRecordId());
+		} else
+			rf.moveToRecordId(rid);
+		writeLinks(rf, links);
+		rf.close();
+		g.upperLinks.put(key, links);
+	}
+
+	private void setEntry(Graph g, int id, int level) {
+		RecordFile rf = metaTi.open(tx, true);
+		if (g.metaRid == null) {
+			rf.insert();
+			g.metaRid = rf.currentRecordId();
+		} else
+			rf.moveToRecordId(g.metaRid);
+		rf.setVal(SCHEMA_ENTRY, new IntegerConstant(id));
+		rf.setVal(SCHEMA_MAX_LEVEL, new IntegerConstant(level));
+		rf.close();
+		g.maxLevel = level;
+		g.entry = id;
+	}
+
+	/**
+	 * Adds a link from the specified node to the new node. If the node already
+	 * has the maximal number of neighbors, its neighbors are re-selected from
+	 * the old ones and the new one.
+	 */
+	private void connect(Graph g, int id, int newId, int layer, int maxConn) {
+		int[] links = neighbors(id, layer);
+		if (links.length < maxConn) {
+			int[] newLinks = new int[links.length + 1];
+			System.arraycopy(links, 0, newLinks, 0, links.length);
+			newLinks[links.length] = newId;
+			setNeighbors(g, id, layer, newLinks);
+			return;
+		}
+
+		EuclideanFn distFn = new EuclideanFn(SCHEMA_KEY);
+		distFn.setQueryVector(readNode(id, null).vec);
+		List<Candidate> pool = new ArrayList<Candidate>(links.length + 1);
+		for (int link : links)
+			pool.add(readNode(link, distFn));
+		pool.add(readNode(newId, distFn));
+		Collections.sort(pool);
+		setNeighbors(g, id, layer, toIds(selectNeighbors(pool, maxConn)));
+	}
+
+	private Candidate greedyClosest(DistanceFn distFn, Candidate ep, int layer) {
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int link : neighbors(ep.id, layer)) {
+				Candidate c = readNode(link, distFn);
+				if (c.dist < ep.dist) {
+					ep = c;
+					changed = true;
+				}
+			}
+		}
+		return ep;
+	}
+
+	/**
+	 * Runs a beam search of the given width on a layer, returning the found
+	 * nodes in ascending distance.
+	 */
+	private List<Candidate> searchLayer(DistanceFn distFn, Candidate ep, int ef, int layer) {
+		Set<Integer> visited = new HashSet<Integer>();
+		PriorityQueue<Candidate> cands = new PriorityQueue<Candidate>();
+		PriorityQueue<Candidate> found = new PriorityQueue<Candidate>(Collections.reverseOrder());
+		visited.add(ep.id);
+		cands.add(ep);
+		found.add(ep);
+
+		while (!cands.isEmpty()) {
+			Candidate c = cands.poll();
+			if (c.dist > found.peek().dist)
+				break;
+
+			for (int link : neighbors(c.id, layer)) {
+				if (!visited.add(link))
+					continue;
+				Candidate n = readNode(link, distFn);
+				if (found.size() < ef || n.dist < found.peek().dist) {
+					cands.add(n);
+					found.add(n);
+					if (found.size() > ef)
+						found.poll();
+				}
+			}
+		}
+
+		List<Candidate> res = new ArrayList<Candidate>(found);
+		Collections.sort(res);
+		return res;
+	}
+
+	/**
+	 * Selects at most {@code m} neighbors from candidates sorted by ascending
+	 * distance. A candidate is preferred if it is closer to the target than to
+	 * any selected neighbor, which keeps links spread across directions. The
+	 * remaining slots are filled by the closest pruned candidates.
+	 */
+	private List<Candidate> selectNeighbors(List<Candidate> cands, int m) {
+		List<Candidate> selected = new ArrayList<Candidate>(m);
+		List<Candidate> pruned = new ArrayList<Candidate>();
+		EuclideanFn distFn = new EuclideanFn(SCHEMA_KEY);
+		for (Candidate c : cands) {
+			if (selected.size() >= m)
+				break;
+			distFn.setQueryVector(c.vec);
+			boolean keep = true;
+			for (Candidate s : selected)
+				if (distFn.distance(s.vec) < c.dist) {
+					keep = false;
+					break;
+				}
+			if (keep)
+				selected.add(c);
+			else
+				pruned.add(c);
+		}
+		for (int i = 0; i < pruned.size() && selected.size() < m; i++)
+			selected.add(pruned.get(i));
+		return selected;
+	}
+
+	private int[] toIds(List<Candidate> cands) {
+		int[] ids = new int[cands.size()];
+		for (int i = 0; i < ids.length; i++)
+			ids[i] = cands.get(i).id;
+		return ids;
+	}
+
+	private long fileSize(String fileName) {
+		tx.concurrencyMgr().readFile(fileName);
+		return VanillaDb.fileMgr().size(fileName);
+	}
+}
@@ -0,0 +1,331 @@
+package org.vanilladb.core.storage.index.lsh;
+
+import static org.vanilladb.core.sql.Type.BIGINT;
+import static org.vanilladb.core.sql.Type.INTEGER;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.BigIntConstant;
+import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.sql.VecRecPair;
+import org.vanilladb.core.sql.VectorConstant;
+import org.vanilladb.core.sql.distfn.CosineFn;
+import org.vanilladb.core.sql.distfn.DistanceFn;
+import org.vanilladb.core.sql.distfn.EuclideanFn;
+import org.vanilladb.core.storage.buffer.Buffer;
+import org.vanilladb.core.storage.file.BlockId;
+import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.index.IndexOption;
+import org.vanilladb.core.storage.index.SearchKey;
+import org.vanilladb.core.storage.index.SearchKeyType;
+import org.vanilladb.core.storage.index.SearchRange;
+import org.vanilladb.core.storage.metadata.TableInfo;
+import org.vanilladb.core.storage.metadata.index.IndexInfo;
+import org.vanilladb.core.storage.record.RecordFile;
+import org.vanilladb.core.storage.record.RecordId;
+import org.vanilladb.core.storage.record.RecordPage;
+import org.vanilladb.core.storage.tx.Transaction;
+import org.vanilladb.core.util.CoreProperties;
+
+/**
+ * A multi-table locality-sensitive hashing implementation of {@link Index}.
+ * Each of the {@link #NUM_TABLES} hash tables concatenates
+ * {@link #NUM_HASHES} hash functions into a signature, and stores the index
+ * record in the bucket the signature falls into. Buckets use the same file
+ * layout as {@link org.vanilladb.core.storage.index.hash.HashIndex}, one file of
+ * index records per bucket.
+ *
+ * <p>
+ * Two hash families are supported: p-stable projections
+ * {@code floor((a.v + b) / w)} for Euclidean distance, and random hyperplanes
+ * (one sign bit per projection) for cosine distance if the index is created
+ * with {@link IndexOption#COSINE}. An index only answers queries of the
+ * distance its family is built for. The projections are derived from the
+ * index name, so they never need to be stored.
+ * </p>
+ */
+public class LSHashIndex extends Index {
+
+	/**
+	 * Field names of the schema of index records.
+	 */
+	private static final String SCHEMA_KEY = "key", SCHEMA_SIG = "sig",
+			SCHEMA_RID_BLOCK = "block", SCHEMA_RID_ID = "id";
+
+	public static final int NUM_TABLES;
+	public static final int NUM_HASHES;
+	public static final int NUM_BUCKETS;
+	public static final double BUCKET_WIDTH;
+
+	static {
+		NUM_TABLES = CoreProperties.getLoader().getPropertyAsInteger(
+				LSHashIndex.class.getName() + ".NUM_TABLES", 8);
+		NUM_HASHES = CoreProperties.getLoader().getPropertyAsInteger(
+				LSHashIndex.class.getName() + ".NUM_HASHES", 8);
+		NUM_BUCKETS = CoreProperties.getLoader().getPropertyAsInteger(
+				LSHashIndex.class.getName() + ".NUM_BUCKETS", 100);
+		// should be in the scale of the distance to the nearest neighbors
+		BUCKET_WIDTH = CoreProperties.getLoader().getPropertyAsDouble(
+				LSHashIndex.class.getName() + ".BUCKET_WIDTH", 300.0);
+	}
+
+	// Index Name -> the projections of all tables
+	private static final Map<String, Projections> projections = new ConcurrentHashMap<String, Projections>();
+
+	public static long searchCost(SearchKeyType keyType, long totRecs, long matchRecs) {
+		int rpb = Buffer.BUFFER_SIZE / RecordPage.slotSize(schema(keyType));
+		return NUM_TABLES * ((totRecs / rpb) / NUM_BUCKETS);
+	}
+
+	/**
+	 * Returns the schema of the index records.
+	 *
+	 * @param keyType
+	 *            the type of the indexed field
+	 *
+	 * @return the schema of the index records
+	 */
+	private static Schema schema(SearchKeyType keyType) {
+		Schema sch = new Schema();
+		sch.addField(SCHEMA_KEY, keyType.get(0));
+		sch.addField(SCHEMA_SIG, INTEGER);
+		sch.addField(SCHEMA_RID_BLOCK, BIGINT);
+		sch.addField(SCHEMA_RID_ID, INTEGER);
+		return sch;
+	}
+
+	/**
+	 * The random projections used by the hash functions of all tables.
+	 */
+	private static class Projections {
+		// [table][hash][dimension]
+		float[][][] a;
+		// [table][hash], only used by the Euclidean family
+		double[][] b;
+
+		Projections(String idxName, int dimension) {
+			Random rvg = new Random(idxName.hashCode());
+			a = new float[NUM_TABLES][NUM_HASHES][dimension];
+			b = new double[NUM_TABLES][NUM_HASHES];
+			for (int t = 0; t < NUM_TABLES; t++)
+				for (int h = 0; h < NUM_HASHES; h++) {
+					for (int d = 0; d < dimension; d++)
+						a[t][h][d] = (float) rvg.nextGaussian();
+					b[t][h] = rvg.nextDouble() * BUCKET_WIDTH;
+				}
+		}
+
+		int signature(int table, float[] vec, boolean cosine) {
+			int sig = 17;
+			for (int h = 0; h < NUM_HASHES; h++) {
+				float[] proj = a[table][h];
+				double dot = 0;
+				for (int d = 0; d < vec.length; d++)
+					dot += proj[d] * vec[d];
+
+				if (cosine)
+					sig = (sig << 1) | (dot >= 0 ? 1 : 0);
+				else
+					sig = sig * 31 + (int) Math.floor((dot + b[table][h]) / BUCKET_WIDTH);
+			}
+			return sig;
+		}
+	}
+
+	private Projections proj;
+	// whether the index hashes with random hyperplanes for cosine distance
+	private boolean cosine;
+	private TableInfo[] bucketTis;
+	private List<VecRecPair> candidates;
+	private int cursor;
+	private boolean isBeforeFirsted;
+
+	/**
+	 * Opens a LSH index for the specified index.
+	 *
+	 * @param ii
+	 *            the information of this index
+	 * @param keyType
+	 *            the type of the search key
+	 * @param tx
+	 *            the calling transaction
+	 */
+	public LSHashIndex(IndexInfo ii, SearchKeyType keyType, Transaction tx) {
+		super(ii, keyType, tx);
+		if (keyType.length() != 1)
+			throw new UnsupportedOperationException("LSH index supports a single vector field only");
+
+		int dimension = keyType.get(0).getArgument();
+		proj = projections.computeIfAbsent(ii.indexName(), name -> new Projections(name, dimension));
+		bucketTis = new TableInfo[NUM_TABLES];
+		cosine = ii.hasOption(IndexOption.COSINE);
+	}
+
+	@Override
+	public void preLoadToMemory() {
+		for (int t = 0; t < NUM_TABLES; t++)
+			for (int i = 0; i < NUM_BUCKETS; i++) {
+				String tblname = bucketTableName(t, i) + ".tbl";
+				long size = fileSize(tblname);
+				BlockId blk;
+				for (int j = 0; j < size; j++) {
+					blk = new BlockId(tblname, j);
+					tx.bufferMgr().pin(blk);
+				}
+			}
+	}
+
+	/**
+	 * Collects the index records that share a bucket and a signature with the
+	 * query vector in at least one table. The candidates are deduplicated and
+	 * returned by {@link #next()} in no particular order; the caller ranks them.
+	 *
+	 * @throws UnsupportedOperationException
+	 *             if the distance is not the one the hash family of the index
+	 *             is built for
+	 * @see Index#beforeFirst(DistanceFn)
+	 */
+	@Override
+	public void beforeFirst(DistanceFn distFn) {
+		if (cosine ? !(distFn instanceof CosineFn) : !(distFn instanceof EuclideanFn))
+			throw new UnsupportedOperationException("index '" + ii.indexName() + "' only answers "
+					+ (cosine ? "cosine" : "Euclidean") + " queries");
+		close();
+		float[] query = distFn.queryVector().asJavaVal();
+		candidates = new ArrayList<VecRecPair>();
+		Set<RecordId> seen = new HashSet<RecordId>();
+
+		for (int t = 0; t < NUM_TABLES; t++) {
+			int sig = proj.signature(t, query, cosine);
+			RecordFile rf = openBucket(t, sig);
+			rf.beforeFirst();
+			while (rf.next()) {
+				if ((Integer) rf.getVal(SCHEMA_SIG).asJavaVal() != sig)
+					continue;
+				RecordId rid = currentDataRecordId(rf);
+				if (seen.add(rid))
+					candidates.add(new VecRecPair((VectorConstant) rf.getVal(SCHEMA_KEY), rid));
+			}
+			rf.close();
+		}
+
+		cursor = -1;
+		isBeforeFirsted = true;
+	}
+
+	@Override
+	public void beforeFirst(SearchRange searchRange) {
+		throw new UnsupportedOperationException("LSH index supports nearest neighbor search only");
+	}
+
+	@Override
+	public boolean next() {
+		if (!isBeforeFirsted)
+			throw new IllegalStateException("You must call beforeFirst() before iterating index '"
+					+ ii.indexName() + "'");
+		return ++cursor < candidates.size();
+	}
+
+	@Override
+	public RecordId getDataRecordId() {
+		return candidates.get(cursor).getRid();
+	}
+
+	@Override
+	public VecRecPair getDataVecRecPair() {
+		return candidates.get(cursor);
+	}
+
+	@Override
+	public void insert(VectorConstant key, RecordId dataRecordId) {
+		insert(new SearchKey(key), dataRecordId, false);
+	}
+
+	/**
+	 * Inserts the index record into its bucket of every table. The buckets
+	 * log their changes physically, as every insert into a record file is a
+	 * logical operation of its own, so the insert is never logged logically.
+	 *
+	 * @see Index#insert(SearchKey, RecordId, boolean)
+	 */
+	@Override
+	public void insert(SearchKey key, RecordId dataRecordId, boolean doLogicalLogging) {
+		VectorConstant vec = (VectorConstant) key.get(0);
+		for (int t = 0; t < NUM_TABLES; t++) {
+			int sig = proj.signature(t, vec.asJavaVal(), cosine);
+			RecordFile rf = openBucket(t, sig);
+			rf.insert();
+			rf.setVal(SCHEMA_KEY, vec);
+			rf.setVal(SCHEMA_SIG, new IntegerConstant(sig));
+			rf.setVal(SCHEMA_RID_BLOCK, new BigIntConstant(dataRecordId.block().number()));
+			rf.setVal(SCHEMA_RID_ID, new IntegerConstant(dataRecordId.id()));
+			rf.close();
+		}
+	}
+
+	/**
+	 * Deletes the index record from its bucket of every table. Like
+	 * {@link #insert(SearchKey, RecordId, boolean)}, the delete is only logged
+	 * physically.
+	 *
+	 * @see Index#delete(SearchKey, RecordId, boolean)
+	 */
+	@Override
+	public void delete(SearchKey key, RecordId dataRecordId, boolean doLogicalLogging) {
+		VectorConstant vec = (VectorConstant) key.get(0);
+		for (int t = 0; t < NUM_TABLES; t++) {
+			RecordFile rf = openBucket(t, proj.signature(t, vec.asJavaVal(), cosine));
+			rf.beforeFirst();
+			while (rf.next())
+				if (currentDataRecordId(rf).equals(dataRecordId)) {
+					rf.delete();
+					break;
+				}
+			rf.close();
+		}
+	}
+
+	@Override
+	public void close() {
+		candidates = null;
+		isBeforeFirsted = false;
+	}
+
+	private String bucketTableName(int table, int bucket) {
+		return ii.indexName() + "_t" + table + "_" + bucket;
+	}
+
+	private RecordFile openBucket(int table, int sig) {
+		int bucket = Math.floorMod(sig, NUM_BUCKETS);
+		TableInfo ti = bucketTis[table];
+		if (ti == null || !ti.tableName().equals(bucketTableName(table, bucket)))
+			ti = bucketTis[table] = new TableInfo(bucketTableName(table, bucket), schema(keyType));
+
+		// the record file logs the changes of the index records
+		RecordFile rf = ti.open(tx, true);
+
+		// initialize the file header if needed
+		if (rf.fileSize() == 0)
+			RecordFile.formatFileHeader(ti.fileName(), tx);
+		return rf;
+	}
+
+	private RecordId currentDataRecordId(RecordFile rf) {
+		long blkNum = (Long) rf.getVal(SCHEMA_RID_BLOCK).asJavaVal();
+		int id = (Integer) rf.getVal(SCHEMA_RID_ID).asJavaVal();
+		return new RecordId(new BlockId(dataFileName, blkNum), id);
+	}
+
+	private long fileSize(String fileName) {
+		tx.concurrencyMgr().readFile(fileName);
+		return VanillaDb.fileMgr().size(fileName);
+	}
+}
@@ -16,10 +16,13 @@
 package org.vanilladb.core.storage.metadata;
 
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Set;
 
+import org.vanilladb.core.sql.QuantizedVectorType;
 import org.vanilladb.core.sql.Schema;
+import org.vanilladb.core.storage.index.IndexOption;
 import org.vanilladb.core.storage.index.IndexType;
 import org.vanilladb.core.storage.metadata.index.IndexInfo;
 import org.vanilladb.core.storage.metadata.index.IndexMgr;
@@ -48,6 +51,11 @@ public class CatalogMgr {
 		return tblMgr.getTableInfo(tblName, tx);
 	}
 
+	public void calibrateVectorField(String tblName, String fldName,
+			QuantizedVectorType type, Transaction tx) {
+		tblMgr.calibrateVectorField(tblName, fldName, type, tx);
+	}
+
 	public void createView(String viewName, String viewDef, Transaction tx) {
 		viewMgr.createView(viewName, viewDef, tx);
 	}
@@ -66,13 +74,22 @@ public class CatalogMgr {
 
 	public void createIndex(String idxName, String tblName, List<String> fldNames,
 			IndexType indexType, Transaction tx) {
-		idxMgr.createIndex(idxName, tblName, fldNames, indexType, tx);
+		createIndex(idxName, tblName, fldNames, indexType, EnumSet.noneOf(IndexOption.class), tx);
+	}
+
+	public void createIndex(String idxName, String tblName, List<String> fldNames,
+			IndexType indexType, Set<IndexOption> options, Transaction tx) {
+		idxMgr.createIndex(idxName, tblName, fldNames, indexType, options, tx);
 	}
 
 	public void dropIndex(String idxName, Transaction tx) {
 		idxMgr.dropIndex(idxName, tx);
 	}
 	
+	public int nextClusterId(String idxName, int floor, Transaction tx) {
+		return idxMgr.nextClusterId(idxName, floor, tx);
+	}
+
 	public Set<String> getIndexedFields(String tblName, Transaction tx) {
 		return idxMgr.getIndexedFields(tblName, tx);
 	}
@@ -85,4 +102,8 @@ public class CatalogMgr {
 	public IndexInfo getIndexInfoByName(String idxName, Transaction tx) {
 		return idxMgr.getIndexInfoByName(idxName, tx);
 	}
+
+	public List<IndexInfo> getIndexInfoByType(IndexType idxType, Transaction tx) {
+		return idxMgr.getIndexInfoByType(idxType, tx);
+	}
 }
@@ -15,6 +15,7 @@
  *******************************************************************************/
 package org.vanilladb.core.storage.metadata;
 
+import static org.vanilladb.core.sql.Type.DOUBLE;
 import static org.vanilladb.core.sql.Type.INTEGER;
 import static org.vanilladb.core.sql.Type.VARCHAR;
 
@@ -27,7 +28,9 @@ import java.util.Map;
 import java.util.Set;
 
 import org.vanilladb.core.server.VanillaDb;
+import org.vanilladb.core.sql.DoubleConstant;
 import org.vanilladb.core.sql.IntegerConstant;
+import org.vanilladb.core.sql.QuantizedVectorType;
 import org.vanilladb.core.sql.Schema;
 import org.vanilladb.core.sql.Type;
 import org.vanilladb.core.sql.VarcharConstant;
@@ -63,13 +66,26 @@ public class TableMgr {
 			FCAT_FLDNAME = "fldname", FCAT_TYPE = "type",
 			FCAT_TYPEARG = "typearg";
 
+	/**
+	 * Name of the vector quantization catalog, which keeps the per-dimension
+	 * calibration of quantized vector fields.
+	 */
+	public static final String VQCAT = "vqcat";
+
+	/**
+	 * A field name of the vector quantization catalog.
+	 */
+	public static final String VQCAT_TBLNAME = "tblname",
+			VQCAT_FLDNAME = "fldname", VQCAT_DIM = "dim", VQCAT_MIN = "min",
+			VQCAT_MAX = "max";
+
 	/**
 	 * The maximum number of characters in any tablename or fieldname.
 	 * Currently, this value is 30.
 	 */
 	public static final int MAX_NAME;
 
-	private TableInfo tcatInfo, fcatInfo;
+	private TableInfo tcatInfo, fcatInfo, vqcatInfo;
 	// Optimization: Materialize the table information
 	private Map<String, TableInfo> tiMap;
 
@@ -100,11 +116,20 @@ public class TableMgr {
 		fcatSchema.addField(FCAT_TYPEARG, INTEGER);
 		fcatInfo = new TableInfo(FCAT, fcatSchema);
 
+		Schema vqcatSchema = new Schema();
+		vqcatSchema.addField(VQCAT_TBLNAME, VARCHAR(MAX_NAME));
+		vqcatSchema.addField(VQCAT_FLDNAME, VARCHAR(MAX_NAME));
+		vqcatSchema.addField(VQCAT_DIM, INTEGER);
+		vqcatSchema.addField(VQCAT_MIN, DOUBLE);
+		vqcatSchema.addField(VQCAT_MAX, DOUBLE);
+		vqcatInfo = new TableInfo(VQCAT, vqcatSchema);
+
 		if (isNew) {
 			formatFileHeader(TCAT, tx);
 			formatFileHeader(FCAT, tx);
 			createTable(TCAT, tcatSchema, tx);
 			createTable(FCAT, fcatSchema, tx);
+			createTable(VQCAT, vqcatSchema, tx);
 		}
 	}
 
@@ -142,6 +167,55 @@ public class TableMgr {
 					.getArgument()));
 		}
 		fcatfile.close();
+
+		// insert the calibration of each quantized vector field into vqcat
+		for (String fldname : sch.fields())
+			if (sch.type(fldname) instanceof QuantizedVectorType)
+				insertCalibration(tblName, fldname,
+						(QuantizedVectorType) sch.type(fldname), tx);
+	}
+
+	/**
+	 * Changes the per-dimension calibration of a quantized vector field. Since
+	 * the stored codes are relative to the calibration, the table must still
+	 * be empty.
+	 * 
+	 * @param tblName
+	 *            the name of the table
+	 * @param fldName
+	 *            the name of the quantized vector field
+	 * @param type
+	 *            the newly calibrated type of the field
+	 * @param tx
+	 *            the transaction
+	 */
+	public void calibrateVectorField(String tblName, String fldName,
+			QuantizedVectorType type, Transaction tx) {
+		TableInfo ti = getTableInfo(tblName, tx);
+		if (ti == null)
+			throw new TableNotFoundException("table '" + tblName
+					+ "' is not defined in catalog.");
+		if (!(ti.schema().type(fldName) instanceof QuantizedVectorType)
+				|| ti.schema().type(fldName).getArgument() != type.getArgument())
+			throw new IllegalArgumentException("field '" + fldName
+					+ "' is not a quantized vector of dimension " + type.getArgument());
+
+		RecordFile rf = ti.open(tx, true);
+		rf.beforeFirst();
+		boolean isEmpty = !rf.next();
+		rf.close();
+		if (!isEmpty)
+			throw new IllegalStateException("cannot recalibrate field '"
+					+ fldName + "' of non-empty table '" + tblName + "'");
+
+		deleteCalibration(tblName, fldName, tx);
+		insertCalibration(tblName, fldName, type, tx);
+
+		// Optimization: replace the materialized ti
+		Schema sch = new Schema();
+		for (String fld : ti.schema().fields())
+			sch.addField(fld, fld.equals(fldName) ? type : ti.schema().type(fld));
+		tiMap.put(tblName, new TableInfo(tblName, sch));
 	}
 
 	/**
@@ -180,6 +254,9 @@ public class TableMgr {
 		}
 		fcatfile.close();
 
+		// remove the calibration of quantized vector fields from vqcat
+		deleteCalibration(tblName, null, tx);
+
 		// remove corresponding indices
 		List<IndexInfo> allIndexes = new LinkedList<IndexInfo>();
 		Set<String> indexedFlds = VanillaDb.catalogMgr().getIndexedFields(tblName, tx);
@@ -240,7 +317,11 @@ public class TableMgr {
 				int fldtype = (Integer) fcatfile.getVal(FCAT_TYPE).asJavaVal();
 				int fldarg = (Integer) fcatfile.getVal(FCAT_TYPEARG)
 						.asJavaVal();
-				sch.addField(fldname, Type.newInstance(fldtype, fldarg));
+				Type type = Type.newInstance(fldtype, fldarg);
+				if (type instanceof QuantizedVectorType)
+					type = readCalibration(tblName, fldname,
+							(QuantizedVectorType) type, tx);
+				sch.addField(fldname, type);
 			}
 		fcatfile.close();
 		// Optimization:
@@ -249,6 +330,65 @@ public class TableMgr {
 		return resultTi;
 	}
 
+	private void insertCalibration(String tblName, String fldName,
+			QuantizedVectorType type, Transaction tx) {
+		RecordFile vqcatfile = vqcatInfo.open(tx, true);
+		// databases created before vqcat existed have no file header yet
+		if (vqcatfile.fileSize() == 0)
+			formatFileHeader(VQCAT, tx);
+		float[] min = type.min(), max = type.max();
+		for (int i = 0; i < type.getArgument(); i++) {
+			vqcatfile.insert();
+			vqcatfile.setVal(VQCAT_TBLNAME, new VarcharConstant(tblName));
+			vqcatfile.setVal(VQCAT_FLDNAME, new VarcharConstant(fldName));
+			vqcatfile.setVal(VQCAT_DIM, new IntegerConstant(i));
+			vqcatfile.setVal(VQCAT_MIN, new DoubleConstant(min[i]));
+			vqcatfile.setVal(VQCAT_MAX, new DoubleConstant(max[i]));
+		}
+		vqcatfile.close();
+	}
+
+	/*
+	 * Deletes the calibration of the specified field, or of all fields of the
+	 * table if the field name is null.
+	 */
+	private void deleteCalibration(String tblName, String fldName,
+			Transaction tx) {
+		RecordFile vqcatfile = vqcatInfo.open(tx, true);
+		if (vqcatfile.fileSize() == 0) {
+			vqcatfile.close();
+			return;
+		}
+		vqcatfile.beforeFirst();
+		while (vqcatfile.next()) {
+			if (vqcatfile.getVal(VQCAT_TBLNAME).equals(new VarcharConstant(tblName))
+					&& (fldName == null || vqcatfile.getVal(VQCAT_FLDNAME)
+							.equals(new VarcharConstant(fldName))))
+				vqcatfile.delete();
+		}
+		vqcatfile.close();
+	}
+
+	private QuantizedVectorType readCalibration(String tblName,
+			String fldName, QuantizedVectorType defaultType, Transaction tx) {
+		RecordFile vqcatfile = vqcatInfo.open(tx, true);
+		if (vqcatfile.fileSize() == 0) {
+			vqcatfile.close();
+			return defaultType;
+		}
+		float[] min = defaultType.min().clone(), max = defaultType.max();
+		vqcatfile.beforeFirst();
+		while (vqcatfile.next())
+			if (((String) vqcatfile.getVal(VQCAT_TBLNAME).asJavaVal()).equals(tblName)
+					&& ((String) vqcatfile.getVal(VQCAT_FLDNAME).asJavaVal()).equals(fldName)) {
+				int dim = (Integer) vqcatfile.getVal(VQCAT_DIM).asJavaVal();
+				min[dim] = ((Double) vqcatfile.getVal(VQCAT_MIN).asJavaVal()).floatValue();
+				max[dim] = ((Double) vqcatfile.getVal(VQCAT_MAX).asJavaVal()).floatValue();
+			}
+		vqcatfile.close();
+		return new QuantizedVectorType(min, max);
+	}
+
 	private void formatFileHeader(String tblName, Transaction tx) {
 		String fileName = tblName + ".tbl";
 		RecordFile.formatFileHeader(fileName, tx);
@@ -15,11 +15,14 @@
  *******************************************************************************/
 package org.vanilladb.core.storage.metadata.index;
 
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 import org.vanilladb.core.storage.index.IVF_FLATIndex;
 import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.storage.index.Index;
+import org.vanilladb.core.storage.index.IndexOption;
 import org.vanilladb.core.storage.index.IndexType;
 import org.vanilladb.core.storage.index.SearchKeyType;
 import org.vanilladb.core.storage.metadata.TableInfo;
@@ -38,6 +41,7 @@ public class IndexInfo {
 	private String idxName, tblName;
 	private List<String> fldNames;
 	private IndexType idxType;
+	private Set<IndexOption> options;
 
 	/**
 	 * Creates an IndexInfo object for the specified index.
@@ -52,10 +56,31 @@ public class IndexInfo {
 	 *            the type of the index
 	 */
 	public IndexInfo(String idxName, String tblName, List<String> fldNames, IndexType idxType) {
+		this(idxName, tblName, fldNames, idxType, EnumSet.noneOf(IndexOption.class));
+	}
+
+	/**
+	 * Creates an IndexInfo object for the specified index with the specified
+	 * options.
+	 * 
+	 * @param idxName
+	 *            the name of the index
+	 * @param tblName
+	 *            the name of the table
+	 * @param fldNames
+	 *            the list of names of the indexed fields
+	 * @param idxType
+	 *            the type of the index
+	 * @param options
+	 *            the options of the index
+	 */
+	public IndexInfo(String idxName, String tblName, List<String> fldNames, IndexType idxType,
+			Set<IndexOption> options) {
 		this.tblName = tblName;
 		this.idxName = idxName;
 		this.fldNames = fldNames;
 		this.idxType = idxType;
+		this.options = options;
 	}
 
 	/**
@@ -109,6 +134,26 @@ public class IndexInfo {
 		return idxType;
 	}
 
+	/**
+	 * Returns true if the index was created with the specified option.
+	 * 
+	 * @param option
+	 *            the option
+	 * @return true if the index has the option
+	 */
+	public boolean hasOption(IndexOption option) {
+		return options.contains(option);
+	}
+
+	/**
+	 * Returns the options of this index.
+	 * 
+	 * @return the options of this index
+	 */
+	public Set<IndexOption> options() {
+		return options;
+	}
+
 	/**
 	 * Returns the name of this index.
 	 * 
@@ -20,6 +20,7 @@ import static org.vanilladb.core.sql.Type.VARCHAR;
 import static org.vanilladb.core.storage.metadata.TableMgr.MAX_NAME;
 
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -32,6 +33,8 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import org.vanilladb.core.sql.IntegerConstant;
 import org.vanilladb.core.sql.Schema;
 import org.vanilladb.core.sql.VarcharConstant;
+import org.vanilladb.core.storage.index.IVF_FLATIndex;
+import org.vanilladb.core.storage.index.IndexOption;
 import org.vanilladb.core.storage.index.IndexType;
 import org.vanilladb.core.storage.metadata.TableInfo;
 import org.vanilladb.core.storage.metadata.TableMgr;
@@ -52,7 +55,8 @@ public class IndexMgr {
 	 * The field names of the index catalog.
 	 */
 	public static final String ICAT_IDXNAME = "idxname",
-			ICAT_TBLNAME = "tblname", ICAT_IDXTYPE = "idxtype";
+			ICAT_TBLNAME = "tblname", ICAT_IDXTYPE = "idxtype",
+			ICAT_IDXOPTS = "idxopts", ICAT_NEXTCLUSTER = "nextcluster";
 	
 	/**
 	 * The name of the key catalog.
@@ -93,6 +97,8 @@ public class IndexMgr {
 			sch.addField(ICAT_IDXNAME, VARCHAR(MAX_NAME));
 			sch.addField(ICAT_TBLNAME, VARCHAR(MAX_NAME));
 			sch.addField(ICAT_IDXTYPE, INTEGER);
+			sch.addField(ICAT_IDXOPTS, INTEGER);
+			sch.addField(ICAT_NEXTCLUSTER, INTEGER);
 			tblMgr.createTable(ICAT, sch, tx);
 
 			sch = new Schema();
@@ -130,11 +136,15 @@ public class IndexMgr {
 	 *            the name of the indexed field
 	 * @param idxType
 	 *            the index type of the indexed field
+	 * @param options
+	 *            the options of the index
 	 * @param tx
 	 *            the calling transaction
 	 */
 	public void createIndex(String idxName, String tblName, List<String> fldNames,
-			IndexType idxType, Transaction tx) {
+			IndexType idxType, Set<IndexOption> options, Transaction tx) {
+		if (!options.isEmpty() && !hasOptions())
+			throw new UnsupportedOperationException("the index catalog of this database has no options");
 		
 		// Add the index infos to the index catalog
 		RecordFile rf = idxTi.open(tx, true);
@@ -142,6 +152,10 @@ public class IndexMgr {
 		rf.setVal(ICAT_IDXNAME, new VarcharConstant(idxName));
 		rf.setVal(ICAT_TBLNAME, new VarcharConstant(tblName));
 		rf.setVal(ICAT_IDXTYPE, new IntegerConstant(idxType.toInteger()));
+		if (hasOptions())
+			rf.setVal(ICAT_IDXOPTS, new IntegerConstant(IndexOption.toMask(options)));
+		if (hasClusterIds())
+			rf.setVal(ICAT_NEXTCLUSTER, new IntegerConstant(0));
 		rf.close();
 		
 		// Add the field names to the key catalog
@@ -153,7 +167,40 @@ public class IndexMgr {
 			rf.close();
 		}
 		
-		updateCache(new IndexInfo(idxName, tblName, fldNames, idxType));
+		updateCache(new IndexInfo(idxName, tblName, fldNames, idxType, options));
+	}
+	
+	/**
+	 * Allocates the id of a new cluster of the specified IVF index. The ids
+	 * of an index only grow, so a new cluster never takes over the files of a
+	 * cluster merged away before. The allocation is undone if the transaction
+	 * rolls back, along with the cluster.
+	 * 
+	 * @param idxName
+	 *            the name of the index
+	 * @param floor
+	 *            the smallest id to allocate, above the ids of the current
+	 *            clusters
+	 * @param tx
+	 *            the calling transaction
+	 * @return the allocated id
+	 */
+	public int nextClusterId(String idxName, int floor, Transaction tx) {
+		if (!hasClusterIds())
+			return floor;
+
+		RecordFile rf = idxTi.open(tx, true);
+		rf.beforeFirst();
+		while (rf.next()) {
+			if (((String) rf.getVal(ICAT_IDXNAME).asJavaVal()).equals(idxName)) {
+				int id = Math.max(floor, (Integer) rf.getVal(ICAT_NEXTCLUSTER).asJavaVal());
+				rf.setVal(ICAT_NEXTCLUSTER, new IntegerConstant(id + 1));
+				rf.close();
+				return id;
+			}
+		}
+		rf.close();
+		throw new IllegalArgumentException("index '" + idxName + "' does not exist");
 	}
 	
 	public Set<String> getIndexedFields(String tblName, Transaction tx) {
@@ -220,6 +267,7 @@ public class IndexMgr {
 		String tblName = null;
 		List<String> fldNames = new LinkedList<String>();
 		IndexType idxType = null;
+		Set<IndexOption> options = null;
 		
 		// Find the index in the index catalog
 		RecordFile rf = idxTi.open(tx, true);
@@ -229,6 +277,7 @@ public class IndexMgr {
 				tblName = (String) rf.getVal(ICAT_TBLNAME).asJavaVal();
 				int idxtypeVal = (Integer) rf.getVal(ICAT_IDXTYPE).asJavaVal();
 				idxType = IndexType.fromInteger(idxtypeVal);
+				options = readOptions(rf);
 				break;
 			}
 		}
@@ -248,12 +297,38 @@ public class IndexMgr {
 		rf.close();
 		
 		// Materialize IndexInfos
-		ii = new IndexInfo(idxName, tblName, fldNames, idxType);
+		ii = new IndexInfo(idxName, tblName, fldNames, idxType, options);
 		updateCache(ii);
 		
 		return ii;
 	}
 
+	/**
+	 * Returns the index info objects of all indexes of the specified type.
+	 * 
+	 * @param idxType
+	 *            the type of the indexes
+	 * @param tx
+	 *            the calling transaction
+	 * @return a list of IndexInfo objects
+	 */
+	public List<IndexInfo> getIndexInfoByType(IndexType idxType, Transaction tx) {
+		List<String> idxNames = new LinkedList<String>();
+		RecordFile rf = idxTi.open(tx, true);
+		rf.beforeFirst();
+		while (rf.next()) {
+			int idxtypeVal = (Integer) rf.getVal(ICAT_IDXTYPE).asJavaVal();
+			if (IndexType.fromInteger(idxtypeVal) == idxType)
+				idxNames.add((String) rf.getVal(ICAT_IDXNAME).asJavaVal());
+		}
+		rf.close();
+
+		List<IndexInfo> iis = new LinkedList<IndexInfo>();
+		for (String idxName : idxNames)
+			iis.add(getIndexInfoByName(idxName, tx));
+		return iis;
+	}
+
 	/**
 	 * Remove an index of the specified type for the specified field. A unique
 	 * ID is assigned to this index, and its information is stored in the idxcat
@@ -300,11 +375,18 @@ public class IndexMgr {
 
 		// update the cache
 		removeFromCache(new IndexInfo(idxName, tblName, fldNames, idxType));
+		if (idxType == IndexType.IVF || idxType == IndexType.IVF_PQ)
+			IVF_FLATIndex.invalidateCentroids(idxName, tx);
+		if (idxType == IndexType.IVF) {
+			IVF_FLATIndex.forgetTombstones(idxName);
+			IVF_FLATIndex.forgetStats(idxName);
+		}
 	}
 	
 	private void readFromFile(String tblName, Transaction tx) {
 		// Read from the catalog files
 		Map<String, IndexType> idxTypeMap = new HashMap<String, IndexType>();
+		Map<String, Set<IndexOption>> optionsMap = new HashMap<String, Set<IndexOption>>();
 		
 		// Find all the indexes for the table
 		RecordFile rf = idxTi.open(tx, true);
@@ -314,6 +396,7 @@ public class IndexMgr {
 				String idxname = (String) rf.getVal(ICAT_IDXNAME).asJavaVal();
 				int idxtype = (Integer) rf.getVal(ICAT_IDXTYPE).asJavaVal();
 				idxTypeMap.put(idxname, IndexType.fromInteger(idxtype));
+				optionsMap.put(idxname, readOptions(rf));
 			}
 		}
 		rf.close();
@@ -342,11 +425,33 @@ public class IndexMgr {
 		for (String idxName : idxNames) {
 			IndexType idxType = idxTypeMap.get(idxName);
 			List<String> fldNames = fldNamesMap.get(idxName);
-			updateCache(new IndexInfo(idxName, tblName, fldNames, idxType));
+			updateCache(new IndexInfo(idxName, tblName, fldNames, idxType, optionsMap.get(idxName)));
 		}
 		loadedTables.add(tblName);
 	}
 	
+	/*
+	 * The index catalogs of databases created before index options have no
+	 * option field, so their indexes have no options.
+	 */
+	private boolean hasOptions() {
+		return idxTi.schema().hasField(ICAT_IDXOPTS);
+	}
+	
+	/*
+	 * The index catalogs of databases created before the cluster ids were
+	 * kept have no such field, so the ids of their clusters may be reused.
+	 */
+	private boolean hasClusterIds() {
+		return idxTi.schema().hasField(ICAT_NEXTCLUSTER);
+	}
+	
+	private Set<IndexOption> readOptions(RecordFile rf) {
+		if (!hasOptions())
+			return EnumSet.noneOf(IndexOption.class);
+		return IndexOption.fromMask((Integer) rf.getVal(ICAT_IDXOPTS).asJavaVal());
+	}
+	
 	private void updateCache(IndexInfo ii) {
 		if (!iiMapByIdxNames.containsKey(ii.indexName()))
 			iiMapByIdxNames.put(ii.indexName(), ii);
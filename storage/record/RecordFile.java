@@ -15,6 +15,7 @@
  *******************************************************************************/
 package org.vanilladb.core.storage.record;
 
+import java.util.List;
 import java.util.concurrent.locks.ReentrantLock;
 import org.vanilladb.core.server.VanillaDb;
 import org.vanilladb.core.sql.Constant;
@@ -160,6 +161,22 @@ public class RecordFile implements Record {
 		return rp.getVal(fldName);
 	}
 
+	/**
+	 * Decodes the vector of the specified field in the current record into
+	 * the specified array, starting at dst[dstOffset], without creating a
+	 * constant.
+	 * 
+	 * @param fldName
+	 *            the name of the vector field
+	 * @param dst
+	 *            the array receiving the vector
+	 * @param dstOffset
+	 *            the index of dst receiving the first dimension
+	 */
+	public void getVector(String fldName, float[] dst, int dstOffset) {
+		rp.getVector(fldName, dst, dstOffset);
+	}
+
 	/**
 	 * Sets a value of the specified field in the current record. The type of
 	 * the value must be equal to that of the specified field.
@@ -282,6 +299,52 @@ public class RecordFile implements Record {
 		}
 	}
 
+	/**
+	 * Appends the specified records to the end of the file a block at a time.
+	 * Every new block is formatted with its records already in place, so
+	 * neither the slots nor the values are logged one by one; only the tail
+	 * slot of the file header is. Since the new blocks are not undone if the
+	 * transaction rolls back, this is meant for filling a file from scratch,
+	 * such as during a bulk load.
+	 * 
+	 * @param fldNames
+	 *            the fields of the record values
+	 * @param records
+	 *            the values of every record, in the order of fldNames
+	 */
+	public void appendRecords(List<String> fldNames, List<Constant[]> records) {
+		// Block read-only transaction
+		if (tx.isReadOnly() && !isTempTable())
+			throw new UnsupportedOperationException();
+		if (records.isEmpty())
+			return;
+
+		if (!isTempTable())
+			tx.concurrencyMgr().modifyFile(fileName);
+
+		int slotsPerBlock = Buffer.BUFFER_SIZE / RecordPage.slotSize(ti.schema());
+		BlockId lastBlk = null;
+		for (int from = 0; from < records.size(); from += slotsPerBlock) {
+			List<Constant[]> blockRecords = records.subList(from,
+					Math.min(from + slotsPerBlock, records.size()));
+			Buffer buff = tx.bufferMgr().pinNew(fileName,
+					new RecordFormatter(ti, fldNames, blockRecords));
+			lastBlk = buff.block();
+			if (!isTempTable())
+				tx.concurrencyMgr().insertBlock(lastBlk);
+			tx.bufferMgr().unpin(buff);
+		}
+
+		// Later insertions go after the appended records
+		if (fhp == null)
+			fhp = openHeaderForModification();
+		try {
+			fhp.setTailSlot(new RecordId(lastBlk, (records.size() - 1) % slotsPerBlock));
+		} finally {
+			closeHeader();
+		}
+	}
+
 	/**
 	 * Inserts a record to a specified physical address.
 	 * 
@@ -17,7 +17,10 @@ package org.vanilladb.core.storage.record;
 
 import static org.vanilladb.core.sql.Type.INTEGER;
 import static org.vanilladb.core.storage.record.RecordPage.EMPTY;
+import static org.vanilladb.core.storage.record.RecordPage.INUSE;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import org.vanilladb.core.sql.Constant;
@@ -28,13 +31,16 @@ import org.vanilladb.core.storage.file.Page;
 import org.vanilladb.core.storage.metadata.TableInfo;
 
 /**
- * An object that can format a page to look like a block of empty records.
+ * An object that can format a page to look like a block of empty records, or
+ * a block whose leading slots already hold the given records.
  */
 public class RecordFormatter extends PageFormatter {
 	private TableInfo ti;
 	private Map<String, Integer> myOffsetMap;
 	// Optimization: store the size of pointer to other log record
 	private int flagSize = Page.maxSize(INTEGER);
+	private List<String> fldNames;
+	private List<Constant[]> records;
 
 	/**
 	 * Creates a formatter for a new page of a table.
@@ -43,7 +49,24 @@ public class RecordFormatter extends PageFormatter {
 	 *            the table's metadata
 	 */
 	public RecordFormatter(TableInfo ti) {
+		this(ti, Collections.<String>emptyList(), Collections.<Constant[]>emptyList());
+	}
+
+	/**
+	 * Creates a formatter for a new page of a table, filling the leading
+	 * slots of the page with the specified records.
+	 * 
+	 * @param ti
+	 *            the table's metadata
+	 * @param fldNames
+	 *            the fields of the record values
+	 * @param records
+	 *            the values of every record, in the order of fldNames
+	 */
+	public RecordFormatter(TableInfo ti, List<String> fldNames, List<Constant[]> records) {
 		this.ti = ti;
+		this.fldNames = fldNames;
+		this.records = records;
 		myOffsetMap = RecordPage.offsetMap(ti.schema());
 	}
 
@@ -63,6 +86,18 @@ public class RecordFormatter extends PageFormatter {
 			setVal(buf, pos, emptyFlag);
 			makeDefaultRecord(buf, pos);
 		}
+
+		Constant inUseFlag = new IntegerConstant(INUSE);
+		for (int slot = 0; slot < records.size(); slot++) {
+			int pos = slot * slotSize;
+			Constant[] vals = records.get(slot);
+			setVal(buf, pos, inUseFlag);
+			for (int i = 0; i < vals.length; i++) {
+				String fldname = fldNames.get(i);
+				setVal(buf, pos + flagSize + myOffsetMap.get(fldname),
+						vals[i].castTo(ti.schema().type(fldname)));
+			}
+		}
 	}
 
 	private void makeDefaultRecord(Buffer buf, int pos) {
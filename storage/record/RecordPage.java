@@ -27,6 +27,7 @@ import org.vanilladb.core.sql.IntegerConstant;
 import org.vanilladb.core.sql.Record;
 import org.vanilladb.core.sql.Schema;
 import org.vanilladb.core.sql.Type;
+import org.vanilladb.core.sql.VectorConstant;
 import org.vanilladb.core.storage.buffer.Buffer;
 import org.vanilladb.core.storage.file.BlockId;
 import org.vanilladb.core.storage.file.Page;
@@ -189,6 +190,30 @@ public class RecordPage implements Record {
 		return getVal(position, ti.schema().type(fldName));
 	}
 
+	/**
+	 * Decodes the vector stored in the specified field of this record into
+	 * the specified array. A float vector is read straight from the page;
+	 * other vector types are decoded through their constants.
+	 * 
+	 * @param fldName
+	 *            the name of the vector field
+	 * @param dst
+	 *            the array receiving the vector
+	 * @param dstOffset
+	 *            the index of dst receiving the first dimension
+	 */
+	public void getVector(String fldName, float[] dst, int dstOffset) {
+		Type type = ti.schema().type(fldName);
+		if (type.getSqlType() != java.sql.Types.ARRAY) {
+			float[] vec = ((VectorConstant) getVal(fldName)).asJavaVal();
+			System.arraycopy(vec, 0, dst, dstOffset, vec.length);
+			return;
+		}
+		if (!isTempTable())
+			tx.concurrencyMgr().readRecord(new RecordId(blk, currentSlot));
+		currentBuff.getFloats(fieldPos(fldName), dst, dstOffset, type.getArgument());
+	}
+
 	/**
 	 * Stores a value at the specified field of this record.
 	 * 
@@ -16,6 +16,7 @@
 package org.vanilladb.core.storage.tx.recovery;
 
 import org.vanilladb.core.storage.log.LogSeqNum;
+import org.vanilladb.core.storage.tx.Transaction;
 
 public abstract class LogicalEndRecord {
 	protected LogSeqNum logicalStartLSN;
@@ -23,4 +24,17 @@ public abstract class LogicalEndRecord {
 	public LogSeqNum getlogicalStartLSN(){
 		return logicalStartLSN;
 	}
+
+	/**
+	 * Returns true if the logical operation can be undone as a whole by
+	 * {@link LogRecord#undo(Transaction)}. Otherwise, the log records written
+	 * between its start and its end are undone one by one.
+	 * 
+	 * @param tx
+	 *            the transaction performing the undo
+	 * @return true if the logical operation can be undone as a whole
+	 */
+	public boolean isLogicallyUndoable(Transaction tx) {
+		return true;
+	}
 }
@@ -76,6 +76,16 @@ public class RecordFileInsertEndRecord extends LogicalEndRecord implements LogRe
 		return txNum;
 	}
 
+	/**
+	 * Returns true if the table is in the catalog. The tables an index keeps
+	 * its entries in, such as the cluster files of an IVF index, are not, so
+	 * their records are undone physically.
+	 */
+	@Override
+	public boolean isLogicallyUndoable(Transaction tx) {
+		return VanillaDb.catalogMgr().getTableInfo(tblName, tx) != null;
+	}
+
 	@Override
 	public void undo(Transaction tx) {
 
@@ -285,6 +285,10 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 					return;
 				else if (rec instanceof LogicalEndRecord) {
 
+					// Undo the log records of this Logical operation one by one
+					if (!((LogicalEndRecord) rec).isLogicallyUndoable(tx))
+						continue;
+
 					// Undo this Logical operation;
 					rec.undo(tx);
 					/*
@@ -321,6 +325,10 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 					return;
 				else if (rec instanceof LogicalEndRecord) {
 
+					// Undo the log records of this Logical operation one by one
+					if (!((LogicalEndRecord) rec).isLogicallyUndoable(tx))
+						continue;
+
 					rec.undo(tx);
 
 					LogSeqNum logicalStartLSN = ((LogicalEndRecord) rec).getlogicalStartLSN();
@@ -421,6 +429,10 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 				unCompletedTxs.remove(rec.txNumber());
 			else if (rec instanceof LogicalEndRecord) {
 
+				// Undo the log records of this Logical operation one by one
+				if (!((LogicalEndRecord) rec).isLogicallyUndoable(tx))
+					continue;
+
 				// Undo this Logical operation;
 				rec.undo(tx);
 				/*
@@ -524,6 +536,10 @@ public class RecoveryMgr implements TransactionLifecycleListener {
 				unCompletedTxs.remove(rec.txNumber());
 			else if (rec instanceof LogicalEndRecord) {
 
+				// Undo the log records of this Logical operation one by one
+				if (!((LogicalEndRecord) rec).isLogicallyUndoable(tx))
+					continue;
+
 				rec.undo(tx);
 
 				LogSeqNum logicalStartLSN = ((LogicalEndRecord) rec).getlogicalStartLSN();
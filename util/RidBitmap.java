@@ -0,0 +1,45 @@
+package org.vanilladb.core.util;
+
+import java.util.BitSet;
+
+import org.vanilladb.core.storage.record.RecordId;
+
+/**
+ * A bitmap over the slots of a table, with one bit per record id. Slot id of
+ * block b maps to bit (b * slots per block + id).
+ */
+public class RidBitmap implements RidFilter {
+	private final int slotsPerBlock;
+	private final BitSet bits = new BitSet();
+	private int count;
+
+	public RidBitmap(int slotsPerBlock) {
+		this.slotsPerBlock = slotsPerBlock;
+	}
+
+	public void add(RecordId rid) {
+		if (rid.id() >= slotsPerBlock)
+			throw new IllegalArgumentException("slot " + rid.id() + " is out of a block of "
+					+ slotsPerBlock + " slots");
+		int bit = Math.toIntExact(rid.block().number() * slotsPerBlock + rid.id());
+		if (!bits.get(bit)) {
+			bits.set(bit);
+			count++;
+		}
+	}
+
+	@Override
+	public boolean accept(long packedRid) {
+		long bit = TopKHeap.blockNum(packedRid) * slotsPerBlock + TopKHeap.id(packedRid);
+		return bit <= Integer.MAX_VALUE && bits.get((int) bit);
+	}
+
+	@Override
+	public boolean isLookup() {
+		return true;
+	}
+
+	public int size() {
+		return count;
+	}
+}
@@ -0,0 +1,19 @@
+package org.vanilladb.core.util;
+
+/**
+ * Decides whether a data record, given its packed record id (see
+ * {@link TopKHeap#packRid(long, int)}), qualifies for a vector search.
+ */
+public interface RidFilter {
+
+	boolean accept(long packedRid);
+
+	/**
+	 * Returns whether {@link #accept(long)} is a plain lookup, cheap enough to
+	 * run before a distance is computed and safe to call from several threads.
+	 * A filter that evaluates a predicate on the data record is neither.
+	 */
+	default boolean isLookup() {
+		return false;
+	}
+}
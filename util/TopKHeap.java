@@ -0,0 +1,168 @@
+package org.vanilladb.core.util;
+
+import java.util.Arrays;
+
+/**
+ * A bounded max-heap keeping the k smallest distances seen so far, along with
+ * the packed record ids they belong to. The heap lives in two parallel
+ * primitive arrays, so offering a candidate never allocates.
+ *
+ * <p>
+ * A record id is packed into a long as (block number &lt;&lt; 16 | slot id),
+ * since a slot id never exceeds the number of slots in a block.
+ * </p>
+ */
+public class TopKHeap {
+	private static final int ID_BITS = 16;
+	private static final long ID_MASK = (1L << ID_BITS) - 1;
+
+	private final int k;
+	private final float[] dists;
+	private final long[] rids;
+	private int size;
+
+	public static long packRid(long blockNum, int id) {
+		return (blockNum << ID_BITS) | id;
+	}
+
+	public static long blockNum(long packedRid) {
+		return packedRid >>> ID_BITS;
+	}
+
+	public static int id(long packedRid) {
+		return (int) (packedRid & ID_MASK);
+	}
+
+	public TopKHeap(int k) {
+		if (k <= 0)
+			throw new IllegalArgumentException("k must be positive");
+		this.k = k;
+		this.dists = new float[k];
+		this.rids = new long[k];
+	}
+
+	/**
+	 * Returns the distance a candidate has to beat to enter the heap.
+	 *
+	 * @return the largest kept distance, or infinity if the heap is not full
+	 */
+	public float threshold() {
+		return size < k ? Float.POSITIVE_INFINITY : dists[0];
+	}
+
+	/**
+	 * Offers a candidate to the heap.
+	 *
+	 * @param dist
+	 *            the distance of the candidate
+	 * @param packedRid
+	 *            the packed record id of the candidate
+	 * @return true if the candidate is kept
+	 */
+	public boolean offer(float dist, long packedRid) {
+		if (size < k) {
+			int i = size++;
+			// sift up
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (dists[parent] >= dist)
+					break;
+				dists[i] = dists[parent];
+				rids[i] = rids[parent];
+				i = parent;
+			}
+			dists[i] = dist;
+			rids[i] = packedRid;
+			return true;
+		}
+		if (dist >= dists[0])
+			return false;
+
+		// replace the root and sift down
+		int i = 0;
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && dists[child + 1] > dists[child])
+				child++;
+			if (dists[child] <= dist)
+				break;
+			dists[i] = dists[child];
+			rids[i] = rids[child];
+			i = child;
+		}
+		dists[i] = dist;
+		rids[i] = packedRid;
+		return true;
+	}
+
+	/**
+	 * Offers all the candidates of another heap to this one.
+	 *
+	 * @param other
+	 *            the heap to merge
+	 */
+	public void merge(TopKHeap other) {
+		for (int i = 0; i < other.size; i++)
+			offer(other.dists[i], other.rids[i]);
+	}
+
+	/**
+	 * Sorts the kept candidates by ascending distance. The heap property is
+	 * lost, so only {@link #dist(int)}, {@link #rid(int)} and {@link #clear()}
+	 * should be called afterwards.
+	 */
+	public void sortAscending() {
+		// heap sort in place: repeatedly move the max to the end
+		for (int end = size - 1; end > 0; end--) {
+			swap(0, end);
+			int i = 0;
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= end)
+					break;
+				if (child + 1 < end && dists[child + 1] > dists[child])
+					child++;
+				if (dists[child] <= dists[i])
+					break;
+				swap(i, child);
+				i = child;
+			}
+		}
+	}
+
+	public int capacity() {
+		return k;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public float dist(int i) {
+		return dists[i];
+	}
+
+	public long rid(int i) {
+		return rids[i];
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	@Override
+	public String toString() {
+		return "TopKHeap" + Arrays.toString(Arrays.copyOf(dists, size));
+	}
+
+	private void swap(int i, int j) {
+		float d = dists[i];
+		dists[i] = dists[j];
+		dists[j] = d;
+		long r = rids[i];
+		rids[i] = rids[j];
+		rids[j] = r;
+	}
+}